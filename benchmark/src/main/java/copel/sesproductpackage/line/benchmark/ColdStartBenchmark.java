@@ -0,0 +1,115 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import copel.sesproductpackage.line.LambdaHandler;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+
+/**
+ * 新しいJVMでの最初のWebhook処理のレイテンシを、暖機({@link LambdaHandler#prime()})の有無で比較する.
+ * SnapStartではスナップショット取得前に暖機が行われるため、primed=trueが復元後の最初のリクエストに相当する.
+ * sqsClient=stubではSQSクライアントを差し替えてハンドラ自身の処理のみを、
+ * sqsClient=sdkではSDKのクライアント生成から{@link LocalSqsServer}への送信までを含めて計測する.
+ * 署名の無いリクエストを送信するため、LINE_SIGNATURE_VERIFICATION_DISABLED=trueを指定して実行すること.
+ * Forkごとに1回だけ計測するため、Fork数を多めにして分布を見ること.
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ColdStartBenchmark {
+    /**
+     * 最初のリクエストの前に暖機するか.
+     */
+    @Param({"false", "true"})
+    private boolean primed;
+    /**
+     * SQSクライアント(stub: 通信しない / sdk: SDKのクライアントでローカルのエンドポイントへ送信する).
+     */
+    @Param({"stub", "sdk"})
+    private String sqsClient;
+
+    private LocalSqsServer sqsServer;
+    private LambdaHandler handler;
+    private APIGatewayProxyRequestEvent request;
+    private Context context;
+
+    @Setup
+    public void setUp() throws IOException {
+        // SQS(AWS)・LINE APIへは通信しない
+        if ("sdk".equals(this.sqsClient)) {
+            this.sqsServer = new LocalSqsServer();
+        } else {
+            SqsClientRegistry.register(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER"), new StubSqsClient());
+        }
+        LineMessagingApiWebhookEntity.getUserNameCache().put("U4af4980629", "LINE taro");
+        LineMessagingApiWebhookEntity.getGroupNameCache().put("Ca56f94637c", "SES案件共有");
+
+        this.handler = new LambdaHandler();
+        if (this.primed) {
+            this.handler.prime();
+        }
+        this.request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withPath("/webhook")
+                .withBody("{\"destination\": \"U0000000000\", \"events\": [{\"type\": \"message\","
+                        + " \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZR\", \"deliveryContext\": {\"isRedelivery\": false},"
+                        + " \"timestamp\": 1700000000000, \"source\": {\"type\": \"group\", \"groupId\": \"Ca56f94637c\", \"userId\": \"U4af4980629\"},"
+                        + " \"message\": {\"type\": \"text\", \"id\": \"444573844083572737\", \"text\": \"【案件】Java開発 単価60万円\"}}]}");
+        this.context = new BenchmarkContext();
+    }
+
+    /**
+     * 最初のWebhook処理.
+     */
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstInvocation() {
+        if (this.sqsServer != null) {
+            // SqsClientRegistryと同じ構成で、接続先と認証情報のみローカル用に変えたクライアントを生成する
+            SqsClientRegistry.register(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER"), SqsClient.builder()
+                    .region(Region.AP_NORTHEAST_1)
+                    .endpointOverride(this.sqsServer.getEndpoint())
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("benchmark", "benchmark")))
+                    .httpClientBuilder(UrlConnectionHttpClient.builder())
+                    .build());
+        }
+        return this.handler.handleRequest(this.request, this.context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.sqsServer != null) {
+            this.sqsServer.close();
+        }
+    }
+}
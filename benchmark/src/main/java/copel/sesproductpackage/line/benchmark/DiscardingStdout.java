@@ -0,0 +1,42 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * 計測中の標準出力(構造化ログ・EMFのメトリクス)を破棄する(ベンチマーク用).
+ * Lambdaでは標準出力がCloudWatch Logsへ送られるが、ベンチマークではJMHのコンソールへ転送され計測を乱すため、
+ * 出力内容の作成までを計測対象とし、書き込み先のみ破棄する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class DiscardingStdout {
+    /**
+     * 差し替え前の標準出力.
+     */
+    private static PrintStream original;
+
+    private DiscardingStdout() {
+    }
+
+    /**
+     * 標準出力を破棄するストリームに差し替える.
+     */
+    public static synchronized void install() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    /**
+     * 標準出力を元に戻す.
+     */
+    public static synchronized void restore() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.regions.Region;
+
+import copel.sesproductpackage.line.LambdaHandler;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+
+/**
+ * {@link LambdaHandler#handleRequest}のWebhook1件あたりのスループットを、外部との通信を除いて計測する.
+ * SQSは{@link StubSqsClient}に差し替え、送信者名・グループ名は事前にキャッシュへ投入してLINE APIを呼び出さない.
+ * 同じボディを繰り返し処理するため、ボディにはwebhookEventIdを含めない(2回目以降が重複として破棄されないように).
+ * ボディには署名を付けないため、LINE_SIGNATURE_VERIFICATION_DISABLED=trueを指定して実行すること.
+ * ログ・メトリクスの出力内容の作成は計測に含め、標準出力への書き込みのみ破棄する({@link DiscardingStdout}).
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    /**
+     * リクエストボディの種類.
+     */
+    @Param({"text", "file", "follow", "join", "multiEvent", "text10k", "text100k"})
+    private String payload;
+
+    private LambdaHandler handler;
+    private APIGatewayProxyRequestEvent request;
+    private Context context;
+
+    @Setup
+    public void setUp() {
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER"), new StubSqsClient());
+        LineMessagingApiWebhookEntity.getUserNameCache().put("U4af4980629", "LINE taro");
+        LineMessagingApiWebhookEntity.getGroupNameCache().put("Ca56f94637c", "SES案件共有");
+        DiscardingStdout.install();
+
+        this.handler = new LambdaHandler();
+        this.request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withPath("/webhook")
+                .withBody(WebhookCorpus.body(this.payload, false));
+        this.context = new BenchmarkContext();
+    }
+
+    /**
+     * 署名検証 → 解析 → 重複排除 → SQSメッセージの作成 → 送信(スタブ) → レスポンスの作成.
+     */
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleRequest() {
+        return this.handler.handleRequest(this.request, this.context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DiscardingStdout.restore();
+        SqsClientRegistry.clear();
+    }
+}
@@ -0,0 +1,50 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 解析・メッセージ作成・シリアライズのホットパスのベンチマーク
+ * ({@link WebhookParseBenchmark}・{@link SqsMessageBodyBenchmark}・{@link EndToEndBenchmark})をまとめて実行する.
+ * GCプロファイラ(割り当て量)を常に有効にし、結果はコミット間で比較できるようJSONで出力する.
+ * {@link EndToEndBenchmark}は署名の無いボディを処理するため、LINE_SIGNATURE_VERIFICATION_DISABLED=trueを指定する.
+ * 実行例: LINE_SIGNATURE_VERIFICATION_DISABLED=true java -cp benchmark/target/benchmarks.jar copel.sesproductpackage.line.benchmark.HotPathBenchmarkRunner $(git rev-parse --short HEAD)
+ * 出力先: benchmark/target/jmh-result-{ラベル}.json(ラベル未指定なら"current")
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class HotPathBenchmarkRunner {
+    private HotPathBenchmarkRunner() {
+    }
+
+    /**
+     * ベンチマークを実行する.
+     *
+     * @param args [0]: 結果ファイルのラベル(コミットID等) [1]: 対象のベンチマークを絞り込む正規表現(任意)
+     * @throws RunnerException
+     */
+    public static void main(final String[] args) throws RunnerException {
+        String label = args.length > 0 ? args[0] : "current";
+        String include = args.length > 1 ? args[1]
+                : "(" + WebhookParseBenchmark.class.getSimpleName()
+                + "|" + SqsMessageBodyBenchmark.class.getSimpleName()
+                + "|" + EndToEndBenchmark.class.getSimpleName() + ")";
+        File result = new File("benchmark/target", "jmh-result-" + label + ".json");
+        result.getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
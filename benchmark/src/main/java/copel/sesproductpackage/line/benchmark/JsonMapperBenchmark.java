@@ -0,0 +1,67 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * Webhook1件あたりのJSONパースについて、呼び出し毎にObjectMapperを生成する場合と
+ * 共有のObjectReaderを使い回す場合のレイテンシ・アロケーションを比較する.
+ * アロケーションは「-prof gc」の gc.alloc.rate.norm で確認する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMapperBenchmark {
+    /**
+     * Webhookのリクエストボディ.
+     */
+    private static final String WEBHOOK_BODY = "{\"destination\":\"Uxxxxxxxx\",\"events\":[{\"type\":\"message\","
+            + "\"message\":{\"type\":\"text\",\"id\":\"468789577898262530\",\"quoteToken\":\"q3Plxr4AgKd...\","
+            + "\"text\":\"【案件】Java開発 / 東京都 / 単価80万円 / 即日\"},\"webhookEventId\":\"01H810YECXQQZ37VAXPF6H9E6T\","
+            + "\"deliveryContext\":{\"isRedelivery\":false},\"timestamp\":1692251666727,"
+            + "\"source\":{\"type\":\"group\",\"groupId\":\"Ca56f94637c...\",\"userId\":\"U4af4980629...\"},"
+            + "\"replyToken\":\"38ef843bde154d9b91c21320ffd17a0f\",\"mode\":\"active\"}]}";
+    /**
+     * プロフィール取得APIのレスポンスボディ.
+     */
+    private static final String PROFILE_BODY = "{\"displayName\":\"LINE taro\",\"userId\":\"U4af4980629...\","
+            + "\"language\":\"ja\",\"pictureUrl\":\"https://obs.line-apps.com/...\",\"statusMessage\":\"Hello, LINE!\"}";
+
+    /**
+     * 変更前: Webhookのパースとプロフィールのパースでそれぞれ ObjectMapper を生成する.
+     */
+    @Benchmark
+    public void newObjectMapperPerCall(final Blackhole blackhole) throws Exception {
+        blackhole.consume(new ObjectMapper().readTree(WEBHOOK_BODY));
+        blackhole.consume(new ObjectMapper().readTree(PROFILE_BODY));
+    }
+
+    /**
+     * 変更後: 共有の ObjectReader を使い回す.
+     */
+    @Benchmark
+    public void sharedObjectReader(final Blackhole blackhole) throws Exception {
+        blackhole.consume(JsonUtil.readTree(WEBHOOK_BODY));
+        blackhole.consume(JsonUtil.readTree(PROFILE_BODY));
+    }
+}
@@ -0,0 +1,127 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * SendMessageBatch(Queryプロトコル)にのみ応答するローカルのSQSエンドポイント(ベンチマーク用).
+ * SDKのクライアント生成・マーシャリング・署名・HTTP通信・MD5検証まで含めて計測するために使用する.
+ * 受け取ったメッセージは保存せず、全エントリを送信成功として応答する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LocalSqsServer implements AutoCloseable {
+    /**
+     * SendMessageBatchのエントリのパラメータ名.
+     */
+    private static final Pattern ENTRY_PARAMETER = Pattern.compile("SendMessageBatchRequestEntry\\.(\\d+)\\.(Id|MessageBody)");
+
+    /**
+     * HTTPサーバー.
+     */
+    private final HttpServer server;
+
+    /**
+     * コンストラクタ(空いているポートで待ち受けを開始する).
+     *
+     * @throws IOException
+     */
+    public LocalSqsServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * エンドポイントのURIを返却する.
+     *
+     * @return エンドポイントのURI
+     */
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort());
+    }
+
+    /**
+     * SendMessageBatchに応答する.
+     *
+     * @param exchange HTTPのリクエストとレスポンス
+     * @throws IOException
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        String form;
+        try (InputStream in = exchange.getRequestBody()) {
+            form = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        // エントリ番号毎のIdとメッセージ本文
+        Map<Integer, String[]> entries = new TreeMap<Integer, String[]>();
+        for (String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            Matcher matcher = ENTRY_PARAMETER.matcher(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8));
+            if (matcher.matches()) {
+                String[] entry = entries.computeIfAbsent(Integer.valueOf(matcher.group(1)), k -> new String[2]);
+                entry["Id".equals(matcher.group(2)) ? 0 : 1] = URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+
+        StringBuilder xml = new StringBuilder("<SendMessageBatchResponse><SendMessageBatchResult>");
+        for (String[] entry : entries.values()) {
+            xml.append("<SendMessageBatchResultEntry><Id>").append(entry[0])
+                .append("</Id><MessageId>local-").append(entry[0])
+                .append("</MessageId><MD5OfMessageBody>").append(md5Hex(entry[1]))
+                .append("</MD5OfMessageBody></SendMessageBatchResultEntry>");
+        }
+        xml.append("</SendMessageBatchResult><ResponseMetadata><RequestId>local</RequestId></ResponseMetadata></SendMessageBatchResponse>");
+
+        byte[] response = xml.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    /**
+     * 文字列のMD5を16進数で返却する(SDKがメッセージ本文の検証に使用する).
+     *
+     * @param value 文字列
+     * @return MD5の16進数表現
+     */
+    private static String md5Hex(final String value) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 待ち受けを停止する.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+}
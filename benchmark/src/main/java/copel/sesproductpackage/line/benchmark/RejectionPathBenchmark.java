@@ -0,0 +1,122 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import copel.sesproductpackage.line.LambdaHandler;
+import copel.sesproductpackage.line.LambdaStreamHandler;
+
+/**
+ * SQSへ送信せずに終了するリクエスト(follow・join・unsend等のメッセージ以外のイベント、不正なリクエスト)の処理コストを計測する.
+ * これらはWebhookの大半を占めるため、レスポンスの作成を含めた1リクエストあたりの時間と割り当て量(-prof gc)を見る.
+ * ボディには署名を付けないため、LINE_SIGNATURE_VERIFICATION_DISABLED=trueを指定して実行する(未指定では全て401の経路となる).
+ * 実行例: LINE_SIGNATURE_VERIFICATION_DISABLED=true java -jar benchmark/target/benchmarks.jar RejectionPathBenchmark -prof gc
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionPathBenchmark {
+    /**
+     * イベントの種類.
+     */
+    @Param({"follow", "join", "unsend", "invalid"})
+    private String event;
+
+    private LambdaHandler requestHandler;
+    private LambdaStreamHandler streamHandler;
+    private APIGatewayProxyRequestEvent request;
+    private byte[] streamRequest;
+    private Context context;
+
+    @Setup
+    public void setUp() {
+        String body;
+        switch (this.event) {
+        case "follow":
+            body = "{\"destination\": \"U0000000000\", \"events\": [{\"type\": \"follow\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZR\","
+                    + " \"deliveryContext\": {\"isRedelivery\": false}, \"timestamp\": 1700000000000, \"mode\": \"active\","
+                    + " \"source\": {\"type\": \"user\", \"userId\": \"U4af4980629\"}, \"replyToken\": \"nHuyWiB7yP5Zw52FIkcQobQuGDXCTA\","
+                    + " \"follow\": {\"isUnblocked\": false}}]}";
+            break;
+        case "join":
+            body = "{\"destination\": \"U0000000000\", \"events\": [{\"type\": \"join\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZS\","
+                    + " \"deliveryContext\": {\"isRedelivery\": false}, \"timestamp\": 1700000000000, \"mode\": \"active\","
+                    + " \"source\": {\"type\": \"group\", \"groupId\": \"Ca56f94637c\"}, \"replyToken\": \"0f3779fba3b349968c5d07db31eab56f\"}]}";
+            break;
+        case "unsend":
+            body = "{\"destination\": \"U0000000000\", \"events\": [{\"type\": \"unsend\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZT\","
+                    + " \"deliveryContext\": {\"isRedelivery\": false}, \"timestamp\": 1700000000000, \"mode\": \"active\","
+                    + " \"source\": {\"type\": \"group\", \"groupId\": \"Ca56f94637c\", \"userId\": \"U4af4980629\"},"
+                    + " \"unsend\": {\"messageId\": \"325708\"}}]}";
+            break;
+        default:
+            // 送信元の無いメッセージイベント
+            body = "{\"destination\": \"U0000000000\", \"events\": [{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZU\","
+                    + " \"timestamp\": 1700000000000, \"message\": {\"type\": \"text\", \"id\": \"1\", \"text\": \"Hello\"}}]}";
+            break;
+        }
+
+        // メトリクスの出力先はハンドラの生成時の標準出力に固定されるため、生成より前に差し替える
+        DiscardingStdout.install();
+        this.requestHandler = new LambdaHandler();
+        this.streamHandler = new LambdaStreamHandler();
+        this.request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withPath("/webhook")
+                .withBody(body);
+        this.streamRequest = ("{\"resource\": \"/webhook\", \"path\": \"/webhook\", \"httpMethod\": \"POST\","
+                + " \"headers\": {\"Content-Type\": \"application/json\", \"Host\": \"example.execute-api.ap-northeast-1.amazonaws.com\"},"
+                + " \"requestContext\": {\"requestId\": \"c6af9ac6-7b61-11e6-9a41-93e8deadbeef\", \"identity\": {\"sourceIp\": \"203.0.113.1\"}},"
+                + " \"body\": " + WebhookCorpus.quote(body) + ", \"isBase64Encoded\": false}").getBytes(StandardCharsets.UTF_8);
+        this.context = new BenchmarkContext();
+    }
+
+    /**
+     * RequestHandler(API GatewayのイベントはPOJOに変換済み).
+     */
+    @Benchmark
+    public APIGatewayProxyResponseEvent requestHandler() {
+        return this.requestHandler.handleRequest(this.request, this.context);
+    }
+
+    /**
+     * RequestStreamHandler(API Gatewayのイベントの解析とレスポンスの書き込みを含む).
+     */
+    @Benchmark
+    public ByteArrayOutputStream streamHandler() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        this.streamHandler.handleRequest(new ByteArrayInputStream(this.streamRequest), output, this.context);
+        return output;
+    }
+
+    @TearDown
+    public void tearDown() {
+        DiscardingStdout.restore();
+    }
+}
@@ -0,0 +1,70 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+
+/**
+ * X-Line-Signatureの検証コストをリクエストボディのサイズ(KB)毎に計測する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+    /**
+     * リクエストボディのサイズ(KB).
+     */
+    @Param({"1", "10", "100"})
+    private int bodyKb;
+
+    private LineSignatureVerifier verifier;
+    private byte[] body;
+    private String validSignature;
+    private String forgedSignature;
+
+    @Setup
+    public void setUp() {
+        this.verifier = new LineSignatureVerifier("0123456789abcdef0123456789abcdef");
+        char[] text = new char[this.bodyKb * 1024 - 32];
+        Arrays.fill(text, 'a');
+        this.body = ("{\"events\":[{\"text\":\"" + new String(text) + "\"}]}").getBytes(StandardCharsets.UTF_8);
+        this.validSignature = this.verifier.sign(this.body);
+        this.forgedSignature = new LineSignatureVerifier("forged").sign(this.body);
+    }
+
+    /**
+     * 正しい署名の検証.
+     */
+    @Benchmark
+    public boolean verifyValid() {
+        return this.verifier.verify(this.body, this.validSignature);
+    }
+
+    /**
+     * 偽造された署名の検証(棄却されるリクエストのコスト).
+     */
+    @Benchmark
+    public boolean verifyForged() {
+        return this.verifier.verify(this.body, this.forgedSignature);
+    }
+}
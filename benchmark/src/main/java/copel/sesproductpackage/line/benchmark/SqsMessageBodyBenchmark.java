@@ -0,0 +1,86 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+import copel.sesproductpackage.line.entity.SesInfoRegisterRequestSqsEntity;
+import copel.sesproductpackage.line.unit.RequestType;
+
+/**
+ * {@link SesInfoRegisterRequestSqsEntity}のメッセージBody(getMessageBody)の作成のスループットを計測する.
+ * シリアライズ結果はEntityに保持されるため、呼び出し毎にEntityを作成し直す(ハンドラでもWebhookイベント毎に作成する).
+ * getMessageBodyは継承先向けのため、同じ結果を返す公開メソッド(toString・toBatchRequestEntry)経由で呼び出す.
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqsMessageBodyBenchmark {
+    /**
+     * 元にするWebhookのリクエストボディの種類.
+     */
+    @Param({"text", "file", "text10k", "text100k"})
+    private String payload;
+
+    private LineMessagingApiWebhookEntity requestEntity;
+
+    @Setup
+    public void setUp() {
+        this.requestEntity = LineMessagingApiWebhookEntity.parseEvents(WebhookCorpus.body(this.payload, true)).get(0);
+    }
+
+    /**
+     * メッセージBody(JSON文字列)の作成.
+     */
+    @Benchmark
+    public String messageBody() {
+        return this.newSqsEntity().toString();
+    }
+
+    /**
+     * SendMessageBatchのエントリの作成(メッセージBodyの作成を含む).
+     */
+    @Benchmark
+    public SendMessageBatchRequestEntry batchRequestEntry() throws Exception {
+        return this.newSqsEntity().toBatchRequestEntry("0");
+    }
+
+    /**
+     * ハンドラと同じ項目を設定したEntityを作成する.
+     */
+    private SesInfoRegisterRequestSqsEntity newSqsEntity() {
+        LineMessagingApiWebhookEntity event = this.requestEntity;
+        SesInfoRegisterRequestSqsEntity sqsEntity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1,
+                "https://sqs.ap-northeast-1.amazonaws.com/000000000000/ses-ai-register");
+        sqsEntity.setEventId(event.getWebhookEventId());
+        sqsEntity.setRequestType(event.isFile() ? RequestType.LineFile.getCode() : RequestType.LineMessage.getCode());
+        sqsEntity.setFromGroup(event.isGroup() ? event.getGroupId() : "personal_line");
+        sqsEntity.setFromGroupName(event.isGroup() ? "SES案件共有" : null);
+        sqsEntity.setFromId(event.getUserId());
+        sqsEntity.setFromName("LINE taro");
+        sqsEntity.setRawContent(event.isFile() ? null : event.getText());
+        sqsEntity.setFileId(event.isFile() ? event.getFileId() : null);
+        sqsEntity.setFileName(event.isFile() ? event.getFileName() : null);
+        return sqsEntity;
+    }
+}
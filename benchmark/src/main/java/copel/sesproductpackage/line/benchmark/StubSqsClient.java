@@ -0,0 +1,34 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+
+/**
+ * 通信せずに全エントリを送信成功とするSQSクライアント(ベンチマーク用).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class StubSqsClient implements SqsClient {
+    @Override
+    public SendMessageBatchResponse sendMessageBatch(final SendMessageBatchRequest request) {
+        List<SendMessageBatchResultEntry> successful = new ArrayList<SendMessageBatchResultEntry>(request.entries().size());
+        request.entries().forEach(entry -> successful.add(
+                SendMessageBatchResultEntry.builder().id(entry.id()).messageId("stub-" + entry.id()).build()));
+        return SendMessageBatchResponse.builder().successful(successful).build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
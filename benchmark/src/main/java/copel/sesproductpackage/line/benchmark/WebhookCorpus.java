@@ -0,0 +1,115 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ベンチマークで使用するWebhookのリクエストボディ.
+ * LINE Messaging APIが実際に送信する形式(destination・webhookEventId・deliveryContext・replyToken等を含む)に合わせている.
+ *
+ * text: グループのテキストメッセージ1件
+ * file: 個人のファイル(スキルシート)メッセージ1件
+ * follow: 友だち追加1件(SQSへは送信しない)
+ * join: グループ参加1件(SQSへは送信しない)
+ * multiEvent: テキスト3件・ファイル1件・follow1件をまとめた配信
+ * text10k / text100k: 約10KB / 約100KB(UTF-8)のテキストメッセージ1件
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class WebhookCorpus {
+    /**
+     * 大きなテキストメッセージを構成する1行(案件情報の転送を想定).
+     */
+    private static final String POSTING_LINE = "【案件】Java/Spring Boot 開発 / 東京都港区(リモート併用) / 単価70～80万円 / 即日～長期 / 面談1回\n";
+
+    private WebhookCorpus() {
+    }
+
+    /**
+     * 名前に対応するWebhookのリクエストボディを返却する.
+     *
+     * @param name 名前(text, file, follow, join, multiEvent, text10k, text100k)
+     * @param withEventIds webhookEventIdを含めるか(含めない場合は重複排除の対象外となり、同じボディを何度でも処理できる)
+     * @return リクエストボディ(JSON)
+     */
+    public static String body(final String name, final boolean withEventIds) {
+        List<String> events = new ArrayList<String>();
+        switch (name) {
+        case "text":
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E6T" : null, "【案件】Java開発 / 東京都 / 単価80万円 / 即日"));
+            break;
+        case "file":
+            events.add(fileEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E6U" : null));
+            break;
+        case "follow":
+            events.add(event(withEventIds ? "01H810YECXQQZ37VAXPF6H9E6V" : null, "follow",
+                    "{\"type\": \"user\", \"userId\": \"U4af4980629\"}", ", \"follow\": {\"isUnblocked\": false}"));
+            break;
+        case "join":
+            events.add(event(withEventIds ? "01H810YECXQQZ37VAXPF6H9E6W" : null, "join",
+                    "{\"type\": \"group\", \"groupId\": \"Ca56f94637c\"}", ""));
+            break;
+        case "multiEvent":
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E70" : null, "【案件】Java開発 / 東京都 / 単価80万円 / 即日"));
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E71" : null, "【要員】PM経験10年 / 60歳 / 稼働率100% / 希望単価90万円"));
+            events.add(fileEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E72" : null));
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E73" : null, "上記の案件、ご提案可能な方がいればご連絡ください。"));
+            events.add(event(withEventIds ? "01H810YECXQQZ37VAXPF6H9E74" : null, "follow",
+                    "{\"type\": \"user\", \"userId\": \"U4af4980629\"}", ", \"follow\": {\"isUnblocked\": false}"));
+            break;
+        case "text10k":
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E80" : null, largeText(10 * 1024)));
+            break;
+        case "text100k":
+            events.add(textEvent(withEventIds ? "01H810YECXQQZ37VAXPF6H9E81" : null, largeText(100 * 1024)));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown webhook corpus: " + name);
+        }
+        return "{\"destination\": \"U0000000000\", \"events\": [" + String.join(", ", events) + "]}";
+    }
+
+    /**
+     * グループのテキストメッセージのイベント.
+     */
+    private static String textEvent(final String eventId, final String text) {
+        return event(eventId, "message", "{\"type\": \"group\", \"groupId\": \"Ca56f94637c\", \"userId\": \"U4af4980629\"}",
+                ", \"message\": {\"type\": \"text\", \"id\": \"468789577898262530\", \"quoteToken\": \"q3Plxr4AgKd\", \"text\": "
+                + quote(text) + "}");
+    }
+
+    /**
+     * 個人のファイルメッセージのイベント.
+     */
+    private static String fileEvent(final String eventId) {
+        return event(eventId, "message", "{\"type\": \"user\", \"userId\": \"U4af4980629\"}",
+                ", \"message\": {\"type\": \"file\", \"id\": \"468789577898262531\", \"fileName\": \"スキルシート_山田太郎.xlsx\", \"fileSize\": 52480}");
+    }
+
+    /**
+     * イベントの共通項目を組み立てる.
+     */
+    private static String event(final String eventId, final String type, final String source, final String rest) {
+        return "{\"type\": \"" + type + "\""
+                + (eventId != null ? ", \"webhookEventId\": \"" + eventId + "\"" : "")
+                + ", \"deliveryContext\": {\"isRedelivery\": false}, \"timestamp\": 1692251666727, \"mode\": \"active\""
+                + ", \"replyToken\": \"38ef843bde154d9b91c21320ffd17a0f\", \"source\": " + source + rest + "}";
+    }
+
+    /**
+     * UTF-8で指定したバイト数以上になるテキスト.
+     */
+    private static String largeText(final int minBytes) {
+        int lineBytes = POSTING_LINE.getBytes(StandardCharsets.UTF_8).length;
+        return POSTING_LINE.repeat((minBytes + lineBytes - 1) / lineBytes);
+    }
+
+    /**
+     * JSONの文字列リテラルに変換する.
+     */
+    static String quote(final String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
@@ -0,0 +1,55 @@
+package copel.sesproductpackage.line.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+
+/**
+ * Webhookのリクエストボディからイベント毎の{@link LineMessagingApiWebhookEntity}を作成する処理のスループットを計測する.
+ * ボディは{@link WebhookCorpus}の種類毎に計測し、割り当て量は「-prof gc」の gc.alloc.rate.norm で確認する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookParseBenchmark {
+    /**
+     * リクエストボディの種類.
+     */
+    @Param({"text", "file", "follow", "join", "multiEvent", "text10k", "text100k"})
+    private String payload;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        this.body = WebhookCorpus.body(this.payload, true).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * UTF-8のリクエストボディから解析する(ハンドラと同じ経路).
+     */
+    @Benchmark
+    public List<LineMessagingApiWebhookEntity> parseEvents() {
+        return LineMessagingApiWebhookEntity.parseEvents(this.body);
+    }
+}
@@ -1,116 +1,305 @@
 package copel.sesproductpackage.line;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.crac.Core;
+import org.crac.Resource;
 
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.amazonaws.services.sqs.model.SendMessageResult;
 
+import copel.sesproductpackage.line.cache.EventDeduplicator;
+import copel.sesproductpackage.line.entity.CoalescingSqsSender;
 import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
-import copel.sesproductpackage.line.entity.SesInfoRegisterRequestSqsEntity;
-import copel.sesproductpackage.line.unit.RequestType;
+import copel.sesproductpackage.line.storage.BlobStore;
+import copel.sesproductpackage.line.storage.FileContentArchiver;
+import copel.sesproductpackage.line.unit.UserNameResolutionMode;
+import copel.sesproductpackage.line.unit.WebhookResponse;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+import copel.sesproductpackage.line.util.StructuredLogger;
 
 /**
  * 【SES AIアシスタント】
  * Lambdaがリクエストを受け付け、処理を開始するMainクラス.
  * LINE Messaging APIからWebhookで送信されてくるリクエストを受け付ける.
+ * 処理は{@link WebhookProcessor}で行い、このクラスではAPI Gatewayのイベントとの変換のみを行う.
+ * SnapStart(CRaC)が有効な場合、スナップショット取得前に{@link #prime()}で処理経路を暖機し、復元後にAWSクライアントを作り直す.
  *
  * @author 鈴木一矢
  *
  */
-public class LambdaHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class LambdaHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
     // =====================================
-    // 環境変数
+    // 定数
     // =====================================
     /**
-     * LINE Messaging APIのChannel Access Token.
+     * 署名のリクエストヘッダ名.
+     */
+    static final String SIGNATURE_HEADER = "x-line-signature";
+    /**
+     * Logger.
      */
-    private static final String LINE_CHANNEL_ACCESS_TOKEN = System.getenv("LINE_CHANNEL_ACCESS_TOKEN");
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(LambdaHandler.class);
     /**
-     * AWS SQS キューURL
+     * レスポンス毎のAPI Gatewayのレスポンス(リクエスト毎に作成せず共有するため、変更しないこと).
      */
-    private static final String SQS_QUEUE_URL_SES_AI_REGISTER = System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER");
+    private static final Map<WebhookResponse, APIGatewayProxyResponseEvent> RESPONSE_EVENTS = createResponseEvents();
+
+    // =====================================
+    // フィールド
+    // =====================================
+    /**
+     * Webhookの処理.
+     */
+    private final WebhookProcessor processor = new WebhookProcessor();
+
+    // =====================================
+    // コンストラクタ
+    // =====================================
+    /**
+     * コンストラクタ.
+     * SnapStart(CRaC)のスナップショット取得前後の処理を登録する(CRaCに対応しない実行環境では何もしない).
+     */
+    public LambdaHandler() {
+        Core.getGlobalContext().register(this);
+    }
 
     // =====================================
     // メソッド
     // =====================================
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
-        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
-
-        // (1) 空のリクエストの場合、処理終了
-    	if (input.getBody() == null) {
-    		context.getLogger().log("リクエストボディが空のリクエストのため、処理を行わず終了します。");
-            response.setStatusCode(400);
-            response.setBody("{\"message\": \"リクエストボディが空です。\"}");
-            response.setHeaders(Map.of("Content-Type", "application/json"));
-            return response;
-    	}
-
-        // (2) 処理を実施
-        // (2-1) リクエストボディを出力
-        context.getLogger().log(input.getHttpMethod() + " " + input.getPath());
-        context.getLogger().log("リクエストBody: " + input.getBody());
-
-        // (2-2) リクエストボディをLineMessagingApiWebhookEntityに変換する
-        LineMessagingApiWebhookEntity requestEntity;
+        StructuredLogger.setRequestId(context.getAwsRequestId());
         try {
-	        requestEntity = new LineMessagingApiWebhookEntity(input.getBody());
-        } catch (IllegalArgumentException e) {
-        	// 解析に失敗した場合、処理を終了する
-            response.setStatusCode(400);
-            response.setBody("{\"message\": \"LINE Messaging APIからWebhookで送信されたリクエスト内容が不正です。\"}");
-            response.setHeaders(Map.of("Content-Type", "application/json"));
-            return response;
+            byte[] body = getBody(input);
+            WebhookResponse response = this.processor.process(input.getHttpMethod(), input.getPath(),
+                    body, getHeader(input, SIGNATURE_HEADER));
+            return RESPONSE_EVENTS.get(response);
+        } finally {
+            StructuredLogger.setRequestId(null);
         }
+    }
 
-        // (2-3) 異常なリクエストの場合、処理を終了する
-        if (!requestEntity.isValid()) {
-            response.setStatusCode(400);
-            response.setBody("{\"message\": \"LINE Messaging APIからWebhookで送信されたリクエスト内容が不正です。\"}");
-            response.setHeaders(Map.of("Content-Type", "application/json"));
-            return response;
-        } else if (!requestEntity.isMessage()) {
-            response.setStatusCode(200);
-            response.setBody("{\"message\": \"メッセージ送信またはファイル送信以外のリクエストを受け付けたため、処理を終了します。\"}");
-            response.setHeaders(Map.of("Content-Type", "application/json"));
-            return response;
+    /**
+     * 全てのレスポンスについて、API Gatewayのレスポンスを作成する.
+     *
+     * @return レスポンス毎のAPI Gatewayのレスポンス
+     */
+    private static Map<WebhookResponse, APIGatewayProxyResponseEvent> createResponseEvents() {
+        Map<WebhookResponse, APIGatewayProxyResponseEvent> responseEvents
+            = new EnumMap<WebhookResponse, APIGatewayProxyResponseEvent>(WebhookResponse.class);
+        for (WebhookResponse response : WebhookResponse.values()) {
+            responseEvents.put(response, new APIGatewayProxyResponseEvent()
+                    .withStatusCode(response.getStatusCode())
+                    .withHeaders(response.getHeaders())
+                    .withBody(response.getBody()));
         }
+        return responseEvents;
+    }
 
+    /**
+     * Webhookの処理経路を合成のリクエストで繰り返し実行し、クラスのロードとJITコンパイルを済ませる.
+     * SQS・LINE APIへの通信は行わない.
+     */
+    public void prime() {
+        this.processor.prime();
+    }
+
+    /**
+     * スナップショット取得前に処理経路を暖機する.
+     */
+    @Override
+    public void beforeCheckpoint(final org.crac.Context<? extends Resource> context) {
+        this.prime();
+    }
+
+    /**
+     * スナップショットから復元した後、スナップショット時点の認証情報・接続を持ち越さないようSQSクライアントを作り直す.
+     */
+    @Override
+    public void afterRestore(final org.crac.Context<? extends Resource> context) {
+        this.processor.recreateClients();
+    }
+
+    /**
+     * リクエストボディを取得する.
+     * バイナリメディアタイプの設定等でAPI GatewayがボディをBase64で渡した場合は、デコードして元のバイト列に戻す.
+     *
+     * @param input リクエスト
+     * @return リクエストボディ(無い、またはBase64として不正な場合はnull)
+     */
+    private static byte[] getBody(final APIGatewayProxyRequestEvent input) {
+        String body = input.getBody();
+        if (body == null) {
+            return null;
+        }
+        if (!Boolean.TRUE.equals(input.getIsBase64Encoded())) {
+            return body.getBytes(StandardCharsets.UTF_8);
+        }
         try {
-            // (2-4) SQSへメッセージを詰める
-            SesInfoRegisterRequestSqsEntity sqsEntity
-                = new SesInfoRegisterRequestSqsEntity(Regions.AP_NORTHEAST_1, SQS_QUEUE_URL_SES_AI_REGISTER);
-            sqsEntity.setRequestType(requestEntity.isFile() ? RequestType.LineFile.getCode() : RequestType.LineMessage.getCode());
-            sqsEntity.setFromGroup(requestEntity.isGroup() ? requestEntity.getGroupId() : "personal_line");
-            sqsEntity.setFromId(requestEntity.getUserId());
-            sqsEntity.setFromName(requestEntity.getUserName(LINE_CHANNEL_ACCESS_TOKEN));
-            sqsEntity.setRawContent(requestEntity.isFile() ? null : requestEntity.getText());
-            sqsEntity.setFileId(requestEntity.isFile() ? requestEntity.getFileId() : null);
-            sqsEntity.setFileName(requestEntity.isFile() ? requestEntity.getFileName() : null);
-
-            context.getLogger().log("SQS「" + SQS_QUEUE_URL_SES_AI_REGISTER + "」に次のメッセージを登録します.：" + sqsEntity.toString());
-            SendMessageResult result = sqsEntity.sendMessage();
-
-            // (2-5) メッセージ送信成功ログを出力する
-            context.getLogger().log("SQSメッセージ送信成功");
-            context.getLogger().log("SQS Message ID: " + result.getMessageId());
-        } catch (Exception e) {
-            // (2-5) 何らかの原因でSQSへのメッセージ送信が失敗した場合、処理を終了する
-            context.getLogger().log("SQSメッセージ送信エラー: " + e.getMessage());
-            response.setStatusCode(500);
-            response.setBody("{\"message\": \"SQSへのメッセージ送信に失敗しました。\"}");
-            response.setHeaders(Map.of("Content-Type", "application/json"));
-            return response;
+            return Base64.getDecoder().decode(body);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Base64のリクエストボディをデコードできません。", fields -> fields.put("error", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * リクエストヘッダの値を大文字・小文字を区別せずに取得する.
+     *
+     * @param input リクエスト
+     * @param name ヘッダ名(小文字)
+     * @return ヘッダの値(存在しなければnull)
+     */
+    private static String getHeader(final APIGatewayProxyRequestEvent input, final String name) {
+        Map<String, String> headers = input.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
         }
+        return null;
+    }
+
+    /**
+     * 署名の検証クラスを差し替える(単体テスト・負荷試験用).
+     *
+     * @param signatureVerifier 署名の検証クラス
+     */
+    public void setSignatureVerifier(final LineSignatureVerifier signatureVerifier) {
+        this.processor.setSignatureVerifier(signatureVerifier);
+    }
+
+    /**
+     * Channel Secretが未設定の場合に署名の無いリクエストを受け付けるかを差し替える(単体テスト用).
+     *
+     * @param allowUnsignedRequests 受け付ける場合true
+     */
+    void setAllowUnsignedRequests(final boolean allowUnsignedRequests) {
+        this.processor.setAllowUnsignedRequests(allowUnsignedRequests);
+    }
+
+    /**
+     * 送信者名の解決方式を差し替える(単体テスト用).
+     *
+     * @param userNameResolutionMode 解決方式
+     * @param timeoutMillis parallelの場合の待ち時間の上限(ミリ秒)
+     */
+    void setUserNameResolutionMode(final UserNameResolutionMode userNameResolutionMode, final long timeoutMillis) {
+        this.processor.setUserNameResolutionMode(userNameResolutionMode, timeoutMillis);
+    }
 
-         // (3) レスポンスを作成し返却する
-        context.getLogger().log("正常に処理を終了します。");
-        response.setStatusCode(200);
-        response.setBody("{\"message\": \"正常に終了しました。\"}");
-        response.setHeaders(Map.of("Content-Type", "application/json"));
-        return response;
+    /**
+     * 送信者名・グループ名をsyncで解決する場合の、1回の呼び出し全体での待ち時間の上限を差し替える(単体テスト用).
+     *
+     * @param budgetMillis 待ち時間の上限(ミリ秒)
+     */
+    void setUserNameResolutionBudgetMillis(final long budgetMillis) {
+        this.processor.setUserNameResolutionBudgetMillis(budgetMillis);
+    }
+
+    /**
+     * イベントの送信者名を取得する処理を差し替える(単体テスト用).
+     *
+     * @param userNameResolver 送信者名を取得する処理
+     */
+    void setUserNameResolver(final Function<LineMessagingApiWebhookEntity, String> userNameResolver) {
+        this.processor.setUserNameResolver(userNameResolver);
+    }
+
+    /**
+     * イベントの送信元グループ名を取得する処理を差し替える(単体テスト用).
+     *
+     * @param groupNameResolver グループ名を取得する処理
+     */
+    void setGroupNameResolver(final Function<LineMessagingApiWebhookEntity, String> groupNameResolver) {
+        this.processor.setGroupNameResolver(groupNameResolver);
+    }
+
+    /**
+     * 重複排除を差し替える(単体テスト用).
+     *
+     * @param eventDeduplicator 重複排除
+     */
+    void setEventDeduplicator(final EventDeduplicator eventDeduplicator) {
+        this.processor.setEventDeduplicator(eventDeduplicator);
+    }
+
+    /**
+     * 大きな原文の退避先を差し替える(単体テスト用).
+     *
+     * @param blobStore 退避先(nullなら退避しない)
+     * @param thresholdBytes 退避する閾値(原文のUTF-8のバイト数)
+     */
+    void setRawContentBlobStore(final BlobStore blobStore, final int thresholdBytes) {
+        this.processor.setRawContentBlobStore(blobStore, thresholdBytes);
+    }
+
+    /**
+     * 受信したファイルの内容の保存処理を差し替える(単体テスト用).
+     *
+     * @param fileContentArchiver 保存処理(nullなら保存しない)
+     */
+    void setFileContentArchiver(final FileContentArchiver fileContentArchiver) {
+        this.processor.setFileContentArchiver(fileContentArchiver);
+    }
+
+    /**
+     * SQSメッセージBodyを圧縮する閾値を差し替える(単体テスト用).
+     *
+     * @param thresholdBytes JSONのバイト数がこれ以上なら圧縮する(負数なら圧縮しない)
+     */
+    void setMessageCompressionThresholdBytes(final int thresholdBytes) {
+        this.processor.setMessageCompressionThresholdBytes(thresholdBytes);
+    }
+
+    /**
+     * Loggerを差し替える(単体テスト用).
+     *
+     * @param logger Logger
+     */
+    void setLogger(final StructuredLogger logger) {
+        this.processor.setLogger(logger);
+    }
+
+    /**
+     * メトリクス(EMF)の出力先を差し替える(単体テスト・負荷試験用).
+     *
+     * @param metricsSink 出力先
+     */
+    public void setMetricsSink(final Consumer<String> metricsSink) {
+        this.processor.setMetricsSink(metricsSink);
+    }
+
+    /**
+     * 同時に処理中の呼び出しのSQSメッセージをまとめて送信する送信処理を差し替える(単体テスト用).
+     *
+     * @param coalescingSqsSender 送信処理(nullなら呼び出し毎に送信する)
+     */
+    void setCoalescingSqsSender(final CoalescingSqsSender coalescingSqsSender) {
+        this.processor.setCoalescingSqsSender(coalescingSqsSender);
+    }
+
+    /**
+     * リクエストボディのログ出力の設定を差し替える(単体テスト用).
+     *
+     * @param sampleRate リクエストボディを出力するリクエストの割合(0.0～1.0)
+     * @param redactMessageText メッセージ本文をマスクするか
+     */
+    void setBodyLogging(final double sampleRate, final boolean redactMessageText) {
+        this.processor.setBodyLogging(sampleRate, redactMessageText);
     }
 }
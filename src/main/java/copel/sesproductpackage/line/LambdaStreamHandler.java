@@ -0,0 +1,276 @@
+package copel.sesproductpackage.line;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+import org.crac.Core;
+import org.crac.Resource;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import copel.sesproductpackage.line.cache.EventDeduplicator;
+import copel.sesproductpackage.line.unit.WebhookResponse;
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+import copel.sesproductpackage.line.util.StructuredLogger;
+
+/**
+ * 【SES AIアシスタント】
+ * {@link LambdaHandler}と同じWebhookの処理を、RequestStreamHandlerとして提供するエントリポイント.
+ * API GatewayのイベントをランタイムにPOJOへ変換させず、入力ストリームから必要な項目(HTTPメソッド・パス・署名ヘッダ・ボディ)のみを
+ * ストリーミングAPIで読み取り、レスポンスは作成済みのJSON({@link WebhookResponse})を出力ストリームへそのまま書き込む.
+ * 処理の内容・レスポンスは{@link LambdaHandler}と同じ({@link WebhookProcessor}を共有する).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LambdaStreamHandler implements RequestStreamHandler, Resource {
+    // =====================================
+    // 定数
+    // =====================================
+    /**
+     * Logger.
+     */
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(LambdaStreamHandler.class);
+    /**
+     * 暖機でAPI Gatewayのイベントの解析を繰り返す回数.
+     */
+    private static final int PRIMING_ITERATIONS = 1000;
+    /**
+     * 暖機に使用する合成のAPI Gatewayのイベント.
+     */
+    private static final byte[] PRIMING_EVENT = ("{\"resource\": \"/webhook\", \"path\": \"/webhook\", \"httpMethod\": \"POST\","
+            + " \"headers\": {\"Content-Type\": \"application/json\", \"X-Line-Signature\": \"priming\"},"
+            + " \"multiValueHeaders\": {\"Content-Type\": [\"application/json\"]}, \"queryStringParameters\": null,"
+            + " \"requestContext\": {\"requestId\": \"priming\", \"identity\": {\"sourceIp\": \"127.0.0.1\"}},"
+            + " \"body\": \"{\\\"destination\\\": \\\"Upriming\\\", \\\"events\\\": []}\", \"isBase64Encoded\": false}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * API Gatewayのイベントから読み取った項目.
+     */
+    static final class ProxyRequest {
+        /**
+         * HTTPメソッド.
+         */
+        String httpMethod;
+        /**
+         * パス.
+         */
+        String path;
+        /**
+         * 署名ヘッダの値.
+         */
+        String signature;
+        /**
+         * リクエストボディ(空の場合はnull).
+         */
+        byte[] body;
+    }
+
+    // =====================================
+    // フィールド
+    // =====================================
+    /**
+     * Webhookの処理.
+     */
+    private final WebhookProcessor processor = new WebhookProcessor();
+
+    // =====================================
+    // コンストラクタ
+    // =====================================
+    /**
+     * コンストラクタ.
+     * SnapStart(CRaC)のスナップショット取得前後の処理を登録する(CRaCに対応しない実行環境では何もしない).
+     */
+    public LambdaStreamHandler() {
+        Core.getGlobalContext().register(this);
+    }
+
+    // =====================================
+    // メソッド
+    // =====================================
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) throws IOException {
+        StructuredLogger.setRequestId(context.getAwsRequestId());
+        try {
+            // (1) API Gatewayのイベントから必要な項目を読み取る(読み取れない場合はボディが空のリクエストとして扱う)
+            ProxyRequest request;
+            try {
+                request = parseRequest(input);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("API Gatewayのイベントを解析できません。", fields -> fields.put("error", e.getMessage()));
+                request = new ProxyRequest();
+            }
+
+            // (2) Webhookを処理し、レスポンスを書き込む
+            WebhookResponse response = this.processor.process(request.httpMethod, request.path,
+                    request.body, request.signature);
+            response.writeTo(output);
+        } finally {
+            StructuredLogger.setRequestId(null);
+        }
+    }
+
+    /**
+     * API Gatewayのイベントから必要な項目のみを読み取る(それ以外の項目は読み飛ばす).
+     *
+     * @param input API Gatewayのイベント(JSON)
+     * @return 読み取った項目
+     * @throws IOException JSONが不正な場合
+     */
+    static ProxyRequest parseRequest(final InputStream input) throws IOException {
+        ProxyRequest request = new ProxyRequest();
+        String body = null;
+        boolean isBase64Encoded = false;
+        try (JsonParser parser = JsonUtil.getJsonFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("API Gateway event is not a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (fieldName) {
+                case "httpMethod":
+                    request.httpMethod = readText(parser, token);
+                    break;
+                case "path":
+                    request.path = readText(parser, token);
+                    break;
+                case "headers":
+                    if (token == JsonToken.START_OBJECT) {
+                        request.signature = readSignatureHeader(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "body":
+                    body = readText(parser, token);
+                    break;
+                case "isBase64Encoded":
+                    isBase64Encoded = token == JsonToken.VALUE_TRUE;
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+                }
+            }
+        }
+        if (body != null) {
+            request.body = isBase64Encoded ? Base64.getDecoder().decode(body) : body.getBytes(StandardCharsets.UTF_8);
+        }
+        return request;
+    }
+
+    /**
+     * 文字列の値を読み取る(文字列以外の値は読み飛ばす).
+     *
+     * @param parser 値を指すParser
+     * @param token 値のトークン
+     * @return 文字列の値(文字列以外の場合はnull)
+     * @throws IOException
+     */
+    private static String readText(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * headersから署名ヘッダの値を大文字・小文字を区別せずに読み取る.
+     *
+     * @param parser headersのSTART_OBJECTを指すParser
+     * @return 署名ヘッダの値(存在しなければnull)
+     * @throws IOException
+     */
+    private static String readSignatureHeader(final JsonParser parser) throws IOException {
+        String signature = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String headerName = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            String value = readText(parser, token);
+            if (LambdaHandler.SIGNATURE_HEADER.equalsIgnoreCase(headerName) && value != null) {
+                signature = value;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Webhookの処理経路と、API Gatewayのイベントの解析を合成のリクエストで繰り返し実行し、クラスのロードとJITコンパイルを済ませる.
+     * SQS・LINE APIへの通信は行わない.
+     */
+    public void prime() {
+        this.processor.prime();
+        try {
+            for (int i = 0; i < PRIMING_ITERATIONS; i++) {
+                parseRequest(new ByteArrayInputStream(PRIMING_EVENT));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * スナップショット取得前に処理経路を暖機する.
+     */
+    @Override
+    public void beforeCheckpoint(final org.crac.Context<? extends Resource> context) {
+        this.prime();
+    }
+
+    /**
+     * スナップショットから復元した後、スナップショット時点の認証情報・接続を持ち越さないようSQSクライアントを作り直す.
+     */
+    @Override
+    public void afterRestore(final org.crac.Context<? extends Resource> context) {
+        this.processor.recreateClients();
+    }
+
+    /**
+     * 署名の検証クラスを差し替える(単体テスト用).
+     *
+     * @param signatureVerifier 署名の検証クラス
+     */
+    void setSignatureVerifier(final LineSignatureVerifier signatureVerifier) {
+        this.processor.setSignatureVerifier(signatureVerifier);
+    }
+
+    /**
+     * Channel Secretが未設定の場合に署名の無いリクエストを受け付けるかを差し替える(単体テスト用).
+     *
+     * @param allowUnsignedRequests 受け付ける場合true
+     */
+    void setAllowUnsignedRequests(final boolean allowUnsignedRequests) {
+        this.processor.setAllowUnsignedRequests(allowUnsignedRequests);
+    }
+
+    /**
+     * 重複排除を差し替える(単体テスト用).
+     *
+     * @param eventDeduplicator 重複排除
+     */
+    void setEventDeduplicator(final EventDeduplicator eventDeduplicator) {
+        this.processor.setEventDeduplicator(eventDeduplicator);
+    }
+
+    /**
+     * メトリクス(EMF)の出力先を差し替える(単体テスト用).
+     *
+     * @param metricsSink 出力先
+     */
+    void setMetricsSink(final Consumer<String> metricsSink) {
+        this.processor.setMetricsSink(metricsSink);
+    }
+}
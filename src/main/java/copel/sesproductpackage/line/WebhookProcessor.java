@@ -0,0 +1,866 @@
+package copel.sesproductpackage.line;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import copel.sesproductpackage.line.cache.EventDeduplicator;
+import copel.sesproductpackage.line.cache.S3DedupStore;
+import copel.sesproductpackage.line.client.LineApiClient;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.CoalescingSqsSender;
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+import copel.sesproductpackage.line.entity.SQSEntityBase;
+import copel.sesproductpackage.line.entity.SesInfoRegisterRequestSqsEntity;
+import copel.sesproductpackage.line.metrics.InvocationMetrics;
+import copel.sesproductpackage.line.storage.BlobStore;
+import copel.sesproductpackage.line.storage.FileContentArchiver;
+import copel.sesproductpackage.line.storage.S3BlobStore;
+import copel.sesproductpackage.line.unit.RequestType;
+import copel.sesproductpackage.line.unit.UserNameResolutionMode;
+import copel.sesproductpackage.line.unit.WebhookResponse;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+import copel.sesproductpackage.line.util.SqsMessageCodec;
+import copel.sesproductpackage.line.util.StructuredLogger;
+
+/**
+ * LINE Messaging APIから受け付けたWebhookの処理(署名検証 → 解析 → 重複排除 → SQSへの送信).
+ * Lambdaのエントリポイント({@link LambdaHandler}・{@link LambdaStreamHandler})から共通で使用し、
+ * リクエストの読み取りと{@link WebhookResponse}の出力のみをエントリポイント側で行う.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class WebhookProcessor {
+    // =====================================
+    // 環境変数
+    // =====================================
+    /**
+     * LINE Messaging APIのChannel Access Token.
+     */
+    private static final String LINE_CHANNEL_ACCESS_TOKEN = System.getenv("LINE_CHANNEL_ACCESS_TOKEN");
+    /**
+     * AWS SQS キューURL
+     */
+    private static final String SQS_QUEUE_URL_SES_AI_REGISTER = System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER");
+    /**
+     * LINE Messaging APIのChannel Secret(署名検証に使用する).
+     */
+    private static final String LINE_CHANNEL_SECRET = System.getenv("LINE_CHANNEL_SECRET");
+    /**
+     * Channel Secretが未設定の場合に署名の無いリクエストを受け付けるか("true"の場合のみ. ローカル実行・負荷試験用).
+     * 未設定の場合、Channel Secretが無ければ全てのリクエストを401で拒否する.
+     */
+    private static final String LINE_SIGNATURE_VERIFICATION_DISABLED = System.getenv("LINE_SIGNATURE_VERIFICATION_DISABLED");
+    /**
+     * 送信者名・グループ名の解決方式("sync", "parallel", "deferred". 未設定ならsync).
+     */
+    private static final String USER_NAME_RESOLUTION_MODE = System.getenv("USER_NAME_RESOLUTION_MODE");
+    /**
+     * 送信者名・グループ名をparallelで解決する場合の待ち時間の上限(ミリ秒).
+     */
+    private static final String USER_NAME_RESOLUTION_TIMEOUT_MILLIS = System.getenv("USER_NAME_RESOLUTION_TIMEOUT_MILLIS");
+    /**
+     * 送信者名・グループ名をsyncで解決する場合の、1回の呼び出し全体での待ち時間の上限(ミリ秒).
+     */
+    private static final String USER_NAME_RESOLUTION_BUDGET_MILLIS = System.getenv("USER_NAME_RESOLUTION_BUDGET_MILLIS");
+    /**
+     * 大きな原文の退避先のS3バケット名(未設定なら原文は常にメッセージに載せる).
+     */
+    private static final String RAW_CONTENT_BUCKET = System.getenv("RAW_CONTENT_BUCKET");
+    /**
+     * 原文をS3へ退避する閾値(原文のUTF-8のバイト数).
+     */
+    private static final String RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES = System.getenv("RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES");
+    /**
+     * 受信したファイルの内容の保存先のS3バケット名(未設定ならファイルIDのみを送信し、内容は保存しない).
+     */
+    private static final String FILE_CONTENT_BUCKET = System.getenv("FILE_CONTENT_BUCKET");
+    /**
+     * 処理済みのWebhookイベントIDを記録するS3バケット名(未設定ならコンテナ内でのみ重複排除する).
+     */
+    private static final String WEBHOOK_EVENT_DEDUP_BUCKET = System.getenv("WEBHOOK_EVENT_DEDUP_BUCKET");
+    /**
+     * SQSメッセージBodyを圧縮する閾値(JSONのバイト数. 未設定なら圧縮しない).
+     */
+    private static final String SQS_MESSAGE_COMPRESSION_THRESHOLD_BYTES = System.getenv("SQS_MESSAGE_COMPRESSION_THRESHOLD_BYTES");
+    /**
+     * 同時に処理中の呼び出しのSQSメッセージをまとめて送信する待ち時間の上限(ミリ秒. 未設定なら呼び出し毎に送信する).
+     * 1つの実行環境で複数の呼び出しを同時に処理する場合(Lambda Managed Instances等)のみ効果がある.
+     */
+    private static final String SQS_COALESCING_MAX_DELAY_MILLIS = System.getenv("SQS_COALESCING_MAX_DELAY_MILLIS");
+    /**
+     * リクエストボディをログに出力するリクエストの割合(0.0～1.0. 未設定なら出力しない).
+     */
+    private static final String LOG_BODY_SAMPLE_RATE = System.getenv("LOG_BODY_SAMPLE_RATE");
+    /**
+     * ログに出力するメッセージ本文をマスクするか("false"以外ならマスクする).
+     */
+    private static final String LOG_REDACT_MESSAGE_TEXT = System.getenv("LOG_REDACT_MESSAGE_TEXT");
+    /**
+     * メトリクス(EMF)の名前空間(未設定なら{@value #DEFAULT_METRICS_NAMESPACE}).
+     */
+    private static final String METRICS_NAMESPACE = System.getenv("METRICS_NAMESPACE");
+
+
+    // =====================================
+    // 定数
+    // =====================================
+    /**
+     * 送信者名をparallelで解決する場合の待ち時間の上限の既定値(ミリ秒).
+     */
+    private static final long DEFAULT_USER_NAME_RESOLUTION_TIMEOUT_MILLIS = 300;
+    /**
+     * 送信者名・グループ名をsyncで解決する場合の、1回の呼び出し全体での待ち時間の上限の既定値(ミリ秒).
+     * LINE APIの1回の取得は再試行を含めて数秒かかり得るため、イベント数に比例して応答が遅れないよう全体で区切る.
+     */
+    private static final long DEFAULT_USER_NAME_RESOLUTION_BUDGET_MILLIS = 2000;
+    /**
+     * 原文をS3へ退避する閾値の既定値(バイト).
+     */
+    private static final int DEFAULT_RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES = 32 * 1024;
+    /**
+     * メトリクスの名前空間の既定値.
+     */
+    private static final String DEFAULT_METRICS_NAMESPACE = "SesAiAssistant";
+    /**
+     * メトリクスのサービス名(ディメンション).
+     */
+    static final String METRICS_SERVICE = "LineMessageReceiver";
+    /**
+     * Logger.
+     */
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(WebhookProcessor.class);
+    /**
+     * 処理済みのWebhookイベントID(コンテナ内で1時間保持する).
+     */
+    private static final EventDeduplicator EVENT_DEDUPLICATOR = new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1));
+    /**
+     * 暖機でWebhookの処理経路を繰り返す回数.
+     */
+    private static final int PRIMING_ITERATIONS = 1000;
+    /**
+     * 暖機に使用する合成のWebhookリクエスト(グループのテキストメッセージと個人のファイルメッセージ).
+     */
+    private static final byte[] PRIMING_WEBHOOK = ("{\"destination\": \"Uprimingdestination\", \"events\": ["
+            + "{\"type\": \"message\", \"webhookEventId\": \"01PRIMING0000000000000000A\", \"deliveryContext\": {\"isRedelivery\": false},"
+            + " \"timestamp\": 1700000000000, \"source\": {\"type\": \"group\", \"groupId\": \"Cpriming\", \"userId\": \"Upriming\"},"
+            + " \"message\": {\"type\": \"text\", \"id\": \"1\", \"text\": \"【案件】暖機用のメッセージ\\n単価: 60万円\"}},"
+            + "{\"type\": \"message\", \"webhookEventId\": \"01PRIMING0000000000000000B\", \"deliveryContext\": {\"isRedelivery\": false},"
+            + " \"timestamp\": 1700000000000, \"source\": {\"type\": \"user\", \"userId\": \"Upriming\"},"
+            + " \"message\": {\"type\": \"file\", \"id\": \"2\", \"fileName\": \"スキルシート.xlsx\", \"fileSize\": 1024}}"
+            + "]}").getBytes(StandardCharsets.UTF_8);
+    /**
+     * 送信者名・グループ名をparallelで解決するスレッドプール(コンテナ内で共有する).
+     */
+    private static final ExecutorService USER_NAME_EXECUTOR = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "user-name-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 同時に処理中の呼び出しのSQSメッセージをまとめて送信する送信処理(コンテナ内で共有する. 未設定ならnull).
+     */
+    private static final CoalescingSqsSender COALESCING_SQS_SENDER
+            = SQS_COALESCING_MAX_DELAY_MILLIS != null && !SQS_COALESCING_MAX_DELAY_MILLIS.isEmpty()
+            ? new CoalescingSqsSender(Duration.ofMillis(Long.parseLong(SQS_COALESCING_MAX_DELAY_MILLIS)), SQSEntityBase.MAX_BATCH_SIZE) : null;
+
+    static {
+        // 他のコンテナで処理済みのイベントの再送を、コンテナをまたいで重複排除する
+        if (WEBHOOK_EVENT_DEDUP_BUCKET != null && !WEBHOOK_EVENT_DEDUP_BUCKET.isEmpty()) {
+            EVENT_DEDUPLICATOR.setPersistentStore(new S3DedupStore(Region.AP_NORTHEAST_1, WEBHOOK_EVENT_DEDUP_BUCKET));
+        }
+        // 署名検証の設定誤りはリクエスト毎ではなく、コンテナの初期化時に1度だけ出力する
+        if (LINE_CHANNEL_SECRET == null || LINE_CHANNEL_SECRET.isEmpty()) {
+            if (Boolean.parseBoolean(LINE_SIGNATURE_VERIFICATION_DISABLED)) {
+                LOGGER.warn("LINE_CHANNEL_SECRETが未設定のため、署名の無いリクエストを検証せずに受け付けます。", fields -> fields
+                        .put("signatureVerification", "disabled"));
+            } else {
+                LOGGER.error("LINE_CHANNEL_SECRETが未設定のため、全てのリクエストを401で拒否します。", null, fields -> fields
+                        .put("signatureVerification", "missingSecret"));
+            }
+        }
+    }
+
+
+    // =====================================
+    // フィールド
+    // =====================================
+    /**
+     * 署名の検証クラス(鍵の準備はコンテナ内で1度だけ行う).
+     */
+    private LineSignatureVerifier signatureVerifier = new LineSignatureVerifier(LINE_CHANNEL_SECRET);
+    /**
+     * Channel Secretが未設定の場合に署名の無いリクエストを受け付けるか.
+     */
+    private boolean allowUnsignedRequests = Boolean.parseBoolean(LINE_SIGNATURE_VERIFICATION_DISABLED);
+    /**
+     * 再送されたイベントの重複排除.
+     */
+    private EventDeduplicator eventDeduplicator = EVENT_DEDUPLICATOR;
+    /**
+     * 送信者名の解決方式.
+     */
+    private UserNameResolutionMode userNameResolutionMode = UserNameResolutionMode.getEnum(USER_NAME_RESOLUTION_MODE);
+    /**
+     * 送信者名・グループ名をparallelで解決する場合の待ち時間の上限(ミリ秒).
+     */
+    private long userNameResolutionTimeoutMillis = USER_NAME_RESOLUTION_TIMEOUT_MILLIS != null
+            ? Long.parseLong(USER_NAME_RESOLUTION_TIMEOUT_MILLIS) : DEFAULT_USER_NAME_RESOLUTION_TIMEOUT_MILLIS;
+    /**
+     * 送信者名・グループ名をsyncで解決する場合の、1回の呼び出し全体での待ち時間の上限(ミリ秒).
+     */
+    private long userNameResolutionBudgetMillis = USER_NAME_RESOLUTION_BUDGET_MILLIS != null
+            ? Long.parseLong(USER_NAME_RESOLUTION_BUDGET_MILLIS) : DEFAULT_USER_NAME_RESOLUTION_BUDGET_MILLIS;
+    /**
+     * 大きな原文の退避先(nullなら退避しない).
+     */
+    private BlobStore rawContentBlobStore = RAW_CONTENT_BUCKET != null && !RAW_CONTENT_BUCKET.isEmpty()
+            ? new S3BlobStore(Region.AP_NORTHEAST_1, RAW_CONTENT_BUCKET) : null;
+    /**
+     * 原文を退避する閾値(原文のUTF-8のバイト数).
+     */
+    private int rawContentOffloadThresholdBytes = RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES != null
+            ? Integer.parseInt(RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES) : DEFAULT_RAW_CONTENT_OFFLOAD_THRESHOLD_BYTES;
+    /**
+     * 受信したファイルの内容の保存処理(nullなら保存しない).
+     */
+    private FileContentArchiver fileContentArchiver = FILE_CONTENT_BUCKET != null && !FILE_CONTENT_BUCKET.isEmpty()
+            ? new FileContentArchiver(new S3BlobStore(Region.AP_NORTHEAST_1, FILE_CONTENT_BUCKET)) : null;
+    /**
+     * SQSメッセージBodyを圧縮する閾値(負数なら圧縮しない).
+     */
+    private int messageCompressionThresholdBytes = SQS_MESSAGE_COMPRESSION_THRESHOLD_BYTES != null
+            ? Integer.parseInt(SQS_MESSAGE_COMPRESSION_THRESHOLD_BYTES) : -1;
+    /**
+     * イベントの送信者名を取得する処理.
+     */
+    private Function<LineMessagingApiWebhookEntity, String> userNameResolver = requestEntity -> requestEntity.getUserName(LINE_CHANNEL_ACCESS_TOKEN);
+    /**
+     * イベントの送信元グループ名を取得する処理.
+     */
+    private Function<LineMessagingApiWebhookEntity, String> groupNameResolver = requestEntity -> requestEntity.getGroupName(LINE_CHANNEL_ACCESS_TOKEN);
+    /**
+     * 同時に処理中の呼び出しのSQSメッセージをまとめて送信する送信処理(nullなら呼び出し毎に送信する).
+     */
+    private CoalescingSqsSender coalescingSqsSender = COALESCING_SQS_SENDER;
+    /**
+     * Logger.
+     */
+    private StructuredLogger logger = LOGGER;
+    /**
+     * リクエストボディをログに出力するリクエストの割合.
+     */
+    private double bodyLogSampleRate = LOG_BODY_SAMPLE_RATE != null ? Double.parseDouble(LOG_BODY_SAMPLE_RATE) : 0.0;
+    /**
+     * ログに出力するメッセージ本文をマスクするか.
+     */
+    private boolean redactMessageText = !"false".equalsIgnoreCase(LOG_REDACT_MESSAGE_TEXT);
+    /**
+     * メトリクスの名前空間.
+     */
+    private final String metricsNamespace = METRICS_NAMESPACE != null && !METRICS_NAMESPACE.isEmpty()
+            ? METRICS_NAMESPACE : DEFAULT_METRICS_NAMESPACE;
+    /**
+     * メトリクス(EMF)の出力先(標準出力へ1行で出力する. Loggerを通すとレベル等の接頭辞が付きEMFとして解釈されない).
+     */
+    private Consumer<String> metricsSink = System.out::println;
+
+
+    // =====================================
+    // メソッド
+    // =====================================
+    /**
+     * LINE Messaging APIから受け付けたWebhookを処理する.
+     * 処理段階毎の処理時間と件数を集計し、終了時にEMFの1行として出力する(ディメンションOutcomeはレスポンスの種類).
+     *
+     * @param httpMethod HTTPメソッド
+     * @param path パス
+     * @param body リクエストボディ(空の場合はnull)
+     * @param signature 署名ヘッダの値
+     * @return レスポンス
+     */
+    public WebhookResponse process(final String httpMethod, final String path, final byte[] body, final String signature) {
+        long startNanos = System.nanoTime();
+        InvocationMetrics metrics = InvocationMetrics.begin(this.metricsNamespace, METRICS_SERVICE, StructuredLogger.getRequestId());
+        try {
+            WebhookResponse response = this.processWebhook(httpMethod, path, body, signature, metrics);
+            metrics.setOutcome(response.name());
+            metrics.count("Invocations", 1);
+            return response;
+        } finally {
+            metrics.time("Total", startNanos);
+            InvocationMetrics.end();
+            this.metricsSink.accept(metrics.toEmf(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * LINE Messaging APIから受け付けたWebhookを処理する.
+     *
+     * @param httpMethod HTTPメソッド
+     * @param path パス
+     * @param body リクエストボディ(空の場合はnull)
+     * @param signature 署名ヘッダの値
+     * @param metrics この呼び出しのメトリクス
+     * @return レスポンス
+     */
+    private WebhookResponse processWebhook(final String httpMethod, final String path, final byte[] body, final String signature,
+            final InvocationMetrics metrics) {
+        // (1) 空のリクエストの場合、処理終了
+        if (body == null) {
+            this.logger.info("リクエストボディが空のリクエストのため、処理を行わず終了します。", fields -> fields
+                    .put("httpMethod", httpMethod)
+                    .put("path", path));
+            return WebhookResponse.EmptyBody;
+        }
+
+        // (1-2) 署名が不正なリクエストの場合、JSONを解析せずに処理終了
+        long stageNanos = System.nanoTime();
+        boolean verified = this.signatureVerifier.isEnabled()
+                ? this.signatureVerifier.verify(body, signature) : this.allowUnsignedRequests;
+        metrics.time("SignatureVerification", stageNanos);
+        if (!verified) {
+            this.logger.warn("署名の検証に失敗したため、処理を行わず終了します。", fields -> fields
+                    .put("httpMethod", httpMethod)
+                    .put("path", path)
+                    .put("bodyBytes", body.length));
+            return WebhookResponse.InvalidSignature;
+        }
+
+        // (2) 処理を実施
+        // (2-1) リクエストボディをイベント毎のLineMessagingApiWebhookEntityに変換する
+        List<LineMessagingApiWebhookEntity> requestEntities;
+        stageNanos = System.nanoTime();
+        try {
+            requestEntities = LineMessagingApiWebhookEntity.parseEvents(body);
+            metrics.time("Parse", stageNanos);
+            metrics.count("Events", requestEntities.size());
+        } catch (IllegalArgumentException e) {
+            // 解析に失敗した場合、処理を終了する
+            this.logger.warn("リクエストボディを解析できないため、処理を行わず終了します。", fields -> fields
+                    .put("httpMethod", httpMethod)
+                    .put("path", path)
+                    .put("bodyBytes", body.length));
+            return WebhookResponse.InvalidRequest;
+        }
+
+        // (2-2) リクエストの概要を出力し、抽出したリクエストのみボディを出力する(メッセージ本文は既定でマスクする)
+        this.logger.debug("リクエストを受け付けました。", fields -> fields
+                .put("httpMethod", httpMethod)
+                .put("path", path)
+                .put("bodyBytes", body.length)
+                .put("events", requestEntities.size()));
+        if (this.logger.isInfoEnabled() && StructuredLogger.sample(this.bodyLogSampleRate)) {
+            this.logger.info("リクエストBody", fields -> fields.putJson("body", body, this.redactMessageText));
+        }
+
+        // (2-3) 正常なメッセージイベントのみを抽出する
+        boolean hasValidEvent = false;
+        List<LineMessagingApiWebhookEntity> messageEntities = new ArrayList<LineMessagingApiWebhookEntity>(requestEntities.size());
+        for (LineMessagingApiWebhookEntity requestEntity : requestEntities) {
+            if (requestEntity.isValid()) {
+                hasValidEvent = true;
+                if (requestEntity.isMessage()) {
+                    messageEntities.add(requestEntity);
+                }
+            }
+        }
+
+        // (2-4) 異常なリクエストのみの場合、処理を終了する
+        if (!hasValidEvent) {
+            return WebhookResponse.InvalidRequest;
+        } else if (messageEntities.isEmpty()) {
+            return WebhookResponse.NotMessage;
+        }
+
+        metrics.count("MessageEvents", messageEntities.size());
+
+        // (2-5) 処理済み・処理中のイベント(LINEによる再送、同じ配信内の重複)を除外し、残りを処理中として確保する
+        stageNanos = System.nanoTime();
+        List<LineMessagingApiWebhookEntity> newEntities = new ArrayList<LineMessagingApiWebhookEntity>(messageEntities.size());
+        for (LineMessagingApiWebhookEntity requestEntity : messageEntities) {
+            if (!this.eventDeduplicator.tryClaim(requestEntity.getWebhookEventId(), requestEntity.isRedelivery())) {
+                metrics.count("DuplicateEvents", 1);
+                this.logger.info("処理済み(または処理中)のイベントのため破棄します。", fields -> fields
+                        .put("eventId", requestEntity.getWebhookEventId())
+                        .put("duplicateCount", this.eventDeduplicator.getDuplicateCount()));
+            } else {
+                newEntities.add(requestEntity);
+            }
+        }
+        metrics.time("Dedup", stageNanos);
+        if (newEntities.isEmpty()) {
+            this.logger.info("全てのイベントが処理済みのため、正常に処理を終了します。", null);
+            return WebhookResponse.Success;
+        }
+        messageEntities = newEntities;
+
+        try {
+            // (2-6) SQSへメッセージを詰める
+            // 送信者名・グループ名は全件分の取得を開始してから、まとめて待つ(メッセージに含めるため、送信より前に待つ)
+            stageNanos = System.nanoTime();
+            long budgetDeadline = stageNanos + TimeUnit.MILLISECONDS.toNanos(this.userNameResolutionBudgetMillis);
+            List<CompletableFuture<String>> userNameFutures = this.startResolving(messageEntities, this.userNameResolver,
+                    LineMessagingApiWebhookEntity::getCachedUserName, budgetDeadline, metrics);
+            List<CompletableFuture<String>> groupNameFutures = this.startResolving(messageEntities, this.groupNameResolver,
+                    LineMessagingApiWebhookEntity::getCachedGroupName, budgetDeadline, metrics);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.userNameResolutionTimeoutMillis);
+            List<String> userNames = awaitNames(userNameFutures, deadline);
+            List<String> groupNames = awaitNames(groupNameFutures, deadline);
+            metrics.time("NameResolution", stageNanos);
+            stageNanos = System.nanoTime();
+            List<SesInfoRegisterRequestSqsEntity> sqsEntities = new ArrayList<SesInfoRegisterRequestSqsEntity>(messageEntities.size());
+            for (int i = 0; i < messageEntities.size(); i++) {
+                SesInfoRegisterRequestSqsEntity sqsEntity = this.toSqsEntity(messageEntities.get(i), userNames.get(i), groupNames.get(i));
+                if (this.fileContentArchiver != null && messageEntities.get(i).isFile()) {
+                    this.archiveFileContent(messageEntities.get(i), sqsEntity, metrics);
+                }
+                if (this.rawContentBlobStore != null
+                        && sqsEntity.offloadRawContent(this.rawContentBlobStore, this.rawContentOffloadThresholdBytes)) {
+                    metrics.count("OffloadedRawContent", 1);
+                    this.logger.info("原文が大きいため退避しました。", fields -> fields
+                            .put("eventId", sqsEntity.getEventId())
+                            .put("location", sqsEntity.getRawContentLocation())
+                            .put("rawContentBytes", sqsEntity.getRawContentSize()));
+                }
+
+                // メッセージ全体は出力せず、概要のみ出力する
+                this.logger.debug("SQSへ登録するメッセージを作成しました。", fields -> fields
+                        .put("eventId", sqsEntity.getEventId())
+                        .put("requestType", sqsEntity.getRequestType())
+                        .put("fromGroup", sqsEntity.getFromGroup())
+                        .putText("rawContent", sqsEntity.getRawContent(), this.redactMessageText)
+                        .put("fileName", sqsEntity.getFileName()));
+                sqsEntities.add(sqsEntity);
+            }
+
+            metrics.time("MessageBuild", stageNanos);
+
+            // (2-7) 最大10件ずつまとめて送信し、送信できたイベントを処理済みとして記録する
+            //       (後続のチャンクが失敗した場合も、送信できたイベントは再送時に重複して送信しない)
+            stageNanos = System.nanoTime();
+            BiConsumer<SesInfoRegisterRequestSqsEntity, String> onSent = (sqsEntity, messageId) -> {
+                metrics.count("Enqueued." + RequestType.getEnum(sqsEntity.getRequestType()).name(), 1);
+                this.eventDeduplicator.markProcessed(sqsEntity.getEventId());
+            };
+            List<String> messageIds = this.coalescingSqsSender != null
+                    ? this.sendCoalesced(sqsEntities, onSent) : sendBatch(sqsEntities, onSent);
+            metrics.time("SqsSend", stageNanos);
+
+            // (2-8) メッセージ送信成功ログを出力する
+            this.logger.info("SQSメッセージ送信成功", fields -> fields
+                    .put("queueUrl", SQS_QUEUE_URL_SES_AI_REGISTER)
+                    .put("count", messageIds.size())
+                    .put("messageIds", messageIds));
+        } catch (Exception e) {
+            // (2-8) 何らかの原因でSQSへのメッセージ送信が失敗した場合、処理を終了する
+            this.logger.error("SQSメッセージ送信エラー", e, fields -> fields
+                    .put("queueUrl", SQS_QUEUE_URL_SES_AI_REGISTER));
+            return WebhookResponse.SqsFailure;
+        } finally {
+            // 送信できなかったイベントの確保を解除し、再送で処理させる(処理済みのイベントは何もしない)
+            for (LineMessagingApiWebhookEntity requestEntity : messageEntities) {
+                this.eventDeduplicator.release(requestEntity.getWebhookEventId());
+            }
+        }
+
+         // (3) レスポンスを作成し返却する
+        return WebhookResponse.Success;
+    }
+
+    /**
+     * この呼び出しのメッセージを最大10件ずつまとめて送信する.
+     *
+     * @param sqsEntities 送信するEntity
+     * @param onSent 送信できたEntityとメッセージIDを受け取る処理
+     * @return 送信したメッセージのID(送信順)
+     * @throws Exception 送信に失敗したメッセージがある場合
+     */
+    private static List<String> sendBatch(final List<SesInfoRegisterRequestSqsEntity> sqsEntities,
+            final BiConsumer<SesInfoRegisterRequestSqsEntity, String> onSent) throws Exception {
+        List<SendMessageBatchResultEntry> results = SQSEntityBase.sendMessageBatch(sqsEntities,
+                (sqsEntity, result) -> onSent.accept(sqsEntity, result.messageId()));
+        List<String> messageIds = new ArrayList<String>(results.size());
+        for (SendMessageBatchResultEntry result : results) {
+            messageIds.add(result.messageId());
+        }
+        return messageIds;
+    }
+
+    /**
+     * 同時に処理中の他の呼び出しのメッセージとまとめて送信し、この呼び出しの全てのメッセージの送信結果を待つ.
+     * 送信できたメッセージは、他のメッセージが失敗した場合も送信済みとして扱う.
+     *
+     * @param sqsEntities 送信するEntity
+     * @param onSent 送信できたEntityとメッセージIDを受け取る処理
+     * @return 送信したメッセージのID(送信順)
+     * @throws IllegalStateException 送信に失敗したメッセージがある場合
+     */
+    private List<String> sendCoalesced(final List<SesInfoRegisterRequestSqsEntity> sqsEntities,
+            final BiConsumer<SesInfoRegisterRequestSqsEntity, String> onSent) {
+        List<CompletableFuture<SendMessageResponse>> futures = new ArrayList<CompletableFuture<SendMessageResponse>>(sqsEntities.size());
+        for (SesInfoRegisterRequestSqsEntity sqsEntity : sqsEntities) {
+            futures.add(this.coalescingSqsSender.submit(sqsEntity));
+        }
+        List<String> messageIds = new ArrayList<String>(sqsEntities.size());
+        Throwable failure = null;
+        int failedCount = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                String messageId = futures.get(i).join().messageId();
+                onSent.accept(sqsEntities.get(i), messageId);
+                messageIds.add(messageId);
+            } catch (CompletionException | CancellationException e) {
+                failedCount++;
+                if (failure == null) {
+                    failure = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("SendMessageBatch failed for " + failedCount + " entries.", failure);
+        }
+        return messageIds;
+    }
+
+    /**
+     * Webhookの処理経路(署名検証 → 解析 → SQSメッセージの作成 → シリアライズ → 送信リクエストの作成)を合成のリクエストで繰り返し実行し、
+     * クラスのロードとJITコンパイルを済ませる. SQS・LINE APIへの通信は行わない.
+     * SQSクライアントは生成のみ行い、クラスのロードと設定の読み込みを済ませる.
+     */
+    public void prime() {
+        LineSignatureVerifier primingVerifier = new LineSignatureVerifier("priming-secret");
+        String signature = primingVerifier.sign(PRIMING_WEBHOOK);
+        for (int i = 0; i < PRIMING_ITERATIONS; i++) {
+            primingVerifier.verify(PRIMING_WEBHOOK, signature);
+            for (LineMessagingApiWebhookEntity requestEntity : LineMessagingApiWebhookEntity.parseEvents(PRIMING_WEBHOOK)) {
+                if (requestEntity.isValid() && requestEntity.isMessage()) {
+                    SesInfoRegisterRequestSqsEntity sqsEntity = this.toSqsEntity(requestEntity, "暖機", requestEntity.isGroup() ? "暖機" : null);
+                    SqsMessageCodec.encode(sqsEntity.toString().getBytes(StandardCharsets.UTF_8));
+                    try {
+                        SendMessageBatchRequest.builder()
+                            .queueUrl(SQS_QUEUE_URL_SES_AI_REGISTER)
+                            .entries(sqsEntity.toBatchRequestEntry("0"))
+                            .build();
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, SQS_QUEUE_URL_SES_AI_REGISTER);
+    }
+
+    /**
+     * スナップショット時点の認証情報・接続を持ち越さないよう、SQSクライアントを作り直す.
+     * クラスはロード済みのため、作り直しのコストは小さい.
+     */
+    public void recreateClients() {
+        SqsClientRegistry.clear();
+        SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, SQS_QUEUE_URL_SES_AI_REGISTER);
+    }
+
+    /**
+     * WebhookイベントからSQSへ送信するEntityを作成する.
+     *
+     * @param requestEntity Webhookイベント
+     * @param userName 送信者名
+     * @param groupName 送信元グループ名
+     * @return SQSへ送信するEntity
+     */
+    private SesInfoRegisterRequestSqsEntity toSqsEntity(final LineMessagingApiWebhookEntity requestEntity,
+            final String userName, final String groupName) {
+        SesInfoRegisterRequestSqsEntity sqsEntity
+            = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, SQS_QUEUE_URL_SES_AI_REGISTER);
+        sqsEntity.setEventId(requestEntity.getWebhookEventId());
+        sqsEntity.setRequestType(requestEntity.isFile() ? RequestType.LineFile.getCode() : RequestType.LineMessage.getCode());
+        sqsEntity.setFromGroup(requestEntity.isGroup() ? requestEntity.getGroupId() : "personal_line");
+        sqsEntity.setFromGroupName(groupName);
+        sqsEntity.setFromId(requestEntity.getUserId());
+        sqsEntity.setFromName(userName);
+        sqsEntity.setNameResolutionDeferred(this.userNameResolutionMode == UserNameResolutionMode.Deferred);
+        sqsEntity.setRawContent(requestEntity.isFile() ? null : requestEntity.getText());
+        sqsEntity.setFileId(requestEntity.isFile() ? requestEntity.getFileId() : null);
+        sqsEntity.setFileName(requestEntity.isFile() ? requestEntity.getFileName() : null);
+        sqsEntity.setCompressionThresholdBytes(this.messageCompressionThresholdBytes);
+        return sqsEntity;
+    }
+
+    /**
+     * ファイルの内容をLINEから取得して保存し、保存先・バイト数・ハッシュをSQSへ送信するEntityに設定する.
+     * 保存に失敗した場合はファイルIDのみを送信する(後続処理がLINEから取得する).
+     * 保存先のSDKの例外(SdkException)等の実行時例外も、メッセージの送信を妨げないよう同様に扱う.
+     *
+     * @param requestEntity Webhookイベント(ファイル)
+     * @param sqsEntity SQSへ送信するEntity
+     * @param metrics メトリクス
+     */
+    private void archiveFileContent(final LineMessagingApiWebhookEntity requestEntity,
+            final SesInfoRegisterRequestSqsEntity sqsEntity, final InvocationMetrics metrics) {
+        long startNanos = System.nanoTime();
+        try {
+            FileContentArchiver.ArchivedFile archivedFile = this.fileContentArchiver.archive(LineApiClient.getDefault(),
+                    requestEntity.getFileId(), requestEntity.getFileName(), requestEntity.getFileSize(), LINE_CHANNEL_ACCESS_TOKEN);
+            sqsEntity.setFileContent(archivedFile);
+            metrics.count("ArchivedFiles", 1);
+            this.logger.info("ファイルの内容を保存しました。", fields -> fields
+                    .put("eventId", sqsEntity.getEventId())
+                    .put("location", archivedFile.getLocation())
+                    .put("fileContentBytes", archivedFile.getSize()));
+        } catch (IOException | RuntimeException e) {
+            metrics.count("FileArchiveFailures", 1);
+            this.logger.warn("ファイルの内容を保存できませんでした。ファイルIDのみを送信します。", fields -> fields
+                    .put("eventId", sqsEntity.getEventId())
+                    .put("fileId", requestEntity.getFileId())
+                    .put("errorType", e.getClass().getName())
+                    .put("errorMessage", String.valueOf(e.getMessage())));
+        } finally {
+            metrics.time("FileContentArchive", startNanos);
+        }
+    }
+
+    /**
+     * 設定された解決方式で、各イベントの送信者名・グループ名の取得を開始する.
+     *
+     * @param messageEntities メッセージイベント
+     * @param resolver 名前を取得する処理
+     * @param cachedResolver キャッシュ済みの名前を返却する処理(syncで期限を過ぎた場合に使用する)
+     * @param budgetDeadline syncの場合の、呼び出し全体での名前の取得の期限(System#nanoTime)
+     * @param metrics この呼び出しのメトリクス
+     * @return 取得処理(イベントと同じ順序. syncは取得済み、deferredはnullで完了している)
+     */
+    private List<CompletableFuture<String>> startResolving(final List<LineMessagingApiWebhookEntity> messageEntities,
+            final Function<LineMessagingApiWebhookEntity, String> resolver,
+            final Function<LineMessagingApiWebhookEntity, String> cachedResolver, final long budgetDeadline,
+            final InvocationMetrics metrics) {
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>(messageEntities.size());
+        for (LineMessagingApiWebhookEntity requestEntity : messageEntities) {
+            switch (this.userNameResolutionMode) {
+            case Deferred:
+                // 名前は後続処理がfrom_id・from_groupから解決する
+                futures.add(CompletableFuture.completedFuture(null));
+                break;
+            case Parallel:
+                // イベント毎の取得を互いに並行して行う(SQSへの送信は全件の取得を待ってから行う)
+                futures.add(CompletableFuture.supplyAsync(InvocationMetrics.bind(() -> resolver.apply(requestEntity)), USER_NAME_EXECUTOR));
+                break;
+            default:
+                futures.add(CompletableFuture.completedFuture(
+                        resolveWithinBudget(requestEntity, resolver, cachedResolver, budgetDeadline, metrics)));
+                break;
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * 名前を1件取得し、呼び出し全体の期限まで待つ.
+     * 期限を過ぎた場合はLINE APIの応答を待たず、キャッシュ済みの名前(無ければnull)を返却する.
+     * 間に合わなかった取得処理は継続し、結果はキャッシュされる.
+     *
+     * @param requestEntity Webhookイベント
+     * @param resolver 名前を取得する処理
+     * @param cachedResolver キャッシュ済みの名前を返却する処理
+     * @param budgetDeadline 期限(System#nanoTime)
+     * @param metrics この呼び出しのメトリクス
+     * @return 名前
+     */
+    private static String resolveWithinBudget(final LineMessagingApiWebhookEntity requestEntity,
+            final Function<LineMessagingApiWebhookEntity, String> resolver,
+            final Function<LineMessagingApiWebhookEntity, String> cachedResolver, final long budgetDeadline,
+            final InvocationMetrics metrics) {
+        long remainingNanos = budgetDeadline - System.nanoTime();
+        if (remainingNanos > 0) {
+            CompletableFuture<String> future = CompletableFuture.supplyAsync(
+                    InvocationMetrics.bind(() -> resolver.apply(requestEntity)), USER_NAME_EXECUTOR);
+            try {
+                return future.get(remainingNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // 期限切れとして、キャッシュ済みの名前を使用する
+            } catch (ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        metrics.count("NameResolutionBudgetExceeded", 1);
+        return cachedResolver.apply(requestEntity);
+    }
+
+    /**
+     * 名前の取得処理の完了を期限まで待つ.
+     *
+     * @param futures 取得処理
+     * @param deadline 期限(System#nanoTime)
+     * @return 名前(期限までに取得できなかった場合はnull)
+     */
+    private static List<String> awaitNames(final List<CompletableFuture<String>> futures, final long deadline) {
+        List<String> names = new ArrayList<String>(futures.size());
+        for (CompletableFuture<String> future : futures) {
+            try {
+                names.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException | ExecutionException e) {
+                // 間に合わなかった取得処理は継続し、結果はキャッシュされる
+                names.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                names.add(null);
+            }
+        }
+        return names;
+    }
+
+
+    /**
+     * 署名の検証クラスを差し替える(単体テスト用).
+     *
+     * @param signatureVerifier 署名の検証クラス
+     */
+    void setSignatureVerifier(final LineSignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+
+    /**
+     * Channel Secretが未設定の場合に署名の無いリクエストを受け付けるかを差し替える(単体テスト用).
+     *
+     * @param allowUnsignedRequests 受け付ける場合true
+     */
+    void setAllowUnsignedRequests(final boolean allowUnsignedRequests) {
+        this.allowUnsignedRequests = allowUnsignedRequests;
+    }
+
+    /**
+     * 送信者名の解決方式を差し替える(単体テスト用).
+     *
+     * @param userNameResolutionMode 解決方式
+     * @param timeoutMillis parallelの場合の待ち時間の上限(ミリ秒)
+     */
+    void setUserNameResolutionMode(final UserNameResolutionMode userNameResolutionMode, final long timeoutMillis) {
+        this.userNameResolutionMode = userNameResolutionMode;
+        this.userNameResolutionTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 送信者名・グループ名をsyncで解決する場合の、1回の呼び出し全体での待ち時間の上限を差し替える(単体テスト用).
+     *
+     * @param budgetMillis 待ち時間の上限(ミリ秒)
+     */
+    void setUserNameResolutionBudgetMillis(final long budgetMillis) {
+        this.userNameResolutionBudgetMillis = budgetMillis;
+    }
+
+    /**
+     * イベントの送信者名を取得する処理を差し替える(単体テスト用).
+     *
+     * @param userNameResolver 送信者名を取得する処理
+     */
+    void setUserNameResolver(final Function<LineMessagingApiWebhookEntity, String> userNameResolver) {
+        this.userNameResolver = userNameResolver;
+    }
+
+    /**
+     * イベントの送信元グループ名を取得する処理を差し替える(単体テスト用).
+     *
+     * @param groupNameResolver グループ名を取得する処理
+     */
+    void setGroupNameResolver(final Function<LineMessagingApiWebhookEntity, String> groupNameResolver) {
+        this.groupNameResolver = groupNameResolver;
+    }
+
+    /**
+     * 重複排除を差し替える(単体テスト用).
+     *
+     * @param eventDeduplicator 重複排除
+     */
+    void setEventDeduplicator(final EventDeduplicator eventDeduplicator) {
+        this.eventDeduplicator = eventDeduplicator;
+    }
+
+    /**
+     * 大きな原文の退避先を差し替える(単体テスト用).
+     *
+     * @param blobStore 退避先(nullなら退避しない)
+     * @param thresholdBytes 退避する閾値(原文のUTF-8のバイト数)
+     */
+    void setRawContentBlobStore(final BlobStore blobStore, final int thresholdBytes) {
+        this.rawContentBlobStore = blobStore;
+        this.rawContentOffloadThresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * 受信したファイルの内容の保存処理を差し替える(単体テスト用).
+     *
+     * @param fileContentArchiver 保存処理(nullなら保存しない)
+     */
+    void setFileContentArchiver(final FileContentArchiver fileContentArchiver) {
+        this.fileContentArchiver = fileContentArchiver;
+    }
+
+    /**
+     * SQSメッセージBodyを圧縮する閾値を差し替える(単体テスト用).
+     *
+     * @param thresholdBytes JSONのバイト数がこれ以上なら圧縮する(負数なら圧縮しない)
+     */
+    void setMessageCompressionThresholdBytes(final int thresholdBytes) {
+        this.messageCompressionThresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * Loggerを差し替える(単体テスト用).
+     *
+     * @param logger Logger
+     */
+    void setLogger(final StructuredLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * メトリクス(EMF)の出力先を差し替える(単体テスト用).
+     *
+     * @param metricsSink 出力先
+     */
+    void setMetricsSink(final Consumer<String> metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * 同時に処理中の呼び出しのSQSメッセージをまとめて送信する送信処理を差し替える(単体テスト用).
+     *
+     * @param coalescingSqsSender 送信処理(nullなら呼び出し毎に送信する)
+     */
+    void setCoalescingSqsSender(final CoalescingSqsSender coalescingSqsSender) {
+        this.coalescingSqsSender = coalescingSqsSender;
+    }
+
+    /**
+     * リクエストボディのログ出力の設定を差し替える(単体テスト用).
+     *
+     * @param sampleRate リクエストボディを出力するリクエストの割合(0.0～1.0)
+     * @param redactMessageText メッセージ本文をマスクするか
+     */
+    void setBodyLogging(final double sampleRate, final boolean redactMessageText) {
+        this.bodyLogSampleRate = sampleRate;
+        this.redactMessageText = redactMessageText;
+    }
+}
@@ -0,0 +1,57 @@
+package copel.sesproductpackage.line.cache;
+
+/**
+ * {@link NameCache}に格納する名前(表示名・グループ名)のキャッシュエントリ.
+ * 名前がnullのエントリは、LINE API上に存在しない(または参照権限がない)ことを表すネガティブキャッシュとなる.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class CachedName {
+    /**
+     * 名前(ネガティブキャッシュの場合はnull).
+     */
+    private final String name;
+    /**
+     * 有効期限(エポックミリ秒).
+     */
+    private final long expiresAtMillis;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param name 名前(ネガティブキャッシュの場合はnull)
+     * @param expiresAtMillis 有効期限(エポックミリ秒)
+     */
+    public CachedName(final String name, final long expiresAtMillis) {
+        this.name = name;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * ネガティブキャッシュか判定.
+     *
+     * @return ネガティブキャッシュならtrue
+     */
+    public boolean isNegative() {
+        return this.name == null;
+    }
+
+    /**
+     * 有効期限切れか判定.
+     *
+     * @param nowMillis 現在時刻(エポックミリ秒)
+     * @return 期限切れならtrue
+     */
+    public boolean isExpired(final long nowMillis) {
+        return nowMillis >= this.expiresAtMillis;
+    }
+
+    // GETTER
+    public String getName() {
+        return this.name;
+    }
+    public long getExpiresAtMillis() {
+        return this.expiresAtMillis;
+    }
+}
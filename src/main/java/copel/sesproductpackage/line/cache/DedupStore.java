@@ -0,0 +1,28 @@
+package copel.sesproductpackage.line.cache;
+
+import java.time.Duration;
+
+/**
+ * 処理済みのWebhookイベントIDを記録する永続ストア.
+ * コンテナをまたいだ再送の重複排除に使用する(DynamoDBの条件付き書き込み等で実装する).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public interface DedupStore {
+    /**
+     * イベントIDが処理済みか判定する.
+     *
+     * @param eventId WebhookイベントID
+     * @return 処理済みならtrue
+     */
+    boolean contains(String eventId);
+
+    /**
+     * イベントIDを処理済みとして記録する.
+     *
+     * @param eventId WebhookイベントID
+     * @param ttl 記録を保持する期間
+     */
+    void put(String eventId, Duration ttl);
+}
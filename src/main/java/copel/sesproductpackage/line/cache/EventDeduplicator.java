@@ -0,0 +1,215 @@
+package copel.sesproductpackage.line.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LINEから再送されたWebhookイベントの重複排除.
+ * 処理済みのイベントIDを一定時間毎のバケットに分けてコンテナ内に保持し、保持期間を過ぎたバケットは丸ごと破棄する.
+ * 永続ストアを設定した場合は、再送フラグが立っているイベントのみ永続ストアも確認する.
+ * イベントは送信前に処理中として確保し、同じ配信内の重複や、処理中の再送を送信しない.
+ * 送信に成功したら処理済みとして記録し、失敗したら確保を解除して再送で処理させる.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class EventDeduplicator {
+    /**
+     * 一定時間内に処理したイベントIDの集合.
+     */
+    private static final class Bucket {
+        /**
+         * バケットの開始時刻(エポックミリ秒).
+         */
+        private final long startMillis;
+        /**
+         * イベントID.
+         */
+        private final Set<String> eventIds = new HashSet<String>();
+
+        private Bucket(final long startMillis) {
+            this.startMillis = startMillis;
+        }
+    }
+
+    /**
+     * 処理済みとして保持する期間.
+     */
+    private final Duration window;
+    /**
+     * 1バケットあたりの期間(ミリ秒).
+     */
+    private final long bucketMillis;
+    /**
+     * 時計.
+     */
+    private final Clock clock;
+    /**
+     * バケット(古い順).
+     */
+    private final Deque<Bucket> buckets = new ArrayDeque<Bucket>();
+    /**
+     * 処理中として確保したイベントID(bucketsのロックで保護する).
+     */
+    private final Set<String> claimed = new HashSet<String>();
+    /**
+     * 永続ストア(未設定ならnull).
+     */
+    private volatile DedupStore persistentStore;
+    /**
+     * 重複として破棄したイベント数.
+     */
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * コンストラクタ.
+     *
+     * @param window 処理済みとして保持する期間
+     * @param bucketDuration 1バケットあたりの期間
+     */
+    public EventDeduplicator(final Duration window, final Duration bucketDuration) {
+        this(window, bucketDuration, Clock.systemUTC());
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param window 処理済みとして保持する期間
+     * @param bucketDuration 1バケットあたりの期間
+     * @param clock 時計
+     */
+    EventDeduplicator(final Duration window, final Duration bucketDuration, final Clock clock) {
+        this.window = window;
+        this.bucketMillis = bucketDuration.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * 処理済みでも処理中でもないイベントを、処理中として確保する. 確保できなかった場合は重複件数を加算する.
+     * 確保したイベントは、送信に成功したら{@link #markProcessed}、失敗したら{@link #release}を呼び出すこと.
+     *
+     * @param eventId WebhookイベントID(nullなら常に確保できたものとする)
+     * @param redelivery LINEによる再送か
+     * @return 確保できた場合true(処理済み・処理中の場合false)
+     */
+    public boolean tryClaim(final String eventId, final boolean redelivery) {
+        if (eventId == null || eventId.isEmpty()) {
+            return true;
+        }
+
+        boolean duplicate;
+        synchronized (this.buckets) {
+            duplicate = this.containsLocal(eventId) || !this.claimed.add(eventId);
+        }
+        // 初回配信のイベントが他のコンテナで処理済みであることはないため、永続ストアは再送時のみ確認する
+        DedupStore store = this.persistentStore;
+        if (!duplicate && redelivery && store != null && store.contains(eventId)) {
+            this.release(eventId);
+            duplicate = true;
+        }
+
+        if (duplicate) {
+            this.duplicateCount.incrementAndGet();
+        }
+        return !duplicate;
+    }
+
+    /**
+     * 処理中として確保したイベントを解除する(処理済みとして記録済みの場合は何もしない).
+     * SQSへの送信に失敗したイベントを、再送で処理させるために呼び出す.
+     *
+     * @param eventId WebhookイベントID(nullなら何もしない)
+     */
+    public void release(final String eventId) {
+        if (eventId == null || eventId.isEmpty()) {
+            return;
+        }
+        synchronized (this.buckets) {
+            this.claimed.remove(eventId);
+        }
+    }
+
+    /**
+     * イベントを処理済みとして記録し、処理中の確保を解除する.
+     * SQSへの送信に失敗したイベントは再送で処理させるため、送信成功後に呼び出すこと.
+     *
+     * @param eventId WebhookイベントID(nullなら何もしない)
+     */
+    public void markProcessed(final String eventId) {
+        if (eventId == null || eventId.isEmpty()) {
+            return;
+        }
+
+        synchronized (this.buckets) {
+            long now = this.clock.millis();
+            this.evictExpired(now);
+            Bucket newest = this.buckets.peekLast();
+            if (newest == null || now - newest.startMillis >= this.bucketMillis) {
+                newest = new Bucket(now);
+                this.buckets.addLast(newest);
+            }
+            newest.eventIds.add(eventId);
+            this.claimed.remove(eventId);
+        }
+
+        DedupStore store = this.persistentStore;
+        if (store != null) {
+            store.put(eventId, this.window);
+        }
+    }
+
+    /**
+     * コンテナ内で保持しているイベントIDに含まれるか判定する.
+     *
+     * @param eventId WebhookイベントID
+     * @return 含まれればtrue
+     */
+    private boolean containsLocal(final String eventId) {
+        synchronized (this.buckets) {
+            this.evictExpired(this.clock.millis());
+            Iterator<Bucket> iterator = this.buckets.descendingIterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().eventIds.contains(eventId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 保持期間を過ぎたバケットを破棄する.
+     *
+     * @param now 現在時刻(エポックミリ秒)
+     */
+    private void evictExpired(final long now) {
+        long windowMillis = this.window.toMillis();
+        while (!this.buckets.isEmpty() && now - this.buckets.peekFirst().startMillis >= windowMillis + this.bucketMillis) {
+            this.buckets.removeFirst();
+        }
+    }
+
+    /**
+     * 永続ストアを設定する.
+     *
+     * @param persistentStore 永続ストア(nullなら使用しない)
+     */
+    public void setPersistentStore(final DedupStore persistentStore) {
+        this.persistentStore = persistentStore;
+    }
+
+    /**
+     * 重複として破棄したイベント数を返却する.
+     *
+     * @return 件数
+     */
+    public long getDuplicateCount() {
+        return this.duplicateCount.get();
+    }
+}
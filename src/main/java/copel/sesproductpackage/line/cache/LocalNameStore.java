@@ -0,0 +1,63 @@
+package copel.sesproductpackage.line.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * コンテナ内のメモリに保持する、件数上限付きの{@link NameStore}.
+ * 上限を超えた場合は最も長く参照されていないエントリから破棄する(LRU).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LocalNameStore implements NameStore {
+    /**
+     * エントリ(アクセス順).
+     */
+    private final Map<String, CachedName> entries;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param maxSize 保持する最大件数
+     */
+    public LocalNameStore(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.entries = new LinkedHashMap<String, CachedName>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedName> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized CachedName get(final String key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    public synchronized void put(final String key, final CachedName value) {
+        this.entries.put(key, value);
+    }
+
+    /**
+     * 保持しているエントリの件数を返却する.
+     *
+     * @return 件数
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 保持しているエントリを全て破棄する.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+}
@@ -0,0 +1,309 @@
+package copel.sesproductpackage.line.cache;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * LINEの表示名・グループ名のキャッシュ.
+ * コンテナ内のメモリ(1次)と任意の永続ストア(2次)を順に参照し、いずれにも無ければLINE APIから取得する.
+ * 同一キーの取得が同時に発生した場合、LINE APIの呼び出しは1回にまとめる.
+ * 先読み期間を指定した場合、有効期限が近づいたエントリを期限切れになる前に再取得する.
+ * 再取得はExecutorを指定した場合はバックグラウンドで、指定しない場合は呼び出し元で行い、いずれも失敗時は古い値を返す.
+ * Lambdaでは呼び出しの間に実行環境が凍結され、バックグラウンドの処理は次の呼び出しまで進まないため、呼び出し元での再取得を基本とする.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class NameCache {
+    /**
+     * LINE APIから名前を取得する処理.
+     */
+    @FunctionalInterface
+    public interface NameLoader {
+        /**
+         * キーに対応する名前を取得する.
+         *
+         * @param key キー(ユーザーID、グループID等)
+         * @return 名前(存在しない、または参照権限がない場合はnull)
+         * @throws IOException 一時的なエラーの場合(キャッシュしない)
+         */
+        String load(String key) throws IOException;
+    }
+
+    /**
+     * 1次キャッシュ(コンテナ内メモリ).
+     */
+    private final NameStore localStore;
+    /**
+     * 2次キャッシュ(未設定ならnull).
+     */
+    private volatile NameStore secondTierStore;
+    /**
+     * 名前を取得できた場合の有効期間.
+     */
+    private final Duration ttl;
+    /**
+     * 名前が存在しなかった場合の有効期間.
+     */
+    private final Duration negativeTtl;
+    /**
+     * 有効期限の何ミリ秒前から再取得するか(先読みしない場合は0).
+     */
+    private final long refreshAheadMillis;
+    /**
+     * 先読みの再取得を実行するExecutor(呼び出し元で再取得する場合はnull).
+     */
+    private final Executor refreshExecutor;
+    /**
+     * 時計.
+     */
+    private final Clock clock;
+    /**
+     * 取得中のキー.
+     */
+    private final ConcurrentMap<String, CompletableFuture<CachedName>> inFlight = new ConcurrentHashMap<String, CompletableFuture<CachedName>>();
+
+    /**
+     * コンストラクタ.
+     *
+     * @param localStore 1次キャッシュ
+     * @param ttl 名前を取得できた場合の有効期間
+     * @param negativeTtl 名前が存在しなかった場合の有効期間
+     */
+    public NameCache(final NameStore localStore, final Duration ttl, final Duration negativeTtl) {
+        this(localStore, ttl, negativeTtl, Duration.ZERO, null, Clock.systemUTC());
+    }
+
+    /**
+     * コンストラクタ(先読みあり. 再取得は呼び出し元で行う).
+     * 先読み期間に入ったエントリを最初に参照した呼び出しが再取得し、同時に参照した他の呼び出しには古い値を返す.
+     *
+     * @param localStore 1次キャッシュ
+     * @param ttl 名前を取得できた場合の有効期間
+     * @param negativeTtl 名前が存在しなかった場合の有効期間
+     * @param refreshAhead 有効期限のどれだけ前から再取得するか
+     */
+    public NameCache(final NameStore localStore, final Duration ttl, final Duration negativeTtl, final Duration refreshAhead) {
+        this(localStore, ttl, negativeTtl, refreshAhead, null, Clock.systemUTC());
+    }
+
+    /**
+     * コンストラクタ(先読みあり. 再取得はバックグラウンドで行う).
+     * 実行環境が凍結されない(呼び出しの間もスレッドが動作する)環境で使用する.
+     *
+     * @param localStore 1次キャッシュ
+     * @param ttl 名前を取得できた場合の有効期間
+     * @param negativeTtl 名前が存在しなかった場合の有効期間
+     * @param refreshAhead 有効期限のどれだけ前から再取得するか
+     * @param refreshExecutor 先読みの再取得を実行するExecutor
+     */
+    public NameCache(final NameStore localStore, final Duration ttl, final Duration negativeTtl,
+            final Duration refreshAhead, final Executor refreshExecutor) {
+        this(localStore, ttl, negativeTtl, refreshAhead, refreshExecutor, Clock.systemUTC());
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param localStore 1次キャッシュ
+     * @param ttl 名前を取得できた場合の有効期間
+     * @param negativeTtl 名前が存在しなかった場合の有効期間
+     * @param refreshAhead 有効期限のどれだけ前から再取得するか
+     * @param refreshExecutor 先読みの再取得を実行するExecutor(呼び出し元で再取得する場合はnull)
+     * @param clock 時計
+     */
+    NameCache(final NameStore localStore, final Duration ttl, final Duration negativeTtl,
+            final Duration refreshAhead, final Executor refreshExecutor, final Clock clock) {
+        this.localStore = localStore;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.refreshAheadMillis = refreshAhead.toMillis();
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * キーに対応する名前を返却する.
+     * キャッシュに有効なエントリが無ければloaderで取得し、キャッシュに格納する.
+     *
+     * @param key キー(ユーザーID、グループID等)
+     * @param loader LINE APIから名前を取得する処理
+     * @return 名前(存在しない場合はnull)
+     * @throws IOException loaderが一時的なエラーで失敗した場合
+     */
+    public String get(final String key, final NameLoader loader) throws IOException {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        // (1) 1次キャッシュ
+        long now = this.clock.millis();
+        CachedName cached = this.localStore.get(key);
+        if (cached != null && !cached.isExpired(now)) {
+            // 有効期限が近ければ再取得する(バックグラウンドの場合は古い値を返す)
+            if (this.refreshAheadMillis > 0 && !cached.isNegative()
+                    && now >= cached.getExpiresAtMillis() - this.refreshAheadMillis) {
+                if (this.refreshExecutor == null) {
+                    return this.refreshInline(key, loader, cached);
+                }
+                this.refreshAsync(key, loader);
+            }
+            return cached.getName();
+        }
+
+        // (2) 2次キャッシュ
+        NameStore secondTier = this.secondTierStore;
+        if (secondTier != null) {
+            cached = secondTier.get(key);
+            if (cached != null && !cached.isExpired(now)) {
+                this.localStore.put(key, cached);
+                return cached.getName();
+            }
+        }
+
+        // (3) LINE APIから取得(同一キーの同時取得は1回にまとめる)
+        CompletableFuture<CachedName> loading = new CompletableFuture<CachedName>();
+        CompletableFuture<CachedName> existing = this.inFlight.putIfAbsent(key, loading);
+        if (existing != null) {
+            return await(existing).getName();
+        }
+        try {
+            CachedName loaded = this.store(key, loader.load(key));
+            loading.complete(loaded);
+            return loaded.getName();
+        } catch (IOException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, loading);
+        }
+    }
+
+    /**
+     * 1次キャッシュにある名前を、有効期限に関わらず返却する(2次キャッシュ・LINE APIは参照しない).
+     * 名前の取得に時間をかけられない場合の代替として使用する.
+     *
+     * @param key キー(ユーザーID、グループID等)
+     * @return 名前(キャッシュに無い、または存在しない場合はnull)
+     */
+    public String getIfPresent(final String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        CachedName cached = this.localStore.get(key);
+        return cached != null ? cached.getName() : null;
+    }
+
+    /**
+     * 呼び出し元で名前を再取得する.
+     * 同じキーを取得中、または再取得に失敗した場合は、有効期限まで古い値を使い続ける.
+     *
+     * @param key キー
+     * @param loader LINE APIから名前を取得する処理
+     * @param cached 有効期限が近いエントリ
+     * @return 名前
+     */
+    private String refreshInline(final String key, final NameLoader loader, final CachedName cached) {
+        CompletableFuture<CachedName> loading = new CompletableFuture<CachedName>();
+        if (this.inFlight.putIfAbsent(key, loading) != null) {
+            return cached.getName();
+        }
+        try {
+            CachedName loaded = this.store(key, loader.load(key));
+            loading.complete(loaded);
+            return loaded.getName();
+        } catch (IOException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            return cached.getName();
+        } finally {
+            this.inFlight.remove(key, loading);
+        }
+    }
+
+    /**
+     * バックグラウンドで名前を再取得する.
+     * 同じキーを取得中であれば何もしない. 再取得に失敗した場合は、有効期限まで古い値を使い続ける.
+     *
+     * @param key キー
+     * @param loader LINE APIから名前を取得する処理
+     */
+    private void refreshAsync(final String key, final NameLoader loader) {
+        CompletableFuture<CachedName> loading = new CompletableFuture<CachedName>();
+        if (this.inFlight.putIfAbsent(key, loading) != null) {
+            return;
+        }
+        this.refreshExecutor.execute(() -> {
+            try {
+                loading.complete(this.store(key, loader.load(key)));
+            } catch (Exception e) {
+                loading.completeExceptionally(e);
+            } finally {
+                this.inFlight.remove(key, loading);
+            }
+        });
+    }
+
+    /**
+     * キーに対応する名前をキャッシュに格納する.
+     *
+     * @param key キー(ユーザーID、グループID等)
+     * @param name 名前(存在しない場合はnull)
+     */
+    public void put(final String key, final String name) {
+        this.store(key, name);
+    }
+
+    /**
+     * 2次キャッシュを設定する.
+     *
+     * @param secondTierStore 2次キャッシュ(nullなら使用しない)
+     */
+    public void setSecondTierStore(final NameStore secondTierStore) {
+        this.secondTierStore = secondTierStore;
+    }
+
+    /**
+     * 名前を有効期限付きで1次・2次キャッシュに格納する.
+     *
+     * @param key キー
+     * @param name 名前(存在しない場合はnull)
+     * @return 格納したエントリ
+     */
+    private CachedName store(final String key, final String name) {
+        Duration expiresIn = name != null ? this.ttl : this.negativeTtl;
+        CachedName entry = new CachedName(name, this.clock.millis() + expiresIn.toMillis());
+        this.localStore.put(key, entry);
+        NameStore secondTier = this.secondTierStore;
+        if (secondTier != null) {
+            secondTier.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 他スレッドによる取得の完了を待つ.
+     *
+     * @param future 取得処理
+     * @return 取得結果
+     * @throws IOException 取得処理が失敗した場合
+     */
+    private static CachedName await(final CompletableFuture<CachedName> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
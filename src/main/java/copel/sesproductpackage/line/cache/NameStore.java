@@ -0,0 +1,27 @@
+package copel.sesproductpackage.line.cache;
+
+/**
+ * {@link NameCache}が使用するキャッシュの格納先.
+ * コンテナ内のメモリ({@link LocalNameStore})のほか、DynamoDB等の永続的な2次キャッシュを実装して差し込むことができる.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public interface NameStore {
+    /**
+     * キーに対応するエントリを取得する.
+     * 有効期限の判定は呼び出し元で行うため、期限切れのエントリを返却してもよい.
+     *
+     * @param key キー(ユーザーID、グループID等)
+     * @return エントリ(存在しなければnull)
+     */
+    CachedName get(String key);
+
+    /**
+     * キーに対応するエントリを格納する.
+     *
+     * @param key キー(ユーザーID、グループID等)
+     * @param value エントリ
+     */
+    void put(String key, CachedName value);
+}
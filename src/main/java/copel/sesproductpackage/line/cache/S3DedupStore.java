@@ -0,0 +1,141 @@
+package copel.sesproductpackage.line.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import copel.sesproductpackage.line.client.AwsCredentialsProviders;
+import copel.sesproductpackage.line.util.StructuredLogger;
+
+/**
+ * 処理済みのWebhookイベントIDをS3のバケットに空のオブジェクトとして記録する永続ストア.
+ * S3のライフサイクルルールは日単位のため、保持期限はオブジェクトのメタデータに記録し、参照時に判定する.
+ * S3への問い合わせに失敗した場合は未処理として扱い、Webhookの処理を止めない(重複はSQSの重複排除IDと後続処理で吸収する).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class S3DedupStore implements DedupStore {
+    /**
+     * キーの接頭辞.
+     */
+    private static final String KEY_PREFIX = "webhook-events/";
+    /**
+     * 保持期限(エポックミリ秒)を記録するメタデータ名.
+     */
+    static final String EXPIRES_AT_METADATA = "expires-at";
+    /**
+     * ロガー.
+     */
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(S3DedupStore.class);
+
+    /**
+     * S3クライアントのリージョン(クライアントを初回使用時に生成する場合のみ).
+     */
+    private final Region region;
+    /**
+     * S3クライアント(リージョン指定の場合は初回使用時に生成する).
+     */
+    private volatile S3Client s3Client;
+    /**
+     * バケット名.
+     */
+    private final String bucket;
+    /**
+     * 時計.
+     */
+    private final Clock clock;
+
+    /**
+     * コンストラクタ.
+     * 永続ストアは再送されたイベントの処理時と送信成功後にのみ使用するため、クライアントは初回使用時に生成する.
+     *
+     * @param region リージョン
+     * @param bucket バケット名
+     */
+    public S3DedupStore(final Region region, final String bucket) {
+        this.region = region;
+        this.bucket = bucket;
+        this.clock = Clock.systemUTC();
+    }
+
+    /**
+     * コンストラクタ(単体テスト用).
+     *
+     * @param s3Client S3クライアント
+     * @param bucket バケット名
+     * @param clock 時計
+     */
+    S3DedupStore(final S3Client s3Client, final String bucket, final Clock clock) {
+        this.region = null;
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean contains(final String eventId) {
+        try {
+            HeadObjectResponse response = this.getS3Client().headObject(HeadObjectRequest.builder()
+                    .bucket(this.bucket)
+                    .key(KEY_PREFIX + eventId)
+                    .build());
+            String expiresAt = response.metadata().get(EXPIRES_AT_METADATA);
+            return expiresAt != null && this.clock.millis() < Long.parseLong(expiresAt);
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (SdkException | NumberFormatException e) {
+            LOGGER.warn("処理済みのイベントを確認できませんでした。未処理として扱います。", e, fields -> fields
+                    .put("eventId", eventId));
+            return false;
+        }
+    }
+
+    @Override
+    public void put(final String eventId, final Duration ttl) {
+        long expiresAt = this.clock.millis() + ttl.toMillis();
+        try {
+            this.getS3Client().putObject(PutObjectRequest.builder()
+                    .bucket(this.bucket)
+                    .key(KEY_PREFIX + eventId)
+                    .metadata(Map.of(EXPIRES_AT_METADATA, String.valueOf(expiresAt)))
+                    .build(), RequestBody.empty());
+        } catch (SdkException e) {
+            LOGGER.warn("処理済みのイベントを記録できませんでした。", e, fields -> fields
+                    .put("eventId", eventId));
+        }
+    }
+
+    /**
+     * S3クライアントを返却する(未生成なら生成する).
+     *
+     * @return S3クライアント
+     */
+    private S3Client getS3Client() {
+        S3Client client = this.s3Client;
+        if (client == null) {
+            synchronized (this) {
+                client = this.s3Client;
+                if (client == null) {
+                    client = S3Client.builder()
+                            .region(this.region)
+                            .credentialsProvider(AwsCredentialsProviders.create())
+                            .httpClientBuilder(UrlConnectionHttpClient.builder())
+                            .build();
+                    this.s3Client = client;
+                }
+            }
+        }
+        return client;
+    }
+}
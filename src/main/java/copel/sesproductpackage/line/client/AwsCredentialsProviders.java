@@ -0,0 +1,49 @@
+package copel.sesproductpackage.line.client;
+
+import java.util.function.Function;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+
+/**
+ * AWSのクライアントが使用する認証情報の取得方法を決める.
+ * SnapStartが有効な関数では、Lambdaは認証情報を環境変数(AWS_ACCESS_KEY_ID等)ではなく
+ * コンテナの認証情報エンドポイント(AWS_CONTAINER_CREDENTIALS_FULL_URI)で提供するため、そちらを使用する.
+ * いずれもLambdaが設定する環境変数から1つに決まるため、SDKの既定の探索(プロファイル・IMDS等)は行わない.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class AwsCredentialsProviders {
+    /**
+     * コンテナの認証情報エンドポイントを示す環境変数名.
+     */
+    static final String CONTAINER_CREDENTIALS_FULL_URI = "AWS_CONTAINER_CREDENTIALS_FULL_URI";
+
+    private AwsCredentialsProviders() {
+    }
+
+    /**
+     * 実行環境に応じた認証情報の取得方法を返却する.
+     *
+     * @return 認証情報エンドポイントが設定されていればContainerCredentialsProvider、それ以外はEnvironmentVariableCredentialsProvider
+     */
+    public static AwsCredentialsProvider create() {
+        return create(System::getenv);
+    }
+
+    /**
+     * 環境変数の参照方法を指定して、認証情報の取得方法を返却する(単体テスト用).
+     *
+     * @param getenv 環境変数の参照方法
+     * @return 認証情報の取得方法
+     */
+    static AwsCredentialsProvider create(final Function<String, String> getenv) {
+        String fullUri = getenv.apply(CONTAINER_CREDENTIALS_FULL_URI);
+        if (fullUri != null && !fullUri.isEmpty()) {
+            return ContainerCredentialsProvider.builder().build();
+        }
+        return EnvironmentVariableCredentialsProvider.create();
+    }
+}
@@ -0,0 +1,129 @@
+package copel.sesproductpackage.line.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 読み込み全体に期限を設けるストリーム.
+ * HttpRequest#timeoutはレスポンスヘッダの受信までにしか適用されないため、ボディの受信が途中で止まった場合に備え、
+ * 期限を過ぎたら元のストリームを閉じて読み込み中のスレッドを解放し、以降の読み込みをタイムアウトとする.
+ *
+ * @author 鈴木一矢
+ *
+ */
+final class DeadlineInputStream extends FilterInputStream {
+    /**
+     * 期限切れのストリームを閉じるスレッド(コンテナ内で共有する).
+     */
+    private static final ScheduledExecutorService CLOSER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "line-content-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 期限(System#nanoTime).
+     */
+    private final long deadlineNanos;
+    /**
+     * 期限に元のストリームを閉じる処理(閉じた場合は取り消す).
+     */
+    private final ScheduledFuture<?> expireTask;
+    /**
+     * 期限切れで閉じたか.
+     */
+    private volatile boolean expired;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param in 元のストリーム
+     * @param timeout 読み込み全体の期限(生成時点から)
+     */
+    DeadlineInputStream(final InputStream in, final Duration timeout) {
+        super(in);
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.expireTask = CLOSER.schedule(this::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int read() throws IOException {
+        this.checkDeadline();
+        try {
+            return super.read();
+        } catch (IOException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        this.checkDeadline();
+        try {
+            return super.read(b, off, len);
+        } catch (IOException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        this.checkDeadline();
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.expireTask.cancel(false);
+        super.close();
+    }
+
+    /**
+     * 期限を過ぎた場合、元のストリームを閉じる(読み込み中のスレッドは例外で戻る).
+     */
+    private void expire() {
+        this.expired = true;
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            // 読み込み側でタイムアウトとして扱うため、ここでは何もしない
+        }
+    }
+
+    /**
+     * 期限を過ぎていればタイムアウトとする.
+     *
+     * @throws HttpTimeoutException 期限を過ぎた場合
+     */
+    private void checkDeadline() throws HttpTimeoutException {
+        if (this.expired || System.nanoTime() - this.deadlineNanos >= 0) {
+            throw new HttpTimeoutException("Response body was not fully read before the deadline");
+        }
+    }
+
+    /**
+     * 期限切れで閉じたことによる読み込みの失敗を、タイムアウトに置き換える.
+     *
+     * @param e 読み込みの例外
+     * @return 返却する例外
+     */
+    private IOException translate(final IOException e) {
+        if (!this.expired) {
+            return e;
+        }
+        HttpTimeoutException timeout = new HttpTimeoutException("Response body was not fully read before the deadline");
+        timeout.initCause(e);
+        return timeout;
+    }
+}
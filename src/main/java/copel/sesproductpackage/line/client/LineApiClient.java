@@ -0,0 +1,419 @@
+package copel.sesproductpackage.line.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import copel.sesproductpackage.line.metrics.InvocationMetrics;
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.StructuredLogger;
+
+/**
+ * LINE Messaging APIのクライアント.
+ * HTTP/2・keep-aliveのHttpClientをコンテナ内で共有し、接続・応答のタイムアウトと、
+ * 5xx・429(レート制限)に対するジッター付きの再試行を行う.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LineApiClient {
+    /**
+     * LINE Messaging APIのベースURL.
+     */
+    private static final String LINE_API_BASE_URL = System.getenv("LINE_API_BASE_URL");
+    /**
+     * ベースURLの既定値.
+     */
+    private static final String DEFAULT_BASE_URL = "https://api.line.me";
+    /**
+     * LINE Messaging APIのコンテンツ取得用のベースURL.
+     */
+    private static final String LINE_API_DATA_BASE_URL = System.getenv("LINE_API_DATA_BASE_URL");
+    /**
+     * コンテンツ取得用のベースURLの既定値.
+     */
+    private static final String DEFAULT_DATA_BASE_URL = "https://api-data.line.me";
+    /**
+     * 接続タイムアウト.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    /**
+     * コンテンツのボディの受信(レスポンスヘッダの受信後から読み終わるまで)の期限の既定値.
+     */
+    private static final Duration DEFAULT_CONTENT_READ_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * パスに含めるID(ユーザーID・グループID・メッセージID)の最大長.
+     */
+    private static final int MAX_ID_LENGTH = 64;
+    /**
+     * コンテナ内で共有するHttpClient.
+     */
+    private static final HttpClient SHARED_HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+    /**
+     * ロガー.
+     */
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(LineApiClient.class);
+
+    /**
+     * コンテナ内で共有するクライアント.
+     */
+    private static volatile LineApiClient defaultClient = new LineApiClient(
+            URI.create(LINE_API_BASE_URL != null ? LINE_API_BASE_URL : DEFAULT_BASE_URL),
+            URI.create(LINE_API_DATA_BASE_URL != null ? LINE_API_DATA_BASE_URL : DEFAULT_DATA_BASE_URL));
+
+    /**
+     * ベースURL.
+     */
+    private final URI baseUri;
+    /**
+     * コンテンツ取得用のベースURL.
+     */
+    private final URI dataBaseUri;
+    /**
+     * HttpClient.
+     */
+    private final HttpClient httpClient;
+    /**
+     * 1リクエストあたりの応答タイムアウト.
+     */
+    private final Duration requestTimeout;
+    /**
+     * 再試行の最大回数.
+     */
+    private final int maxRetries;
+    /**
+     * 再試行の待ち時間の基準値(試行毎に倍になる).
+     */
+    private final Duration baseBackoff;
+    /**
+     * 再試行の待ち時間の上限(Retry-Afterがこれを超える場合は再試行しない).
+     */
+    private final Duration maxBackoff;
+    /**
+     * コンテンツのボディの受信の期限(HttpRequest#timeoutはレスポンスヘッダの受信までにしか適用されない).
+     */
+    private Duration contentReadTimeout = DEFAULT_CONTENT_READ_TIMEOUT;
+
+    /**
+     * コンストラクタ.
+     * タイムアウト3秒、再試行2回、待ち時間100ミリ秒～2秒とする.
+     *
+     * @param baseUri ベースURL(コンテンツの取得にも使用する)
+     */
+    public LineApiClient(final URI baseUri) {
+        this(baseUri, baseUri);
+    }
+
+    /**
+     * コンストラクタ.
+     * タイムアウト3秒、再試行2回、待ち時間100ミリ秒～2秒とする.
+     *
+     * @param baseUri ベースURL
+     * @param dataBaseUri コンテンツ取得用のベースURL
+     */
+    public LineApiClient(final URI baseUri, final URI dataBaseUri) {
+        this(baseUri, dataBaseUri, SHARED_HTTP_CLIENT, Duration.ofSeconds(3), 2, Duration.ofMillis(100), Duration.ofSeconds(2));
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param baseUri ベースURL(コンテンツの取得にも使用する)
+     * @param httpClient HttpClient
+     * @param requestTimeout 1リクエストあたりの応答タイムアウト
+     * @param maxRetries 再試行の最大回数
+     * @param baseBackoff 再試行の待ち時間の基準値
+     * @param maxBackoff 再試行の待ち時間の上限
+     */
+    public LineApiClient(final URI baseUri, final HttpClient httpClient, final Duration requestTimeout,
+            final int maxRetries, final Duration baseBackoff, final Duration maxBackoff) {
+        this(baseUri, baseUri, httpClient, requestTimeout, maxRetries, baseBackoff, maxBackoff);
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param baseUri ベースURL
+     * @param dataBaseUri コンテンツ取得用のベースURL
+     * @param httpClient HttpClient
+     * @param requestTimeout 1リクエストあたりの応答タイムアウト(コンテンツの取得では、レスポンスヘッダの受信までに適用する)
+     * @param maxRetries 再試行の最大回数
+     * @param baseBackoff 再試行の待ち時間の基準値
+     * @param maxBackoff 再試行の待ち時間の上限
+     */
+    public LineApiClient(final URI baseUri, final URI dataBaseUri, final HttpClient httpClient, final Duration requestTimeout,
+            final int maxRetries, final Duration baseBackoff, final Duration maxBackoff) {
+        this.baseUri = baseUri;
+        this.dataBaseUri = dataBaseUri;
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = maxRetries;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * コンテナ内で共有するクライアントを返却する.
+     *
+     * @return クライアント
+     */
+    public static LineApiClient getDefault() {
+        return defaultClient;
+    }
+
+    /**
+     * コンテナ内で共有するクライアントを差し替える(単体テスト・負荷試験用).
+     *
+     * @param client クライアント
+     */
+    public static void setDefault(final LineApiClient client) {
+        defaultClient = client;
+    }
+
+    /**
+     * ユーザーの表示名を取得する.
+     *
+     * @param userId ユーザーID
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @return 表示名(ユーザーが存在しない、参照できない、またはユーザーIDの形式が不正な場合はnull)
+     * @throws IOException 一時的なエラーで取得できなかった場合
+     */
+    public String getUserName(final String userId, final String channelAccessToken) throws IOException {
+        if (!isValidId(userId)) {
+            LOGGER.warn("ユーザーIDの形式が不正なため、表示名を取得しません。", fields -> fields.put("userId", userId));
+            return null;
+        }
+        return this.getTextField("/v2/bot/profile/" + userId, channelAccessToken, "displayName");
+    }
+
+    /**
+     * グループ名を取得する.
+     *
+     * @param groupId グループID
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @return グループ名(グループが存在しない、参照できない、またはグループIDの形式が不正な場合はnull)
+     * @throws IOException 一時的なエラーで取得できなかった場合
+     */
+    public String getGroupName(final String groupId, final String channelAccessToken) throws IOException {
+        if (!isValidId(groupId)) {
+            LOGGER.warn("グループIDの形式が不正なため、グループ名を取得しません。", fields -> fields.put("groupId", groupId));
+            return null;
+        }
+        return this.getTextField("/v2/bot/group/" + groupId + "/summary", channelAccessToken, "groupName");
+    }
+
+    /**
+     * メッセージのコンテンツ(ファイル等)を取得する.
+     * ボディは受信しながら読み出すストリームとして返却し、メモリには読み込まない.
+     * ボディの受信が途中で止まっても待ち続けないよう、レスポンスヘッダの受信から読み終わるまでに期限を設ける
+     * (期限を過ぎると以降の読み込みはHttpTimeoutExceptionとなる).
+     *
+     * @param messageId メッセージID
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @return 最後に受信したレスポンス(ボディは呼び出し元で閉じること)
+     * @throws IOException 再試行しても通信に失敗した場合、またはメッセージIDの形式が不正な場合
+     */
+    public HttpResponse<InputStream> getContent(final String messageId, final String channelAccessToken) throws IOException {
+        if (!isValidId(messageId)) {
+            throw new IOException("Invalid LINE message ID: " + messageId);
+        }
+        String path = "/v2/bot/message/" + messageId + "/content";
+        Duration readTimeout = this.contentReadTimeout;
+        return this.send(this.dataBaseUri.resolve(path), path, channelAccessToken, responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(), body -> new DeadlineInputStream(body, readTimeout)));
+    }
+
+    /**
+     * コンテンツのボディの受信の期限を差し替える(単体テスト用).
+     *
+     * @param contentReadTimeout レスポンスヘッダの受信から読み終わるまでの期限
+     */
+    void setContentReadTimeout(final Duration contentReadTimeout) {
+        this.contentReadTimeout = contentReadTimeout;
+    }
+
+    /**
+     * パスの1区間として埋め込めるIDか判定する.
+     * LINEのID(U・C・Rで始まるユーザーID・グループID・トークルームID、数字のメッセージID)は英数字のみで構成されるため、
+     * 英数字以外(「/」「?」「%」等)を含むIDはエンコードせずに不正として扱う.
+     *
+     * @param id ID
+     * @return 英数字のみで構成され、{@value #MAX_ID_LENGTH}文字以内であればtrue
+     */
+    static boolean isValidId(final String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * GETリクエストを送信し、レスポンスのJSONから文字列のフィールドを取り出す.
+     *
+     * @param path パス
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @param fieldName フィールド名
+     * @return フィールドの値(404・403の場合はnull)
+     * @throws IOException 一時的なエラーで取得できなかった場合
+     */
+    private String getTextField(final String path, final String channelAccessToken, final String fieldName) throws IOException {
+        HttpResponse<String> response = this.get(path, channelAccessToken);
+        int statusCode = response.statusCode();
+        if (statusCode == 200) {
+            JsonNode rootNode = JsonUtil.readTree(response.body());
+            return rootNode.path(fieldName).asText();
+        } else if (statusCode == 404 || statusCode == 403) {
+            // ブロック済み・友だちでない・退出済み等で参照できない
+            return null;
+        }
+        throw new IOException("LINE API " + path + " returned " + statusCode + ": " + response.body());
+    }
+
+    /**
+     * GETリクエストを送信する.
+     * 5xx・429・タイムアウトの場合は、ジッター付きの指数バックオフで再試行する.
+     *
+     * @param path パス
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @return 最後に受信したレスポンス
+     * @throws IOException 再試行しても通信に失敗した場合
+     */
+    public HttpResponse<String> get(final String path, final String channelAccessToken) throws IOException {
+        return this.send(this.baseUri.resolve(path), path, channelAccessToken, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * GETリクエストを送信する.
+     * 5xx・429・タイムアウトの場合は、ジッター付きの指数バックオフで再試行する.
+     *
+     * @param <T> ボディの型
+     * @param uri URL
+     * @param path パス(ログ出力用)
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @param bodyHandler ボディの受信方法
+     * @return 最後に受信したレスポンス
+     * @throws IOException 再試行しても通信に失敗した場合
+     */
+    private <T> HttpResponse<T> send(final URI uri, final String path, final String channelAccessToken,
+            final HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(this.requestTimeout)
+                .header("Authorization", "Bearer " + channelAccessToken)
+                .GET()
+                .build();
+
+        InvocationMetrics metrics = InvocationMetrics.current();
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                metrics.count("LineApiRetries", 1);
+            }
+            HttpResponse<T> response;
+            long startNanos = System.nanoTime();
+            try {
+                response = this.httpClient.send(request, bodyHandler);
+                metrics.time("LineApiCall", startNanos);
+            } catch (HttpTimeoutException e) {
+                metrics.count("LineApiTimeouts", 1);
+                if (attempt >= this.maxRetries) {
+                    throw e;
+                }
+                int attemptNumber = attempt + 1;
+                LOGGER.warn("LINE APIがタイムアウトしました。", fields -> fields
+                        .put("path", path)
+                        .put("attempt", attemptNumber));
+                this.sleep(this.backoff(attempt));
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while calling LINE API " + path, e);
+            }
+
+            int statusCode = response.statusCode();
+            if ((statusCode != 429 && statusCode < 500) || attempt >= this.maxRetries) {
+                return response;
+            }
+
+            // レート制限の場合はRetry-Afterに従う(待ち時間の上限を超える場合は再試行しない)
+            Duration wait = this.backoff(attempt);
+            if (statusCode == 429) {
+                Optional<Duration> retryAfter = parseRetryAfter(response);
+                if (retryAfter.isPresent()) {
+                    if (retryAfter.get().compareTo(this.maxBackoff) > 0) {
+                        return response;
+                    }
+                    wait = retryAfter.get();
+                }
+            }
+            int attemptNumber = attempt + 1;
+            long waitMillis = wait.toMillis();
+            LOGGER.warn("LINE APIがエラーを返却したため再試行します。", fields -> fields
+                    .put("path", path)
+                    .put("statusCode", statusCode)
+                    .put("attempt", attemptNumber)
+                    .put("retryInMillis", waitMillis));
+            // ストリームで受信するボディは、閉じて接続を解放してから再試行する
+            if (response.body() instanceof InputStream) {
+                ((InputStream) response.body()).close();
+            }
+            this.sleep(wait);
+        }
+    }
+
+    /**
+     * 試行回数に応じた待ち時間を返却する(0～基準値×2^試行回数のフルジッター).
+     *
+     * @param attempt 試行回数(0始まり)
+     * @return 待ち時間
+     */
+    private Duration backoff(final int attempt) {
+        long ceiling = Math.min(this.maxBackoff.toMillis(), this.baseBackoff.toMillis() << Math.min(attempt, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Retry-Afterヘッダ(秒)を読み取る.
+     *
+     * @param response レスポンス
+     * @return 待ち時間
+     */
+    private static Optional<Duration> parseRetryAfter(final HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After").map(value -> Duration.ofSeconds(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 再試行までの待機.
+     *
+     * @param duration 待ち時間
+     * @throws IOException 待機中に割り込まれた場合
+     */
+    private void sleep(final Duration duration) throws IOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry LINE API", e);
+        }
+    }
+}
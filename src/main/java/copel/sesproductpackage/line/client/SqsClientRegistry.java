@@ -0,0 +1,85 @@
+package copel.sesproductpackage.line.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import copel.sesproductpackage.line.metrics.InvocationMetrics;
+
+/**
+ * SQSクライアントの共有レジストリ.
+ * リージョンとキューURLの組み合わせ毎にクライアントを初回利用時に1度だけ生成し、
+ * コンテナが生存している間(ウォームスタート時)は同じクライアントとコネクションプールを再利用する.
+ * 初期化を軽くするため、HTTPクライアントはJDK標準のURLConnectionを使用し、リージョンと認証情報({@link AwsCredentialsProviders})は
+ * 明示的に指定してSDKの探索処理を省く.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class SqsClientRegistry {
+    /**
+     * 生成済みのSQSクライアント.
+     */
+    private static final ConcurrentMap<String, SqsClient> CLIENTS = new ConcurrentHashMap<String, SqsClient>();
+
+    private SqsClientRegistry() {
+    }
+
+    /**
+     * リージョンとキューURLに対応するSQSクライアントを返却します.
+     * 未生成の場合はこの呼び出しで生成します(生成にかかった時間をメトリクスに記録します).
+     *
+     * @param region リージョン
+     * @param queueUrl SQSのURL
+     * @return SQSクライアント
+     */
+    public static SqsClient getClient(final Region region, final String queueUrl) {
+        return CLIENTS.computeIfAbsent(key(region, queueUrl), k -> {
+            long startNanos = System.nanoTime();
+            SqsClient sqsClient = SqsClient.builder()
+                    .region(region)
+                    .credentialsProvider(AwsCredentialsProviders.create())
+                    .httpClientBuilder(UrlConnectionHttpClient.builder())
+                    .build();
+            InvocationMetrics.current().time("SqsClientCreation", startNanos);
+            return sqsClient;
+        });
+    }
+
+    /**
+     * リージョンとキューURLに対応するSQSクライアントを差し替えます.
+     * 単体テストで偽のクライアントを注入するために使用します.
+     *
+     * @param region リージョン
+     * @param queueUrl SQSのURL
+     * @param sqsClient SQSクライアント
+     */
+    public static void register(final Region region, final String queueUrl, final SqsClient sqsClient) {
+        SqsClient previous = CLIENTS.put(key(region, queueUrl), sqsClient);
+        if (previous != null && previous != sqsClient) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 生成済みのSQSクライアントを全て破棄します.
+     */
+    public static void clear() {
+        CLIENTS.values().forEach(SqsClient::close);
+        CLIENTS.clear();
+    }
+
+    /**
+     * レジストリのキーを生成する.
+     *
+     * @param region リージョン
+     * @param queueUrl SQSのURL
+     * @return キー
+     */
+    private static String key(final Region region, final String queueUrl) {
+        return (region != null ? region.id() : null) + "|" + queueUrl;
+    }
+}
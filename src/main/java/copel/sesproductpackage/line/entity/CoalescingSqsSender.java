@@ -0,0 +1,221 @@
+package copel.sesproductpackage.line.entity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+/**
+ * 複数の呼び出し元から個別に送信されるSQSメッセージを短時間まとめ、SendMessageBatchで送信する.
+ * キュー毎に最初のメッセージを受け付けてから一定時間経過するか、{@value SQSEntityBase#MAX_BATCH_SIZE}件溜まった時点で送信し、
+ * 各呼び出し元のFutureをそれぞれのメッセージの送信結果で完了する.
+ * 送信は1本のスレッドで受け付け順に行うため、同じキューへのメッセージの順序は保たれる(FIFOキューの場合、グループ内の順序も保たれる).
+ * 待ち時間による送信は、予約した時点の送信待ち(バッチ)のみを対象とし、件数で先に送信されたバッチの後に溜まったメッセージを
+ * 先行して送信することはない.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class CoalescingSqsSender implements AutoCloseable {
+    /**
+     * 送信待ちのメッセージ.
+     */
+    private static final class PendingMessage {
+        /**
+         * 送信するEntity.
+         */
+        private final SQSEntityBase entity;
+        /**
+         * 呼び出し元に返却したFuture.
+         */
+        private final CompletableFuture<SendMessageResponse> future = new CompletableFuture<SendMessageResponse>();
+
+        private PendingMessage(final SQSEntityBase entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * キュー毎の送信待ちのバッチ.
+     */
+    private static final class PendingBatch {
+        /**
+         * 送信待ちのメッセージ(受け付け順).
+         */
+        private final List<PendingMessage> messages;
+        /**
+         * 待ち時間経過後の送信の予約(件数で送信した場合は取り消す).
+         */
+        private ScheduledFuture<?> flushTask;
+
+        private PendingBatch(final int capacity) {
+            this.messages = new ArrayList<PendingMessage>(capacity);
+        }
+    }
+
+    /**
+     * 最初のメッセージを受け付けてから送信するまでの最大の待ち時間(ミリ秒).
+     */
+    private final long maxDelayMillis;
+    /**
+     * 1度に送信する最大件数.
+     */
+    private final int maxBatchSize;
+    /**
+     * 送信を行うスレッド.
+     */
+    private final ScheduledExecutorService sender;
+    /**
+     * キューURL毎の送信待ちのメッセージ(受け付け順).
+     */
+    private final Map<String, PendingBatch> pending = new LinkedHashMap<String, PendingBatch>();
+
+    /**
+     * コンストラクタ.
+     *
+     * @param maxDelay 最初のメッセージを受け付けてから送信するまでの最大の待ち時間
+     * @param maxBatchSize 1度に送信する最大件数(1～{@value SQSEntityBase#MAX_BATCH_SIZE})
+     */
+    public CoalescingSqsSender(final Duration maxDelay, final int maxBatchSize) {
+        if (maxBatchSize < 1 || maxBatchSize > SQSEntityBase.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + SQSEntityBase.MAX_BATCH_SIZE + ": " + maxBatchSize);
+        }
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.maxBatchSize = maxBatchSize;
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqs-coalescing-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * メッセージを送信待ちに追加する.
+     *
+     * @param entity 送信するEntity
+     * @return このメッセージの送信結果(送信に失敗した場合は例外で完了する)
+     */
+    public CompletableFuture<SendMessageResponse> submit(final SQSEntityBase entity) {
+        PendingMessage message = new PendingMessage(entity);
+        String queueUrl = entity.getQueueUrl();
+        synchronized (this.pending) {
+            PendingBatch batch = this.pending.computeIfAbsent(queueUrl, k -> new PendingBatch(this.maxBatchSize));
+            batch.messages.add(message);
+            try {
+                if (batch.messages.size() >= this.maxBatchSize) {
+                    // 上限まで溜まったら待ち時間を待たずに送信し、待ち時間による送信の予約は取り消す
+                    this.pending.remove(queueUrl);
+                    cancelFlushTask(batch);
+                    this.sender.execute(() -> send(batch.messages));
+                } else if (batch.messages.size() == 1) {
+                    batch.flushTask = this.sender.schedule(() -> this.flush(queueUrl, batch), this.maxDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                batch.messages.remove(message);
+                if (batch.messages.isEmpty()) {
+                    this.pending.remove(queueUrl, batch);
+                }
+                message.future.completeExceptionally(new IllegalStateException("CoalescingSqsSender is closed.", e));
+            }
+        }
+        return message.future;
+    }
+
+    /**
+     * 送信待ちのメッセージを全て送信し、送信が終わるまで待つ.
+     */
+    public void flush() {
+        List<PendingBatch> batches;
+        synchronized (this.pending) {
+            batches = new ArrayList<PendingBatch>(this.pending.values());
+            this.pending.clear();
+            batches.forEach(CoalescingSqsSender::cancelFlushTask);
+        }
+        List<CompletableFuture<SendMessageResponse>> futures = new ArrayList<CompletableFuture<SendMessageResponse>>();
+        for (PendingBatch batch : batches) {
+            this.sender.execute(() -> send(batch.messages));
+            batch.messages.forEach(message -> futures.add(message.future));
+        }
+        // 個々の送信失敗は各呼び出し元のFutureで通知するため、ここでは完了のみを待つ
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    }
+
+    /**
+     * 待ち時間が経過したバッチを送信する(送信スレッドから呼び出す).
+     * 予約後にバッチが件数で送信済みとなり、同じキューに新しいバッチが溜まっている場合は何もしない
+     * (新しいバッチは自身の予約で送信する).
+     *
+     * @param queueUrl SQSのURL
+     * @param batch 予約した時点の送信待ちのバッチ
+     */
+    private void flush(final String queueUrl, final PendingBatch batch) {
+        synchronized (this.pending) {
+            if (!this.pending.remove(queueUrl, batch)) {
+                return;
+            }
+        }
+        send(batch.messages);
+    }
+
+    /**
+     * 待ち時間による送信の予約を取り消す.
+     *
+     * @param batch 送信待ちのバッチ
+     */
+    private static void cancelFlushTask(final PendingBatch batch) {
+        if (batch.flushTask != null) {
+            batch.flushTask.cancel(false);
+        }
+    }
+
+    /**
+     * 送信待ちのメッセージをSendMessageBatchで送信し、各Futureを完了する.
+     *
+     * @param batch 同一キュー宛てのメッセージ
+     */
+    private static void send(final List<PendingMessage> batch) {
+        List<SQSEntityBase> entities = new ArrayList<SQSEntityBase>(batch.size());
+        batch.forEach(message -> entities.add(message.entity));
+        try {
+            SQSEntityBase.ChunkResult result = SQSEntityBase.sendChunkWithRetry(entities);
+            for (int i = 0; i < batch.size(); i++) {
+                SendMessageBatchResultEntry entry = result.successful[i];
+                if (entry != null) {
+                    batch.get(i).future.complete(SendMessageResponse.builder()
+                            .messageId(entry.messageId())
+                            .md5OfMessageBody(entry.md5OfMessageBody())
+                            .md5OfMessageAttributes(entry.md5OfMessageAttributes())
+                            .sequenceNumber(entry.sequenceNumber())
+                            .build());
+                } else {
+                    BatchResultErrorEntry error = result.failed[i];
+                    batch.get(i).future.completeExceptionally(new IllegalStateException(error != null
+                            ? "SendMessageBatch failed: " + error.code() + " " + error.message()
+                            : "SendMessageBatch returned no result for the entry."));
+                }
+            }
+        } catch (Exception e) {
+            batch.forEach(message -> message.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 送信待ちのメッセージを全て送信してから、送信スレッドを停止する.
+     */
+    @Override
+    public void close() {
+        this.flush();
+        this.sender.shutdown();
+    }
+}
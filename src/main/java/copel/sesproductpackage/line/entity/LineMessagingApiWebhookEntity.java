@@ -1,17 +1,24 @@
 package copel.sesproductpackage.line.entity;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import copel.sesproductpackage.line.cache.LocalNameStore;
+import copel.sesproductpackage.line.cache.NameCache;
+import copel.sesproductpackage.line.client.LineApiClient;
+import copel.sesproductpackage.line.metrics.InvocationMetrics;
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.StructuredLogger;
 
 /**
  * LINE Messaging APIからWebhookで送信されてくるリクエストのEntityクラス.
@@ -19,6 +26,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * @author 鈴木一矢
  */
 public class LineMessagingApiWebhookEntity {
+    /**
+     * ロガー.
+     */
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(LineMessagingApiWebhookEntity.class);
+    /**
+     * 送信者名のキャッシュ(ウォームスタート時は前回までの取得結果を再利用する).
+     */
+    private static final NameCache USER_NAME_CACHE = new NameCache(
+            new LocalNameStore(1000), Duration.ofHours(6), Duration.ofMinutes(10));
+    /**
+     * グループ名のキャッシュ.
+     * グループ数は少なく名前もほとんど変わらないため長めに保持し、有効期限の1時間前から先読みで再取得する.
+     * 再取得は呼び出し元で行う(呼び出しの間は実行環境が凍結され、バックグラウンドの再取得は進まないため).
+     * 再取得中に同じグループを参照した呼び出しは待たずに古い値を使い、再取得に失敗しても期限までは古い値を使い続ける.
+     */
+    private static final NameCache GROUP_NAME_CACHE = new NameCache(
+            new LocalNameStore(200), Duration.ofHours(24), Duration.ofMinutes(10), Duration.ofHours(1));
+
     /**
      * リクエスト種別("message", "file", "join", etc.).
      */
@@ -55,51 +80,320 @@ public class LineMessagingApiWebhookEntity {
      * ファイルID.
      */
     private String fileId;
+    /**
+     * ファイルのバイト数(ファイル以外、または不明の場合は0).
+     */
+    private long fileSize;
+    /**
+     * WebhookイベントID(再送されても同じ値となる).
+     */
+    private String webhookEventId;
+    /**
+     * 再送されたイベントか.
+     */
+    private boolean redelivery;
 
     /**
-     * JSON文字列を受け取ってパースし、メンバ変数に格納.
+     * JSON文字列を受け取ってパースし、先頭のイベントをメンバ変数に格納.
+     * 複数イベントを処理する場合は{@link #parseEvents(String)}を使用すること.
      *
      * @param jsonString JSON文字列
-     * @throws IOException
+     * @throws IllegalArgumentException JSONが不正、またはeventsが空の場合
      */
     public LineMessagingApiWebhookEntity(final String jsonString) throws IllegalArgumentException {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(jsonString);
-
-            // eventsが空であれば処理しない
-            if (!rootNode.has("events")) {
-                throw new IOException();
-            } else if (rootNode.path("events").size() < 1) {
-                throw new IOException();
+        LineMessagingApiWebhookEntity first = parseEvents(jsonString).get(0);
+        this.type = first.type;
+        this.sourceType = first.sourceType;
+        this.userId = first.userId;
+        this.groupId = first.groupId;
+        this.messageType = first.messageType;
+        this.text = first.text;
+        this.timestamp = first.timestamp;
+        this.fileName = first.fileName;
+        this.fileId = first.fileId;
+        this.fileSize = first.fileSize;
+        this.webhookEventId = first.webhookEventId;
+        this.redelivery = first.redelivery;
+    }
+
+    /**
+     * パース処理からのみ使用するコンストラクタ.
+     */
+    private LineMessagingApiWebhookEntity() {
+    }
+
+    /**
+     * Webhookのリクエストボディに含まれる全イベントをパースし、イベント毎のEntityのリストとして返却する.
+     * LINEは1回のWebhookに複数のイベントをまとめて送信することがあるため、受信時はこちらを使用する.
+     *
+     * @param jsonString JSON文字列
+     * @return イベント毎のEntity(受信順)
+     * @throws IllegalArgumentException JSONが不正、またはeventsが空の場合
+     */
+    public static List<LineMessagingApiWebhookEntity> parseEvents(final String jsonString) throws IllegalArgumentException {
+        if (jsonString == null) {
+            throw new IllegalArgumentException("Invalid JSON format");
+        }
+        try (JsonParser parser = JsonUtil.getJsonFactory().createParser(jsonString)) {
+            return readEvents(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON format");
+        }
+    }
+
+    /**
+     * UTF-8のバイト列のWebhookリクエストボディをパースする.
+     * String化せずにパースするため、大きなリクエストボディでもコピーが発生しない.
+     *
+     * @param json UTF-8のJSONバイト列
+     * @return イベント毎のEntity(受信順)
+     * @throws IllegalArgumentException JSONが不正、またはeventsが空の場合
+     */
+    public static List<LineMessagingApiWebhookEntity> parseEvents(final byte[] json) throws IllegalArgumentException {
+        if (json == null) {
+            throw new IllegalArgumentException("Invalid JSON format");
+        }
+        try (JsonParser parser = JsonUtil.getJsonFactory().createParser(json)) {
+            return readEvents(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON format");
+        }
+    }
+
+    /**
+     * ストリームから読み込みながらWebhookリクエストボディをパースする.
+     *
+     * @param json JSONの入力ストリーム(呼び出し元でクローズすること)
+     * @return イベント毎のEntity(受信順)
+     * @throws IllegalArgumentException JSONが不正、またはeventsが空の場合
+     */
+    public static List<LineMessagingApiWebhookEntity> parseEvents(final InputStream json) throws IllegalArgumentException {
+        try (JsonParser parser = JsonUtil.getJsonFactory().createParser(json)) {
+            return readEvents(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON format");
+        }
+    }
+
+    /**
+     * ルートオブジェクトを1回だけ走査し、eventsの各要素をEntityに変換する.
+     * events以外のフィールドはノードを生成せずに読み飛ばす.
+     *
+     * @param parser パーサー(ルートの先頭)
+     * @return イベント毎のEntity
+     * @throws IOException JSONが不正、またはeventsが空の場合
+     */
+    private static List<LineMessagingApiWebhookEntity> readEvents(final JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Root is not an object");
+        }
+
+        List<LineMessagingApiWebhookEntity> entities = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if ("events".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                entities = new ArrayList<LineMessagingApiWebhookEntity>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    entities.add(readEvent(parser));
+                }
+            } else {
+                parser.skipChildren();
             }
+        }
+
+        // eventsが空であれば処理しない
+        if (entities == null || entities.isEmpty()) {
+            throw new IOException("No events");
+        }
+        return entities;
+    }
 
-            // イベントのタイプ (message, follow, join など)
-            this.type = rootNode.path("events").get(0).path("type").asText();
-
-            // 送信日時
-            Long timestampMills = rootNode.path("events").get(0).path("timestamp").asLong() / 1000;
-            this.timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(timestampMills), ZoneOffset.UTC);
-
-            // 送信元の情報 (user or group)
-            JsonNode sourceNode = rootNode.path("events").get(0).path("source");
-            this.sourceType = sourceNode.path("type").asText();
-            this.userId = sourceNode.path("userId").asText();
-            this.groupId = sourceNode.has("groupId") ? sourceNode.get("groupId").asText() : null;
-
-            // メッセージの種類
-            if (this.isMessage()) {
-                this.messageType = rootNode.path("events").get(0).path("message").path("type").asText();
-                this.text = rootNode.path("events").get(0).path("message").path("text").asText();
-                // ファイル送信なら、ファイルIDとファイル名を取得する.
-                if (this.isFile()) {
-                    this.fileId = rootNode.path("events").get(0).path("message").path("id").asText();
-                    this.fileName = rootNode.path("events").get(0).path("message").path("fileName").asText();
+    /**
+     * eventsの要素1件分を読み込みEntityに変換する.
+     *
+     * @param parser パーサー(要素の先頭)
+     * @return Entity
+     * @throws IOException JSONが不正な場合
+     */
+    private static LineMessagingApiWebhookEntity readEvent(final JsonParser parser) throws IOException {
+        LineMessagingApiWebhookEntity entity = new LineMessagingApiWebhookEntity();
+        entity.type = "";
+        entity.sourceType = "";
+        entity.userId = "";
+        long timestampMillis = 0;
+
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                switch (fieldName) {
+                case "type":
+                    // イベントのタイプ (message, follow, join など)
+                    entity.type = readText(parser);
+                    break;
+                case "timestamp":
+                    timestampMillis = parser.currentToken().isScalarValue() ? parser.getValueAsLong(0) : 0;
+                    parser.skipChildren();
+                    break;
+                case "source":
+                    readSource(parser, entity);
+                    break;
+                case "message":
+                    readMessage(parser, entity);
+                    break;
+                case "webhookEventId":
+                    entity.webhookEventId = readText(parser);
+                    break;
+                case "deliveryContext":
+                    readDeliveryContext(parser, entity);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
                 }
             }
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid JSON format");
+        } else {
+            parser.skipChildren();
         }
+
+        // 送信日時
+        entity.timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(timestampMillis / 1000), ZoneOffset.UTC);
+
+        // メッセージの種類(typeはmessageより後に現れることもあるため、読み込み後に判定する)
+        if (entity.isMessage()) {
+            entity.messageType = entity.messageType != null ? entity.messageType : "";
+            entity.text = entity.text != null ? entity.text : "";
+            // ファイル送信なら、ファイルIDとファイル名を取得する.
+            if (entity.isFile()) {
+                entity.fileId = entity.fileId != null ? entity.fileId : "";
+                entity.fileName = entity.fileName != null ? entity.fileName : "";
+            } else {
+                entity.fileId = null;
+                entity.fileName = null;
+                entity.fileSize = 0;
+            }
+        } else {
+            entity.messageType = null;
+            entity.text = null;
+            entity.fileId = null;
+            entity.fileName = null;
+            entity.fileSize = 0;
+        }
+        return entity;
+    }
+
+    /**
+     * 送信元の情報 (user or group) を読み込む.
+     *
+     * @param parser パーサー(sourceの値の先頭)
+     * @param entity 格納先
+     * @throws IOException JSONが不正な場合
+     */
+    private static void readSource(final JsonParser parser, final LineMessagingApiWebhookEntity entity) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            switch (fieldName) {
+            case "type":
+                entity.sourceType = readText(parser);
+                break;
+            case "userId":
+                entity.userId = readText(parser);
+                break;
+            case "groupId":
+                entity.groupId = readText(parser);
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 配信の情報を読み込む.
+     *
+     * @param parser パーサー(deliveryContextの値の先頭)
+     * @param entity 格納先
+     * @throws IOException JSONが不正な場合
+     */
+    private static void readDeliveryContext(final JsonParser parser, final LineMessagingApiWebhookEntity entity) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if ("isRedelivery".equals(fieldName)) {
+                entity.redelivery = parser.currentToken() == JsonToken.VALUE_TRUE;
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * メッセージの情報を読み込む.
+     *
+     * @param parser パーサー(messageの値の先頭)
+     * @param entity 格納先
+     * @throws IOException JSONが不正な場合
+     */
+    private static void readMessage(final JsonParser parser, final LineMessagingApiWebhookEntity entity) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            switch (fieldName) {
+            case "type":
+                entity.messageType = readText(parser);
+                break;
+            case "text":
+                entity.text = readText(parser);
+                break;
+            case "id":
+                entity.fileId = readText(parser);
+                break;
+            case "fileName":
+                entity.fileName = readText(parser);
+                break;
+            case "fileSize":
+                entity.fileSize = parser.currentToken().isScalarValue() ? parser.getValueAsLong(0) : 0;
+                parser.skipChildren();
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 現在の値を文字列として読み込む.
+     * JsonNode#asText()と同じく、オブジェクト・配列は空文字、nullは"null"とする.
+     *
+     * @param parser パーサー(値の先頭)
+     * @return 文字列
+     * @throws IOException JSONが不正な場合
+     */
+    private static String readText(final JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return "";
+        } else if (token == JsonToken.VALUE_NULL) {
+            return "null";
+        }
+        return parser.getText();
     }
 
     /**
@@ -149,78 +443,64 @@ public class LineMessagingApiWebhookEntity {
 
     /**
      * このメッセージの送信者名を取得する.
+     * 取得結果はコンテナ内でキャッシュし、同じ送信者についてはLINE APIを呼び出さない.
      *
      * @return 送信者名
      */
     public String getUserName(final String channnelAccessToken) {
-        // このクラスのthis.userIdを使用してユーザー名を取得し返却する
+        // このクラスのthis.userIdを使用してユーザー名を取得し返却する(キャッシュの参照数と、LINE APIを呼び出した数を記録する)
+        if (this.userId != null) {
+            InvocationMetrics.current().count("UserNameLookups", 1);
+        }
         try {
-            // LINE APIを呼び出してユーザー名を取得
-            String apiUrl = "https://api.line.me/v2/bot/profile/" + this.userId;
-            HttpURLConnection connection = (HttpURLConnection) new URL(apiUrl).openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Authorization", "Bearer " + channnelAccessToken);
-
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                // レスポンスを読み取る
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-
-                // JSONをパース
-                ObjectMapper objectMapper = new ObjectMapper();
-                JsonNode rootNode = objectMapper.readTree(response.toString());
-                String userName = rootNode.path("displayName").asText();
-                return userName;
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return USER_NAME_CACHE.get(this.userId, userId -> {
+                InvocationMetrics.current().count("UserNameCacheMisses", 1);
+                return LineApiClient.getDefault().getUserName(userId, channnelAccessToken);
+            });
+        } catch (IOException e) {
+            LOGGER.warn("送信者名を取得できませんでした。", e, fields -> fields.put("userId", this.userId));
             return null;
         }
     }
 
+    /**
+     * キャッシュ済みの送信者名を、有効期限に関わらず返却する(LINE APIは呼び出さない).
+     *
+     * @return 送信者名(キャッシュに無い場合はnull)
+     */
+    public String getCachedUserName() {
+        return USER_NAME_CACHE.getIfPresent(this.userId);
+    }
+
+    /**
+     * 送信者名のキャッシュを返却する.
+     * 2次キャッシュの設定や、単体テストでの事前投入に使用する.
+     *
+     * @return 送信者名のキャッシュ
+     */
+    public static NameCache getUserNameCache() {
+        return USER_NAME_CACHE;
+    }
+
     /**
      * このメッセージが送信されたグループ名を取得する.
+     * 取得結果はコンテナ内でキャッシュし、同じグループについてはLINE APIを呼び出さない.
      *
      * @return グループ名
      */
     public String getGroupName(final String channnelAccessToken) {
         if (this.isGroup()) {
+            if (this.groupId != null) {
+                InvocationMetrics.current().count("GroupNameLookups", 1);
+            }
             try {
                 // LINE APIを呼び出してグループ名を取得
-                String apiUrl = "https://api.line.me/v2/bot/group/" + this.groupId + "/summary";
-                HttpURLConnection connection = (HttpURLConnection) new URL(apiUrl).openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("Authorization", "Bearer " + channnelAccessToken);
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    // レスポンスを読み取る
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-
-                    // JSONをパース
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    JsonNode rootNode = objectMapper.readTree(response.toString());
-                    String groupName = rootNode.path("groupName").asText();
-                    return groupName;
-                } else {
-                    return null;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+                return GROUP_NAME_CACHE.get(this.groupId, groupId -> {
+                    InvocationMetrics.current().count("GroupNameCacheMisses", 1);
+                    return LineApiClient.getDefault().getGroupName(groupId, channnelAccessToken);
+                });
+            } catch (IOException e) {
+                LOGGER.warn("グループ名を取得できませんでした。", e, fields -> fields.put("groupId", this.groupId));
                 return null;
             }
         } else {
@@ -228,6 +508,25 @@ public class LineMessagingApiWebhookEntity {
         }
     }
 
+    /**
+     * キャッシュ済みのグループ名を、有効期限に関わらず返却する(LINE APIは呼び出さない).
+     *
+     * @return グループ名(グループ以外、またはキャッシュに無い場合はnull)
+     */
+    public String getCachedGroupName() {
+        return this.isGroup() ? GROUP_NAME_CACHE.getIfPresent(this.groupId) : null;
+    }
+
+    /**
+     * グループ名のキャッシュを返却する.
+     * 2次キャッシュの設定や、単体テストでの事前投入に使用する.
+     *
+     * @return グループ名のキャッシュ
+     */
+    public static NameCache getGroupNameCache() {
+        return GROUP_NAME_CACHE;
+    }
+
     // GETTER
     public String getType() {
         return type;
@@ -257,4 +556,13 @@ public class LineMessagingApiWebhookEntity {
     public String getFileId() {
         return this.fileId;
     }
+    public long getFileSize() {
+        return this.fileSize;
+    }
+    public String getWebhookEventId() {
+        return this.webhookEventId;
+    }
+    public boolean isRedelivery() {
+        return this.redelivery;
+    }
 }
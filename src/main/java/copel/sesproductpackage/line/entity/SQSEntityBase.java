@@ -1,12 +1,38 @@
 package copel.sesproductpackage.line.entity;
 
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
-import com.amazonaws.services.sqs.model.SendMessageResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.metrics.InvocationMetrics;
+import copel.sesproductpackage.line.unit.MessageEncoding;
+import copel.sesproductpackage.line.util.SqsMessageCodec;
+
 /**
  * SQSメッセージのリクエストエンティティの基底クラス.
  *
@@ -14,38 +40,582 @@ import com.fasterxml.jackson.core.JsonProcessingException;
  *
  */
 public abstract class SQSEntityBase {
+    /**
+     * SendMessageBatchで1度に送信できるメッセージの最大件数.
+     */
+    public static final int MAX_BATCH_SIZE = 10;
+    /**
+     * SendMessageBatchの1リクエストに含められるメッセージの合計サイズの上限(Body・属性の合計. 256KiB).
+     */
+    static final int MAX_BATCH_PAYLOAD_BYTES = 256 * 1024;
+    /**
+     * SendMessageBatchで失敗したエントリを再送する最大回数.
+     */
+    private static final int MAX_BATCH_RETRY = 3;
+    /**
+     * 再送までの待ち時間の基準値(ミリ秒. 再送毎に倍になる).
+     */
+    private static final long BASE_RETRY_DELAY_MILLIS = 50;
+    /**
+     * 再送までの待ち時間の上限(ミリ秒).
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = 400;
+    /**
+     * FIFOキューのURLの接尾辞.
+     */
+    private static final String FIFO_QUEUE_SUFFIX = ".fifo";
+    /**
+     * FIFOキューで、同じメッセージグループの先行するエントリが失敗したため送信しなかったエントリのエラーコード.
+     */
+    static final String PRECEDING_ENTRY_FAILED = "PrecedingEntryFailed";
+
     /**
      * キューイング対象のSQSのURL.
      */
     private final String queueUrl;
     /**
-     * SQSクライアント.
+     * SQSのリージョン.
      */
-    private final AmazonSQS sqsClient;
+    private final Region region;
+    /**
+     * SQSクライアント(初回送信時に{@link SqsClientRegistry}から取得する).
+     */
+    private SqsClient sqsClient;
+    /**
+     * メッセージBodyを圧縮する閾値(JSONのバイト数がこれ以上なら圧縮する. 負数なら圧縮しない).
+     */
+    private int compressionThresholdBytes = -1;
 
     /**
      * コンストラクタ.
      *
+     * @param region リージョン
      * @param queueUrl SQSのURL
      */
-    public SQSEntityBase(final Regions region, final String queueUrl) {
-        this.sqsClient = AmazonSQSClientBuilder.standard()
-                .withRegion(region)
-                .build();
+    public SQSEntityBase(final Region region, final String queueUrl) {
+        this.region = region;
         this.queueUrl = queueUrl;
     }
 
+    /**
+     * このEntityの送信に使用するSQSクライアントを返却します.
+     * クライアントはコンテナ内で共有され、Entity毎には生成しません.
+     *
+     * @return SQSクライアント
+     */
+    protected SqsClient getSqsClient() {
+        if (this.sqsClient == null) {
+            this.sqsClient = SqsClientRegistry.getClient(this.region, this.queueUrl);
+        }
+        return this.sqsClient;
+    }
+
     /**
      * このEntityの内容でSQSへメッセージをキューイングします.
      *
      * @return 送信結果
      * @throws Exception
      */
-    public SendMessageResult sendMessage() throws Exception {
-        SendMessageRequest sendMessageRequest = new SendMessageRequest()
-                .withQueueUrl(this.queueUrl)
-                .withMessageBody(this.getMessageBody());
-        return this.sqsClient.sendMessage(sendMessageRequest);
+    public SendMessageResponse sendMessage() throws Exception {
+        EncodedBody encoded = this.encodeMessageBody();
+        SendMessageRequest.Builder sendMessageRequest = SendMessageRequest.builder()
+                .queueUrl(this.queueUrl)
+                .messageBody(encoded.body)
+                .messageAttributes(encoded.attributes);
+        if (this.isFifoQueue()) {
+            sendMessageRequest
+                .messageGroupId(this.resolveMessageGroupId())
+                .messageDeduplicationId(this.resolveMessageDeduplicationId());
+        }
+        return this.getSqsClient().sendMessage(sendMessageRequest.build());
+    }
+
+    /**
+     * 複数のEntityの内容をSendMessageBatchでSQSへキューイングします.
+     * キューURL毎に最大{@value #MAX_BATCH_SIZE}件、かつ合計{@value #MAX_BATCH_PAYLOAD_BYTES}バイト以内ずつ送信し、
+     * 失敗したエントリのみを再送します.
+     *
+     * @param entities 送信するEntityのリスト
+     * @return 送信に成功したエントリの結果(キューURL毎、送信順)
+     * @throws IllegalStateException 再送してもなお送信に失敗したエントリが残った場合
+     * @throws Exception
+     */
+    public static List<SendMessageBatchResultEntry> sendMessageBatch(final List<? extends SQSEntityBase> entities) throws Exception {
+        return sendMessageBatch(entities, (entity, result) -> { });
+    }
+
+    /**
+     * 複数のEntityの内容をSendMessageBatchでSQSへキューイングし、送信できたEntity毎に通知します.
+     * 通知はチャンク毎の送信が終わる度に行い、後続のチャンクが失敗して例外となる場合も、
+     * それまでに送信できたEntity(失敗したチャンク内で送信できたものを含む)は通知済みとなります.
+     *
+     * @param <E> Entityの型
+     * @param entities 送信するEntityのリスト
+     * @param onSent 送信できたEntityとその結果を受け取る処理
+     * @return 送信に成功したエントリの結果(キューURL毎、送信順)
+     * @throws IllegalStateException 再送してもなお送信に失敗したエントリが残った場合
+     * @throws Exception
+     */
+    public static <E extends SQSEntityBase> List<SendMessageBatchResultEntry> sendMessageBatch(final List<E> entities,
+            final BiConsumer<? super E, SendMessageBatchResultEntry> onSent) throws Exception {
+        // キューURL毎に振り分ける
+        Map<String, List<E>> entitiesByQueue = new LinkedHashMap<String, List<E>>();
+        for (E entity : entities) {
+            entitiesByQueue.computeIfAbsent(entity.getQueueUrl(), k -> new ArrayList<E>()).add(entity);
+        }
+
+        List<SendMessageBatchResultEntry> results = new ArrayList<SendMessageBatchResultEntry>(entities.size());
+        for (List<E> queueEntities : entitiesByQueue.values()) {
+            for (int from = 0; from < queueEntities.size(); from += MAX_BATCH_SIZE) {
+                List<E> chunk = queueEntities.subList(from, Math.min(from + MAX_BATCH_SIZE, queueEntities.size()));
+                results.addAll(sendChunk(chunk, onSent));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 最大{@value #MAX_BATCH_SIZE}件のEntityをSendMessageBatchで送信し、失敗したエントリのみを再送します.
+     *
+     * @param <E> Entityの型
+     * @param chunk 同一キュー宛てのEntity
+     * @param onSent 送信できたEntityとその結果を受け取る処理
+     * @return 送信に成功したエントリの結果
+     * @throws Exception
+     */
+    private static <E extends SQSEntityBase> List<SendMessageBatchResultEntry> sendChunk(final List<E> chunk,
+            final BiConsumer<? super E, SendMessageBatchResultEntry> onSent) throws Exception {
+        ChunkResult chunkResult = new ChunkResult(chunk.size());
+        try {
+            sendChunkWithRetry(chunk, chunkResult);
+        } finally {
+            // 再送中にSendMessageBatchの呼び出し自体が失敗した場合も、それまでに送信できたエントリは通知する
+            for (int i = 0; i < chunk.size(); i++) {
+                if (chunkResult.successful[i] != null) {
+                    onSent.accept(chunk.get(i), chunkResult.successful[i]);
+                }
+            }
+        }
+        List<SendMessageBatchResultEntry> successful = new ArrayList<SendMessageBatchResultEntry>(chunk.size());
+        List<BatchResultErrorEntry> failed = new ArrayList<BatchResultErrorEntry>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunkResult.successful[i] != null) {
+                successful.add(chunkResult.successful[i]);
+            } else {
+                failed.add(chunkResult.failed[i]);
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            BatchResultErrorEntry error = failed.get(0);
+            throw new IllegalStateException("SendMessageBatch failed for " + failed.size() + " entries: "
+                    + error.code() + " " + error.message());
+        }
+        return successful;
+    }
+
+    /**
+     * SendMessageBatchのエントリ毎の送信結果(インデックスは送信したEntityの順).
+     */
+    static final class ChunkResult {
+        /**
+         * 送信に成功したエントリの結果(失敗したエントリはnull).
+         */
+        final SendMessageBatchResultEntry[] successful;
+        /**
+         * 再送してもなお送信に失敗したエントリのエラー(成功したエントリはnull).
+         */
+        final BatchResultErrorEntry[] failed;
+
+        private ChunkResult(final int size) {
+            this.successful = new SendMessageBatchResultEntry[size];
+            this.failed = new BatchResultErrorEntry[size];
+        }
+    }
+
+    /**
+     * 最大{@value #MAX_BATCH_SIZE}件の同一キュー宛てのEntityをSendMessageBatchで送信し、失敗したエントリのみを再送します.
+     * 合計サイズが上限を超える場合はリクエストを分けて送信します.
+     * 送信者起因のエラーは再送しても成功しないため、再送せずに失敗として返却します.
+     * FIFOキューの場合、失敗したエントリより後の同じメッセージグループのエントリは送信せず、グループ内の順序を保ちます.
+     *
+     * @param chunk 同一キュー宛てのEntity
+     * @return エントリ毎の送信結果
+     * @throws Exception SendMessageBatchの呼び出し自体が失敗した場合
+     */
+    static ChunkResult sendChunkWithRetry(final List<? extends SQSEntityBase> chunk) throws Exception {
+        ChunkResult chunkResult = new ChunkResult(chunk.size());
+        sendChunkWithRetry(chunk, chunkResult);
+        return chunkResult;
+    }
+
+    /**
+     * 最大{@value #MAX_BATCH_SIZE}件の同一キュー宛てのEntityを送信し、エントリ毎の送信結果を記録します.
+     * 途中で例外となった場合も、それまでの送信結果は記録済みとなります.
+     *
+     * @param chunk 同一キュー宛てのEntity
+     * @param chunkResult エントリ毎の送信結果の記録先
+     * @throws Exception SendMessageBatchの呼び出し自体が失敗した場合
+     */
+    private static void sendChunkWithRetry(final List<? extends SQSEntityBase> chunk, final ChunkResult chunkResult) throws Exception {
+        SQSEntityBase head = chunk.get(0);
+
+        // エントリIDはチャンク内のインデックスとする
+        Map<String, SendMessageBatchRequestEntry> pending = new LinkedHashMap<String, SendMessageBatchRequestEntry>();
+        for (int i = 0; i < chunk.size(); i++) {
+            String id = String.valueOf(i);
+            SQSEntityBase entity = chunk.get(i);
+            pending.put(id, entity.toBatchRequestEntry(id));
+        }
+
+        boolean fifo = head.isFifoQueue();
+        for (int attempt = 0; attempt <= MAX_BATCH_RETRY && !pending.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                InvocationMetrics.current().count("SqsBatchRetries", 1);
+                // 一時的なエラー(スロットリング等)が続かないよう、ジッター付きで待ってから再送する
+                Thread.sleep(retryDelayMillis(attempt));
+            }
+            // FIFOキューで、この試行中にエントリが失敗したメッセージグループ(後続のエントリは次の試行まで送信しない)
+            Set<String> failedGroups = new HashSet<String>();
+            // 合計サイズの上限を超える場合は、リクエストを分けて送信する
+            for (List<SendMessageBatchRequestEntry> entries : splitByPayloadSize(pending.values())) {
+                if (fifo) {
+                    entries = holdBackFailedGroups(entries, failedGroups, chunkResult);
+                    if (entries.isEmpty()) {
+                        continue;
+                    }
+                }
+                SendMessageBatchRequest request = SendMessageBatchRequest.builder()
+                        .queueUrl(head.queueUrl)
+                        .entries(entries)
+                        .build();
+                SendMessageBatchResponse result = head.getSqsClient().sendMessageBatch(request);
+                for (SendMessageBatchResultEntry entry : result.successful()) {
+                    pending.remove(entry.id());
+                    int index = Integer.parseInt(entry.id());
+                    chunkResult.successful[index] = entry;
+                    chunkResult.failed[index] = null;
+                }
+                for (BatchResultErrorEntry error : result.failed()) {
+                    chunkResult.failed[Integer.parseInt(error.id())] = error;
+                    SendMessageBatchRequestEntry failedEntry = pending.get(error.id());
+                    if (fifo && failedEntry != null) {
+                        failedGroups.add(failedEntry.messageGroupId());
+                    }
+                    // 送信者起因のエラーは再送しても成功しないため、再送対象から外す
+                    if (Boolean.TRUE.equals(error.senderFault())) {
+                        pending.remove(error.id());
+                        if (fifo && failedEntry != null) {
+                            // 失敗したエントリを飛ばして後続を送信すると順序が入れ替わるため、グループの後続も失敗とする
+                            failGroup(pending, failedEntry.messageGroupId(), chunkResult);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * この試行中にエントリが失敗したメッセージグループのエントリを送信対象から除き、次の試行まで保留します.
+     *
+     * @param entries 送信するエントリ
+     * @param failedGroups この試行中にエントリが失敗したメッセージグループ
+     * @param chunkResult エントリ毎の送信結果の記録先
+     * @return 送信するエントリ
+     */
+    private static List<SendMessageBatchRequestEntry> holdBackFailedGroups(final List<SendMessageBatchRequestEntry> entries,
+            final Set<String> failedGroups, final ChunkResult chunkResult) {
+        if (failedGroups.isEmpty()) {
+            return entries;
+        }
+        List<SendMessageBatchRequestEntry> sendable = new ArrayList<SendMessageBatchRequestEntry>(entries.size());
+        for (SendMessageBatchRequestEntry entry : entries) {
+            if (failedGroups.contains(entry.messageGroupId())) {
+                // 再送の上限に達した場合はこのエラーのまま失敗となる
+                chunkResult.failed[Integer.parseInt(entry.id())] = precedingEntryFailed(entry.id());
+            } else {
+                sendable.add(entry);
+            }
+        }
+        return sendable;
+    }
+
+    /**
+     * 送信待ちのエントリのうち、指定したメッセージグループのエントリを全て失敗とします.
+     *
+     * @param pending 送信待ちのエントリ
+     * @param messageGroupId メッセージグループID
+     * @param chunkResult エントリ毎の送信結果の記録先
+     */
+    private static void failGroup(final Map<String, SendMessageBatchRequestEntry> pending, final String messageGroupId,
+            final ChunkResult chunkResult) {
+        for (Iterator<SendMessageBatchRequestEntry> it = pending.values().iterator(); it.hasNext();) {
+            SendMessageBatchRequestEntry entry = it.next();
+            if (messageGroupId.equals(entry.messageGroupId())) {
+                chunkResult.failed[Integer.parseInt(entry.id())] = precedingEntryFailed(entry.id());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 先行するエントリが失敗したため送信しなかったエントリのエラーを作成します.
+     *
+     * @param id エントリID
+     * @return エラー
+     */
+    private static BatchResultErrorEntry precedingEntryFailed(final String id) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .code(PRECEDING_ENTRY_FAILED)
+                .message("A preceding entry in the same message group failed.")
+                .senderFault(false)
+                .build();
+    }
+
+    /**
+     * 再送までの待ち時間を返却します(0～基準値×2^(再送回数-1)のフルジッター. 上限あり).
+     *
+     * @param attempt 試行回数(1以上)
+     * @return 待ち時間(ミリ秒)
+     */
+    static long retryDelayMillis(final int attempt) {
+        long ceiling = Math.min(MAX_RETRY_DELAY_MILLIS, BASE_RETRY_DELAY_MILLIS << Math.min(attempt - 1, 10));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * エントリを、1リクエストあたりの合計サイズが{@value #MAX_BATCH_PAYLOAD_BYTES}バイト以内となるよう送信順に分割します.
+     * 1件で上限を超えるエントリは単独のリクエストとします(SQSがエントリの失敗として返却する).
+     *
+     * @param entries エントリ(最大{@value #MAX_BATCH_SIZE}件)
+     * @return リクエスト毎のエントリ
+     */
+    static List<List<SendMessageBatchRequestEntry>> splitByPayloadSize(final Iterable<SendMessageBatchRequestEntry> entries) {
+        List<List<SendMessageBatchRequestEntry>> requests = new ArrayList<List<SendMessageBatchRequestEntry>>(1);
+        List<SendMessageBatchRequestEntry> current = new ArrayList<SendMessageBatchRequestEntry>(MAX_BATCH_SIZE);
+        long currentBytes = 0;
+        for (SendMessageBatchRequestEntry entry : entries) {
+            long entryBytes = payloadSize(entry);
+            if (!current.isEmpty() && currentBytes + entryBytes > MAX_BATCH_PAYLOAD_BYTES) {
+                requests.add(current);
+                current = new ArrayList<SendMessageBatchRequestEntry>(MAX_BATCH_SIZE);
+                currentBytes = 0;
+            }
+            current.add(entry);
+            currentBytes += entryBytes;
+        }
+        if (!current.isEmpty()) {
+            requests.add(current);
+        }
+        return requests;
+    }
+
+    /**
+     * SQSのサイズ上限の対象となるエントリのサイズ(メッセージBodyと、属性の名前・型・値のバイト数の合計)を返却します.
+     *
+     * @param entry エントリ
+     * @return バイト数
+     */
+    static long payloadSize(final SendMessageBatchRequestEntry entry) {
+        long size = utf8Length(entry.messageBody());
+        for (Map.Entry<String, MessageAttributeValue> attribute : entry.messageAttributes().entrySet()) {
+            MessageAttributeValue value = attribute.getValue();
+            size += utf8Length(attribute.getKey()) + utf8Length(value.dataType());
+            if (value.stringValue() != null) {
+                size += utf8Length(value.stringValue());
+            } else if (value.binaryValue() != null) {
+                size += value.binaryValue().asByteBuffer().remaining();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 文字列をUTF-8で符号化した場合のバイト数を返却します(バイト列は生成しない).
+     *
+     * @param value 文字列(nullは0バイト)
+     * @return バイト数
+     */
+    private static long utf8Length(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * このEntityの内容でSendMessageBatchのエントリを作成します(送信はしない).
+     *
+     * @param id エントリID
+     * @return SendMessageBatchのエントリ
+     * @throws JsonProcessingException
+     */
+    public SendMessageBatchRequestEntry toBatchRequestEntry(final String id) throws JsonProcessingException {
+        EncodedBody encoded = this.encodeMessageBody();
+        SendMessageBatchRequestEntry.Builder requestEntry = SendMessageBatchRequestEntry.builder()
+                .id(id)
+                .messageBody(encoded.body)
+                .messageAttributes(encoded.attributes);
+        if (this.isFifoQueue()) {
+            requestEntry
+                .messageGroupId(this.resolveMessageGroupId())
+                .messageDeduplicationId(this.resolveMessageDeduplicationId());
+        }
+        return requestEntry.build();
+    }
+
+    /**
+     * 送信先がFIFOキューか判定します(キューURLの接尾辞で判定する).
+     *
+     * @return FIFOキューならtrue
+     */
+    boolean isFifoQueue() {
+        return this.queueUrl != null && this.queueUrl.endsWith(FIFO_QUEUE_SUFFIX);
+    }
+
+    /**
+     * FIFOキューへ送信する場合のメッセージグループIDを返却します.
+     * 同じメッセージグループIDのメッセージは送信順に1件ずつ処理され、異なるメッセージグループIDのメッセージは並行して処理されます.
+     *
+     * @return メッセージグループID(nullまたは空文字の場合は、メッセージ毎に別のグループとする)
+     */
+    protected String getMessageGroupId() {
+        return null;
+    }
+
+    /**
+     * FIFOキューへ送信する場合のメッセージ重複排除IDを返却します.
+     * 5分以内に同じ重複排除IDで送信されたメッセージは、SQSが重複として破棄します.
+     *
+     * @return メッセージ重複排除ID(nullの場合はメッセージBodyのSHA-256とする)
+     */
+    protected String getMessageDeduplicationId() {
+        return null;
+    }
+
+    /**
+     * メッセージグループIDを決定します.
+     * グループを決められない(nullまたは空文字の)場合は、メッセージ重複排除IDをグループとし、
+     * 無関係なメッセージを1つのグループに直列化しない(空文字はSQSが送信者起因のエラーとして拒否する).
+     *
+     * @return メッセージグループID
+     * @throws JsonProcessingException
+     */
+    private String resolveMessageGroupId() throws JsonProcessingException {
+        String messageGroupId = this.getMessageGroupId();
+        return messageGroupId != null && !messageGroupId.isEmpty() ? messageGroupId : this.resolveMessageDeduplicationId();
+    }
+
+    /**
+     * メッセージ重複排除IDを決定します(キューのコンテンツベースの重複排除の設定に依存しないよう、必ず指定する).
+     *
+     * @return メッセージ重複排除ID
+     * @throws JsonProcessingException
+     */
+    private String resolveMessageDeduplicationId() throws JsonProcessingException {
+        String messageDeduplicationId = this.getMessageDeduplicationId();
+        return messageDeduplicationId != null ? messageDeduplicationId : sha256Hex(this.getMessageBodyBytes());
+    }
+
+    /**
+     * SHA-256を16進数文字列で返却します.
+     *
+     * @param bytes 対象
+     * @return ハッシュ値
+     */
+    static String sha256Hex(final byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256は全てのJava実行環境で提供される
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 送信先のSQSのURLを返却します.
+     *
+     * @return SQSのURL
+     */
+    String getQueueUrl() {
+        return this.queueUrl;
+    }
+
+    /**
+     * 送信するメッセージBodyとメッセージ属性.
+     */
+    private static final class EncodedBody {
+        /**
+         * メッセージBody.
+         */
+        private final String body;
+        /**
+         * メッセージ属性.
+         */
+        private final Map<String, MessageAttributeValue> attributes;
+
+        private EncodedBody(final String body, final Map<String, MessageAttributeValue> attributes) {
+            this.body = body;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * 閾値以上のメッセージBodyを圧縮し、エンコード方式をメッセージ属性に設定します.
+     * 閾値未満の場合や、圧縮しても小さくならない場合はJSONのまま送信します(属性も付与しない).
+     *
+     * @return 送信するメッセージBodyとメッセージ属性
+     * @throws JsonProcessingException
+     */
+    private EncodedBody encodeMessageBody() throws JsonProcessingException {
+        if (this.compressionThresholdBytes < 0) {
+            return new EncodedBody(this.getMessageBody(), Collections.<String, MessageAttributeValue>emptyMap());
+        }
+        byte[] json = this.getMessageBodyBytes();
+        if (json.length >= this.compressionThresholdBytes) {
+            String compressed = SqsMessageCodec.encode(json);
+            if (compressed.length() < json.length) {
+                return new EncodedBody(compressed, Map.of(MessageEncoding.ATTRIBUTE_NAME, MessageAttributeValue.builder()
+                        .dataType("String")
+                        .stringValue(MessageEncoding.DeflateBase64.getCode())
+                        .build()));
+            }
+        }
+        return new EncodedBody(this.getMessageBody(), Collections.<String, MessageAttributeValue>emptyMap());
+    }
+
+    /**
+     * メッセージBodyを圧縮する閾値を設定します.
+     *
+     * @param compressionThresholdBytes JSONのバイト数がこれ以上なら圧縮する(負数なら圧縮しない)
+     */
+    public void setCompressionThresholdBytes(final int compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    /**
+     * このEntityの内容をUTF-8のJSONバイト列で返却します.
+     *
+     * @return メッセージBody(UTF-8)
+     * @throws JsonProcessingException
+     */
+    protected byte[] getMessageBodyBytes() throws JsonProcessingException {
+        return this.getMessageBody().getBytes(StandardCharsets.UTF_8);
     }
 
     /**
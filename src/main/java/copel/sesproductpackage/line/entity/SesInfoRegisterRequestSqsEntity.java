@@ -1,6 +1,21 @@
 package copel.sesproductpackage.line.entity;
 
-import com.amazonaws.regions.Regions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import software.amazon.awssdk.regions.Region;
+
+import copel.sesproductpackage.line.storage.BlobStore;
+import copel.sesproductpackage.line.storage.FileContentArchiver;
+import copel.sesproductpackage.line.util.JsonUtil;
 
 /**
  * AwsLambdaSesInfoRegisterに付帯するSQSへのリクエストEntityクラス.
@@ -9,14 +24,43 @@ import com.amazonaws.regions.Regions;
  *
  */
 public class SesInfoRegisterRequestSqsEntity extends SQSEntityBase {
+    /**
+     * スレッド毎に再利用するシリアライズ用バッファ.
+     */
+    private static final ThreadLocal<ByteArrayBuilder> BODY_BUFFER = ThreadLocal.withInitial(() -> new ByteArrayBuilder(1024));
+    /**
+     * 再利用するバッファの上限サイズ(これを超えるメッセージを書き込んだバッファは破棄する).
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    /**
+     * BlobStoreへ退避した原文のキーの接頭辞.
+     */
+    private static final String RAW_CONTENT_KEY_PREFIX = "raw-content/";
+    /**
+     * BlobStoreへ退避した原文の圧縮形式.
+     */
+    private static final String RAW_CONTENT_ENCODING = "gzip";
+    /**
+     * 個人チャットの場合の送信元グループ.
+     */
+    private static final String PERSONAL_LINE = "personal_line";
+
     /**
      * リクエスト種別
      */
     private String requestType;
+    /**
+     * LINEのWebhookイベントID(FIFOキューの重複排除IDに使用し、メッセージBodyには含めない).
+     */
+    private String eventId;
     /**
      * 送信元グループ.
      */
     private String fromGroup;
+    /**
+     * 送信元グループ名.
+     */
+    private String fromGroupName;
     /**
      * 送信者ID.
      */
@@ -25,10 +69,26 @@ public class SesInfoRegisterRequestSqsEntity extends SQSEntityBase {
      * 送信者名.
      */
     private String fromName;
+    /**
+     * 送信者名・グループ名の解決を後続処理に委ねたか(trueの場合、from_name・from_group_nameは未解決).
+     */
+    private boolean nameResolutionDeferred;
     /**
      * 原文.
      */
     private String rawContent;
+    /**
+     * BlobStoreへ退避した原文の保存先(退避していなければnull).
+     */
+    private String rawContentLocation;
+    /**
+     * BlobStoreへ退避した原文(圧縮前のUTF-8)のSHA-256(16進数).
+     */
+    private String rawContentSha256;
+    /**
+     * BlobStoreへ退避した原文(圧縮前のUTF-8)のバイト数.
+     */
+    private long rawContentSize;
     /**
      * ファイルID.
      */
@@ -37,6 +97,18 @@ public class SesInfoRegisterRequestSqsEntity extends SQSEntityBase {
      * ファイル名.
      */
     private String fileName;
+    /**
+     * BlobStoreへ保存したファイルの内容(保存していなければnull).
+     */
+    private FileContentArchiver.ArchivedFile fileContent;
+    /**
+     * シリアライズ済みのメッセージBody(内容の変更時に破棄する).
+     */
+    private byte[] messageBodyBytes;
+    /**
+     * シリアライズ済みのメッセージBodyの文字列(内容の変更時に破棄する).
+     */
+    private String messageBody;
 
     /**
      * コンストラクタ.
@@ -44,29 +116,200 @@ public class SesInfoRegisterRequestSqsEntity extends SQSEntityBase {
      * @param region リージョン
      * @param queueUrl SQSのURL
      */
-    public SesInfoRegisterRequestSqsEntity(Regions region, String queueUrl) {
+    public SesInfoRegisterRequestSqsEntity(Region region, String queueUrl) {
         super(region, queueUrl);
     }
 
     @Override
     protected String getMessageBody() {
-        String body = "{"
-                + "\"request_type\": \"" + this.requestType + "\","
-                + "\"from_group\": \"" + this.fromGroup + "\","
-                + "\"from_id\": \"" + this.fromId + "\","
-                + "\"from_name\": \"" + this.fromName + "\",";
-        if (this.rawContent != null) {
-        	// 制御文字を削除した上でボディにセット
-        	body += "\"raw_content\": \"" + this.rawContent.replaceAll("\\p{Cntrl}", "") + "\"";
+        if (this.messageBody == null) {
+            this.messageBody = new String(this.getMessageBodyBytes(), StandardCharsets.UTF_8);
         }
-        if (this.fileId != null) {
-        	body += "\"file_id\": \"" + this.fileId + "\",";
+        return this.messageBody;
+    }
+
+    /**
+     * このEntityの内容をUTF-8のJSONバイト列で返却します.
+     * シリアライズ結果は内容が変更されるまで保持し、2回目以降はシリアライズしません.
+     *
+     * @return メッセージBody(UTF-8)
+     */
+    @Override
+    protected byte[] getMessageBodyBytes() {
+        if (this.messageBodyBytes == null) {
+            this.messageBodyBytes = this.serialize();
         }
-        if (this.fileName != null) {
-        	body += "\"file_name\": \"" + this.fileName.replaceAll("\\p{Cntrl}", "") + "\"";
+        return this.messageBodyBytes;
+    }
+
+    /**
+     * このEntityの内容をJSONにシリアライズする.
+     * スレッド毎に再利用するバッファへJsonGeneratorで書き込むため、エスケープはJacksonが行う.
+     *
+     * @return JSONバイト列(UTF-8)
+     */
+    private byte[] serialize() {
+        ByteArrayBuilder buffer = BODY_BUFFER.get();
+        buffer.reset();
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("request_type", this.requestType);
+            generator.writeStringField("from_group", this.fromGroup);
+            if (this.fromGroupName != null) {
+                generator.writeStringField("from_group_name", this.fromGroupName);
+            }
+            generator.writeStringField("from_id", this.fromId);
+            generator.writeStringField("from_name", this.fromName);
+            if (this.nameResolutionDeferred) {
+                // 名前が存在しない(null)のではなく、後続処理がfrom_id・from_groupから解決することを示す
+                generator.writeBooleanField("name_resolution_deferred", true);
+            }
+            if (this.rawContentLocation != null) {
+                // 原文を退避済みの場合は参照のみをボディにセット
+                generator.writeStringField("raw_content_location", this.rawContentLocation);
+                generator.writeStringField("raw_content_encoding", RAW_CONTENT_ENCODING);
+                generator.writeStringField("raw_content_sha256", this.rawContentSha256);
+                generator.writeNumberField("raw_content_size", this.rawContentSize);
+            } else if (this.rawContent != null) {
+                // 制御文字を削除した上でボディにセット
+                generator.writeFieldName("raw_content");
+                writeStringWithoutControlChars(generator, this.rawContent);
+            }
+            if (this.fileId != null) {
+                generator.writeStringField("file_id", this.fileId);
+            }
+            if (this.fileName != null) {
+                generator.writeFieldName("file_name");
+                writeStringWithoutControlChars(generator, this.fileName);
+            }
+            if (this.fileContent != null) {
+                // 受信時に保存したファイルの参照(後続処理はLINEから取得し直さずに済む)
+                generator.writeStringField("file_content_location", this.fileContent.getLocation());
+                generator.writeStringField("file_content_type", this.fileContent.getContentType());
+                generator.writeStringField("file_content_sha256", this.fileContent.getSha256());
+                generator.writeNumberField("file_content_size", this.fileContent.getSize());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        // 大きなメッセージで確保したバッファを保持し続けないよう、上限を超えたら破棄する
+        if (bytes.length > MAX_POOLED_BUFFER_SIZE) {
+            BODY_BUFFER.remove();
         }
-    	body += "}";
-    	return body;
+        return bytes;
+    }
+
+    /**
+     * 原文が閾値を超える場合、原文をgzip圧縮してBlobStoreへ退避し、メッセージには保存先とハッシュのみを載せる(クレームチェック).
+     * キーは原文のハッシュから決めるため、同じ原文を再送しても同じオブジェクトを上書きするだけになる.
+     *
+     * @param blobStore 退避先
+     * @param thresholdBytes 原文(UTF-8)のバイト数がこれを超える場合に退避する
+     * @return 退避した場合true
+     * @throws IOException 退避に失敗した場合
+     */
+    public boolean offloadRawContent(final BlobStore blobStore, final int thresholdBytes) throws IOException {
+        if (this.rawContent == null || this.rawContentLocation != null) {
+            return false;
+        }
+        // UTF-8は1文字最大3バイト(サロゲートペアは2文字で4バイト)のため、文字数で明らかに小さいものは変換しない
+        if ((long) this.rawContent.length() * 3 <= thresholdBytes) {
+            return false;
+        }
+        byte[] raw = removeControlChars(this.rawContent).getBytes(StandardCharsets.UTF_8);
+        if (raw.length <= thresholdBytes) {
+            return false;
+        }
+
+        String sha256 = sha256Hex(raw);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(raw);
+        }
+        byte[] gzipBytes = compressed.toByteArray();
+        String location = blobStore.put(RAW_CONTENT_KEY_PREFIX + sha256 + ".txt.gz",
+                new ByteArrayInputStream(gzipBytes), gzipBytes.length, "application/gzip");
+
+        this.rawContentLocation = location;
+        this.rawContentSha256 = sha256;
+        this.rawContentSize = raw.length;
+        this.clearMessageBody();
+        return true;
+    }
+
+    /**
+     * 制御文字(\p{Cntrl}: U+0000～U+001F, U+007F)を取り除いた文字列を返却する.
+     *
+     * @param value 値
+     * @return 制御文字を含まない場合は引数そのもの
+     */
+    private static String removeControlChars(final String value) {
+        StringBuilder filtered = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean isControl = c < 0x20 || c == 0x7F;
+            if (filtered == null) {
+                if (isControl) {
+                    filtered = new StringBuilder(value.length() - 1).append(value, 0, i);
+                }
+            } else if (!isControl) {
+                filtered.append(c);
+            }
+        }
+        return filtered == null ? value : filtered.toString();
+    }
+
+    /**
+     * 制御文字(\p{Cntrl}: U+0000～U+001F, U+007F)を1回の走査で取り除きながら文字列値を書き込む.
+     *
+     * @param generator JsonGenerator
+     * @param value 値
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeStringWithoutControlChars(final JsonGenerator generator, final String value) throws IOException {
+        char[] filtered = null;
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean isControl = c < 0x20 || c == 0x7F;
+            if (filtered == null) {
+                if (!isControl) {
+                    continue;
+                }
+                // 最初の制御文字を見つけた時点でそれまでの文字をコピーする
+                filtered = new char[value.length() - 1];
+                value.getChars(0, i, filtered, 0);
+                length = i;
+            } else if (!isControl) {
+                filtered[length++] = c;
+            }
+        }
+        if (filtered == null) {
+            generator.writeString(value);
+        } else {
+            generator.writeString(filtered, 0, length);
+        }
+    }
+
+    /**
+     * グループチャットはグループ毎、個人チャットは送信者毎にメッセージグループを分け、会話の順序を保つ.
+     * 送信者を特定できない場合は、イベント毎に別のグループとする.
+     */
+    @Override
+    protected String getMessageGroupId() {
+        String messageGroupId = this.fromGroup == null || this.fromGroup.isEmpty() || PERSONAL_LINE.equals(this.fromGroup)
+                ? this.fromId : this.fromGroup;
+        return messageGroupId != null && !messageGroupId.isEmpty() ? messageGroupId : this.eventId;
+    }
+
+    /**
+     * LINEの再送で同じイベントが届いても、SQSで重複として破棄されるようにイベントIDを使用する.
+     */
+    @Override
+    protected String getMessageDeduplicationId() {
+        return this.eventId;
     }
 
     @Override
@@ -75,46 +318,100 @@ public class SesInfoRegisterRequestSqsEntity extends SQSEntityBase {
     }
 
     // GETTER・SETTER
+    public String getEventId() {
+        return eventId;
+    }
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
     public String getRequestType() {
         return requestType;
     }
     public void setRequestType(String requestType) {
         this.requestType = requestType;
+        this.clearMessageBody();
     }
     public String getFromGroup() {
         return fromGroup;
     }
     public void setFromGroup(String fromGroup) {
         this.fromGroup = fromGroup;
+        this.clearMessageBody();
+    }
+    public String getFromGroupName() {
+        return fromGroupName;
+    }
+    public void setFromGroupName(String fromGroupName) {
+        this.fromGroupName = fromGroupName;
+        this.clearMessageBody();
     }
     public String getFromId() {
         return fromId;
     }
     public void setFromId(String fromId) {
         this.fromId = fromId;
+        this.clearMessageBody();
     }
     public String getFromName() {
         return fromName;
     }
+    public boolean isNameResolutionDeferred() {
+        return nameResolutionDeferred;
+    }
+    public void setNameResolutionDeferred(boolean nameResolutionDeferred) {
+        this.nameResolutionDeferred = nameResolutionDeferred;
+        this.clearMessageBody();
+    }
     public void setFromName(String fromName) {
         this.fromName = fromName;
+        this.clearMessageBody();
     }
     public String getRawContent() {
         return rawContent;
     }
     public void setRawContent(String rawContent) {
         this.rawContent = rawContent;
+        this.rawContentLocation = null;
+        this.rawContentSha256 = null;
+        this.rawContentSize = 0;
+        this.clearMessageBody();
+    }
+    public String getRawContentLocation() {
+        return rawContentLocation;
+    }
+    public String getRawContentSha256() {
+        return rawContentSha256;
+    }
+    public long getRawContentSize() {
+        return rawContentSize;
     }
     public String getFileId() {
         return fileId;
     }
     public void setFileId(String fileId) {
         this.fileId = fileId;
+        this.clearMessageBody();
     }
     public String getFileName() {
         return fileName;
     }
     public void setFileName(String fileName) {
         this.fileName = fileName;
+        this.clearMessageBody();
+    }
+    public FileContentArchiver.ArchivedFile getFileContent() {
+        return fileContent;
+    }
+    public void setFileContent(FileContentArchiver.ArchivedFile fileContent) {
+        this.fileContent = fileContent;
+        this.clearMessageBody();
+    }
+
+    /**
+     * シリアライズ済みのメッセージBodyを破棄する.
+     */
+    private void clearMessageBody() {
+        this.messageBodyBytes = null;
+        this.messageBody = null;
     }
 }
@@ -0,0 +1,290 @@
+package copel.sesproductpackage.line.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * 1回の呼び出しの処理時間・件数のメトリクス.
+ * 呼び出し中はメモリ上で集計のみ行い、呼び出しの終了時にCloudWatchの埋め込みメトリクスフォーマット(EMF)の1行として出力する.
+ * 出力はログのみで、CloudWatchへの通信は行わない.
+ * 計測箇所からは{@link #current()}で参照する(呼び出しの外、またはエントリポイント以外から呼び出された場合は何も記録しない).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class InvocationMetrics {
+    // =====================================
+    // 定数
+    // =====================================
+    /**
+     * サービス名のディメンション名.
+     */
+    public static final String SERVICE_DIMENSION = "Service";
+    /**
+     * 処理結果のディメンション名.
+     */
+    public static final String OUTCOME_DIMENSION = "Outcome";
+    /**
+     * 1つのメトリクスに出力する値の最大数(EMFの上限).
+     */
+    private static final int MAX_VALUES = 100;
+    /**
+     * 処理中の呼び出しのメトリクス.
+     */
+    private static final ThreadLocal<InvocationMetrics> CURRENT = new ThreadLocal<InvocationMetrics>();
+    /**
+     * 呼び出しの外で使用する、何も記録しないメトリクス.
+     */
+    private static final InvocationMetrics DISCARDING = new InvocationMetrics(null, null, null, false);
+
+    // =====================================
+    // フィールド
+    // =====================================
+    /**
+     * 名前空間.
+     */
+    private final String namespace;
+    /**
+     * サービス名.
+     */
+    private final String service;
+    /**
+     * リクエストID.
+     */
+    private final String requestId;
+    /**
+     * 記録するか.
+     */
+    private final boolean recording;
+    /**
+     * 処理結果.
+     */
+    private String outcome;
+    /**
+     * 件数(登録順).
+     */
+    private final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    /**
+     * 処理時間(ミリ秒. 登録順).
+     */
+    private final Map<String, List<Double>> timings = new LinkedHashMap<String, List<Double>>();
+
+    // =====================================
+    // コンストラクタ
+    // =====================================
+    private InvocationMetrics(final String namespace, final String service, final String requestId, final boolean recording) {
+        this.namespace = namespace;
+        this.service = service;
+        this.requestId = requestId;
+        this.recording = recording;
+    }
+
+    // =====================================
+    // メソッド
+    // =====================================
+    /**
+     * 呼び出しの集計を開始し、このスレッドの{@link #current()}とする.
+     *
+     * @param namespace 名前空間
+     * @param service サービス名
+     * @param requestId リクエストID(不明ならnull)
+     * @return メトリクス
+     */
+    public static InvocationMetrics begin(final String namespace, final String service, final String requestId) {
+        InvocationMetrics metrics = new InvocationMetrics(namespace, service, requestId, true);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * このスレッドの呼び出しの集計を終了する(出力は{@link #toEmf(long)}で行う).
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * このスレッドで処理中の呼び出しのメトリクスを返却する.
+     *
+     * @return メトリクス(呼び出しの外では何も記録しないメトリクス)
+     */
+    public static InvocationMetrics current() {
+        InvocationMetrics metrics = CURRENT.get();
+        return metrics != null ? metrics : DISCARDING;
+    }
+
+    /**
+     * 別スレッドで実行する処理を、呼び出し元と同じメトリクスに記録するよう包む.
+     *
+     * @param <T> 処理結果の型
+     * @param supplier 処理
+     * @return 実行中のみ呼び出し元のメトリクスを{@link #current()}とする処理
+     */
+    public static <T> Supplier<T> bind(final Supplier<T> supplier) {
+        InvocationMetrics metrics = current();
+        return () -> {
+            InvocationMetrics previous = CURRENT.get();
+            CURRENT.set(metrics);
+            try {
+                return supplier.get();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * 件数を加算する.
+     *
+     * @param name メトリクス名
+     * @param delta 加算する件数
+     */
+    public synchronized void count(final String name, final long delta) {
+        if (this.recording) {
+            this.counts.merge(name, delta, Long::sum);
+        }
+    }
+
+    /**
+     * 処理時間を記録する(同じ名前で複数回記録した場合は全ての値を出力する).
+     *
+     * @param name メトリクス名
+     * @param startNanos 開始時刻(System#nanoTime)
+     */
+    public synchronized void time(final String name, final long startNanos) {
+        if (this.recording) {
+            List<Double> values = this.timings.computeIfAbsent(name, k -> new ArrayList<Double>(1));
+            if (values.size() < MAX_VALUES) {
+                values.add((System.nanoTime() - startNanos) / (double) TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    /**
+     * 処理結果を設定する(ディメンションとして出力する).
+     *
+     * @param outcome 処理結果
+     */
+    public synchronized void setOutcome(final String outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * 件数を返却する.
+     *
+     * @param name メトリクス名
+     * @return 件数(記録されていなければ0)
+     */
+    public synchronized long getCount(final String name) {
+        return this.counts.getOrDefault(name, 0L);
+    }
+
+    /**
+     * 記録した処理時間の件数を返却する.
+     *
+     * @param name メトリクス名
+     * @return 件数
+     */
+    public synchronized int getTimingCount(final String name) {
+        List<Double> values = this.timings.get(name);
+        return values != null ? values.size() : 0;
+    }
+
+    /**
+     * 集計結果をEMFのJSON(1行)に変換する.
+     * 処理結果が設定されていれば、サービス名のみ・サービス名と処理結果の2通りのディメンションで集計する.
+     *
+     * @param timestampMillis タイムスタンプ(エポックミリ秒)
+     * @return EMFのJSON
+     */
+    public synchronized String toEmf(final long timestampMillis) {
+        StringWriter writer = new StringWriter(512);
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("_aws");
+            generator.writeNumberField("Timestamp", timestampMillis);
+            generator.writeArrayFieldStart("CloudWatchMetrics");
+            generator.writeStartObject();
+            generator.writeStringField("Namespace", this.namespace);
+            generator.writeArrayFieldStart("Dimensions");
+            generator.writeStartArray();
+            generator.writeString(SERVICE_DIMENSION);
+            generator.writeEndArray();
+            if (this.outcome != null) {
+                generator.writeStartArray();
+                generator.writeString(SERVICE_DIMENSION);
+                generator.writeString(OUTCOME_DIMENSION);
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Metrics");
+            for (String name : this.timings.keySet()) {
+                writeDefinition(generator, name, "Milliseconds");
+            }
+            for (String name : this.counts.keySet()) {
+                writeDefinition(generator, name, "Count");
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            // ディメンション・メトリクスの値・検索用のプロパティ
+            generator.writeStringField(SERVICE_DIMENSION, this.service);
+            if (this.outcome != null) {
+                generator.writeStringField(OUTCOME_DIMENSION, this.outcome);
+            }
+            if (this.requestId != null) {
+                generator.writeStringField("requestId", this.requestId);
+            }
+            for (Map.Entry<String, List<Double>> timing : this.timings.entrySet()) {
+                List<Double> values = timing.getValue();
+                if (values.size() == 1) {
+                    generator.writeNumberField(timing.getKey(), values.get(0));
+                } else {
+                    generator.writeArrayFieldStart(timing.getKey());
+                    for (Double value : values) {
+                        generator.writeNumber(value);
+                    }
+                    generator.writeEndArray();
+                }
+            }
+            for (Map.Entry<String, Long> count : this.counts.entrySet()) {
+                generator.writeNumberField(count.getKey(), count.getValue());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * メトリクスの定義を書き込む.
+     *
+     * @param generator 出力先
+     * @param name メトリクス名
+     * @param unit 単位
+     * @throws IOException
+     */
+    private static void writeDefinition(final JsonGenerator generator, final String name, final String unit) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("Name", name);
+        generator.writeStringField("Unit", unit);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,137 @@
+package copel.sesproductpackage.line.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import copel.sesproductpackage.line.LambdaHandler;
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * provided.al2023ランタイム(カスタムランタイム)用のエントリポイント.
+ * GraalVMのnative-imageでネイティブ実行ファイル(bootstrap)にビルドし、Runtime APIからイベントを1件ずつ取得して
+ * {@link LambdaHandler#handleRequest}へ渡し、処理結果を返却するループを実行する.
+ * ビルド手順: mvn -Pnative package (target/function.zipをデプロイする)
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class CustomRuntime {
+    /**
+     * X-Rayのトレースヘッダを受け渡すシステムプロパティ(Javaのマネージドランタイムと同じ名前).
+     */
+    private static final String TRACE_HEADER_PROPERTY = "com.amazonaws.xray.traceHeader";
+    /**
+     * イベントの読み込みに使用するReader.
+     */
+    private static final ObjectReader REQUEST_READER = JsonUtil.readerFor(APIGatewayProxyRequestEvent.class);
+
+    /**
+     * Runtime APIのクライアント.
+     */
+    private final LambdaRuntimeApiClient runtimeApiClient;
+    /**
+     * ハンドラ.
+     */
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param runtimeApiClient Runtime APIのクライアント
+     * @param handler ハンドラ
+     */
+    public CustomRuntime(final LambdaRuntimeApiClient runtimeApiClient,
+            final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler) {
+        this.runtimeApiClient = runtimeApiClient;
+        this.handler = handler;
+    }
+
+    /**
+     * エントリポイント.
+     *
+     * @param args 未使用
+     * @throws IOException Runtime APIとの通信に失敗した場合
+     */
+    public static void main(final String[] args) throws IOException {
+        LambdaRuntimeApiClient runtimeApiClient = new LambdaRuntimeApiClient(System.getenv("AWS_LAMBDA_RUNTIME_API"));
+        LambdaHandler handler;
+        try {
+            handler = new LambdaHandler();
+        } catch (RuntimeException | Error e) {
+            runtimeApiClient.postInitError(e);
+            throw e;
+        }
+
+        CustomRuntime runtime = new CustomRuntime(runtimeApiClient, handler);
+        while (true) {
+            runtime.processNext();
+        }
+    }
+
+    /**
+     * 次のイベントを1件取得して処理し、処理結果を報告する.
+     * ハンドラで発生した例外は呼び出しのエラーとして報告し、ループは継続する.
+     *
+     * @throws IOException Runtime APIとの通信に失敗した場合
+     */
+    public void processNext() throws IOException {
+        LambdaRuntimeApiClient.Invocation invocation = this.runtimeApiClient.next();
+        if (invocation.getTraceId() != null) {
+            System.setProperty(TRACE_HEADER_PROPERTY, invocation.getTraceId());
+        } else {
+            System.clearProperty(TRACE_HEADER_PROPERTY);
+        }
+
+        byte[] response;
+        try {
+            APIGatewayProxyRequestEvent request = REQUEST_READER.readValue(invocation.getPayload());
+            Context context = new RuntimeContext(invocation);
+            response = toResponsePayload(this.handler.handleRequest(request, context));
+        } catch (Exception e) {
+            this.runtimeApiClient.postInvocationError(invocation.getRequestId(), e);
+            return;
+        }
+        this.runtimeApiClient.postResponse(invocation.getRequestId(), response);
+    }
+
+    /**
+     * API Gatewayのプロキシ統合のレスポンス形式に変換する(値がnullの項目は出力しない).
+     *
+     * @param response ハンドラの処理結果
+     * @return JSON
+     * @throws IOException
+     */
+    static byte[] toResponsePayload(final APIGatewayProxyResponseEvent response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            if (response.getStatusCode() != null) {
+                generator.writeNumberField("statusCode", response.getStatusCode());
+            }
+            if (response.getHeaders() != null) {
+                generator.writeObjectFieldStart("headers");
+                for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                    generator.writeStringField(header.getKey(), header.getValue());
+                }
+                generator.writeEndObject();
+            }
+            if (response.getBody() != null) {
+                generator.writeStringField("body", response.getBody());
+            }
+            if (response.getIsBase64Encoded() != null) {
+                generator.writeBooleanField("isBase64Encoded", response.getIsBase64Encoded());
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+}
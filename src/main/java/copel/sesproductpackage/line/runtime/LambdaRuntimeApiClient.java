@@ -0,0 +1,217 @@
+package copel.sesproductpackage.line.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * LambdaのRuntime API(カスタムランタイム用)のクライアント.
+ * 次のイベントの取得と、処理結果・エラーの報告を行う.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LambdaRuntimeApiClient {
+    /**
+     * Runtime APIのバージョン.
+     */
+    private static final String API_VERSION = "2018-06-01";
+    /**
+     * エラー報告時にエラー種別を設定するヘッダ.
+     */
+    private static final String FUNCTION_ERROR_TYPE_HEADER = "Lambda-Runtime-Function-Error-Type";
+
+    /**
+     * 呼び出し1回分のイベント.
+     */
+    public static final class Invocation {
+        /**
+         * リクエストID.
+         */
+        private final String requestId;
+        /**
+         * タイムアウトする時刻(エポックミリ秒).
+         */
+        private final long deadlineMillis;
+        /**
+         * 呼び出された関数のARN.
+         */
+        private final String invokedFunctionArn;
+        /**
+         * X-Rayのトレースヘッダ.
+         */
+        private final String traceId;
+        /**
+         * イベント(JSON).
+         */
+        private final byte[] payload;
+
+        Invocation(final String requestId, final long deadlineMillis, final String invokedFunctionArn, final String traceId, final byte[] payload) {
+            this.requestId = requestId;
+            this.deadlineMillis = deadlineMillis;
+            this.invokedFunctionArn = invokedFunctionArn;
+            this.traceId = traceId;
+            this.payload = payload;
+        }
+
+        // ================================
+        // GETTER
+        // ================================
+        public String getRequestId() {
+            return this.requestId;
+        }
+        public long getDeadlineMillis() {
+            return this.deadlineMillis;
+        }
+        public String getInvokedFunctionArn() {
+            return this.invokedFunctionArn;
+        }
+        public String getTraceId() {
+            return this.traceId;
+        }
+        public byte[] getPayload() {
+            return this.payload;
+        }
+    }
+
+    /**
+     * Runtime APIのベースURL(http://ホスト:ポート/2018-06-01/runtime).
+     */
+    private final String baseUrl;
+    /**
+     * HttpClient.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param runtimeApi Runtime APIのホストとポート(環境変数AWS_LAMBDA_RUNTIME_APIの値)
+     */
+    public LambdaRuntimeApiClient(final String runtimeApi) {
+        this.baseUrl = "http://" + runtimeApi + "/" + API_VERSION + "/runtime";
+        // Runtime APIはHTTP/1.1のみ対応している
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    /**
+     * 次のイベントを取得する(イベントが届くまで待機する).
+     *
+     * @return イベント
+     * @throws IOException 通信に失敗した場合
+     */
+    public Invocation next() throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(this.baseUrl + "/invocation/next"))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = this.send(request);
+        if (response.statusCode() != 200) {
+            throw new IOException("Runtime API /invocation/next returned " + response.statusCode());
+        }
+        String requestId = response.headers().firstValue("Lambda-Runtime-Aws-Request-Id")
+                .orElseThrow(() -> new IOException("Runtime API /invocation/next returned no request id"));
+        long deadlineMillis = response.headers().firstValue("Lambda-Runtime-Deadline-Ms")
+                .map(Long::parseLong)
+                .orElse(Long.MAX_VALUE);
+        return new Invocation(requestId,
+                deadlineMillis,
+                response.headers().firstValue("Lambda-Runtime-Invoked-Function-Arn").orElse(null),
+                response.headers().firstValue("Lambda-Runtime-Trace-Id").orElse(null),
+                response.body());
+    }
+
+    /**
+     * 処理結果を報告する.
+     *
+     * @param requestId リクエストID
+     * @param payload 処理結果(JSON)
+     * @throws IOException 通信に失敗した場合
+     */
+    public void postResponse(final String requestId, final byte[] payload) throws IOException {
+        this.post("/invocation/" + requestId + "/response", payload, null);
+    }
+
+    /**
+     * 呼び出しの処理中に発生したエラーを報告する.
+     *
+     * @param requestId リクエストID
+     * @param error 発生した例外
+     * @throws IOException 通信に失敗した場合
+     */
+    public void postInvocationError(final String requestId, final Throwable error) throws IOException {
+        this.post("/invocation/" + requestId + "/error", toErrorPayload(error), error.getClass().getName());
+    }
+
+    /**
+     * 初期化中に発生したエラーを報告する.
+     *
+     * @param error 発生した例外
+     * @throws IOException 通信に失敗した場合
+     */
+    public void postInitError(final Throwable error) throws IOException {
+        this.post("/init/error", toErrorPayload(error), error.getClass().getName());
+    }
+
+    /**
+     * POSTリクエストを送信する.
+     *
+     * @param path パス
+     * @param payload 本文
+     * @param errorType エラー種別(エラー報告以外はnull)
+     * @throws IOException 通信に失敗した、または202以外が返却された場合
+     */
+    private void post(final String path, final byte[] payload, final String errorType) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(this.baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload));
+        if (errorType != null) {
+            request.header(FUNCTION_ERROR_TYPE_HEADER, errorType);
+        }
+        HttpResponse<byte[]> response = this.send(request.build());
+        if (response.statusCode() != 202) {
+            throw new IOException("Runtime API " + path + " returned " + response.statusCode());
+        }
+    }
+
+    /**
+     * リクエストを送信する.
+     *
+     * @param request リクエスト
+     * @return レスポンス
+     * @throws IOException 通信に失敗した場合
+     */
+    private HttpResponse<byte[]> send(final HttpRequest request) throws IOException {
+        try {
+            return this.httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling Runtime API " + request.uri().getPath(), e);
+        }
+    }
+
+    /**
+     * Runtime APIのエラー報告の形式({"errorMessage": ..., "errorType": ...})に変換する.
+     *
+     * @param error 発生した例外
+     * @return JSON
+     * @throws IOException
+     */
+    private static byte[] toErrorPayload(final Throwable error) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("errorMessage", error.getMessage() != null ? error.getMessage() : "");
+            generator.writeStringField("errorType", error.getClass().getName());
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,103 @@
+package copel.sesproductpackage.line.runtime;
+
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * カスタムランタイムでハンドラに渡すContext.
+ * 呼び出し毎の値はRuntime APIのヘッダから、関数の設定値はLambdaが設定する環境変数から取得する.
+ * カスタムランタイムでは標準出力がそのままCloudWatch Logsに送られるため、ログは標準出力へ出力する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class RuntimeContext implements Context {
+    /**
+     * 標準出力へ出力するLogger.
+     */
+    private static final LambdaLogger STDOUT_LOGGER = new LambdaLogger() {
+        @Override
+        public void log(final String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public void log(final byte[] message) {
+            System.out.println(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    /**
+     * 呼び出し1回分のイベント.
+     */
+    private final LambdaRuntimeApiClient.Invocation invocation;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param invocation 呼び出し1回分のイベント
+     */
+    public RuntimeContext(final LambdaRuntimeApiClient.Invocation invocation) {
+        this.invocation = invocation;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return this.invocation.getRequestId();
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return System.getenv("AWS_LAMBDA_LOG_GROUP_NAME");
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return System.getenv("AWS_LAMBDA_LOG_STREAM_NAME");
+    }
+
+    @Override
+    public String getFunctionName() {
+        return System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return System.getenv("AWS_LAMBDA_FUNCTION_VERSION");
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return this.invocation.getInvokedFunctionArn();
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, this.invocation.getDeadlineMillis() - System.currentTimeMillis()));
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        String memorySize = System.getenv("AWS_LAMBDA_FUNCTION_MEMORY_SIZE");
+        return memorySize != null ? Integer.parseInt(memorySize) : 0;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return STDOUT_LOGGER;
+    }
+}
@@ -0,0 +1,25 @@
+package copel.sesproductpackage.line.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * SQSのメッセージに載せきれない大きなデータの保存先.
+ * 本番ではS3、単体テストやローカル実行ではファイルシステムを使用する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public interface BlobStore {
+    /**
+     * データを保存する. 同じキーで保存済みの場合は上書きする.
+     *
+     * @param key キー(「/」区切りのパス)
+     * @param content 内容(呼び出し元で閉じること)
+     * @param contentLength 内容のバイト数
+     * @param contentType Content-Type
+     * @return 保存先を示すURI文字列(SQSのメッセージに参照として載せる)
+     * @throws IOException 保存に失敗した場合
+     */
+    String put(String key, InputStream content, long contentLength, String contentType) throws IOException;
+}
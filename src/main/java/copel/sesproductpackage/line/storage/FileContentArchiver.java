@@ -0,0 +1,229 @@
+package copel.sesproductpackage.line.storage;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.OptionalLong;
+
+import copel.sesproductpackage.line.client.LineApiClient;
+
+/**
+ * LINEで送信されたファイルの内容を、受信時にBlobStoreへ保存する.
+ * LINEのコンテンツ取得API(/v2/bot/message/{messageId}/content)のレスポンスを固定サイズのバッファ経由で
+ * そのままBlobStoreへ流し込み、流しながらSHA-256を計算する. ファイル全体をメモリに読み込まないため、
+ * ファイルの大きさによらずメモリ使用量は一定となる.
+ * LINEのコンテンツは一定期間で削除されるため、後続処理が後から取得できない場合に備えて保存する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class FileContentArchiver {
+    /**
+     * 保存するファイルのキーの接頭辞.
+     */
+    private static final String KEY_PREFIX = "file-content/";
+    /**
+     * 読み込みのバッファサイズ.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Content-Typeが不明な場合の値.
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * 保存したファイル.
+     */
+    public static final class ArchivedFile {
+        /**
+         * 保存先を示すURI文字列.
+         */
+        private final String location;
+        /**
+         * バイト数.
+         */
+        private final long size;
+        /**
+         * SHA-256(16進数).
+         */
+        private final String sha256;
+        /**
+         * Content-Type.
+         */
+        private final String contentType;
+
+        ArchivedFile(final String location, final long size, final String sha256, final String contentType) {
+            this.location = location;
+            this.size = size;
+            this.sha256 = sha256;
+            this.contentType = contentType;
+        }
+
+        public String getLocation() {
+            return this.location;
+        }
+        public long getSize() {
+            return this.size;
+        }
+        public String getSha256() {
+            return this.sha256;
+        }
+        public String getContentType() {
+            return this.contentType;
+        }
+    }
+
+    /**
+     * 保存先.
+     */
+    private final BlobStore blobStore;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param blobStore 保存先
+     */
+    public FileContentArchiver(final BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * ファイルの内容をLINEから取得し、BlobStoreへ保存する.
+     * キーはメッセージIDから決めるため、同じイベントが再送されても同じオブジェクトを上書きするだけになる.
+     *
+     * @param lineApiClient LINE APIのクライアント
+     * @param messageId メッセージID(ファイルID)
+     * @param fileName ファイル名(キーの拡張子に使用する)
+     * @param fileSize Webhookで通知されたバイト数(Content-Lengthが無い場合に使用する. 不明なら0)
+     * @param channelAccessToken LINE Messaging APIのChannel Access Token
+     * @return 保存したファイル
+     * @throws IOException 取得・保存に失敗した場合(コンテンツが削除済みの場合を含む)
+     */
+    public ArchivedFile archive(final LineApiClient lineApiClient, final String messageId, final String fileName,
+            final long fileSize, final String channelAccessToken) throws IOException {
+        HttpResponse<InputStream> response = lineApiClient.getContent(messageId, channelAccessToken);
+        try (DigestingInputStream content = new DigestingInputStream(new BufferedInputStream(response.body(), BUFFER_SIZE))) {
+            if (response.statusCode() != 200) {
+                throw new IOException("LINE content API returned " + response.statusCode() + " for message " + messageId);
+            }
+
+            // BlobStoreへはバイト数を指定して流し込むため、Content-Length(無ければWebhookのファイルサイズ)が必要
+            OptionalLong contentLength = response.headers().firstValueAsLong("Content-Length");
+            long length = contentLength.isPresent() ? contentLength.getAsLong() : fileSize;
+            if (!contentLength.isPresent() && length <= 0) {
+                throw new IOException("Content length of message " + messageId + " is unknown");
+            }
+            String contentType = response.headers().firstValue("Content-Type").orElse(DEFAULT_CONTENT_TYPE);
+
+            String location = this.blobStore.put(KEY_PREFIX + messageId + extensionOf(fileName), content, length, contentType);
+            if (content.getCount() != length) {
+                throw new IOException("内容のバイト数が一致しません: expected=" + length + ", actual=" + content.getCount());
+            }
+            return new ArchivedFile(location, length, content.getSha256(), contentType);
+        }
+    }
+
+    /**
+     * ファイル名から拡張子(「.」を含む小文字の英数字)を取り出す.
+     *
+     * @param fileName ファイル名
+     * @return 拡張子(無い、または英数字以外を含む場合は空文字)
+     */
+    static String extensionOf(final String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1 || fileName.length() - dot > 11) {
+            return "";
+        }
+        String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (int i = 0; i < extension.length(); i++) {
+            char c = extension.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')) {
+                return "";
+            }
+        }
+        return "." + extension;
+    }
+
+    /**
+     * 読み込んだバイト数とSHA-256を計算しながら読み込むストリーム.
+     */
+    private static final class DigestingInputStream extends FilterInputStream {
+        /**
+         * SHA-256.
+         */
+        private final MessageDigest digest;
+        /**
+         * 読み込んだバイト数.
+         */
+        private long count;
+
+        DigestingInputStream(final InputStream in) {
+            super(in);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256は全てのJava実行環境で提供される
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.digest.update((byte) b);
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.digest.update(b, off, n);
+                this.count += n;
+            }
+            return n;
+        }
+
+        /**
+         * 読み飛ばした内容もハッシュに含めるため、読み込んで捨てる.
+         */
+        @Override
+        public long skip(final long n) throws IOException {
+            byte[] discard = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = this.read(discard, 0, (int) Math.min(discard.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        String getSha256() {
+            return HexFormat.of().formatHex(this.digest.digest());
+        }
+    }
+}
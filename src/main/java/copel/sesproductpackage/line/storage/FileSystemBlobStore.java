@@ -0,0 +1,51 @@
+package copel.sesproductpackage.line.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * ローカルのディレクトリへ保存するBlobStore(単体テスト・ローカル実行用).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class FileSystemBlobStore implements BlobStore {
+    /**
+     * 保存先のディレクトリ.
+     */
+    private final Path root;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param root 保存先のディレクトリ
+     */
+    public FileSystemBlobStore(final Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public String put(final String key, final InputStream content, final long contentLength, final String contentType) throws IOException {
+        Path target = this.root.resolve(key).normalize();
+        if (!target.startsWith(this.root.normalize())) {
+            throw new IOException("保存先のディレクトリ外のキーは指定できません: " + key);
+        }
+        Files.createDirectories(target.getParent());
+
+        // 書き込み途中のファイルを読まれないよう、一時ファイルに書き込んでから置き換える
+        Path temp = Files.createTempFile(target.getParent(), ".blob", ".tmp");
+        try {
+            long written = Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (written != contentLength) {
+                throw new IOException("内容のバイト数が一致しません: expected=" + contentLength + ", actual=" + written);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return target.toUri().toString();
+    }
+}
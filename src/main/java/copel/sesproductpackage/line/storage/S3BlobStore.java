@@ -0,0 +1,202 @@
+package copel.sesproductpackage.line.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import copel.sesproductpackage.line.client.AwsCredentialsProviders;
+
+/**
+ * S3のバケットへ保存するBlobStore.
+ * URLConnectionのHTTPクライアントはリクエストボディをメモリに読み込んでから送信するため、
+ * {@value #PART_SIZE}バイトを超える内容はマルチパートアップロードで同じ大きさのパートに分けて送信し、
+ * 内容の大きさによらずメモリ使用量をパート1つ分に抑える.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class S3BlobStore implements BlobStore {
+    /**
+     * マルチパートアップロードのパートの大きさ(最後のパート以外. S3の下限は5MiB).
+     */
+    static final int PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * S3クライアントのリージョン(クライアントを初回保存時に生成する場合のみ).
+     */
+    private final Region region;
+    /**
+     * S3クライアント(リージョン指定の場合は初回保存時に生成する).
+     */
+    private volatile S3Client s3Client;
+    /**
+     * バケット名.
+     */
+    private final String bucket;
+
+    /**
+     * コンストラクタ.
+     * 大きな原文が無いリクエストではS3を使用しないため、クライアントは初回保存時に生成する.
+     *
+     * @param region リージョン
+     * @param bucket バケット名
+     */
+    public S3BlobStore(final Region region, final String bucket) {
+        this.region = region;
+        this.bucket = bucket;
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param s3Client S3クライアント
+     * @param bucket バケット名
+     */
+    public S3BlobStore(final S3Client s3Client, final String bucket) {
+        this.region = null;
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public String put(final String key, final InputStream content, final long contentLength, final String contentType) throws IOException {
+        if (contentLength > PART_SIZE) {
+            this.putMultipart(key, content, contentLength, contentType);
+            return "s3://" + this.bucket + "/" + key;
+        }
+
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(this.bucket)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+        try {
+            // パート1つ分以下の大きさのため、1回のリクエストで送信する
+            this.getS3Client().putObject(request, RequestBody.fromInputStream(content, contentLength));
+        } catch (SdkException e) {
+            throw new IOException("S3への保存に失敗しました: s3://" + this.bucket + "/" + key, e);
+        }
+        return "s3://" + this.bucket + "/" + key;
+    }
+
+    /**
+     * マルチパートアップロードで保存する.
+     * パート1つ分のバッファを使い回し、読み込んだパートを送信してから次のパートを読み込む.
+     * 途中で失敗した場合はアップロードを中止し、送信済みのパートを残さない.
+     *
+     * @param key キー
+     * @param content 内容
+     * @param contentLength 内容のバイト数
+     * @param contentType Content-Type
+     * @throws IOException 読み込み・保存に失敗した場合
+     */
+    private void putMultipart(final String key, final InputStream content, final long contentLength, final String contentType) throws IOException {
+        S3Client client = this.getS3Client();
+        String uploadId;
+        try {
+            uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(this.bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .build()).uploadId();
+        } catch (SdkException e) {
+            throw new IOException("S3への保存に失敗しました: s3://" + this.bucket + "/" + key, e);
+        }
+
+        try {
+            byte[] buffer = new byte[PART_SIZE];
+            List<CompletedPart> parts = new ArrayList<CompletedPart>((int) ((contentLength + PART_SIZE - 1) / PART_SIZE));
+            for (long uploaded = 0; uploaded < contentLength; ) {
+                int partLength = (int) Math.min(PART_SIZE, contentLength - uploaded);
+                if (content.readNBytes(buffer, 0, partLength) != partLength) {
+                    throw new IOException("内容がContent-Lengthより短いため保存できません: expected=" + contentLength
+                            + ", s3://" + this.bucket + "/" + key);
+                }
+                int partNumber = parts.size() + 1;
+                UploadPartResponse response = client.uploadPart(UploadPartRequest.builder()
+                        .bucket(this.bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) partLength)
+                        .build(),
+                        // 再試行時は同じバッファから読み直す
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, partLength), partLength, contentType));
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+                uploaded += partLength;
+            }
+            client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(this.bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            this.abortMultipart(key, uploadId, e);
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("S3への保存に失敗しました: s3://" + this.bucket + "/" + key, e);
+        }
+    }
+
+    /**
+     * マルチパートアップロードを中止する.
+     * 中止にも失敗した場合は、元の例外に付加して呼び出し元へ返す(未完了のパートはバケットのライフサイクルルールで削除する).
+     *
+     * @param key キー
+     * @param uploadId アップロードID
+     * @param cause 中止の原因となった例外
+     */
+    private void abortMultipart(final String key, final String uploadId, final Exception cause) {
+        try {
+            this.getS3Client().abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(this.bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * S3クライアントを返却する(未生成なら生成する).
+     *
+     * @return S3クライアント
+     */
+    private S3Client getS3Client() {
+        S3Client client = this.s3Client;
+        if (client == null) {
+            synchronized (this) {
+                client = this.s3Client;
+                if (client == null) {
+                    client = S3Client.builder()
+                            .region(this.region)
+                            .credentialsProvider(AwsCredentialsProviders.create())
+                            .httpClientBuilder(UrlConnectionHttpClient.builder())
+                            .build();
+                    this.s3Client = client;
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,60 @@
+package copel.sesproductpackage.line.unit;
+
+/**
+ * SQSメッセージBodyのエンコード方式.
+ * メッセージ属性「{@value #ATTRIBUTE_NAME}」で受信側に通知する(属性が無い場合はIdentity).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public enum MessageEncoding {
+    /**
+     * JSONをそのままBodyとする.
+     */
+    Identity("identity"),
+    /**
+     * UTF-8のJSONをdeflate(zlib形式)で圧縮し、Base64でエンコードしたものをBodyとする.
+     */
+    DeflateBase64("deflate+base64");
+
+    /**
+     * エンコード方式を通知するメッセージ属性名.
+     */
+    public static final String ATTRIBUTE_NAME = "content-encoding";
+
+    /**
+     * 属性値.
+     */
+    private String code;
+
+    MessageEncoding(final String code) {
+        this.code = code;
+    }
+
+    /**
+     * 引数のcodeに対応するEnumを返却します.
+     *
+     * @param code 属性値
+     * @return MessageEncoding(nullの場合はIdentity、不明な値の場合はnull)
+     */
+    public static MessageEncoding getEnum(final String code) {
+        if (code == null) {
+            return Identity;
+        }
+        for (MessageEncoding encoding : values()) {
+            if (encoding.code.equalsIgnoreCase(code.trim())) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * このオブジェクトがもつcodeを返却します.
+     *
+     * @return 属性値
+     */
+    public String getCode() {
+        return this.code;
+    }
+}
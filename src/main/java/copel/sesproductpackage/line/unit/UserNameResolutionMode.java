@@ -0,0 +1,61 @@
+package copel.sesproductpackage.line.unit;
+
+/**
+ * 送信者名(from_name)・グループ名(from_group_name)の解決方式.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public enum UserNameResolutionMode {
+    /**
+     * LINE APIで送信者名を取得してからSQSへ送信する(従来の動作).
+     */
+    Sync("sync"),
+    /**
+     * 全イベントの送信者名を互いに並行して取得し、制限時間内に取得できたもののみSQSメッセージに含める.
+     * 並行するのは名前の取得同士であり、SQSへの送信は全件の取得(または制限時間)を待ってから行う.
+     * 間に合わなかった送信者名はfrom_nameをnullとして送信し、取得結果は次回以降のためにキャッシュする.
+     */
+    Parallel("parallel"),
+    /**
+     * 送信者名を取得せず、from_nameをnullとして即座にSQSへ送信する(後続処理がfrom_idから解決する).
+     * 名前が存在しない場合と区別できるよう、メッセージにname_resolution_deferred: trueを含める.
+     */
+    Deferred("deferred");
+
+    /**
+     * 設定値.
+     */
+    private String code;
+
+    UserNameResolutionMode(final String code) {
+        this.code = code;
+    }
+
+    /**
+     * 引数のcodeに対応するEnumを返却します.
+     *
+     * @param code 設定値
+     * @return UserNameResolutionMode(未設定・不明な値の場合はSync)
+     */
+    public static UserNameResolutionMode getEnum(final String code) {
+        if (code == null) {
+            return Sync;
+        }
+        for (UserNameResolutionMode mode : values()) {
+            if (mode.code.equalsIgnoreCase(code.trim())) {
+                return mode;
+            }
+        }
+        return Sync;
+    }
+
+    /**
+     * このオブジェクトがもつcodeを返却します.
+     *
+     * @return 設定値
+     */
+    public String getCode() {
+        return this.code;
+    }
+}
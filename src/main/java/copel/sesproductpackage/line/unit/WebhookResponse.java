@@ -0,0 +1,134 @@
+package copel.sesproductpackage.line.unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * Webhookに対するレスポンス.
+ * レスポンスの種類は固定のため、ボディ・ヘッダ・API Gatewayのプロキシ統合のレスポンス(JSON)はクラスのロード時に1度だけ作成し、
+ * リクエスト毎には作成しない.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public enum WebhookResponse {
+    /**
+     * リクエストボディが空.
+     */
+    EmptyBody(400, "{\"message\": \"リクエストボディが空です。\"}"),
+    /**
+     * 署名の検証に失敗.
+     */
+    InvalidSignature(401, "{\"message\": \"署名の検証に失敗しました。\"}"),
+    /**
+     * リクエスト内容が不正.
+     */
+    InvalidRequest(400, "{\"message\": \"LINE Messaging APIからWebhookで送信されたリクエスト内容が不正です。\"}"),
+    /**
+     * メッセージ・ファイル以外のイベント(follow・join・unsend等)のみ.
+     */
+    NotMessage(200, "{\"message\": \"メッセージ送信またはファイル送信以外のリクエストを受け付けたため、処理を終了します。\"}"),
+    /**
+     * SQSへの送信に失敗.
+     */
+    SqsFailure(500, "{\"message\": \"SQSへのメッセージ送信に失敗しました。\"}"),
+    /**
+     * 正常終了.
+     */
+    Success(200, "{\"message\": \"正常に終了しました。\"}");
+
+    /**
+     * Content-Type.
+     */
+    private static final String CONTENT_TYPE = "application/json";
+
+    /**
+     * ステータスコード.
+     */
+    private final int statusCode;
+    /**
+     * レスポンスボディ(JSON).
+     */
+    private final String body;
+    /**
+     * レスポンスヘッダ(変更不可).
+     */
+    private final Map<String, String> headers;
+    /**
+     * API Gatewayのプロキシ統合のレスポンス(UTF-8のJSON).
+     */
+    private final byte[] proxyResponse;
+
+    WebhookResponse(final int statusCode, final String body) {
+        this.statusCode = statusCode;
+        this.body = body;
+        this.headers = Map.of("Content-Type", CONTENT_TYPE);
+        this.proxyResponse = encodeProxyResponse(statusCode, body);
+    }
+
+    /**
+     * API Gatewayのプロキシ統合のレスポンス形式のJSONを作成する.
+     *
+     * @param statusCode ステータスコード
+     * @param body レスポンスボディ
+     * @return UTF-8のJSON
+     */
+    private static byte[] encodeProxyResponse(final int statusCode, final String body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", statusCode);
+            generator.writeObjectFieldStart("headers");
+            generator.writeStringField("Content-Type", CONTENT_TYPE);
+            generator.writeEndObject();
+            generator.writeStringField("body", body);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * API Gatewayのプロキシ統合のレスポンスを書き込む.
+     *
+     * @param output 出力先
+     * @throws IOException
+     */
+    public void writeTo(final OutputStream output) throws IOException {
+        output.write(this.proxyResponse);
+    }
+
+    /**
+     * このオブジェクトがもつステータスコードを返却します.
+     *
+     * @return ステータスコード
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * このオブジェクトがもつレスポンスボディを返却します.
+     *
+     * @return レスポンスボディ(JSON)
+     */
+    public String getBody() {
+        return this.body;
+    }
+
+    /**
+     * このオブジェクトがもつレスポンスヘッダを返却します.
+     *
+     * @return レスポンスヘッダ(変更不可)
+     */
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+}
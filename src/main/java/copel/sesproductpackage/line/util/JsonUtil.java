@@ -0,0 +1,76 @@
+package copel.sesproductpackage.line.util;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * JSONの読み書きに使用するJacksonの共有インスタンス.
+ * ObjectMapperの生成はコストが高く、生成毎にシリアライザ・デシリアライザのキャッシュも失われるため、
+ * コンテナ内で1度だけ設定・生成し、スレッドセーフなObjectReader/ObjectWriterとして使い回す.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class JsonUtil {
+    /**
+     * 共有のObjectMapper(設定変更を防ぐため外部には公開しない).
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    /**
+     * JsonNodeへの読み込みに使用するReader.
+     */
+    private static final ObjectReader TREE_READER = OBJECT_MAPPER.reader();
+    /**
+     * JSON文字列への書き込みに使用するWriter.
+     */
+    private static final ObjectWriter WRITER = OBJECT_MAPPER.writer();
+
+    private JsonUtil() {
+    }
+
+    /**
+     * JSON文字列をJsonNodeとして読み込む.
+     *
+     * @param json JSON文字列
+     * @return ルートのJsonNode
+     * @throws IOException JSONが不正な場合
+     */
+    public static JsonNode readTree(final String json) throws IOException {
+        return TREE_READER.readTree(json);
+    }
+
+    /**
+     * 任意の型を読み込むReaderを返却する.
+     *
+     * @param type 読み込む型
+     * @return Reader
+     */
+    public static ObjectReader readerFor(final Class<?> type) {
+        return TREE_READER.forType(type);
+    }
+
+    /**
+     * 共有のWriterを返却する.
+     *
+     * @return Writer
+     */
+    public static ObjectWriter writer() {
+        return WRITER;
+    }
+
+    /**
+     * ストリーミングAPI(JsonParser/JsonGenerator)の生成に使用するJsonFactoryを返却する.
+     *
+     * @return JsonFactory
+     */
+    public static JsonFactory getJsonFactory() {
+        return OBJECT_MAPPER.getFactory();
+    }
+}
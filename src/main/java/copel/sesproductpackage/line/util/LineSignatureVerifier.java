@@ -0,0 +1,129 @@
+package copel.sesproductpackage.line.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * LINE Messaging APIのWebhookに付与される署名(X-Line-Signature)の検証クラス.
+ * 署名はチャネルシークレットを鍵としたリクエストボディのHMAC-SHA256をBase64エンコードしたもの.
+ * 鍵の準備はコンテナ内で1度だけ行い、Macはスレッド毎に使い回す.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class LineSignatureVerifier {
+    /**
+     * 署名のアルゴリズム.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+    /**
+     * HMAC-SHA256の出力長(バイト).
+     */
+    private static final int SIGNATURE_LENGTH = 32;
+
+    /**
+     * チャネルシークレットの鍵(未設定ならnull).
+     */
+    private final SecretKeySpec secretKey;
+    /**
+     * スレッド毎に初期化済みのMac.
+     */
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param channelSecret LINE Messaging APIのChannel Secret(null・空文字なら検証しない)
+     */
+    public LineSignatureVerifier(final String channelSecret) {
+        if (channelSecret == null || channelSecret.isEmpty()) {
+            this.secretKey = null;
+            this.mac = null;
+        } else {
+            this.secretKey = new SecretKeySpec(channelSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            this.mac = ThreadLocal.withInitial(this::createMac);
+        }
+    }
+
+    /**
+     * 署名検証が有効か判定.
+     *
+     * @return Channel Secretが設定されていればtrue
+     */
+    public boolean isEnabled() {
+        return this.secretKey != null;
+    }
+
+    /**
+     * リクエストボディの署名を検証する.
+     *
+     * @param body リクエストボディ(UTF-8)
+     * @param signature X-Line-Signatureヘッダの値
+     * @return 署名が正しければtrue
+     */
+    public boolean verify(final byte[] body, final String signature) {
+        if (!this.isEnabled() || body == null || signature == null) {
+            return false;
+        }
+
+        byte[] expected;
+        try {
+            expected = Base64.getDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (expected.length != SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        // doFinalでMacは初期状態に戻るため、そのまま次の検証に使い回せる
+        byte[] actual = this.mac.get().doFinal(body);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * リクエストボディの署名を検証する.
+     *
+     * @param body リクエストボディ
+     * @param signature X-Line-Signatureヘッダの値
+     * @return 署名が正しければtrue
+     */
+    public boolean verify(final String body, final String signature) {
+        return body != null && this.verify(body.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    /**
+     * リクエストボディの署名を生成する.
+     * 単体テスト・ベンチマークで正しい署名を作成するために使用する.
+     *
+     * @param body リクエストボディ(UTF-8)
+     * @return X-Line-Signatureヘッダの値
+     */
+    public String sign(final byte[] body) {
+        if (!this.isEnabled()) {
+            throw new IllegalStateException("Channel secret is not configured");
+        }
+        return Base64.getEncoder().encodeToString(this.mac.get().doFinal(body));
+    }
+
+    /**
+     * チャネルシークレットで初期化したMacを生成する.
+     *
+     * @return Mac
+     */
+    private Mac createMac() {
+        try {
+            Mac newMac = Mac.getInstance(ALGORITHM);
+            newMac.init(this.secretKey);
+            return newMac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
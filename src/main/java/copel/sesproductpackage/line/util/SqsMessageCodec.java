@@ -0,0 +1,132 @@
+package copel.sesproductpackage.line.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import copel.sesproductpackage.line.unit.MessageEncoding;
+
+/**
+ * SQSメッセージBodyのエンコード・デコード.
+ * 送信側は{@link #encode(byte[])}の結果をBodyとし、メッセージ属性「{@value MessageEncoding#ATTRIBUTE_NAME}」に
+ * {@link MessageEncoding#getCode()}を設定する. 受信側は属性を指定してReceiveMessageし、{@link #decode(Message)}でJSONに戻す.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class SqsMessageCodec {
+    /**
+     * 圧縮・展開時のバッファサイズ.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /**
+     * SQSメッセージBodyの最大サイズ(バイト).
+     */
+    private static final int MAX_MESSAGE_SIZE = 256 * 1024;
+    /**
+     * 展開時に許容する圧縮率の上限(JSONのdeflateでは通常10倍未満).
+     */
+    private static final int MAX_EXPANSION_RATIO = 16;
+    /**
+     * 展開後のバイト数の上限. 細工されたBody(圧縮爆弾)で受信側のメモリを使い切らないよう、超えた時点で展開を打ち切る.
+     */
+    static final int MAX_INFLATED_SIZE = MAX_MESSAGE_SIZE * MAX_EXPANSION_RATIO;
+
+    private SqsMessageCodec() {
+    }
+
+    /**
+     * UTF-8のJSONをdeflateで圧縮し、Base64でエンコードする({@link MessageEncoding#DeflateBase64}).
+     *
+     * @param json JSON(UTF-8)
+     * @return エンコード後のBody
+     */
+    public static String encode(final byte[] json) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 2));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 受信したメッセージのBodyをJSON文字列に戻す.
+     *
+     * @param message 受信したメッセージ(メッセージ属性「{@value MessageEncoding#ATTRIBUTE_NAME}」を含めて受信すること)
+     * @return JSON
+     * @throws IllegalArgumentException 不明なエンコード方式、壊れたBody、または展開後のサイズが上限を超える場合
+     */
+    public static String decode(final Message message) {
+        Map<String, MessageAttributeValue> attributes = message.messageAttributes();
+        MessageAttributeValue encoding = attributes != null ? attributes.get(MessageEncoding.ATTRIBUTE_NAME) : null;
+        return decode(message.body(), encoding != null ? encoding.stringValue() : null);
+    }
+
+    /**
+     * メッセージBodyをJSON文字列に戻す.
+     *
+     * @param body メッセージBody
+     * @param encoding メッセージ属性「{@value MessageEncoding#ATTRIBUTE_NAME}」の値(nullならエンコードなし)
+     * @return JSON
+     * @throws IllegalArgumentException 不明なエンコード方式、壊れたBody、または展開後のサイズが上限を超える場合
+     */
+    public static String decode(final String body, final String encoding) {
+        MessageEncoding messageEncoding = MessageEncoding.getEnum(encoding);
+        if (messageEncoding == null) {
+            throw new IllegalArgumentException("未対応のエンコード方式です: " + encoding);
+        }
+        switch (messageEncoding) {
+        case DeflateBase64:
+            return new String(inflate(Base64.getDecoder().decode(body)), StandardCharsets.UTF_8);
+        case Identity:
+        default:
+            return body;
+        }
+    }
+
+    /**
+     * deflateで圧縮されたバイト列を展開する.
+     *
+     * @param compressed 圧縮済みのバイト列
+     * @return 展開後のバイト列
+     * @throws IllegalArgumentException 壊れている、または展開後のサイズが{@link #MAX_INFLATED_SIZE}を超える場合
+     */
+    private static byte[] inflate(final byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(compressed.length * 4, MAX_INFLATED_SIZE));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("圧縮されたBodyが途中で終わっています。");
+                }
+                if (out.size() + length > MAX_INFLATED_SIZE) {
+                    throw new IllegalArgumentException("展開後のBodyが上限(" + MAX_INFLATED_SIZE + "バイト)を超えています。");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("圧縮されたBodyを展開できません。", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package copel.sesproductpackage.line.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 1行1件のJSONでログを出力するslf4jのラッパー.
+ * 出力する項目は、ログレベルが有効な場合にのみ組み立てる(無効なレベルのログは文字列の連結もシリアライズも行わない).
+ * 出力例: {"level":"INFO","message":"SQSメッセージ送信成功","requestId":"c6af9ac6-...","count":2}
+ *
+ * @author 鈴木一矢
+ *
+ */
+public final class StructuredLogger {
+    /**
+     * マスクの対象とするJSONの項目名(Webhookのメッセージ本文).
+     */
+    private static final String REDACTED_FIELD_NAME = "text";
+    /**
+     * 処理中のリクエストID(エントリポイントで設定し、同じスレッドのログに出力する).
+     */
+    private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<String>();
+
+    /**
+     * ログの項目.
+     */
+    public static final class Fields {
+        /**
+         * 出力先のJsonGenerator.
+         */
+        private final JsonGenerator generator;
+
+        private Fields(final JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        /**
+         * 文字列の項目を追加する(nullの場合は出力しない).
+         *
+         * @param name 項目名
+         * @param value 値
+         * @return this
+         */
+        public Fields put(final String name, final String value) {
+            if (value != null) {
+                try {
+                    this.generator.writeStringField(name, value);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 数値の項目を追加する.
+         *
+         * @param name 項目名
+         * @param value 値
+         * @return this
+         */
+        public Fields put(final String name, final long value) {
+            try {
+                this.generator.writeNumberField(name, value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        /**
+         * 真偽値の項目を追加する.
+         *
+         * @param name 項目名
+         * @param value 値
+         * @return this
+         */
+        public Fields put(final String name, final boolean value) {
+            try {
+                this.generator.writeBooleanField(name, value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        /**
+         * 文字列の配列の項目を追加する.
+         *
+         * @param name 項目名
+         * @param values 値
+         * @return this
+         */
+        public Fields put(final String name, final List<String> values) {
+            try {
+                this.generator.writeArrayFieldStart(name);
+                for (String value : values) {
+                    this.generator.writeString(value);
+                }
+                this.generator.writeEndArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        /**
+         * 利用者が入力した文章の項目を追加する.
+         * マスクする場合は本文を出力せず、文字数のみを出力する(nullの場合は出力しない).
+         *
+         * @param name 項目名
+         * @param text 文章
+         * @param redact マスクするか
+         * @return this
+         */
+        public Fields putText(final String name, final String text, final boolean redact) {
+            if (text == null) {
+                return this;
+            }
+            return redact ? this.put(name, redacted(text.length())) : this.put(name, text);
+        }
+
+        /**
+         * JSONをそのまま入れ子の項目として追加する.
+         * マスクする場合は、項目名が{@value #REDACTED_FIELD_NAME}の文字列(利用者が入力した文章)を文字数のみに置き換える.
+         *
+         * @param name 項目名
+         * @param json JSON(UTF-8. 解析に成功したものであること)
+         * @param redact マスクするか
+         * @return this
+         */
+        public Fields putJson(final String name, final byte[] json, final boolean redact) {
+            try (JsonParser parser = JsonUtil.getJsonFactory().createParser(json)) {
+                this.generator.writeFieldName(name);
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (redact && token == JsonToken.VALUE_STRING && REDACTED_FIELD_NAME.equals(parser.getCurrentName())) {
+                        this.generator.writeString(redacted(parser.getTextLength()));
+                    } else {
+                        this.generator.copyCurrentEvent(parser);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * 出力先のLogger.
+     */
+    private final Logger logger;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param logger 出力先のLogger
+     */
+    public StructuredLogger(final Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * クラスに対応するLoggerを返却する.
+     *
+     * @param clazz クラス
+     * @return Logger
+     */
+    public static StructuredLogger getLogger(final Class<?> clazz) {
+        return new StructuredLogger(LoggerFactory.getLogger(clazz));
+    }
+
+    /**
+     * このスレッドで処理中のリクエストIDを設定する(nullで解除する).
+     *
+     * @param requestId リクエストID
+     */
+    public static void setRequestId(final String requestId) {
+        if (requestId == null) {
+            REQUEST_ID.remove();
+        } else {
+            REQUEST_ID.set(requestId);
+        }
+    }
+
+    /**
+     * このスレッドで処理中のリクエストIDを返却する.
+     *
+     * @return リクエストID(未設定ならnull)
+     */
+    public static String getRequestId() {
+        return REQUEST_ID.get();
+    }
+
+    /**
+     * 指定した割合で抽選する(本文等の大きなログを一部のリクエストのみ出力する場合に使用する).
+     *
+     * @param rate 割合(0.0～1.0. 0以下なら常にfalse、1以上なら常にtrue)
+     * @return 当選した場合true
+     */
+    public static boolean sample(final double rate) {
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * DEBUGレベルが有効かを返却する.
+     *
+     * @return 有効ならtrue
+     */
+    public boolean isDebugEnabled() {
+        return this.logger.isDebugEnabled();
+    }
+
+    /**
+     * INFOレベルが有効かを返却する.
+     *
+     * @return 有効ならtrue
+     */
+    public boolean isInfoEnabled() {
+        return this.logger.isInfoEnabled();
+    }
+
+    /**
+     * DEBUGレベルのログを出力する.
+     *
+     * @param message メッセージ
+     * @param fields 項目を追加する処理(レベルが有効な場合のみ呼び出す. 不要ならnull)
+     */
+    public void debug(final String message, final Consumer<Fields> fields) {
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug(toJson("DEBUG", message, fields, null));
+        }
+    }
+
+    /**
+     * INFOレベルのログを出力する.
+     *
+     * @param message メッセージ
+     * @param fields 項目を追加する処理(レベルが有効な場合のみ呼び出す. 不要ならnull)
+     */
+    public void info(final String message, final Consumer<Fields> fields) {
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info(toJson("INFO", message, fields, null));
+        }
+    }
+
+    /**
+     * WARNレベルのログを出力する.
+     *
+     * @param message メッセージ
+     * @param fields 項目を追加する処理(レベルが有効な場合のみ呼び出す. 不要ならnull)
+     */
+    public void warn(final String message, final Consumer<Fields> fields) {
+        if (this.logger.isWarnEnabled()) {
+            this.logger.warn(toJson("WARN", message, fields, null));
+        }
+    }
+
+    /**
+     * 例外を伴うWARNレベルのログを出力する(処理は継続できる一時的なエラー等).
+     *
+     * @param message メッセージ
+     * @param error 発生した例外(種類とメッセージを出力する)
+     * @param fields 項目を追加する処理(レベルが有効な場合のみ呼び出す. 不要ならnull)
+     */
+    public void warn(final String message, final Throwable error, final Consumer<Fields> fields) {
+        if (this.logger.isWarnEnabled()) {
+            this.logger.warn(toJson("WARN", message, fields, error));
+        }
+    }
+
+    /**
+     * ERRORレベルのログを出力する.
+     *
+     * @param message メッセージ
+     * @param error 発生した例外(種類とメッセージを出力する)
+     * @param fields 項目を追加する処理(レベルが有効な場合のみ呼び出す. 不要ならnull)
+     */
+    public void error(final String message, final Throwable error, final Consumer<Fields> fields) {
+        if (this.logger.isErrorEnabled()) {
+            this.logger.error(toJson("ERROR", message, fields, error));
+        }
+    }
+
+    /**
+     * マスク後の文字列を返却する.
+     *
+     * @param length 元の文字数
+     * @return マスク後の文字列
+     */
+    private static String redacted(final int length) {
+        return "[redacted " + length + " chars]";
+    }
+
+    /**
+     * ログ1件分のJSONを作成する.
+     *
+     * @param level ログレベル
+     * @param message メッセージ
+     * @param fields 項目を追加する処理
+     * @param error 発生した例外
+     * @return JSON
+     */
+    private static String toJson(final String level, final String message, final Consumer<Fields> fields, final Throwable error) {
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("level", level);
+            generator.writeStringField("message", message);
+            String requestId = REQUEST_ID.get();
+            if (requestId != null) {
+                generator.writeStringField("requestId", requestId);
+            }
+            if (fields != null) {
+                fields.accept(new Fields(generator));
+            }
+            if (error != null) {
+                generator.writeStringField("errorType", error.getClass().getName());
+                generator.writeStringField("errorMessage", String.valueOf(error.getMessage()));
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -4,68 +4,616 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.regions.Region;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.amazonaws.services.sqs.model.SendMessageResult;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import com.fasterxml.jackson.databind.JsonNode;
 
+import copel.sesproductpackage.line.cache.EventDeduplicator;
+import copel.sesproductpackage.line.client.LineApiClient;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.CoalescingSqsSender;
 import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
-import copel.sesproductpackage.line.entity.SesInfoRegisterRequestSqsEntity;
+import copel.sesproductpackage.line.storage.FileContentArchiver;
+import copel.sesproductpackage.line.storage.FileSystemBlobStore;
+import copel.sesproductpackage.line.unit.UserNameResolutionMode;
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+import copel.sesproductpackage.line.util.StructuredLogger;
 
 public class LambdaHandlerTest {
 
     @Mock private Context context;
     @Mock private APIGatewayProxyRequestEvent requestEvent;
-    @Mock private LineMessagingApiWebhookEntity webhookEntity;
-    @Mock private SesInfoRegisterRequestSqsEntity sqsEntity;
-    @Mock private SendMessageResult sendMessageResult;
+    @Mock private SqsClient sqsClient;
 
     private LambdaHandler lambdaHandler;
 
+    private static final String TWO_MESSAGES_BODY = "{\"events\": ["
+            + "{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}},"
+            + "{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user456\"}, \"message\": {\"type\": \"text\", \"text\": \"World\"}}"
+            + "]}";
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
         lambdaHandler = new LambdaHandler();
+        lambdaHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+        // 署名の無いボディを送信するため、Channel Secretが未設定の場合に署名の無いリクエストを受け付ける
+        lambdaHandler.setAllowUnsignedRequests(true);
+        // メトリクスは検証するテストのみ出力先を差し替えて確認し、それ以外は破棄する
+        lambdaHandler.setMetricsSink(line -> { });
 
         // Mocking context
         when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
 
-        // Mock environment variables
-        System.setProperty("LINE_CHANNEL_ACCESS_TOKEN", "dummy_token");
-        System.setProperty("SQS_QUEUE_URL_SES_AI_REGISTER", "dummy_queue_url");
+        // SQSクライアントをモックに置き換え(テスト環境ではキューURLの環境変数は未設定)
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER"), sqsClient);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId("msg" + entry.id()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+
+        // LINE APIを呼び出さないよう送信者名をキャッシュに投入
+        LineMessagingApiWebhookEntity.getUserNameCache().put("user123", "Test User");
+        LineMessagingApiWebhookEntity.getUserNameCache().put("user456", "Test User2");
+        LineMessagingApiWebhookEntity.getGroupNameCache().put("group123", "SES案件共有");
 
         // Mocking request event
         when(requestEvent.getHttpMethod()).thenReturn("POST");
         when(requestEvent.getPath()).thenReturn("/webhook");
     }
 
+    @AfterEach
+    public void tearDown() {
+        SqsClientRegistry.clear();
+    }
+
     @Test
     public void testHandleRequest_ValidMessage() throws Exception {
         // Arrange
-        String requestBody = "{\"events\": [{\"type\": \"message\", \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
         when(requestEvent.getBody()).thenReturn(requestBody);
 
-        when(webhookEntity.isValid()).thenReturn(true);
-        when(webhookEntity.isMessage()).thenReturn(true);
-        when(webhookEntity.isFile()).thenReturn(false);
-        when(webhookEntity.isGroup()).thenReturn(false);
-        when(webhookEntity.getUserId()).thenReturn("user123");
-        when(webhookEntity.getUserName(anyString())).thenReturn("Test User");
-        when(sqsEntity.sendMessage()).thenReturn(sendMessageResult);
-        when(sendMessageResult.getMessageId()).thenReturn("msg123");
-
         // Act
         APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
 
         // Assert
         assertEquals(200, response.getStatusCode());
         assertEquals("{\"message\": \"正常に終了しました。\"}", response.getBody());
+        verify(sqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testHandleRequest_GroupMessageIncludesGroupName() throws Exception {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"group\", \"groupId\": \"group123\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        JsonNode body = sentBodies().get(0);
+        assertEquals("group123", body.path("from_group").asText());
+        assertEquals("SES案件共有", body.path("from_group_name").asText());
+        assertEquals("Test User", body.path("from_name").asText());
+    }
+
+    @Test
+    public void testHandleRequest_MultipleEvents() throws Exception {
+        // Arrange
+        String requestBody = "{\"events\": ["
+                + "{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}},"
+                + "{\"type\": \"follow\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}},"
+                + "{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user456\"}, \"message\": {\"type\": \"text\", \"text\": \"World\"}}"
+                + "]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(2, captor.getValue().entries().size());
+    }
+
+    @Test
+    public void testHandleRequest_RedeliveredEventIsNotSentTwice() throws Exception {
+        // Arrange
+        String first = "{\"events\": [{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZR\","
+                + " \"deliveryContext\": {\"isRedelivery\": false},"
+                + " \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        String redelivered = first.replace("\"isRedelivery\": false", "\"isRedelivery\": true");
+        when(requestEvent.getBody()).thenReturn(first, redelivered);
+
+        // Act
+        APIGatewayProxyResponseEvent firstResponse = lambdaHandler.handleRequest(requestEvent, context);
+        APIGatewayProxyResponseEvent secondResponse = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, firstResponse.getStatusCode());
+        assertEquals(200, secondResponse.getStatusCode());
+        verify(sqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testHandleRequest_DuplicateEventInOneDeliveryIsSentOnce() throws Exception {
+        // Arrange: 同じイベントIDのイベントが1つの配信に2件含まれる
+        String event = "{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC7ZA\","
+                + " \"deliveryContext\": {\"isRedelivery\": false},"
+                + " \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}";
+        when(requestEvent.getBody()).thenReturn("{\"events\": [" + event + "," + event + "]}");
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().entries().size());
+    }
+
+    @Test
+    public void testHandleRequest_FailedEventIsSentAgainOnRedelivery() throws Exception {
+        // Arrange
+        String first = "{\"events\": [{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC3ZS\","
+                + " \"deliveryContext\": {\"isRedelivery\": false},"
+                + " \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        String redelivered = first.replace("\"isRedelivery\": false", "\"isRedelivery\": true");
+        when(requestEvent.getBody()).thenReturn(first, redelivered);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+            .thenThrow(new RuntimeException("SQS error"))
+            .thenReturn(SendMessageBatchResponse.builder().successful(SendMessageBatchResultEntry.builder().id("0").messageId("msg0").build()).build());
+
+        // Act
+        APIGatewayProxyResponseEvent firstResponse = lambdaHandler.handleRequest(requestEvent, context);
+        APIGatewayProxyResponseEvent secondResponse = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(500, firstResponse.getStatusCode());
+        assertEquals(200, secondResponse.getStatusCode());
+        verify(sqsClient, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testHandleRequest_SentChunkIsNotSentAgainAfterLaterChunkFails() throws Exception {
+        // Arrange: 11件のイベント(10件目までが1チャンク目、11件目が2チャンク目)
+        StringBuilder events = new StringBuilder();
+        for (int i = 0; i < 11; i++) {
+            events.append(i == 0 ? "" : ",").append("{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC4").append((char) ('A' + i))
+                    .append("\", \"deliveryContext\": {\"isRedelivery\": false},")
+                    .append(" \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello").append(i).append("\"}}");
+        }
+        String first = "{\"events\": [" + events + "]}";
+        String redelivered = first.replace("\"isRedelivery\": false", "\"isRedelivery\": true");
+        when(requestEvent.getBody()).thenReturn(first, redelivered);
+        List<Integer> sentSizes = new ArrayList<>();
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            sentSizes.add(request.entries().size());
+            if (sentSizes.size() == 2) {
+                throw new RuntimeException("SQS error");
+            }
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId("msg" + entry.id()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+
+        // Act
+        APIGatewayProxyResponseEvent firstResponse = lambdaHandler.handleRequest(requestEvent, context);
+        APIGatewayProxyResponseEvent secondResponse = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert: 再送では送信できなかった11件目のみを送信する
+        assertEquals(500, firstResponse.getStatusCode());
+        assertEquals(200, secondResponse.getStatusCode());
+        assertEquals(List.of(10, 1, 1), sentSizes);
+    }
+
+    @Test
+    public void testHandleRequest_ConcurrentInvocationsAreCoalesced() throws Exception {
+        // Arrange: 同時に処理中の2つの呼び出しのメッセージを1回のSendMessageBatchにまとめる
+        try (CoalescingSqsSender coalescingSqsSender = new CoalescingSqsSender(Duration.ofMillis(200), 10)) {
+            lambdaHandler.setCoalescingSqsSender(coalescingSqsSender);
+            APIGatewayProxyRequestEvent secondEvent = mock(APIGatewayProxyRequestEvent.class);
+            when(secondEvent.getHttpMethod()).thenReturn("POST");
+            when(secondEvent.getPath()).thenReturn("/webhook");
+            when(requestEvent.getBody()).thenReturn("{\"events\": [{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC5ZA\","
+                    + " \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}");
+            when(secondEvent.getBody()).thenReturn("{\"events\": [{\"type\": \"message\", \"webhookEventId\": \"01FZ74A0TDDPYRVKNK77XKC5ZB\","
+                    + " \"source\": {\"type\": \"user\", \"userId\": \"user456\"}, \"message\": {\"type\": \"text\", \"text\": \"World\"}}]}");
+
+            // Act
+            CompletableFuture<APIGatewayProxyResponseEvent> first = CompletableFuture.supplyAsync(() -> lambdaHandler.handleRequest(requestEvent, context));
+            CompletableFuture<APIGatewayProxyResponseEvent> second = CompletableFuture.supplyAsync(() -> lambdaHandler.handleRequest(secondEvent, context));
+
+            // Assert
+            assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(200, second.get(5, TimeUnit.SECONDS).getStatusCode());
+            ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+            verify(sqsClient, times(1)).sendMessageBatch(captor.capture());
+            assertEquals(2, captor.getValue().entries().size());
+        }
+    }
+
+    @Test
+    public void testHandleRequest_LargeMessageIsOffloaded(@TempDir Path dir) throws Exception {
+        // Arrange
+        String text = "エンジニア情報".repeat(100);
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"" + text + "\"}}]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        lambdaHandler.setRawContentBlobStore(new FileSystemBlobStore(dir), 1024);
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        JsonNode body = sentBodies().get(0);
+        assertTrue(body.path("raw_content").isMissingNode());
+        assertTrue(Files.exists(Path.of(URI.create(body.path("raw_content_location").asText()))));
+    }
+
+    @Test
+    public void testHandleRequest_FileContentIsArchived(@TempDir Path dir) throws Exception {
+        // Arrange
+        byte[] content = "スキルシートの内容".getBytes(StandardCharsets.UTF_8);
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"},"
+                + " \"message\": {\"type\": \"file\", \"id\": \"325708\", \"fileName\": \"skill.xlsx\", \"fileSize\": " + content.length + "}}]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        lambdaHandler.setFileContentArchiver(new FileContentArchiver(new FileSystemBlobStore(dir)));
+        LineApiClient lineApiClient = mock(LineApiClient.class);
+        HttpResponse<InputStream> contentResponse = contentResponse(200, content);
+        when(lineApiClient.getContent(eq("325708"), any())).thenReturn(contentResponse);
+
+        // Act
+        APIGatewayProxyResponseEvent response = handleWithLineApiClient(lineApiClient);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        JsonNode body = sentBodies().get(0);
+        assertEquals("325708", body.path("file_id").asText());
+        assertArrayEquals(content, Files.readAllBytes(Path.of(URI.create(body.path("file_content_location").asText()))));
+        assertEquals(content.length, body.path("file_content_size").asLong());
+        assertEquals(64, body.path("file_content_sha256").asText().length());
+    }
+
+    @Test
+    public void testHandleRequest_FileArchiveFailureSendsFileIdOnly(@TempDir Path dir) throws Exception {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"},"
+                + " \"message\": {\"type\": \"file\", \"id\": \"325709\", \"fileName\": \"skill.pdf\", \"fileSize\": 10}}]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        lambdaHandler.setFileContentArchiver(new FileContentArchiver(new FileSystemBlobStore(dir)));
+        LineApiClient lineApiClient = mock(LineApiClient.class);
+        HttpResponse<InputStream> contentResponse = contentResponse(404, new byte[0]);
+        when(lineApiClient.getContent(eq("325709"), any())).thenReturn(contentResponse);
+        List<String> metricLines = new ArrayList<>();
+        lambdaHandler.setMetricsSink(metricLines::add);
+
+        // Act
+        APIGatewayProxyResponseEvent response = handleWithLineApiClient(lineApiClient);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        JsonNode body = sentBodies().get(0);
+        assertEquals("325709", body.path("file_id").asText());
+        assertTrue(body.path("file_content_location").isMissingNode());
+        assertEquals(1, JsonUtil.readTree(metricLines.get(0)).path("FileArchiveFailures").asLong());
+    }
+
+    @Test
+    public void testHandleRequest_FileArchiveSdkFailureSendsFileIdOnly() throws Exception {
+        // Arrange: 保存先がSDKの実行時例外で失敗する
+        byte[] content = "スキルシートの内容".getBytes(StandardCharsets.UTF_8);
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"},"
+                + " \"message\": {\"type\": \"file\", \"id\": \"325710\", \"fileName\": \"skill.xlsx\", \"fileSize\": " + content.length + "}}]}";
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        lambdaHandler.setFileContentArchiver(new FileContentArchiver((key, in, contentLength, contentType) -> {
+            throw SdkClientException.create("Unable to execute HTTP request");
+        }));
+        LineApiClient lineApiClient = mock(LineApiClient.class);
+        HttpResponse<InputStream> contentResponse = contentResponse(200, content);
+        when(lineApiClient.getContent(eq("325710"), any())).thenReturn(contentResponse);
+
+        // Act
+        APIGatewayProxyResponseEvent response = handleWithLineApiClient(lineApiClient);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        JsonNode body = sentBodies().get(0);
+        assertEquals("325710", body.path("file_id").asText());
+        assertTrue(body.path("file_content_location").isMissingNode());
+    }
+
+    @Test
+    public void testPrime_DoesNotSendMessages() {
+        // Act
+        lambdaHandler.prime();
+
+        // Assert
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testAfterRestore_RebuildsSqsClient() throws Exception {
+        // Act
+        lambdaHandler.afterRestore(null);
+
+        // Assert: スナップショット時点のクライアントは破棄される
+        verify(sqsClient).close();
+        assertNotSame(sqsClient, SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER")));
+    }
+
+    @Test
+    public void testHandleRequest_RejectionResponsesAreShared() {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn("{\"events\": [{\"type\": \"follow\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}}]}");
+
+        // Act
+        APIGatewayProxyResponseEvent first = lambdaHandler.handleRequest(requestEvent, context);
+        APIGatewayProxyResponseEvent second = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, first.getStatusCode());
+        assertEquals("application/json", first.getHeaders().get("Content-Type"));
+        assertSame(first, second);
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testHandleRequest_EmitsOneMetricDocumentPerInvocation() throws Exception {
+        // Arrange
+        List<String> documents = new ArrayList<>();
+        lambdaHandler.setMetricsSink(documents::add);
+        when(context.getAwsRequestId()).thenReturn("req-1");
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+
+        // Act
+        lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(1, documents.size());
+        JsonNode emf = JsonUtil.readTree(documents.get(0));
+        JsonNode directive = emf.path("_aws").path("CloudWatchMetrics").get(0);
+        assertEquals("SesAiAssistant", directive.path("Namespace").asText());
+        assertEquals("[[\"Service\"],[\"Service\",\"Outcome\"]]", directive.path("Dimensions").toString());
+        assertEquals("LineMessageReceiver", emf.path("Service").asText());
+        assertEquals("Success", emf.path("Outcome").asText());
+        assertEquals("req-1", emf.path("requestId").asText());
+        assertEquals(1, emf.path("Invocations").asLong());
+        assertEquals(2, emf.path("Events").asLong());
+        assertEquals(2, emf.path("MessageEvents").asLong());
+        assertEquals(2, emf.path("Enqueued.LineMessage").asLong());
+        assertEquals(2, emf.path("UserNameLookups").asLong());
+        assertFalse(emf.has("UserNameCacheMisses"));
+        assertFalse(emf.has("Enqueued.LineFile"));
+        for (String stage : new String[] {"SignatureVerification", "Parse", "Dedup", "NameResolution", "MessageBuild", "SqsSend", "Total"}) {
+            assertTrue(emf.path(stage).isNumber(), stage);
+        }
+        List<String> definedMetrics = new ArrayList<>();
+        directive.path("Metrics").forEach(definition -> definedMetrics.add(definition.path("Name").asText()));
+        assertTrue(definedMetrics.containsAll(List.of("Total", "SqsSend", "Enqueued.LineMessage", "Invocations")));
+    }
+
+    @Test
+    public void testHandleRequest_MetricOutcomeIsRejectionBranch() throws Exception {
+        // Arrange
+        List<String> documents = new ArrayList<>();
+        lambdaHandler.setMetricsSink(documents::add);
+        when(requestEvent.getBody()).thenReturn("{\"events\": [{\"type\": \"follow\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}}]}");
+
+        // Act
+        lambdaHandler.handleRequest(requestEvent, context);
+        when(requestEvent.getBody()).thenReturn(null);
+        lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        JsonNode notMessage = JsonUtil.readTree(documents.get(0));
+        assertEquals("NotMessage", notMessage.path("Outcome").asText());
+        assertEquals(1, notMessage.path("Events").asLong());
+        assertFalse(notMessage.has("SqsSend"));
+        JsonNode emptyBody = JsonUtil.readTree(documents.get(1));
+        assertEquals("EmptyBody", emptyBody.path("Outcome").asText());
+        assertEquals(1, emptyBody.path("Invocations").asLong());
+        assertFalse(emptyBody.has("Parse"));
+    }
+
+    @Test
+    public void testHandleRequest_MetricsCountDuplicates() throws Exception {
+        // Arrange
+        List<String> documents = new ArrayList<>();
+        lambdaHandler.setMetricsSink(documents::add);
+        when(requestEvent.getBody()).thenReturn("{\"events\": [{\"type\": \"message\", \"webhookEventId\": \"01DUP\","
+                + " \"deliveryContext\": {\"isRedelivery\": true}, \"source\": {\"type\": \"user\", \"userId\": \"user123\"},"
+                + " \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}");
+
+        // Act
+        lambdaHandler.handleRequest(requestEvent, context);
+        lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertFalse(JsonUtil.readTree(documents.get(0)).has("DuplicateEvents"));
+        JsonNode redelivered = JsonUtil.readTree(documents.get(1));
+        assertEquals(1, redelivered.path("DuplicateEvents").asLong());
+        assertEquals("Success", redelivered.path("Outcome").asText());
+        assertFalse(redelivered.has("SqsSend"));
+    }
+
+    @Test
+    public void testHandleRequest_BodyLogIsSampledAndRedacted() {
+        // Arrange
+        org.slf4j.Logger slf4jLogger = mock(org.slf4j.Logger.class);
+        when(slf4jLogger.isInfoEnabled()).thenReturn(true);
+        when(context.getAwsRequestId()).thenReturn("req-1");
+        lambdaHandler.setLogger(new StructuredLogger(slf4jLogger));
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+
+        // Act: 抽出しない
+        lambdaHandler.setBodyLogging(0.0, true);
+        lambdaHandler.handleRequest(requestEvent, context);
+        List<String> notSampled = infoLines(slf4jLogger);
+
+        // Act: 抽出し、本文をマスクする
+        lambdaHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+        lambdaHandler.setBodyLogging(1.0, true);
+        lambdaHandler.handleRequest(requestEvent, context);
+        List<String> redacted = infoLines(slf4jLogger);
+
+        // Act: 抽出し、本文をマスクしない
+        lambdaHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+        lambdaHandler.setBodyLogging(1.0, false);
+        lambdaHandler.handleRequest(requestEvent, context);
+        List<String> plain = infoLines(slf4jLogger);
+
+        // Assert
+        assertTrue(notSampled.stream().noneMatch(line -> line.contains("リクエストBody")));
+        assertTrue(notSampled.stream().noneMatch(line -> line.contains("Hello")));
+        assertTrue(notSampled.stream().allMatch(line -> line.contains("\"requestId\":\"req-1\"")));
+        assertTrue(redacted.stream().anyMatch(line -> line.contains("リクエストBody") && line.contains("[redacted 5 chars]")));
+        assertTrue(redacted.stream().noneMatch(line -> line.contains("Hello")));
+        assertTrue(plain.stream().anyMatch(line -> line.contains("リクエストBody") && line.contains("Hello")));
+    }
+
+    @Test
+    public void testHandleRequest_InvalidSignature() {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        lambdaHandler.setSignatureVerifier(verifier);
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        when(requestEvent.getHeaders()).thenReturn(Map.of("X-Line-Signature", verifier.sign("forged".getBytes(StandardCharsets.UTF_8))));
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(401, response.getStatusCode());
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testHandleRequest_ValidSignature() {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"こんにちは\"}}]}";
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        lambdaHandler.setSignatureVerifier(verifier);
+        when(requestEvent.getBody()).thenReturn(requestBody);
+        when(requestEvent.getHeaders()).thenReturn(Map.of("x-line-signature", verifier.sign(requestBody.getBytes(StandardCharsets.UTF_8))));
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+    }
+
+    @Test
+    public void testHandleRequest_Base64EncodedBody() {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"こんにちは\"}}]}";
+        byte[] bodyBytes = requestBody.getBytes(StandardCharsets.UTF_8);
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        lambdaHandler.setSignatureVerifier(verifier);
+        when(requestEvent.getBody()).thenReturn(Base64.getEncoder().encodeToString(bodyBytes));
+        when(requestEvent.getIsBase64Encoded()).thenReturn(true);
+        when(requestEvent.getHeaders()).thenReturn(Map.of("x-line-signature", verifier.sign(bodyBytes)));
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert: デコードしたボディで署名を検証し、SQSへ送信する
+        assertEquals(200, response.getStatusCode());
+        verify(sqsClient).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testHandleRequest_MissingChannelSecret() {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        lambdaHandler.setSignatureVerifier(new LineSignatureVerifier(null));
+        lambdaHandler.setAllowUnsignedRequests(false);
+        when(requestEvent.getBody()).thenReturn(requestBody);
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(401, response.getStatusCode());
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testHandleRequest_UnsignedRequestIsRejectedByDefault() {
+        // Arrange: 環境変数で明示しない限り、署名の無いリクエストは受け付けない
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        LambdaHandler defaultHandler = new LambdaHandler();
+        defaultHandler.setMetricsSink(line -> { });
+        when(requestEvent.getBody()).thenReturn(requestBody);
+
+        // Act
+        APIGatewayProxyResponseEvent response = defaultHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(401, response.getStatusCode());
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testHandleRequest_MissingChannelSecretOptedOut() {
+        // Arrange
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        lambdaHandler.setSignatureVerifier(new LineSignatureVerifier(null));
+        lambdaHandler.setAllowUnsignedRequests(true);
+        when(requestEvent.getBody()).thenReturn(requestBody);
+
+        // Act
+        APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
     }
 
     @Test
@@ -73,7 +621,6 @@ public class LambdaHandlerTest {
         // Arrange
         String requestBody = "{\"events\": [{\"type\": \"message\", \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
         when(requestEvent.getBody()).thenReturn(requestBody);
-        when(webhookEntity.isValid()).thenReturn(false);
 
         // Act
         APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
@@ -81,6 +628,7 @@ public class LambdaHandlerTest {
         // Assert
         assertEquals(400, response.getStatusCode());
         assertEquals("{\"message\": \"LINE Messaging APIからWebhookで送信されたリクエスト内容が不正です。\"}", response.getBody());
+        verifyNoInteractions(sqsClient);
     }
 
     @Test
@@ -88,8 +636,6 @@ public class LambdaHandlerTest {
         // Arrange
         String requestBody = "{\"events\": [{\"type\": \"join\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}}]}";
         when(requestEvent.getBody()).thenReturn(requestBody);
-        when(webhookEntity.isValid()).thenReturn(true);
-        when(webhookEntity.isMessage()).thenReturn(false);
 
         // Act
         APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
@@ -97,16 +643,15 @@ public class LambdaHandlerTest {
         // Assert
         assertEquals(200, response.getStatusCode());
         assertEquals("{\"message\": \"メッセージ送信またはファイル送信以外のリクエストを受け付けたため、処理を終了します。\"}", response.getBody());
+        verifyNoInteractions(sqsClient);
     }
 
     @Test
     public void testHandleRequest_SqsSendMessageError() throws Exception {
         // Arrange
-        String requestBody = "{\"events\": [{\"type\": \"message\", \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
+        String requestBody = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}, \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}";
         when(requestEvent.getBody()).thenReturn(requestBody);
-        when(webhookEntity.isValid()).thenReturn(true);
-        when(webhookEntity.isMessage()).thenReturn(true);
-        when(sqsEntity.sendMessage()).thenThrow(new RuntimeException("SQS Error"));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(new RuntimeException("SQS Error"));
 
         // Act
         APIGatewayProxyResponseEvent response = lambdaHandler.handleRequest(requestEvent, context);
@@ -115,4 +660,160 @@ public class LambdaHandlerTest {
         assertEquals(500, response.getStatusCode());
         assertEquals("{\"message\": \"SQSへのメッセージ送信に失敗しました。\"}", response.getBody());
     }
+
+    @Test
+    public void testHandleRequest_SyncUserNameWaitsForSlowProfile() throws Exception {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+        lambdaHandler.setUserNameResolver(slowProfile(500));
+
+        // Act
+        long elapsedMillis = measureMillis(() -> assertEquals(200, lambdaHandler.handleRequest(requestEvent, context).getStatusCode()));
+
+        // Assert: 2件分の取得を順番に待つ
+        assertTrue(elapsedMillis >= 1000, "elapsed=" + elapsedMillis);
+        assertEquals("Slow User", sentBodies().get(0).path("from_name").asText());
+        assertTrue(sentBodies().get(0).path("name_resolution_deferred").isMissingNode());
+    }
+
+    @Test
+    public void testHandleRequest_SyncUserNameIsBoundedByInvocationBudget() throws Exception {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+        lambdaHandler.setUserNameResolver(slowProfile(1000));
+        lambdaHandler.setUserNameResolutionBudgetMillis(300);
+
+        // Act
+        long elapsedMillis = measureMillis(() -> assertEquals(200, lambdaHandler.handleRequest(requestEvent, context).getStatusCode()));
+
+        // Assert: 期限を過ぎた後はLINE APIを待たず、キャッシュ済みの名前を使用する
+        assertTrue(elapsedMillis < 900, "elapsed=" + elapsedMillis);
+        List<JsonNode> bodies = sentBodies();
+        assertEquals("Test User", bodies.get(0).path("from_name").asText());
+        assertEquals("Test User2", bodies.get(1).path("from_name").asText());
+    }
+
+    @Test
+    public void testHandleRequest_ParallelUserNameIsBoundedByTimeout() throws Exception {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+        lambdaHandler.setUserNameResolver(slowProfile(1000));
+        lambdaHandler.setUserNameResolutionMode(UserNameResolutionMode.Parallel, 100);
+
+        // Act
+        long elapsedMillis = measureMillis(() -> assertEquals(200, lambdaHandler.handleRequest(requestEvent, context).getStatusCode()));
+
+        // Assert: 制限時間で打ち切り、送信者名はnullで送信する
+        assertTrue(elapsedMillis < 1000, "elapsed=" + elapsedMillis);
+        assertTrue(sentBodies().get(0).path("from_name").isNull());
+        assertTrue(sentBodies().get(1).path("from_name").isNull());
+    }
+
+    @Test
+    public void testHandleRequest_ParallelUserNameResolvedWithinTimeout() throws Exception {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+        lambdaHandler.setUserNameResolver(slowProfile(400));
+        lambdaHandler.setUserNameResolutionMode(UserNameResolutionMode.Parallel, 2000);
+
+        // Act
+        long elapsedMillis = measureMillis(() -> assertEquals(200, lambdaHandler.handleRequest(requestEvent, context).getStatusCode()));
+
+        // Assert: 2件分を並行して取得する(順番に取得すると800ミリ秒以上かかる)
+        assertTrue(elapsedMillis < 700, "elapsed=" + elapsedMillis);
+        assertEquals("Slow User", sentBodies().get(1).path("from_name").asText());
+    }
+
+    @Test
+    public void testHandleRequest_DeferredUserNameDoesNotCallProfile() throws Exception {
+        // Arrange
+        when(requestEvent.getBody()).thenReturn(TWO_MESSAGES_BODY);
+        AtomicInteger profileCalls = new AtomicInteger();
+        lambdaHandler.setUserNameResolver(requestEntity -> {
+            profileCalls.incrementAndGet();
+            return slowProfile(1000).apply(requestEntity);
+        });
+        lambdaHandler.setUserNameResolutionMode(UserNameResolutionMode.Deferred, 0);
+
+        // Act
+        long elapsedMillis = measureMillis(() -> assertEquals(200, lambdaHandler.handleRequest(requestEvent, context).getStatusCode()));
+
+        // Assert
+        assertTrue(elapsedMillis < 1000, "elapsed=" + elapsedMillis);
+        assertEquals(0, profileCalls.get());
+        assertTrue(sentBodies().get(0).path("from_name").isNull());
+        assertTrue(sentBodies().get(0).path("name_resolution_deferred").asBoolean());
+        assertEquals("user123", sentBodies().get(0).path("from_id").asText());
+    }
+
+    /**
+     * 応答に指定ミリ秒かかるLINEプロフィールAPIのスタブ.
+     */
+    private static Function<LineMessagingApiWebhookEntity, String> slowProfile(final long delayMillis) {
+        return requestEntity -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Slow User";
+        };
+    }
+
+    /**
+     * 処理時間(ミリ秒)を計測する.
+     * 初回のクラスロードの時間を含めないよう、メッセージ以外のイベントで1度ウォームアップしてから計測する.
+     */
+    private long measureMillis(final Runnable runnable) {
+        APIGatewayProxyRequestEvent warmUpEvent = new APIGatewayProxyRequestEvent()
+                .withBody("{\"events\": [{\"type\": \"follow\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}}]}");
+        lambdaHandler.handleRequest(warmUpEvent, context);
+        long start = System.nanoTime();
+        runnable.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * 出力されたINFOのログを取得し、記録をリセットする.
+     */
+    private static List<String> infoLines(final org.slf4j.Logger slf4jLogger) {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(slf4jLogger, atLeast(0)).info(captor.capture());
+        clearInvocations(slf4jLogger);
+        return captor.getAllValues();
+    }
+
+    private APIGatewayProxyResponseEvent handleWithLineApiClient(final LineApiClient lineApiClient) {
+        LineApiClient previous = LineApiClient.getDefault();
+        LineApiClient.setDefault(lineApiClient);
+        try {
+            return lambdaHandler.handleRequest(requestEvent, context);
+        } finally {
+            LineApiClient.setDefault(previous);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> contentResponse(final int statusCode, final byte[] content) {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        when(response.headers()).thenReturn(HttpHeaders.of(
+                Map.of("Content-Length", List.of(String.valueOf(content.length)), "Content-Type", List.of("application/pdf")),
+                (name, value) -> true));
+        when(response.body()).thenReturn(new ByteArrayInputStream(content));
+        return response;
+    }
+
+    /**
+     * SQSへ送信されたメッセージBodyを返却する.
+     */
+    private List<JsonNode> sentBodies() throws Exception {
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, atLeastOnce()).sendMessageBatch(captor.capture());
+        List<JsonNode> bodies = new ArrayList<>();
+        for (SendMessageBatchRequestEntry entry : captor.getValue().entries()) {
+            bodies.add(JsonUtil.readTree(entry.messageBody()));
+        }
+        return bodies;
+    }
 }
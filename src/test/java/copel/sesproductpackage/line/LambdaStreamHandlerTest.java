@@ -0,0 +1,225 @@
+package copel.sesproductpackage.line;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import software.amazon.awssdk.regions.Region;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import copel.sesproductpackage.line.cache.EventDeduplicator;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+
+public class LambdaStreamHandlerTest {
+
+    @Mock private Context context;
+    @Mock private SqsClient sqsClient;
+
+    private LambdaStreamHandler streamHandler;
+
+    private static final String MESSAGE_BODY = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"},"
+            + " \"message\": {\"type\": \"text\", \"text\": \"【案件】Java開発\"}}]}";
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        streamHandler = new LambdaStreamHandler();
+        streamHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+        // 署名の無いボディを送信するため、Channel Secretが未設定の場合に署名の無いリクエストを受け付ける
+        streamHandler.setAllowUnsignedRequests(true);
+        streamHandler.setMetricsSink(line -> { });
+
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER"), sqsClient);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId("msg" + entry.id()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+        LineMessagingApiWebhookEntity.getUserNameCache().put("user123", "Test User");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SqsClientRegistry.clear();
+    }
+
+    @Test
+    public void testHandleRequest_ValidMessage() throws Exception {
+        JsonNode response = invoke(apiGatewayEvent(MESSAGE_BODY, Map.of("Content-Type", "application/json"), false));
+
+        assertEquals(200, response.path("statusCode").asInt());
+        assertEquals("{\"message\": \"正常に終了しました。\"}", response.path("body").asText());
+        assertEquals("application/json", response.path("headers").path("Content-Type").asText());
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient).sendMessageBatch(captor.capture());
+        JsonNode sent = JsonUtil.readTree(captor.getValue().entries().get(0).messageBody());
+        assertEquals("【案件】Java開発", sent.path("raw_content").asText());
+        assertEquals("Test User", sent.path("from_name").asText());
+    }
+
+    @Test
+    public void testHandleRequest_SameResponseAsLambdaHandler() throws Exception {
+        String[] bodies = {
+            MESSAGE_BODY,
+            "{\"events\": [{\"type\": \"follow\", \"source\": {\"type\": \"user\", \"userId\": \"user123\"}}]}",
+            "{\"events\": [{\"type\": \"message\", \"message\": {\"type\": \"text\", \"text\": \"Hello\"}}]}",
+            "not json"
+        };
+        for (String body : bodies) {
+            LambdaHandler lambdaHandler = new LambdaHandler();
+            lambdaHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+            lambdaHandler.setAllowUnsignedRequests(true);
+            lambdaHandler.setMetricsSink(line -> { });
+            APIGatewayProxyResponseEvent expected = lambdaHandler.handleRequest(
+                    new APIGatewayProxyRequestEvent().withHttpMethod("POST").withPath("/webhook").withBody(body), context);
+
+            JsonNode actual = invoke(apiGatewayEvent(body, Map.of(), false));
+
+            assertEquals(expected.getStatusCode(), actual.path("statusCode").asInt(), body);
+            assertEquals(expected.getBody(), actual.path("body").asText(), body);
+        }
+    }
+
+    @Test
+    public void testHandleRequest_SignatureHeaderIsCaseInsensitive() throws Exception {
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        streamHandler.setSignatureVerifier(verifier);
+        String signature = verifier.sign(MESSAGE_BODY.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(200, invoke(apiGatewayEvent(MESSAGE_BODY, Map.of("X-Line-Signature", signature), false)).path("statusCode").asInt());
+        assertEquals(200, invoke(apiGatewayEvent(MESSAGE_BODY, Map.of("x-line-signature", signature), false)).path("statusCode").asInt());
+    }
+
+    @Test
+    public void testHandleRequest_InvalidSignature() throws Exception {
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        streamHandler.setSignatureVerifier(verifier);
+
+        JsonNode response = invoke(apiGatewayEvent(MESSAGE_BODY,
+                Map.of("x-line-signature", verifier.sign("forged".getBytes(StandardCharsets.UTF_8))), false));
+
+        assertEquals(401, response.path("statusCode").asInt());
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testHandleRequest_Base64EncodedBody() throws Exception {
+        LineSignatureVerifier verifier = new LineSignatureVerifier("channel_secret");
+        streamHandler.setSignatureVerifier(verifier);
+        byte[] body = MESSAGE_BODY.getBytes(StandardCharsets.UTF_8);
+
+        JsonNode response = invoke(apiGatewayEvent(Base64.getEncoder().encodeToString(body),
+                Map.of("x-line-signature", verifier.sign(body)), true));
+
+        assertEquals(200, response.path("statusCode").asInt());
+        verify(sqsClient).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testHandleRequest_Base64EncodedBodySameAsLambdaHandler() throws Exception {
+        String[] bodies = {
+            Base64.getEncoder().encodeToString(MESSAGE_BODY.getBytes(StandardCharsets.UTF_8)),
+            Base64.getEncoder().encodeToString("not json".getBytes(StandardCharsets.UTF_8)),
+            "not base64!"
+        };
+        for (String body : bodies) {
+            LambdaHandler lambdaHandler = new LambdaHandler();
+            lambdaHandler.setEventDeduplicator(new EventDeduplicator(Duration.ofHours(1), Duration.ofMinutes(1)));
+            lambdaHandler.setAllowUnsignedRequests(true);
+            lambdaHandler.setMetricsSink(line -> { });
+            APIGatewayProxyResponseEvent expected = lambdaHandler.handleRequest(new APIGatewayProxyRequestEvent()
+                    .withHttpMethod("POST").withPath("/webhook").withBody(body).withIsBase64Encoded(true), context);
+
+            JsonNode actual = invoke(apiGatewayEvent(body, Map.of(), true));
+
+            assertEquals(expected.getStatusCode(), actual.path("statusCode").asInt(), body);
+            assertEquals(expected.getBody(), actual.path("body").asText(), body);
+        }
+    }
+
+    @Test
+    public void testHandleRequest_EmptyBody() throws Exception {
+        JsonNode response = invoke(apiGatewayEvent(null, Map.of(), false));
+
+        assertEquals(400, response.path("statusCode").asInt());
+        assertEquals("{\"message\": \"リクエストボディが空です。\"}", response.path("body").asText());
+    }
+
+    @Test
+    public void testHandleRequest_MalformedEvent() throws Exception {
+        JsonNode response = invoke("{\"httpMethod\": \"POST\", \"body\": ".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(400, response.path("statusCode").asInt());
+        verifyNoInteractions(sqsClient);
+    }
+
+    @Test
+    public void testParseRequest_SkipsUnusedFields() throws Exception {
+        String event = "{\"resource\": \"/webhook\", \"multiValueHeaders\": {\"x-line-signature\": [\"ignored\"]},"
+                + " \"requestContext\": {\"identity\": {\"sourceIp\": \"203.0.113.1\"}, \"body\": \"ignored\"},"
+                + " \"headers\": {\"Host\": \"example.com\", \"X-LINE-SIGNATURE\": \"sig\", \"X-Null\": null},"
+                + " \"body\": \"{}\", \"httpMethod\": \"POST\", \"path\": \"/webhook\", \"stageVariables\": null}";
+
+        LambdaStreamHandler.ProxyRequest request = LambdaStreamHandler.parseRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("POST", request.httpMethod);
+        assertEquals("/webhook", request.path);
+        assertEquals("sig", request.signature);
+        assertEquals("{}", new String(request.body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPrimeSendsNothing() {
+        streamHandler.prime();
+
+        verifyNoInteractions(sqsClient);
+    }
+
+    /**
+     * API Gatewayのイベントを作成する.
+     */
+    private static byte[] apiGatewayEvent(final String body, final Map<String, String> headers, final boolean isBase64Encoded) throws Exception {
+        ObjectNode event = (ObjectNode) JsonUtil.readTree("{\"resource\": \"/webhook\", \"path\": \"/webhook\", \"httpMethod\": \"POST\","
+                + " \"requestContext\": {\"requestId\": \"req-1\", \"identity\": {\"sourceIp\": \"203.0.113.1\"}}}");
+        ObjectNode headerNode = event.putObject("headers");
+        headers.forEach(headerNode::put);
+        event.put("body", body);
+        event.put("isBase64Encoded", isBase64Encoded);
+        return JsonUtil.writer().writeValueAsBytes(event);
+    }
+
+    private JsonNode invoke(final byte[] event) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        streamHandler.handleRequest(new ByteArrayInputStream(event), output, context);
+        return JsonUtil.readTree(output.toString(StandardCharsets.UTF_8));
+    }
+}
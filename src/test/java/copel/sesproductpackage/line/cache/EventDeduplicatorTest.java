@@ -0,0 +1,149 @@
+package copel.sesproductpackage.line.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EventDeduplicatorTest {
+
+    private MutableClock clock;
+    private EventDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        deduplicator = new EventDeduplicator(Duration.ofMinutes(10), Duration.ofMinutes(1), clock);
+    }
+
+    @Test
+    void testTryClaim_ProcessedEvent() {
+        assertTrue(deduplicator.tryClaim("E1", false));
+        deduplicator.markProcessed("E1");
+
+        assertFalse(deduplicator.tryClaim("E1", true));
+        assertTrue(deduplicator.tryClaim("E2", true));
+        assertEquals(1, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void testTryClaim_InFlightEventIsNotClaimedTwice() {
+        // 同じ配信内の重複や、送信中の再送は確保できない
+        assertTrue(deduplicator.tryClaim("E1", false));
+        assertFalse(deduplicator.tryClaim("E1", false));
+        assertFalse(deduplicator.tryClaim("E1", true));
+        assertEquals(2, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void testTryClaim_ReleasedEventCanBeClaimedAgain() {
+        // 送信に失敗して解除したイベントは、再送で処理する
+        assertTrue(deduplicator.tryClaim("E1", false));
+        deduplicator.release("E1");
+        assertTrue(deduplicator.tryClaim("E1", true));
+
+        // 処理済みとして記録した後の解除は何もしない
+        deduplicator.markProcessed("E1");
+        deduplicator.release("E1");
+        assertFalse(deduplicator.tryClaim("E1", true));
+    }
+
+    @Test
+    void testTryClaim_NullEventIdIsNeverDuplicate() {
+        deduplicator.markProcessed(null);
+        assertTrue(deduplicator.tryClaim(null, true));
+        assertTrue(deduplicator.tryClaim(null, true));
+        assertEquals(0, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void testTryClaim_ExpiresAfterWindow() {
+        deduplicator.markProcessed("E1");
+        clock.advance(Duration.ofMinutes(10));
+        assertFalse(deduplicator.tryClaim("E1", true));
+
+        // 保持期間とバケット1つ分を過ぎたらバケットごと破棄される
+        clock.advance(Duration.ofMinutes(1));
+        assertTrue(deduplicator.tryClaim("E1", true));
+    }
+
+    @Test
+    void testTryClaim_PersistentStoreIsCheckedOnlyOnRedelivery() {
+        InMemoryDedupStore store = new InMemoryDedupStore();
+        store.put("E1", Duration.ofMinutes(10));
+        deduplicator.setPersistentStore(store);
+
+        assertTrue(deduplicator.tryClaim("E1", false));
+        assertEquals(0, store.containsCount.get());
+        deduplicator.release("E1");
+
+        assertFalse(deduplicator.tryClaim("E1", true));
+        assertEquals(1, store.containsCount.get());
+        // 永続ストアで処理済みと判定したイベントは確保しない
+        store.entries.clear();
+        assertTrue(deduplicator.tryClaim("E1", true));
+    }
+
+    @Test
+    void testMarkProcessed_WritesToPersistentStore() {
+        InMemoryDedupStore store = new InMemoryDedupStore();
+        deduplicator.setPersistentStore(store);
+        deduplicator.markProcessed("E1");
+
+        assertEquals(Duration.ofMinutes(10), store.entries.get("E1"));
+    }
+
+    private static class InMemoryDedupStore implements DedupStore {
+        private final Map<String, Duration> entries = new HashMap<>();
+        private final AtomicInteger containsCount = new AtomicInteger();
+
+        @Override
+        public boolean contains(final String eventId) {
+            containsCount.incrementAndGet();
+            return entries.containsKey(eventId);
+        }
+
+        @Override
+        public void put(final String eventId, final Duration ttl) {
+            entries.put(eventId, ttl);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private final AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+
+        void advance(final Duration duration) {
+            millis.addAndGet(duration.toMillis());
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package copel.sesproductpackage.line.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NameCacheTest {
+
+    private MutableClock clock;
+    private NameCache cache;
+    private AtomicInteger loadCount;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        cache = new NameCache(new LocalNameStore(2), Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ZERO, null, clock);
+        loadCount = new AtomicInteger();
+    }
+
+    @Test
+    void testGet_CachesLoadedName() throws Exception {
+        assertEquals("Taro", cache.get("U1", this::load));
+        assertEquals("Taro", cache.get("U1", this::load));
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    void testGet_ReloadsAfterTtl() throws Exception {
+        cache.get("U1", this::load);
+        clock.advance(Duration.ofMinutes(10));
+        cache.get("U1", this::load);
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testGet_NegativeCache() throws Exception {
+        assertNull(cache.get("missing", this::load));
+        assertNull(cache.get("missing", this::load));
+        assertEquals(1, loadCount.get());
+
+        // ネガティブキャッシュは短い有効期間で再取得する
+        clock.advance(Duration.ofMinutes(1));
+        cache.get("missing", this::load);
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testGet_ErrorIsNotCached() throws Exception {
+        assertThrows(IOException.class, () -> cache.get("error", this::load));
+        assertThrows(IOException.class, () -> cache.get("error", this::load));
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testGetIfPresent_ReturnsExpiredNameWithoutLoading() throws Exception {
+        assertNull(cache.getIfPresent("U1"));
+        cache.get("U1", this::load);
+        clock.advance(Duration.ofMinutes(10));
+
+        // 期限切れでも名前を返却し、LINE APIは呼び出さない
+        assertEquals("Taro", cache.getIfPresent("U1"));
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    void testGet_EvictsLeastRecentlyUsed() throws Exception {
+        cache.get("U1", this::load);
+        cache.get("U2", this::load);
+        cache.get("U1", this::load);
+        cache.get("U3", this::load);
+        assertEquals(3, loadCount.get());
+
+        // U2が最も長く参照されていないため破棄されている
+        cache.get("U1", this::load);
+        assertEquals(3, loadCount.get());
+        cache.get("U2", this::load);
+        assertEquals(4, loadCount.get());
+    }
+
+    @Test
+    void testGet_CollapsesConcurrentLoads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NameCache.NameLoader slowLoader = key -> {
+            loadCount.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "Taro";
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("U1", slowLoader));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> cache.get("U1", slowLoader));
+            Future<String> third = executor.submit(() -> cache.get("U1", slowLoader));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertEquals("Taro", first.get(5, TimeUnit.SECONDS));
+            assertEquals("Taro", second.get(5, TimeUnit.SECONDS));
+            assertEquals("Taro", third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loadCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGet_SecondTierStore() throws Exception {
+        LocalNameStore secondTier = new LocalNameStore(10);
+        secondTier.put("U9", new CachedName("Hanako", clock.millis() + 60_000));
+        cache.setSecondTierStore(secondTier);
+
+        assertEquals("Hanako", cache.get("U9", this::load));
+        assertEquals(0, loadCount.get());
+
+        // 取得した名前は2次キャッシュにも書き込まれる
+        cache.get("U1", this::load);
+        assertEquals("Taro", secondTier.get("U1").getName());
+    }
+
+    @Test
+    void testGet_RefreshAhead() throws Exception {
+        List<Runnable> refreshTasks = new ArrayList<>();
+        NameCache refreshingCache = new NameCache(new LocalNameStore(10), Duration.ofHours(24), Duration.ofMinutes(1),
+                Duration.ofHours(1), refreshTasks::add, clock);
+        AtomicInteger version = new AtomicInteger();
+        NameCache.NameLoader loader = key -> {
+            loadCount.incrementAndGet();
+            return "Group v" + version.incrementAndGet();
+        };
+
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+
+        // 先読み期間より前は再取得しない
+        clock.advance(Duration.ofHours(22));
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+        assertTrue(refreshTasks.isEmpty());
+
+        // 先読み期間に入ったら古い値を返しつつ、再取得は1回だけ予約する
+        clock.advance(Duration.ofMinutes(90));
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+        assertEquals(1, refreshTasks.size());
+        assertEquals(1, loadCount.get());
+
+        // 再取得が完了すると新しい値と有効期限になる
+        refreshTasks.get(0).run();
+        assertEquals("Group v2", refreshingCache.get("G1", loader));
+        clock.advance(Duration.ofHours(1));
+        assertEquals("Group v2", refreshingCache.get("G1", loader));
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testGet_RefreshAheadInline() throws Exception {
+        NameCache refreshingCache = new NameCache(new LocalNameStore(10), Duration.ofHours(24), Duration.ofMinutes(1),
+                Duration.ofHours(1), null, clock);
+        AtomicInteger version = new AtomicInteger();
+        List<Boolean> failNext = new ArrayList<>(List.of(false, true, false));
+        NameCache.NameLoader loader = key -> {
+            loadCount.incrementAndGet();
+            if (failNext.remove(0)) {
+                throw new IOException("LINE API error");
+            }
+            return "Group v" + version.incrementAndGet();
+        };
+
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+
+        // 先読み期間に入ったら呼び出し元で再取得し、失敗した場合は古い値を返す
+        clock.advance(Duration.ofMinutes(23 * 60 + 30));
+        assertEquals("Group v1", refreshingCache.get("G1", loader));
+        assertEquals(2, loadCount.get());
+
+        // 次の呼び出しで再取得に成功すると、新しい値と有効期限になる
+        assertEquals("Group v2", refreshingCache.get("G1", loader));
+        clock.advance(Duration.ofHours(1));
+        assertEquals("Group v2", refreshingCache.get("G1", loader));
+        assertEquals(3, loadCount.get());
+    }
+
+    /**
+     * テスト用のLINE API呼び出し.
+     */
+    private String load(final String key) throws IOException {
+        loadCount.incrementAndGet();
+        if ("missing".equals(key)) {
+            return null;
+        } else if ("error".equals(key)) {
+            throw new IOException("LINE API error");
+        }
+        return "U9".equals(key) ? "Hanako" : "Taro";
+    }
+
+    /**
+     * 任意に進められる時計.
+     */
+    private static class MutableClock extends Clock {
+        private final AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+
+        void advance(final Duration duration) {
+            millis.addAndGet(duration.toMillis());
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package copel.sesproductpackage.line.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+class S3DedupStoreTest {
+
+    private static final Instant NOW = Instant.ofEpochMilli(1_700_000_000_000L);
+
+    @Test
+    void testContains_RecordedEventWithinTtl() {
+        StubS3Client s3 = new StubS3Client();
+        new S3DedupStore(s3, "bucket", Clock.fixed(NOW, ZoneOffset.UTC)).put("E1", Duration.ofHours(1));
+
+        assertTrue(new S3DedupStore(s3, "bucket", Clock.fixed(NOW.plusSeconds(3599), ZoneOffset.UTC)).contains("E1"));
+        // 保持期限を過ぎた記録は処理済みとしない
+        assertFalse(new S3DedupStore(s3, "bucket", Clock.fixed(NOW.plusSeconds(3600), ZoneOffset.UTC)).contains("E1"));
+        assertFalse(new S3DedupStore(s3, "bucket", Clock.fixed(NOW, ZoneOffset.UTC)).contains("E2"));
+    }
+
+    @Test
+    void testContains_S3FailureIsTreatedAsNotProcessed() {
+        StubS3Client s3 = new StubS3Client();
+        s3.fail = true;
+        S3DedupStore store = new S3DedupStore(s3, "bucket", Clock.fixed(NOW, ZoneOffset.UTC));
+
+        store.put("E1", Duration.ofHours(1));
+        assertFalse(store.contains("E1"));
+    }
+
+    /**
+     * キーとメタデータのみをメモリに保持するS3クライアント.
+     */
+    private static final class StubS3Client implements S3Client {
+        private final Map<String, Map<String, String>> objects = new HashMap<>();
+        private boolean fail;
+
+        @Override
+        public HeadObjectResponse headObject(final HeadObjectRequest request) {
+            if (fail) {
+                throw SdkClientException.create("connection reset");
+            }
+            Map<String, String> metadata = objects.get(request.bucket() + "/" + request.key());
+            if (metadata == null) {
+                throw NoSuchKeyException.builder().message("Not Found").build();
+            }
+            return HeadObjectResponse.builder().metadata(metadata).build();
+        }
+
+        @Override
+        public PutObjectResponse putObject(final PutObjectRequest request, final RequestBody requestBody) {
+            if (fail) {
+                throw SdkClientException.create("connection reset");
+            }
+            objects.put(request.bucket() + "/" + request.key(), request.metadata());
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return S3Client.SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
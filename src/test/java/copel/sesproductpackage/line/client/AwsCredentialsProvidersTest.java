@@ -0,0 +1,26 @@
+package copel.sesproductpackage.line.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+
+class AwsCredentialsProvidersTest {
+
+    @Test
+    void testCreate_SnapStartUsesContainerCredentials() {
+        Map<String, String> env = Map.of("AWS_CONTAINER_CREDENTIALS_FULL_URI", "http://127.0.0.1:9001/2021-04-23/credentials");
+        assertInstanceOf(ContainerCredentialsProvider.class, AwsCredentialsProviders.create(env::get));
+    }
+
+    @Test
+    void testCreate_DefaultsToEnvironmentVariables() {
+        assertInstanceOf(EnvironmentVariableCredentialsProvider.class, AwsCredentialsProviders.create(Map.<String, String>of()::get));
+        assertInstanceOf(EnvironmentVariableCredentialsProvider.class,
+                AwsCredentialsProviders.create(Map.of("AWS_CONTAINER_CREDENTIALS_FULL_URI", "")::get));
+    }
+}
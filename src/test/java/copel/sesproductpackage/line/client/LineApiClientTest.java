@@ -0,0 +1,192 @@
+package copel.sesproductpackage.line.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class LineApiClientTest {
+
+    private HttpServer server;
+    private LineApiClient client;
+    /**
+     * スタブが順に返却するレスポンス(ステータスコード, Retry-After, ボディ). 空になったら最後の要素を返し続ける.
+     */
+    private final Deque<Object[]> responses = new ArrayDeque<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile String lastAuthorization;
+    private volatile long responseDelayMillis;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        client = new LineApiClient(URI.create("http://127.0.0.1:" + server.getAddress().getPort()),
+                HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build(),
+                Duration.ofMillis(1000), 2, Duration.ofMillis(10), Duration.ofMillis(200));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGetUserName() throws Exception {
+        responses.add(new Object[] {200, null, "{\"displayName\":\"LINE taro\",\"userId\":\"U1\",\"language\":\"ja\"}"});
+        assertEquals("LINE taro", client.getUserName("U1", "token"));
+        assertEquals("Bearer token", lastAuthorization);
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void testGetGroupName() throws Exception {
+        responses.add(new Object[] {200, null, "{\"groupId\":\"G1\",\"groupName\":\"SES案件共有\"}"});
+        assertEquals("SES案件共有", client.getGroupName("G1", "token"));
+    }
+
+    @Test
+    void testNotFoundIsNull() throws Exception {
+        responses.add(new Object[] {404, null, "{\"message\":\"Not found\"}"});
+        assertNull(client.getUserName("U1", "token"));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void testMalformedIdIsNotRequested() throws Exception {
+        responses.add(new Object[] {200, null, "{\"displayName\":\"LINE taro\",\"groupName\":\"SES案件共有\"}"});
+        // パスを変えるID・URIとして不正なIDは送信せず、取得できなかったものとして扱う
+        assertNull(client.getUserName("U1/../../v2/bot/info", "token"));
+        assertNull(client.getUserName("U1 %zz", "token"));
+        assertNull(client.getUserName(null, "token"));
+        assertNull(client.getGroupName("C1?x=1", "token"));
+        assertThrows(IOException.class, () -> client.getContent("1/../2", "token"));
+        assertEquals(0, requestCount.get());
+    }
+
+    @Test
+    void testIsValidId() {
+        assertTrue(LineApiClient.isValidId("U4af4980629a0b1c2d3e4f5a6b7c8d9e0"));
+        assertTrue(LineApiClient.isValidId("468789577898262531"));
+        assertFalse(LineApiClient.isValidId(""));
+        assertFalse(LineApiClient.isValidId("U1/summary"));
+        assertFalse(LineApiClient.isValidId("ユーザー"));
+        assertFalse(LineApiClient.isValidId("U" + "0".repeat(64)));
+    }
+
+    @Test
+    void testRetriesServerError() throws Exception {
+        responses.add(new Object[] {500, null, "{\"message\":\"Internal error\"}"});
+        responses.add(new Object[] {200, null, "{\"displayName\":\"LINE taro\"}"});
+        assertEquals("LINE taro", client.getUserName("U1", "token"));
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    void testRetriesAreBounded() {
+        responses.add(new Object[] {503, null, "{\"message\":\"Unavailable\"}"});
+        IOException e = assertThrows(IOException.class, () -> client.getUserName("U1", "token"));
+        // エラーレスポンスのボディもメッセージに含める
+        assertTrue(e.getMessage().contains("Unavailable"));
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    void testRateLimitRespectsRetryAfter() throws Exception {
+        responses.add(new Object[] {429, "0", "{\"message\":\"Too many requests\"}"});
+        responses.add(new Object[] {200, null, "{\"displayName\":\"LINE taro\"}"});
+        assertEquals("LINE taro", client.getUserName("U1", "token"));
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    void testRateLimitWithLongRetryAfterIsNotRetried() {
+        responses.add(new Object[] {429, "60", "{\"message\":\"Too many requests\"}"});
+        assertThrows(IOException.class, () -> client.getUserName("U1", "token"));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void testTimeout() {
+        responses.add(new Object[] {200, null, "{\"displayName\":\"LINE taro\"}"});
+        responseDelayMillis = 1500;
+        long start = System.nanoTime();
+        assertThrows(HttpTimeoutException.class, () -> client.getUserName("U1", "token"));
+        // 応答タイムアウト1秒×3回+待ち時間で打ち切られる
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 4500);
+    }
+
+    @Test
+    void testGetContent_StalledBodyIsBoundedByReadTimeout() throws Exception {
+        // ヘッダと一部のボディを送った後、残りを送らずに止まるコンテンツ
+        server.createContext("/v2/bot/message/", exchange -> {
+            exchange.sendResponseHeaders(200, 1024);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(new byte[16]);
+                out.flush();
+                Thread.sleep(2000);
+            } catch (IOException | InterruptedException e) {
+                // クライアントが切断済み
+            }
+        });
+        client.setContentReadTimeout(Duration.ofMillis(300));
+
+        HttpResponse<InputStream> response = client.getContent("1", "token");
+        long start = System.nanoTime();
+        try (InputStream body = response.body()) {
+            assertThrows(HttpTimeoutException.class, body::readAllBytes);
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 3000);
+    }
+
+    /**
+     * スタブのハンドラ.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Object[] response;
+        synchronized (responses) {
+            response = responses.size() > 1 ? responses.poll() : responses.peek();
+        }
+        if (responseDelayMillis > 0) {
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = ((String) response[2]).getBytes(StandardCharsets.UTF_8);
+        if (response[1] != null) {
+            exchange.getResponseHeaders().add("Retry-After", (String) response[1]);
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders((Integer) response[0], body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            // タイムアウトでクライアントが切断済み
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package copel.sesproductpackage.line.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+class SqsClientRegistryTest {
+
+    private static final String QUEUE_URL = "https://sqs.example.com/test-queue";
+
+    @AfterEach
+    void tearDown() {
+        SqsClientRegistry.clear();
+    }
+
+    @Test
+    void testGetClient_ReusesClient() {
+        SqsClient first = SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, QUEUE_URL);
+        SqsClient second = SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, QUEUE_URL);
+        assertSame(first, second);
+        assertNotSame(first, SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, QUEUE_URL + "-other"));
+    }
+
+    @Test
+    void testRegister() {
+        SqsClient fake = mock(SqsClient.class);
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, QUEUE_URL, fake);
+        assertSame(fake, SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, QUEUE_URL));
+    }
+
+    @Test
+    void testClear() {
+        SqsClient fake = mock(SqsClient.class);
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, QUEUE_URL, fake);
+        SqsClientRegistry.clear();
+        verify(fake, times(1)).close();
+        assertNotSame(fake, SqsClientRegistry.getClient(Region.AP_NORTHEAST_1, QUEUE_URL));
+    }
+}
@@ -0,0 +1,197 @@
+package copel.sesproductpackage.line.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+
+class CoalescingSqsSenderTest {
+
+    private static final String QUEUE_URL = "https://sqs.example.com/coalescing-queue";
+
+    @Mock
+    private SqsClient sqsClient;
+
+    private CoalescingSqsSender sender;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, QUEUE_URL, sqsClient);
+        // 本文を送信結果のメッセージIDとして返す(rawContentが本文に含まれるため、どのメッセージの結果か判別できる)
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId(entry.messageBody()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (sender != null) {
+            sender.close();
+        }
+        SqsClientRegistry.clear();
+    }
+
+    @Test
+    void testSubmit_ConcurrentCallersShareOneBatch() throws Exception {
+        sender = new CoalescingSqsSender(Duration.ofSeconds(5), 10);
+        ExecutorService callers = Executors.newFixedThreadPool(10);
+        try {
+            List<CompletableFuture<SendMessageResponse>> futures = new ArrayList<>();
+            List<SesInfoRegisterRequestSqsEntity> entities = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                SesInfoRegisterRequestSqsEntity entity = newEntity("message" + i);
+                entities.add(entity);
+                futures.add(CompletableFuture.supplyAsync(() -> sender.submit(entity), callers).thenCompose(f -> f));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                // 各呼び出し元には自分のメッセージの送信結果が返る
+                assertEquals(entities.get(i).getMessageBody(), futures.get(i).get(5, TimeUnit.SECONDS).messageId());
+            }
+            // 10件溜まった時点で待ち時間を待たずに1回で送信される
+            verify(sqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void testSubmit_FlushesAfterMaxDelay() throws Exception {
+        sender = new CoalescingSqsSender(Duration.ofMillis(20), 10);
+        CompletableFuture<SendMessageResponse> first = sender.submit(newEntity("a"));
+        CompletableFuture<SendMessageResponse> second = sender.submit(newEntity("b"));
+
+        assertNotNull(first.get(5, TimeUnit.SECONDS).messageId());
+        assertNotNull(second.get(5, TimeUnit.SECONDS).messageId());
+        verify(sqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSubmit_PreservesOrderAcrossBatches() throws Exception {
+        sender = new CoalescingSqsSender(Duration.ofSeconds(5), 10);
+        List<CompletableFuture<SendMessageResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(sender.submit(newEntity("message" + i)));
+        }
+        sender.flush();
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(3)).sendMessageBatch(captor.capture());
+        List<String> sentBodies = new ArrayList<>();
+        for (SendMessageBatchRequest request : captor.getAllValues()) {
+            for (SendMessageBatchRequestEntry entry : request.entries()) {
+                sentBodies.add(entry.messageBody());
+            }
+        }
+        for (int i = 0; i < 25; i++) {
+            assertTrue(sentBodies.get(i).contains("\"message" + i + "\""));
+            assertTrue(futures.get(i).isDone());
+        }
+    }
+
+    @Test
+    void testSubmit_StaleTimedFlushDoesNotOvertakeSizeTriggeredBatch() throws Exception {
+        // 最初の送信を止めて送信スレッドを塞ぎ、待ち時間による送信の予約時刻を過ぎさせる
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sentBodies = new ArrayList<>();
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            if (sentBodies.isEmpty()) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> {
+                sentBodies.add(entry.messageBody());
+                successful.add(SendMessageBatchResultEntry.builder().id(entry.id()).messageId(entry.messageBody()).build());
+            });
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+        sender = new CoalescingSqsSender(Duration.ofMillis(20), 2);
+
+        List<CompletableFuture<SendMessageResponse>> futures = new ArrayList<>();
+        futures.add(sender.submit(newEntity("blocker0")));
+        futures.add(sender.submit(newEntity("blocker1")));
+        futures.add(sender.submit(newEntity("a")));
+        Thread.sleep(100);
+        // aの待ち時間は経過済みだが、送信スレッドが塞がっているためまだ送信されていない
+        futures.add(sender.submit(newEntity("b")));
+        futures.add(sender.submit(newEntity("m")));
+        release.countDown();
+        for (CompletableFuture<SendMessageResponse> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        // aの予約は件数による送信で取り消され、後から溜まったmが[a, b]より先に送信されることはない
+        List<String> expected = List.of("blocker0", "blocker1", "a", "b", "m");
+        assertEquals(expected.size(), sentBodies.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(sentBodies.get(i).contains("\"" + expected.get(i) + "\""), sentBodies.toString());
+        }
+        verify(sqsClient, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSubmit_FailedEntryFailsOnlyItsCaller() throws Exception {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").messageId("msg0").build())
+                .failed(BatchResultErrorEntry.builder().id("1").code("InvalidMessageContents").senderFault(true).build())
+                .build());
+        sender = new CoalescingSqsSender(Duration.ofSeconds(5), 2);
+
+        CompletableFuture<SendMessageResponse> ok = sender.submit(newEntity("ok"));
+        CompletableFuture<SendMessageResponse> ng = sender.submit(newEntity("ng"));
+
+        assertEquals("msg0", ok.get(5, TimeUnit.SECONDS).messageId());
+        CompletionException e = assertThrows(CompletionException.class, ng::join);
+        assertTrue(e.getCause().getMessage().contains("InvalidMessageContents"));
+    }
+
+    @Test
+    void testSubmit_AfterCloseFails() {
+        sender = new CoalescingSqsSender(Duration.ofMillis(20), 10);
+        sender.close();
+
+        CompletableFuture<SendMessageResponse> future = sender.submit(newEntity("late"));
+        assertThrows(CompletionException.class, future::join);
+        sender = null;
+    }
+
+    private static SesInfoRegisterRequestSqsEntity newEntity(final String rawContent) {
+        SesInfoRegisterRequestSqsEntity entity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, QUEUE_URL);
+        entity.setRequestType("11");
+        entity.setRawContent(rawContent);
+        return entity;
+    }
+}
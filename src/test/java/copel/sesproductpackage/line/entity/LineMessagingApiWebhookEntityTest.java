@@ -2,8 +2,11 @@ package copel.sesproductpackage.line.entity;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -42,6 +45,30 @@ public class LineMessagingApiWebhookEntityTest {
         assertNull(entity.getFileId());
     }
 
+    @Test
+    void testParseEvents_DeliveryContext() {
+        String json = """
+        {
+            "events": [
+                {
+                    "type": "message",
+                    "webhookEventId": "01FZ74A0TDDPYRVKNK77XKC3ZR",
+                    "deliveryContext": { "isRedelivery": true },
+                    "source": { "type": "user", "userId": "U1234567890" },
+                    "message": { "type": "text", "text": "Hello" }
+                }
+            ]
+        }
+        """;
+        LineMessagingApiWebhookEntity entity = LineMessagingApiWebhookEntity.parseEvents(json).get(0);
+        assertEquals("01FZ74A0TDDPYRVKNK77XKC3ZR", entity.getWebhookEventId());
+        assertTrue(entity.isRedelivery());
+
+        LineMessagingApiWebhookEntity plain = new LineMessagingApiWebhookEntity(SAMPLE_JSON);
+        assertNull(plain.getWebhookEventId());
+        assertFalse(plain.isRedelivery());
+    }
+
     @Test
     void testIsValid() {
         LineMessagingApiWebhookEntity entity = new LineMessagingApiWebhookEntity(SAMPLE_JSON);
@@ -111,4 +138,121 @@ public class LineMessagingApiWebhookEntityTest {
     void testInvalidJsonThrowsException() {
         assertThrows(IllegalArgumentException.class, () -> new LineMessagingApiWebhookEntity("invalid_json"));
     }
+
+    @Test
+    void testParseEvents_MultipleEvents() {
+        String multiJson = """
+        {
+            "events": [
+                {
+                    "type": "message",
+                    "timestamp": 1613850213000,
+                    "source": { "type": "group", "groupId": "G1234567890", "userId": "U1" },
+                    "message": { "type": "text", "text": "1件目" }
+                },
+                {
+                    "type": "join",
+                    "timestamp": 1613850214000,
+                    "source": { "type": "group", "groupId": "G1234567890" }
+                },
+                {
+                    "type": "message",
+                    "timestamp": 1613850215000,
+                    "source": { "type": "user", "userId": "U2" },
+                    "message": { "type": "file", "id": "file123", "fileName": "skill.xlsx" }
+                }
+            ]
+        }
+        """;
+        List<LineMessagingApiWebhookEntity> entities = LineMessagingApiWebhookEntity.parseEvents(multiJson);
+        assertEquals(3, entities.size());
+        assertEquals("1件目", entities.get(0).getText());
+        assertEquals("U1", entities.get(0).getUserId());
+        assertFalse(entities.get(1).isMessage());
+        assertTrue(entities.get(2).isFile());
+        assertEquals("skill.xlsx", entities.get(2).getFileName());
+    }
+
+    @Test
+    void testParseEvents_EmptyEventsThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents("{\"events\": []}"));
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents("{}"));
+    }
+
+    @Test
+    void testParseEvents_SkipsUnusedFieldsAndAcceptsAnyFieldOrder() {
+        // typeがmessageより後に現れ、未使用のフィールドにネストしたオブジェクト・配列を含むケース
+        String json = """
+        {
+            "destination": "Uxxxxxxxx",
+            "events": [
+                {
+                    "replyToken": "token",
+                    "message": {
+                        "id": "file123",
+                        "emojis": [ { "index": 0, "productId": "p" } ],
+                        "fileName": "skill.pdf",
+                        "type": "file",
+                        "fileSize": 2048
+                    },
+                    "deliveryContext": { "isRedelivery": false },
+                    "source": { "userId": "U1", "type": "group", "groupId": "G1" },
+                    "timestamp": 1613850213000,
+                    "type": "message"
+                }
+            ]
+        }
+        """;
+        List<LineMessagingApiWebhookEntity> entities = LineMessagingApiWebhookEntity.parseEvents(json);
+        assertEquals(1, entities.size());
+        LineMessagingApiWebhookEntity entity = entities.get(0);
+        assertTrue(entity.isFile());
+        assertTrue(entity.isGroup());
+        assertEquals("U1", entity.getUserId());
+        assertEquals("file123", entity.getFileId());
+        assertEquals("skill.pdf", entity.getFileName());
+        assertEquals("", entity.getText());
+    }
+
+    @Test
+    void testParseEvents_NonMessageEventHasNoMessageFields() {
+        String json = "{\"events\": [{\"type\": \"unsend\", \"source\": {\"type\": \"user\", \"userId\": \"U1\"},"
+                + " \"message\": {\"type\": \"text\", \"text\": \"ignored\"}}]}";
+        LineMessagingApiWebhookEntity entity = LineMessagingApiWebhookEntity.parseEvents(json).get(0);
+        assertTrue(entity.isValid());
+        assertFalse(entity.isMessage());
+        assertNull(entity.getMessageType());
+        assertNull(entity.getText());
+    }
+
+    @Test
+    void testParseEvents_FileSize() {
+        String json = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"U1\"},"
+                + " \"message\": {\"type\": \"file\", \"id\": \"1\", \"fileSize\": 52480, \"fileName\": \"skill.xlsx\"}}]}";
+        assertEquals(52480, LineMessagingApiWebhookEntity.parseEvents(json).get(0).getFileSize());
+
+        // 想定外の構造の値は読み飛ばし、後続のフィールドは通常どおり読み込む
+        String structured = "{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"U1\"},"
+                + " \"message\": {\"type\": \"file\", \"id\": \"1\", \"fileSize\": {\"bytes\": 1, \"fileName\": \"x\"}, \"fileName\": \"skill.xlsx\"},"
+                + " \"webhookEventId\": \"E1\"}]}";
+        LineMessagingApiWebhookEntity entity = LineMessagingApiWebhookEntity.parseEvents(structured).get(0);
+        assertEquals(0, entity.getFileSize());
+        assertEquals("skill.xlsx", entity.getFileName());
+        assertEquals("E1", entity.getWebhookEventId());
+    }
+
+    @Test
+    void testParseEvents_BytesAndStream() {
+        byte[] bytes = SAMPLE_JSON.getBytes(StandardCharsets.UTF_8);
+        assertEquals("こんにちは", LineMessagingApiWebhookEntity.parseEvents(bytes).get(0).getText());
+        assertEquals("こんにちは", LineMessagingApiWebhookEntity.parseEvents(new ByteArrayInputStream(bytes)).get(0).getText());
+    }
+
+    @Test
+    void testParseEvents_InvalidEventsThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents("{\"events\": {\"type\": \"message\"}}"));
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents("[]"));
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents(""));
+        assertThrows(IllegalArgumentException.class, () -> LineMessagingApiWebhookEntity.parseEvents("{\"events\": [{\"type\": "));
+    }
 }
@@ -4,25 +4,38 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
-import com.amazonaws.services.sqs.model.SendMessageResult;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import copel.sesproductpackage.line.unit.MessageEncoding;
+import copel.sesproductpackage.line.util.SqsMessageCodec;
 
 class SQSEntityBaseTest {
 
     private static final String QUEUE_URL = "https://sqs.example.com/test-queue";
+    private static final String FIFO_QUEUE_URL = "https://sqs.example.com/test-queue.fifo";
 
     @Mock
-    private AmazonSQS mockSqsClient;
+    private SqsClient mockSqsClient;
 
-    @InjectMocks
     private SesInfoRegisterRequestSqsEntity sqsEntity;
 
     @BeforeEach
@@ -30,7 +43,7 @@ class SQSEntityBaseTest {
         MockitoAnnotations.openMocks(this);
 
         // 抽象クラスを匿名クラスで実装
-        sqsEntity = new SesInfoRegisterRequestSqsEntity(Regions.AP_NORTHEAST_1, QUEUE_URL) {
+        sqsEntity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, QUEUE_URL) {
             @Override
             protected String getMessageBody() {
                 return "{\"message\": \"\ntest\t\"}";
@@ -50,11 +63,11 @@ class SQSEntityBaseTest {
     @Test
     void testSendMessage() throws Exception {
         // モックの戻り値を設定
-        SendMessageResult mockResult = new SendMessageResult();
+        SendMessageResponse mockResult = SendMessageResponse.builder().build();
         when(mockSqsClient.sendMessage(any(SendMessageRequest.class))).thenReturn(mockResult);
 
         // メソッドを呼び出し、例外が発生しないことを確認
-        SendMessageResult result = sqsEntity.sendMessage();
+        SendMessageResponse result = sqsEntity.sendMessage();
         assertNotNull(result);
 
         // sendMessage が正しく呼ばれたか検証
@@ -65,4 +78,325 @@ class SQSEntityBaseTest {
     void testGetMessageBody() {
         assertEquals("{\"message\": \"\ntest\t\"}", sqsEntity.getMessageBody());
     }
+
+    @Test
+    void testSendMessageBatch_ChunksByTen() throws Exception {
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId("msg-" + entry.id()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+
+        List<SesInfoRegisterRequestSqsEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            entities.add(this.createEntity());
+        }
+
+        List<SendMessageBatchResultEntry> results = SQSEntityBase.sendMessageBatch(entities);
+        assertEquals(23, results.size());
+        // 10件 + 10件 + 3件 の3回に分けて送信される
+        verify(mockSqsClient, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSendMessageBatch_SplitsByPayloadSize() throws Exception {
+        List<SendMessageBatchRequest> requests = new ArrayList<>();
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            requests.add(request);
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            request.entries().forEach(entry -> successful.add(
+                    SendMessageBatchResultEntry.builder().id(entry.id()).messageId("msg-" + entry.id()).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+
+        // 1件約90KB(UTF-8)の案件情報を4件. 件数では1回だが、合計サイズでは2件ずつに分かれる
+        List<SesInfoRegisterRequestSqsEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            entities.add(newEntity("【案件】長文の案件情報".repeat(3000)));
+        }
+
+        List<SendMessageBatchResultEntry> results = SQSEntityBase.sendMessageBatch(entities);
+        assertEquals(4, results.size());
+        assertEquals(2, requests.size());
+        for (SendMessageBatchRequest request : requests) {
+            assertEquals(2, request.entries().size());
+            long total = request.entries().stream().mapToLong(SQSEntityBase::payloadSize).sum();
+            assertTrue(total <= SQSEntityBase.MAX_BATCH_PAYLOAD_BYTES);
+        }
+    }
+
+    @Test
+    void testPayloadSize_CountsUtf8BodyAndAttributes() {
+        SendMessageBatchRequestEntry entry = SendMessageBatchRequestEntry.builder()
+                .id("0")
+                .messageBody("あa")
+                .messageAttributes(Map.of("encoding", MessageAttributeValue.builder()
+                        .dataType("String").stringValue("deflate").build()))
+                .build();
+
+        assertEquals(4 + "encoding".length() + "String".length() + "deflate".length(), SQSEntityBase.payloadSize(entry));
+    }
+
+    @Test
+    void testRetryDelayMillis_IsBounded() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            long delay = SQSEntityBase.retryDelayMillis(attempt);
+            assertTrue(delay >= 0 && delay <= Math.min(400, 50L << (attempt - 1)));
+        }
+    }
+
+    @Test
+    void testSendMessageBatch_RetriesOnlyFailedEntries() throws Exception {
+        SendMessageBatchResponse firstResult = SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").messageId("msg-0").build())
+                .failed(BatchResultErrorEntry.builder().id("1").senderFault(false).code("InternalError").build())
+                .build();
+        SendMessageBatchResponse secondResult = SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("1").messageId("msg-1").build())
+                .build();
+        List<SendMessageBatchRequest> requests = new ArrayList<>();
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return requests.size() == 1 ? firstResult : secondResult;
+        });
+
+        List<SendMessageBatchResultEntry> results = SQSEntityBase.sendMessageBatch(List.of(this.createEntity(), this.createEntity()));
+        assertEquals(2, results.size());
+        assertEquals(2, requests.size());
+        // 再送は失敗したエントリのみ
+        assertEquals(1, requests.get(1).entries().size());
+        assertEquals("1", requests.get(1).entries().get(0).id());
+    }
+
+    @Test
+    void testSendMessageBatch_SenderFaultIsNotRetried() {
+        SendMessageBatchResponse result = SendMessageBatchResponse.builder()
+                .failed(BatchResultErrorEntry.builder().id("0").senderFault(true).code("InvalidMessageContents").build())
+                .build();
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(result);
+
+        assertThrows(IllegalStateException.class, () -> SQSEntityBase.sendMessageBatch(List.of(this.createEntity())));
+        verify(mockSqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSendMessageBatch_NotifiesSentEntitiesBeforeFailure() throws Exception {
+        SendMessageBatchResponse result = SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").messageId("msg0").build())
+                .failed(BatchResultErrorEntry.builder().id("1").senderFault(true).code("InvalidMessageContents").build())
+                .build();
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(result);
+        SesInfoRegisterRequestSqsEntity sent = this.createEntity();
+        List<SesInfoRegisterRequestSqsEntity> notified = new ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> SQSEntityBase.sendMessageBatch(List.of(sent, this.createEntity()),
+                (entity, entry) -> notified.add(entity)));
+        assertEquals(List.of(sent), notified);
+    }
+
+    /**
+     * モックのSQSクライアントを使用するEntityを生成する.
+     */
+    private SesInfoRegisterRequestSqsEntity createEntity() throws Exception {
+        SesInfoRegisterRequestSqsEntity entity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, QUEUE_URL);
+        entity.setRequestType("11");
+        var sqsClientField = SQSEntityBase.class.getDeclaredField("sqsClient");
+        sqsClientField.setAccessible(true);
+        sqsClientField.set(entity, mockSqsClient);
+        return entity;
+    }
+
+    @Test
+    void testSendMessage_CompressesAboveThreshold() throws Exception {
+        SesInfoRegisterRequestSqsEntity entity = newEntity("【案件】Java開発 ".repeat(100));
+        entity.setCompressionThresholdBytes(1024);
+        when(mockSqsClient.sendMessage(any(SendMessageRequest.class))).thenReturn(SendMessageResponse.builder().build());
+
+        entity.sendMessage();
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsClient).sendMessage(captor.capture());
+        SendMessageRequest request = captor.getValue();
+        assertEquals(MessageEncoding.DeflateBase64.getCode(),
+                request.messageAttributes().get(MessageEncoding.ATTRIBUTE_NAME).stringValue());
+        assertTrue(request.messageBody().length() < entity.getMessageBody().length());
+        assertEquals(entity.getMessageBody(), SqsMessageCodec.decode(request.messageBody(),
+                request.messageAttributes().get(MessageEncoding.ATTRIBUTE_NAME).stringValue()));
+    }
+
+    @Test
+    void testSendMessageBatch_SmallBodyStaysPlainJson() throws Exception {
+        SesInfoRegisterRequestSqsEntity small = newEntity("Hello");
+        small.setCompressionThresholdBytes(1024);
+        SesInfoRegisterRequestSqsEntity large = newEntity("Hello ".repeat(500));
+        large.setCompressionThresholdBytes(1024);
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").build(), SendMessageBatchResultEntry.builder().id("1").build())
+                .build());
+
+        SQSEntityBase.sendMessageBatch(List.of(small, large));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqsClient).sendMessageBatch(captor.capture());
+        List<SendMessageBatchRequestEntry> entries = captor.getValue().entries();
+        assertEquals(small.getMessageBody(), entries.get(0).messageBody());
+        assertTrue(entries.get(0).messageAttributes().isEmpty());
+        assertEquals(MessageEncoding.DeflateBase64.getCode(),
+                entries.get(1).messageAttributes().get(MessageEncoding.ATTRIBUTE_NAME).stringValue());
+    }
+
+    @Test
+    void testSendMessage_StandardQueueHasNoFifoParameters() throws Exception {
+        when(mockSqsClient.sendMessage(any(SendMessageRequest.class))).thenReturn(SendMessageResponse.builder().build());
+        newEntity("Hello").sendMessage();
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsClient).sendMessage(captor.capture());
+        assertNull(captor.getValue().messageGroupId());
+        assertNull(captor.getValue().messageDeduplicationId());
+    }
+
+    @Test
+    void testSendMessage_FifoQueueUsesGroupAndEventId() throws Exception {
+        SesInfoRegisterRequestSqsEntity entity = newEntity(FIFO_QUEUE_URL, "Hello");
+        entity.setFromGroup("C1234567890");
+        entity.setFromId("U1234567890");
+        entity.setEventId("01FZ74A0TDDPYRVKNK77XKC3ZR");
+        when(mockSqsClient.sendMessage(any(SendMessageRequest.class))).thenReturn(SendMessageResponse.builder().build());
+
+        entity.sendMessage();
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsClient).sendMessage(captor.capture());
+        assertEquals("C1234567890", captor.getValue().messageGroupId());
+        assertEquals("01FZ74A0TDDPYRVKNK77XKC3ZR", captor.getValue().messageDeduplicationId());
+    }
+
+    @Test
+    void testSendMessageBatch_FifoQueuePersonalChatGroupsBySender() throws Exception {
+        SesInfoRegisterRequestSqsEntity first = newEntity(FIFO_QUEUE_URL, "Hello");
+        first.setFromGroup("personal_line");
+        first.setFromId("U1");
+        SesInfoRegisterRequestSqsEntity second = newEntity(FIFO_QUEUE_URL, "Hello");
+        second.setFromGroup("personal_line");
+        second.setFromId("U2");
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").build(), SendMessageBatchResultEntry.builder().id("1").build())
+                .build());
+
+        SQSEntityBase.sendMessageBatch(List.of(first, second));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqsClient).sendMessageBatch(captor.capture());
+        List<SendMessageBatchRequestEntry> entries = captor.getValue().entries();
+        assertEquals("U1", entries.get(0).messageGroupId());
+        assertEquals("U2", entries.get(1).messageGroupId());
+        // イベントIDが無い場合は内容のハッシュで重複排除する
+        assertEquals(64, entries.get(0).messageDeduplicationId().length());
+        assertNotEquals(entries.get(0).messageDeduplicationId(), entries.get(1).messageDeduplicationId());
+    }
+
+    @Test
+    void testSendMessageBatch_FifoQueueBlankGroupIsPerEvent() throws Exception {
+        SesInfoRegisterRequestSqsEntity emptyIds = newEntity(FIFO_QUEUE_URL, "Hello");
+        emptyIds.setFromGroup("");
+        emptyIds.setFromId("");
+        emptyIds.setEventId("01FZ74A0TDDPYRVKNK77XKC6ZA");
+        SesInfoRegisterRequestSqsEntity nullId = newEntity(FIFO_QUEUE_URL, "Hello");
+        nullId.setFromGroup("personal_line");
+        nullId.setEventId("01FZ74A0TDDPYRVKNK77XKC6ZB");
+        SesInfoRegisterRequestSqsEntity noEventId = newEntity(FIFO_QUEUE_URL, "World");
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("0").build(), SendMessageBatchResultEntry.builder().id("1").build(),
+                        SendMessageBatchResultEntry.builder().id("2").build())
+                .build());
+
+        SQSEntityBase.sendMessageBatch(List.of(emptyIds, nullId, noEventId));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqsClient).sendMessageBatch(captor.capture());
+        List<SendMessageBatchRequestEntry> entries = captor.getValue().entries();
+        // 送信者を特定できないイベントは1つのグループに直列化せず、空文字も送信しない
+        assertEquals("01FZ74A0TDDPYRVKNK77XKC6ZA", entries.get(0).messageGroupId());
+        assertEquals("01FZ74A0TDDPYRVKNK77XKC6ZB", entries.get(1).messageGroupId());
+        assertEquals(entries.get(2).messageDeduplicationId(), entries.get(2).messageGroupId());
+    }
+
+    @Test
+    void testSendMessageBatch_FifoQueueStopsGroupAfterFailedEntry() throws Exception {
+        SesInfoRegisterRequestSqsEntity first = newEntity(FIFO_QUEUE_URL, "first");
+        first.setFromGroup("personal_line");
+        first.setFromId("U1");
+        SesInfoRegisterRequestSqsEntity second = newEntity(FIFO_QUEUE_URL, "second");
+        second.setFromGroup("personal_line");
+        second.setFromId("U1");
+        SesInfoRegisterRequestSqsEntity other = newEntity(FIFO_QUEUE_URL, "other");
+        other.setFromGroup("personal_line");
+        other.setFromId("U2");
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .successful(SendMessageBatchResultEntry.builder().id("2").messageId("msg2").build())
+                .failed(BatchResultErrorEntry.builder().id("0").senderFault(true).code("InvalidMessageContents").build(),
+                        BatchResultErrorEntry.builder().id("1").senderFault(false).code("InternalError").build())
+                .build());
+        List<SesInfoRegisterRequestSqsEntity> notified = new ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> SQSEntityBase.sendMessageBatch(List.of(first, second, other),
+                (entity, entry) -> notified.add(entity)));
+        // U1の1件目が送信できないため、2件目を再送して1件目より先に届けることはしない
+        verify(mockSqsClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertEquals(List.of(other), notified);
+    }
+
+    @Test
+    void testSendMessageBatch_FifoQueueHoldsBackGroupUntilRetry() throws Exception {
+        SesInfoRegisterRequestSqsEntity first = newEntity(FIFO_QUEUE_URL, "a".repeat(200 * 1024));
+        first.setFromGroup("personal_line");
+        first.setFromId("U1");
+        SesInfoRegisterRequestSqsEntity second = newEntity(FIFO_QUEUE_URL, "b".repeat(100 * 1024));
+        second.setFromGroup("personal_line");
+        second.setFromId("U1");
+        List<List<String>> sentIds = new ArrayList<>();
+        when(mockSqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<String> ids = new ArrayList<>();
+            request.entries().forEach(entry -> ids.add(entry.id()));
+            sentIds.add(ids);
+            if (sentIds.size() == 1) {
+                return SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("0").senderFault(false).code("InternalError").build())
+                        .build();
+            }
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            ids.forEach(id -> successful.add(SendMessageBatchResultEntry.builder().id(id).messageId("msg" + id).build()));
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+
+        SQSEntityBase.sendMessageBatch(List.of(first, second));
+
+        // 合計サイズで分けた2件目は、1件目が再送で送信されるまで送信しない
+        assertEquals(List.of(List.of("0"), List.of("0"), List.of("1")), sentIds);
+    }
+
+    /**
+     * モックのSQSクライアントを使用するEntityを生成する.
+     */
+    private SesInfoRegisterRequestSqsEntity newEntity(final String rawContent) throws Exception {
+        return newEntity(QUEUE_URL, rawContent);
+    }
+
+    /**
+     * モックのSQSクライアントを使用するEntityを生成する.
+     */
+    private SesInfoRegisterRequestSqsEntity newEntity(final String queueUrl, final String rawContent) throws Exception {
+        SesInfoRegisterRequestSqsEntity entity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, queueUrl);
+        entity.setRequestType("11");
+        entity.setRawContent(rawContent);
+        var sqsClientField = SQSEntityBase.class.getDeclaredField("sqsClient");
+        sqsClientField.setAccessible(true);
+        sqsClientField.set(entity, mockSqsClient);
+        return entity;
+    }
 }
@@ -2,10 +2,25 @@ package copel.sesproductpackage.line.entity;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import software.amazon.awssdk.regions.Region;
+import com.fasterxml.jackson.databind.JsonNode;
 
-import com.amazonaws.regions.Regions;
+import copel.sesproductpackage.line.storage.FileSystemBlobStore;
+import copel.sesproductpackage.line.util.JsonUtil;
 
 class SesInfoRegisterRequestSqsEntityTest {
     
@@ -13,7 +28,7 @@ class SesInfoRegisterRequestSqsEntityTest {
 
     @BeforeEach
     void setUp() {
-        entity = new SesInfoRegisterRequestSqsEntity(Regions.AP_NORTHEAST_1, "https://sqs.example.com/queue");
+        entity = new SesInfoRegisterRequestSqsEntity(Region.AP_NORTHEAST_1, "https://sqs.example.com/queue");
     }
 
     @Test
@@ -56,15 +71,106 @@ class SesInfoRegisterRequestSqsEntityTest {
         entity.setFileName("document.pdf");
 
         String expectedJson = "{"
-                + "\"request_type\": \"message\""
-                + "\"from_group\": \"groupA\""
-                + "\"from_id\": \"user123\""
-                + "\"from_name\": \"Taro\""
-                + "\"raw_content\": \"Hello, world!\""
-                + "\"file_id\": \"file-456\""
-                + "\"file_name\": \"document.pdf\""
+                + "\"request_type\":\"message\","
+                + "\"from_group\":\"groupA\","
+                + "\"from_id\":\"user123\","
+                + "\"from_name\":\"Taro\","
+                + "\"raw_content\":\"Hello, world!\","
+                + "\"file_id\":\"file-456\","
+                + "\"file_name\":\"document.pdf\""
                 + "}";
 
         assertEquals(expectedJson, entity.getMessageBody());
     }
+
+    @Test
+    void testGetMessageBody_EscapesAndRemovesControlChars() throws Exception {
+        entity.setRequestType("11");
+        entity.setFromGroup("personal_line");
+        entity.setFromId("user123");
+        entity.setFromName("\"Taro\" \\");
+        entity.setRawContent("案件:\t\"Java\"\r\n単価\\80万");
+
+        JsonNode body = JsonUtil.readTree(entity.getMessageBody());
+        assertEquals("\"Taro\" \\", body.path("from_name").asText());
+        assertEquals("案件:\"Java\"単価\\80万", body.path("raw_content").asText());
+        assertFalse(body.has("file_id"));
+    }
+
+    @Test
+    void testGetMessageBody_NullFieldsAreJsonNull() throws Exception {
+        entity.setRequestType("12");
+        entity.setFileId("file-456");
+        entity.setFileName("skill\u0000sheet.xlsx");
+
+        JsonNode body = JsonUtil.readTree(entity.getMessageBody());
+        assertTrue(body.path("from_name").isNull());
+        assertEquals("file-456", body.path("file_id").asText());
+        assertEquals("skillsheet.xlsx", body.path("file_name").asText());
+        Iterator<String> fieldNames = body.fieldNames();
+        int count = 0;
+        while (fieldNames.hasNext()) {
+            fieldNames.next();
+            count++;
+        }
+        assertEquals(6, count);
+    }
+
+    @Test
+    void testToString_ReusesSerializedBody() {
+        entity.setRawContent("Hello");
+        String first = entity.toString();
+        assertSame(first, entity.getMessageBody());
+
+        // 内容を変更したら再シリアライズされる
+        entity.setRawContent("World");
+        assertNotSame(first, entity.toString());
+        assertTrue(entity.toString().contains("World"));
+    }
+
+    @Test
+    void testOffloadRawContent_SmallContentStaysInline(@TempDir Path dir) throws Exception {
+        entity.setRawContent("Hello, world!");
+
+        assertFalse(entity.offloadRawContent(new FileSystemBlobStore(dir), 1024));
+        JsonNode body = JsonUtil.readTree(entity.getMessageBody());
+        assertEquals("Hello, world!", body.path("raw_content").asText());
+        assertTrue(body.path("raw_content_location").isMissingNode());
+    }
+
+    @Test
+    void testOffloadRawContent_LargeContentIsReplacedWithPointer(@TempDir Path dir) throws Exception {
+        String rawContent = "【案件】Java開発\n".repeat(500);
+        entity.setRequestType("11");
+        entity.setRawContent(rawContent);
+        // 制御文字(改行)は退避時も削除する
+        byte[] expected = rawContent.replace("\n", "").getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(entity.offloadRawContent(new FileSystemBlobStore(dir), 1024));
+
+        JsonNode body = JsonUtil.readTree(entity.getMessageBody());
+        assertTrue(body.path("raw_content").isMissingNode());
+        assertEquals("gzip", body.path("raw_content_encoding").asText());
+        assertEquals(expected.length, body.path("raw_content_size").asLong());
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(expected));
+        assertEquals(sha256, body.path("raw_content_sha256").asText());
+        assertTrue(entity.getMessageBody().length() < 1024);
+
+        // 退避先から復元できる
+        Path stored = Path.of(URI.create(body.path("raw_content_location").asText()));
+        assertEquals(dir.resolve("raw-content/" + sha256 + ".txt.gz"), stored);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(stored))) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testOffloadRawContent_SetRawContentClearsPointer(@TempDir Path dir) throws Exception {
+        entity.setRawContent("x".repeat(2048));
+        assertTrue(entity.offloadRawContent(new FileSystemBlobStore(dir), 1024));
+
+        entity.setRawContent("short");
+        assertNull(entity.getRawContentLocation());
+        assertEquals("short", JsonUtil.readTree(entity.getMessageBody()).path("raw_content").asText());
+    }
 }
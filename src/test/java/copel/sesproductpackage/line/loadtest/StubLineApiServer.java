@@ -0,0 +1,158 @@
+package copel.sesproductpackage.line.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LINE Messaging APIのプロフィール取得・グループ概要取得に応答するローカルのスタブ(負荷試験用).
+ * 応答の遅延と、一定の割合でのエラー(500・429)を注入できる.
+ * 表示名・グループ名はIDから決まる値("name-{ID}")を返却する.
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class StubLineApiServer implements AutoCloseable {
+    /**
+     * HTTPサーバー.
+     */
+    private final HttpServer server;
+    /**
+     * リクエストを処理するスレッド.
+     */
+    private final ExecutorService executor;
+    /**
+     * 応答までの遅延(ミリ秒).
+     */
+    private volatile long latencyMillis;
+    /**
+     * エラーを返却する割合(0.0～1.0).
+     */
+    private volatile double errorRate;
+    /**
+     * 返却するエラーのステータスコード.
+     */
+    private volatile int errorStatusCode = 500;
+    /**
+     * 受け付けたリクエスト数.
+     */
+    private final AtomicInteger requestCount = new AtomicInteger();
+    /**
+     * 返却したエラー数.
+     */
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    /**
+     * コンストラクタ(空いているポートで待ち受けを開始する).
+     *
+     * @param threads リクエストを処理するスレッド数(遅延を注入する場合は同時リクエスト数以上にする)
+     * @throws IOException
+     */
+    public StubLineApiServer(final int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/v2/bot/profile/", exchange -> this.handle(exchange, "displayName"));
+        this.server.createContext("/v2/bot/group/", exchange -> this.handle(exchange, "groupName"));
+        this.server.start();
+    }
+
+    /**
+     * 応答までの遅延を設定する.
+     *
+     * @param latencyMillis 遅延(ミリ秒)
+     * @return this
+     */
+    public StubLineApiServer withLatency(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * 一定の割合でエラーを返却するよう設定する.
+     *
+     * @param errorRate エラーを返却する割合(0.0～1.0)
+     * @param statusCode ステータスコード(500、429等)
+     * @return this
+     */
+    public StubLineApiServer withErrors(final double errorRate, final int statusCode) {
+        this.errorRate = errorRate;
+        this.errorStatusCode = statusCode;
+        return this;
+    }
+
+    /**
+     * エンドポイントのURIを返却する.
+     *
+     * @return エンドポイントのURI
+     */
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort());
+    }
+
+    public int getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    public int getErrorCount() {
+        return this.errorCount.get();
+    }
+
+    /**
+     * プロフィール取得・グループ概要取得に応答する.
+     *
+     * @param exchange HTTPのリクエストとレスポンス
+     * @param fieldName 名前のフィールド名
+     * @throws IOException
+     */
+    private void handle(final HttpExchange exchange, final String fieldName) throws IOException {
+        this.requestCount.incrementAndGet();
+        if (this.latencyMillis > 0) {
+            try {
+                Thread.sleep(this.latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // パスの末尾(グループは/summaryの直前)がID
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        String id = "groupName".equals(fieldName) ? segments[segments.length - 2] : segments[segments.length - 1];
+        if (this.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < this.errorRate) {
+            this.errorCount.incrementAndGet();
+            this.respond(exchange, this.errorStatusCode, "{\"message\":\"injected error\"}");
+        } else {
+            this.respond(exchange, 200, "{\"" + fieldName + "\":\"name-" + id + "\"}");
+        }
+    }
+
+    /**
+     * JSONを返却する.
+     */
+    private void respond(final HttpExchange exchange, final int statusCode, final String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * 待ち受けを停止する.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
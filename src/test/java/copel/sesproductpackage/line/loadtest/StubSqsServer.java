@@ -0,0 +1,306 @@
+package copel.sesproductpackage.line.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * SendMessageBatchに応答し、受け取ったメッセージを記録するローカルのSQSエンドポイント(負荷試験用).
+ * Queryプロトコル(application/x-www-form-urlencoded、XMLで応答)とJSONプロトコル(X-Amz-Target、JSONで応答)の両方に対応する.
+ * 一定の割合でエントリ単位の失敗(再送可能なエラー)を注入できる. メッセージ属性には対応しない(圧縮は無効にして使用する).
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class StubSqsServer implements AutoCloseable {
+    /**
+     * SendMessageBatchのエントリのパラメータ名(Queryプロトコル).
+     */
+    private static final Pattern ENTRY_PARAMETER = Pattern.compile("SendMessageBatchRequestEntry\\.(\\d+)\\.(Id|MessageBody)");
+    /**
+     * JSONプロトコルのSendMessageBatchのX-Amz-Target.
+     */
+    private static final String JSON_TARGET = "AmazonSQS.SendMessageBatch";
+
+    /**
+     * 記録したメッセージ.
+     */
+    public static final class RecordedMessage {
+        /**
+         * キューURL.
+         */
+        private final String queueUrl;
+        /**
+         * メッセージ本文.
+         */
+        private final String body;
+
+        RecordedMessage(final String queueUrl, final String body) {
+            this.queueUrl = queueUrl;
+            this.body = body;
+        }
+
+        public String getQueueUrl() {
+            return this.queueUrl;
+        }
+
+        public String getBody() {
+            return this.body;
+        }
+    }
+
+    /**
+     * HTTPサーバー.
+     */
+    private final HttpServer server;
+    /**
+     * リクエストを処理するスレッド.
+     */
+    private final ExecutorService executor;
+    /**
+     * 受け取ったメッセージ(受信順).
+     */
+    private final ConcurrentLinkedQueue<RecordedMessage> messages = new ConcurrentLinkedQueue<RecordedMessage>();
+    /**
+     * エントリ単位で失敗させる割合(0.0～1.0).
+     */
+    private volatile double entryFailureRate;
+    /**
+     * 受け付けたSendMessageBatchの数.
+     */
+    private final AtomicInteger batchCount = new AtomicInteger();
+    /**
+     * 失敗させたエントリの数.
+     */
+    private final AtomicInteger failedEntryCount = new AtomicInteger();
+    /**
+     * メッセージIDの採番.
+     */
+    private final AtomicInteger messageIdSequence = new AtomicInteger();
+
+    /**
+     * コンストラクタ(空いているポートで待ち受けを開始する).
+     *
+     * @param threads リクエストを処理するスレッド数
+     * @throws IOException
+     */
+    public StubSqsServer(final int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * 一定の割合でエントリ単位の失敗(SenderFault=false)を返却するよう設定する.
+     *
+     * @param entryFailureRate 失敗させる割合(0.0～1.0)
+     * @return this
+     */
+    public StubSqsServer withEntryFailures(final double entryFailureRate) {
+        this.entryFailureRate = entryFailureRate;
+        return this;
+    }
+
+    /**
+     * エンドポイントのURIを返却する.
+     *
+     * @return エンドポイントのURI
+     */
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort());
+    }
+
+    /**
+     * 受け取ったメッセージを返却する.
+     *
+     * @return メッセージ(受信順)
+     */
+    public List<RecordedMessage> getMessages() {
+        return new ArrayList<RecordedMessage>(this.messages);
+    }
+
+    public int getBatchCount() {
+        return this.batchCount.get();
+    }
+
+    public int getFailedEntryCount() {
+        return this.failedEntryCount.get();
+    }
+
+    /**
+     * SendMessageBatchに応答する.
+     *
+     * @param exchange HTTPのリクエストとレスポンス
+     * @throws IOException
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        byte[] request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = in.readAllBytes();
+        }
+        this.batchCount.incrementAndGet();
+        if (JSON_TARGET.equals(exchange.getRequestHeaders().getFirst("X-Amz-Target"))) {
+            this.handleJson(exchange, request);
+        } else {
+            this.handleQuery(exchange, new String(request, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Queryプロトコルのリクエストに応答する.
+     */
+    private void handleQuery(final HttpExchange exchange, final String form) throws IOException {
+        String queueUrl = null;
+        Map<Integer, String[]> entries = new TreeMap<Integer, String[]>();
+        for (String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String name = URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8);
+            String value = URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            Matcher matcher = ENTRY_PARAMETER.matcher(name);
+            if (matcher.matches()) {
+                String[] entry = entries.computeIfAbsent(Integer.valueOf(matcher.group(1)), k -> new String[2]);
+                entry["Id".equals(matcher.group(2)) ? 0 : 1] = value;
+            } else if ("QueueUrl".equals(name)) {
+                queueUrl = value;
+            }
+        }
+
+        StringBuilder successful = new StringBuilder();
+        StringBuilder failed = new StringBuilder();
+        for (String[] entry : entries.values()) {
+            if (this.injectFailure()) {
+                failed.append("<BatchResultErrorEntry><Id>").append(entry[0])
+                    .append("</Id><SenderFault>false</SenderFault><Code>InternalError</Code><Message>injected failure</Message></BatchResultErrorEntry>");
+            } else {
+                this.messages.add(new RecordedMessage(queueUrl, entry[1]));
+                successful.append("<SendMessageBatchResultEntry><Id>").append(entry[0])
+                    .append("</Id><MessageId>stub-").append(this.messageIdSequence.incrementAndGet())
+                    .append("</MessageId><MD5OfMessageBody>").append(md5Hex(entry[1]))
+                    .append("</MD5OfMessageBody></SendMessageBatchResultEntry>");
+            }
+        }
+        String xml = "<SendMessageBatchResponse><SendMessageBatchResult>" + successful + failed
+                + "</SendMessageBatchResult><ResponseMetadata><RequestId>stub</RequestId></ResponseMetadata></SendMessageBatchResponse>";
+        this.respond(exchange, "text/xml", xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * JSONプロトコルのリクエストに応答する.
+     */
+    private void handleJson(final HttpExchange exchange, final byte[] request) throws IOException {
+        JsonNode root = JsonUtil.readTree(new String(request, StandardCharsets.UTF_8));
+        String queueUrl = root.path("QueueUrl").asText(null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonUtil.getJsonFactory().createGenerator(out)) {
+            List<JsonNode> failedEntries = new ArrayList<JsonNode>();
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("Successful");
+            for (JsonNode entry : root.path("Entries")) {
+                if (this.injectFailure()) {
+                    failedEntries.add(entry);
+                    continue;
+                }
+                String body = entry.path("MessageBody").asText();
+                this.messages.add(new RecordedMessage(queueUrl, body));
+                generator.writeStartObject();
+                generator.writeStringField("Id", entry.path("Id").asText());
+                generator.writeStringField("MessageId", "stub-" + this.messageIdSequence.incrementAndGet());
+                generator.writeStringField("MD5OfMessageBody", md5Hex(body));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Failed");
+            for (JsonNode entry : failedEntries) {
+                generator.writeStartObject();
+                generator.writeStringField("Id", entry.path("Id").asText());
+                generator.writeBooleanField("SenderFault", false);
+                generator.writeStringField("Code", "InternalError");
+                generator.writeStringField("Message", "injected failure");
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        this.respond(exchange, "application/x-amz-json-1.0", out.toByteArray());
+    }
+
+    /**
+     * エントリを失敗させるか抽選する.
+     */
+    private boolean injectFailure() {
+        if (this.entryFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < this.entryFailureRate) {
+            this.failedEntryCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * レスポンスを返却する.
+     */
+    private void respond(final HttpExchange exchange, final String contentType, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * 文字列のMD5を16進数で返却する(SDKがメッセージ本文の検証に使用する).
+     *
+     * @param value 文字列
+     * @return MD5の16進数表現
+     */
+    private static String md5Hex(final String value) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 待ち受けを停止する.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,418 @@
+package copel.sesproductpackage.line.loadtest;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import copel.sesproductpackage.line.LambdaHandler;
+import copel.sesproductpackage.line.client.LineApiClient;
+import copel.sesproductpackage.line.client.SqsClientRegistry;
+import copel.sesproductpackage.line.entity.LineMessagingApiWebhookEntity;
+import copel.sesproductpackage.line.util.LineSignatureVerifier;
+
+/**
+ * Webhookのリクエストボディの集合を{@link LambdaHandler}へ同時に流し込む、ネットワーク不要の負荷試験・再生ハーネス.
+ * LINE API・SQSはローカルのスタブ({@link StubLineApiServer}・{@link StubSqsServer})に向け、
+ * SDK・HTTPクライアントを含む実際の経路で処理する.
+ * リクエストには本番と同じく署名を付け、署名の検証も含めて処理する.
+ * 同時実行は仮想スレッド(Java 21以降)で行い、利用できない場合は同時実行数と同じ大きさのスレッドプールで行う.
+ * 実行例: mvn test -Dtest=WebhookReplayHarnessTest -Dloadtest.requests=20000 -Dloadtest.concurrency=128
+ *
+ * @author 鈴木一矢
+ *
+ */
+public class WebhookReplayHarness implements AutoCloseable {
+    // =====================================
+    // 定数
+    // =====================================
+    /**
+     * SQSのキューURL(ハンドラと同じ環境変数).
+     */
+    private static final String SQS_QUEUE_URL_SES_AI_REGISTER = System.getenv("SQS_QUEUE_URL_SES_AI_REGISTER");
+    /**
+     * リクエストの署名に使用するChannel Secret.
+     */
+    private static final String CHANNEL_SECRET = "loadtest";
+
+    /**
+     * 再生の結果.
+     */
+    public static final class Report {
+        private final int requests;
+        private final int failures;
+        private final long elapsedNanos;
+        private final long[] sortedLatencyNanos;
+        private final int enqueued;
+        private final int expected;
+        private final String executor;
+
+        Report(final int requests, final int failures, final long elapsedNanos, final long[] latencyNanos,
+                final int enqueued, final int expected, final String executor) {
+            this.requests = requests;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencyNanos = latencyNanos.clone();
+            Arrays.sort(this.sortedLatencyNanos);
+            this.enqueued = enqueued;
+            this.expected = expected;
+            this.executor = executor;
+        }
+
+        /**
+         * レイテンシのパーセンタイルを返却する(nearest-rank).
+         *
+         * @param percentile パーセンタイル(0～100)
+         * @return レイテンシ(ミリ秒)
+         */
+        public double percentileMillis(final double percentile) {
+            if (this.sortedLatencyNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * this.sortedLatencyNanos.length);
+            return this.sortedLatencyNanos[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+
+        /**
+         * スループット(リクエスト/秒)を返却する.
+         *
+         * @return スループット
+         */
+        public double throughput() {
+            return this.requests / (this.elapsedNanos / 1_000_000_000.0);
+        }
+
+        public int getRequests() {
+            return this.requests;
+        }
+
+        /**
+         * 2xx以外のレスポンス、または例外となったリクエスト数を返却する.
+         *
+         * @return 失敗したリクエスト数
+         */
+        public int getFailures() {
+            return this.failures;
+        }
+
+        public int getEnqueued() {
+            return this.enqueued;
+        }
+
+        public int getExpected() {
+            return this.expected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "requests=%d failures=%d executor=%s elapsed=%.0fms throughput=%.1f req/s p50=%.2fms p95=%.2fms p99=%.2fms enqueued=%d/%d",
+                    this.requests, this.failures, this.executor, this.elapsedNanos / 1_000_000.0, this.throughput(),
+                    this.percentileMillis(50), this.percentileMillis(95), this.percentileMillis(99), this.enqueued, this.expected);
+        }
+    }
+
+    // =====================================
+    // フィールド
+    // =====================================
+    /**
+     * LINE APIのスタブ.
+     */
+    private final StubLineApiServer lineApi;
+    /**
+     * SQSのスタブ.
+     */
+    private final StubSqsServer sqs;
+    /**
+     * 差し替え前のLINE APIクライアント.
+     */
+    private final LineApiClient previousLineApiClient;
+    /**
+     * 同時実行数.
+     */
+    private final int concurrency;
+    /**
+     * 処理対象のハンドラ.
+     */
+    private final LambdaHandler handler = new LambdaHandler();
+    /**
+     * リクエストの署名に使用する検証クラス(ハンドラと同じChannel Secret).
+     */
+    private final LineSignatureVerifier signatureVerifier = new LineSignatureVerifier(CHANNEL_SECRET);
+    /**
+     * 呼び出し毎に異なるリクエストIDを返すContext.
+     */
+    private final Context context = mock(Context.class);
+
+    // =====================================
+    // コンストラクタ
+    // =====================================
+    /**
+     * スタブを起動し、LINE APIクライアント・SQSクライアントをスタブへ向ける.
+     *
+     * @param concurrency 同時実行数
+     * @throws IOException
+     */
+    public WebhookReplayHarness(final int concurrency) throws IOException {
+        this.concurrency = concurrency;
+        this.handler.setSignatureVerifier(this.signatureVerifier);
+        // メトリクスの出力先はハンドラの生成時の標準出力に固定されるため、再生中の差し替えとは別に破棄する
+        this.handler.setMetricsSink(line -> { });
+        when(this.context.getAwsRequestId()).thenAnswer(invocation -> UUID.randomUUID().toString());
+        this.lineApi = new StubLineApiServer(concurrency);
+        this.sqs = new StubSqsServer(concurrency);
+
+        this.previousLineApiClient = LineApiClient.getDefault();
+        LineApiClient.setDefault(new LineApiClient(this.lineApi.getEndpoint(),
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(2)).build(),
+                Duration.ofSeconds(5), 2, Duration.ofMillis(10), Duration.ofMillis(200)));
+        SqsClientRegistry.register(Region.AP_NORTHEAST_1, SQS_QUEUE_URL_SES_AI_REGISTER, SqsClient.builder()
+                .region(Region.AP_NORTHEAST_1)
+                .endpointOverride(this.sqs.getEndpoint())
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("loadtest", "loadtest")))
+                .httpClientBuilder(UrlConnectionHttpClient.builder())
+                .build());
+    }
+
+    // =====================================
+    // メソッド
+    // =====================================
+    public StubLineApiServer getLineApi() {
+        return this.lineApi;
+    }
+
+    public StubSqsServer getSqs() {
+        return this.sqs;
+    }
+
+    /**
+     * リクエストボディの集合を同時実行数で再生する.
+     * 再生中の標準出力(ログ・メトリクス)は破棄する.
+     *
+     * @param corpus リクエストボディ
+     * @return 結果
+     * @throws InterruptedException
+     */
+    public Report replay(final List<String> corpus) throws InterruptedException {
+        int expected = expectedMessages(corpus);
+        int enqueuedBefore = this.sqs.getMessages().size();
+        long[] latencyNanos = new long[corpus.size()];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore permits = new Semaphore(this.concurrency);
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ExecutorService executor = newExecutor(this.concurrency);
+        String executorName = executor.getClass().getSimpleName();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < corpus.size(); i++) {
+                int index = i;
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        latencyNanos[index] = this.invoke(corpus.get(index), failures);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+            System.setOut(stdout);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        return new Report(corpus.size(), failures.get(), elapsedNanos, latencyNanos,
+                this.sqs.getMessages().size() - enqueuedBefore, expected, executorName);
+    }
+
+    /**
+     * 1件のリクエストを処理する.
+     *
+     * @param body リクエストボディ
+     * @param failures 失敗数
+     * @return レイテンシ(ナノ秒)
+     */
+    private long invoke(final String body, final AtomicInteger failures) {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withPath("/webhook")
+                .withHeaders(Map.of("x-line-signature", this.signatureVerifier.sign(body.getBytes(StandardCharsets.UTF_8))))
+                .withBody(body);
+        long start = System.nanoTime();
+        try {
+            APIGatewayProxyResponseEvent response = this.handler.handleRequest(request, this.context);
+            if (response.getStatusCode() / 100 != 2) {
+                failures.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 同時実行に使用するExecutorを作成する.
+     * Java 21以降は仮想スレッドを使用し(同時実行数はSemaphoreで制限する)、それ以前は固定サイズのスレッドプールを使用する.
+     *
+     * @param concurrency 同時実行数
+     * @return Executor
+     */
+    static ExecutorService newExecutor(final int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(concurrency);
+        }
+    }
+
+    /**
+     * リクエストボディの集合からSQSへ送信されるはずのメッセージ数を求める.
+     * ハンドラと同様に、正常なメッセージイベントのみを数え、同じwebhookEventIdは1回のみ数える.
+     *
+     * @param corpus リクエストボディ
+     * @return メッセージ数
+     */
+    public static int expectedMessages(final List<String> corpus) {
+        Set<String> eventIds = new HashSet<String>();
+        int expected = 0;
+        for (String body : corpus) {
+            List<LineMessagingApiWebhookEntity> events;
+            try {
+                events = LineMessagingApiWebhookEntity.parseEvents(body);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            for (LineMessagingApiWebhookEntity event : events) {
+                if (event.isValid() && event.isMessage()
+                        && (event.getWebhookEventId() == null || event.getWebhookEventId().isEmpty() || eventIds.add(event.getWebhookEventId()))) {
+                    expected++;
+                }
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * 記録済みのリクエストボディを読み込む(1行に1件のJSON. 空行は無視する).
+     *
+     * @param file ファイル
+     * @return リクエストボディ
+     * @throws IOException
+     */
+    public static List<String> loadCorpus(final Path file) throws IOException {
+        List<String> corpus = new ArrayList<String>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                corpus.add(line);
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * 合成のリクエストボディを作成する.
+     * グループのテキスト・個人のテキスト・ファイル・follow/join・複数イベントを混在させ、
+     * 送信者・グループは指定した数の中から選ぶ(初回のみLINE APIを呼び出し、以降はキャッシュが効く).
+     * webhookEventId・送信者ID・グループIDは実行毎に一意とし、他の実行の重複排除・キャッシュの影響を受けない.
+     *
+     * @param requests リクエスト数
+     * @param users 送信者の数
+     * @param groups グループの数
+     * @param seed 乱数の種
+     * @return リクエストボディ
+     */
+    public static List<String> syntheticCorpus(final int requests, final int users, final int groups, final long seed) {
+        Random random = new Random(seed);
+        String run = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        AtomicInteger eventSequence = new AtomicInteger();
+        List<String> corpus = new ArrayList<String>(requests);
+        for (int i = 0; i < requests; i++) {
+            String userId = "U" + run + random.nextInt(users);
+            String groupId = "C" + run + random.nextInt(groups);
+            int kind = random.nextInt(100);
+            List<String> events = new ArrayList<String>();
+            if (kind < 60) {
+                events.add(textEvent(run, eventSequence, group(groupId, userId), "【案件】Java開発 / 東京都 / 単価" + (50 + random.nextInt(50)) + "万円"));
+            } else if (kind < 75) {
+                events.add(textEvent(run, eventSequence, user(userId), "【要員】SE経験" + random.nextInt(20) + "年 / 即日稼働可"));
+            } else if (kind < 85) {
+                events.add(event(run, eventSequence, "message", user(userId),
+                        ", \"message\": {\"type\": \"file\", \"id\": \"" + i + "\", \"fileName\": \"スキルシート.xlsx\", \"fileSize\": 52480}"));
+            } else if (kind < 95) {
+                events.add(random.nextBoolean()
+                        ? event(run, eventSequence, "follow", user(userId), "")
+                        : event(run, eventSequence, "join", "{\"type\": \"group\", \"groupId\": \"" + groupId + "\"}", ""));
+            } else {
+                for (int j = 0; j < 3; j++) {
+                    events.add(textEvent(run, eventSequence, group(groupId, userId), "【案件】まとめて転送 " + j));
+                }
+            }
+            corpus.add("{\"destination\": \"U0000000000\", \"events\": [" + String.join(", ", events) + "]}");
+        }
+        return corpus;
+    }
+
+    private static String user(final String userId) {
+        return "{\"type\": \"user\", \"userId\": \"" + userId + "\"}";
+    }
+
+    private static String group(final String groupId, final String userId) {
+        return "{\"type\": \"group\", \"groupId\": \"" + groupId + "\", \"userId\": \"" + userId + "\"}";
+    }
+
+    private static String textEvent(final String run, final AtomicInteger eventSequence, final String source, final String text) {
+        return event(run, eventSequence, "message", source,
+                ", \"message\": {\"type\": \"text\", \"id\": \"1\", \"text\": \"" + text + "\"}");
+    }
+
+    private static String event(final String run, final AtomicInteger eventSequence, final String type, final String source, final String rest) {
+        return "{\"type\": \"" + type + "\", \"webhookEventId\": \"" + run + eventSequence.incrementAndGet() + "\","
+                + " \"deliveryContext\": {\"isRedelivery\": false}, \"timestamp\": 1700000000000, \"mode\": \"active\","
+                + " \"source\": " + source + rest + "}";
+    }
+
+    /**
+     * スタブを停止し、LINE APIクライアント・SQSクライアントを元に戻す.
+     */
+    @Override
+    public void close() {
+        LineApiClient.setDefault(this.previousLineApiClient);
+        SqsClientRegistry.clear();
+        this.lineApi.close();
+        this.sqs.close();
+    }
+}
@@ -0,0 +1,117 @@
+package copel.sesproductpackage.line.loadtest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+import copel.sesproductpackage.line.util.StructuredLogger;
+
+/**
+ * 件数・同時実行数は -Dloadtest.requests / -Dloadtest.concurrency で変更できる(既定値は単体テスト向けの小さな値).
+ */
+class WebhookReplayHarnessTest {
+
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 300);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 16);
+    private static final StructuredLogger LOGGER = StructuredLogger.getLogger(WebhookReplayHarnessTest.class);
+
+    @Test
+    void testReplay_SyntheticCorpus() throws Exception {
+        List<String> corpus = WebhookReplayHarness.syntheticCorpus(REQUESTS, 50, 10, 1L);
+
+        try (WebhookReplayHarness harness = new WebhookReplayHarness(CONCURRENCY)) {
+            harness.getLineApi().withLatency(5);
+            WebhookReplayHarness.Report report = harness.replay(corpus);
+
+            LOGGER.info("負荷試験の結果", fields -> fields.put("report", report.toString()));
+            assertEquals(REQUESTS, report.getRequests());
+            assertEquals(0, report.getFailures());
+            assertTrue(report.getExpected() > 0);
+            assertEquals(report.getExpected(), report.getEnqueued());
+            assertTrue(report.percentileMillis(50) <= report.percentileMillis(99));
+            assertTrue(harness.getLineApi().getRequestCount() > 0);
+        }
+    }
+
+    @Test
+    void testReplay_WithInjectedErrors() throws Exception {
+        List<String> corpus = WebhookReplayHarness.syntheticCorpus(200, 50, 10, 2L);
+
+        try (WebhookReplayHarness harness = new WebhookReplayHarness(CONCURRENCY)) {
+            // 名前が取得できなくても登録は行い、SQSの一部失敗は再送で全件登録される
+            harness.getLineApi().withErrors(0.3, 500);
+            harness.getSqs().withEntryFailures(0.05);
+            WebhookReplayHarness.Report report = harness.replay(corpus);
+
+            LOGGER.info("負荷試験の結果", fields -> fields.put("report", report.toString()));
+            assertEquals(0, report.getFailures());
+            assertEquals(report.getExpected(), report.getEnqueued());
+            assertTrue(harness.getLineApi().getErrorCount() > 0);
+            assertTrue(harness.getSqs().getFailedEntryCount() > 0);
+        }
+    }
+
+    @Test
+    void testReplay_RecordedCorpus(@TempDir final Path dir) throws Exception {
+        // テキストメッセージ1件のみのリクエスト
+        String event = WebhookReplayHarness.syntheticCorpus(20, 1, 1, 3L).stream()
+                .filter(body -> body.contains("\"type\": \"text\"") && body.indexOf("webhookEventId") == body.lastIndexOf("webhookEventId"))
+                .findFirst()
+                .orElseThrow();
+        Path file = dir.resolve("webhooks.jsonl");
+        Files.write(file, List.of(
+                event,
+                "",
+                event.replace("\"isRedelivery\": false", "\"isRedelivery\": true"),
+                "{\"destination\": \"U0000000000\", \"events\": []}"), StandardCharsets.UTF_8);
+
+        List<String> corpus = WebhookReplayHarness.loadCorpus(file);
+        assertEquals(3, corpus.size());
+
+        try (WebhookReplayHarness harness = new WebhookReplayHarness(1)) {
+            WebhookReplayHarness.Report report = harness.replay(corpus);
+
+            // 再送されたイベントは重複として破棄される
+            assertEquals(1, report.getExpected());
+            assertEquals(1, report.getEnqueued());
+        }
+    }
+
+    @Test
+    void testStubSqsServer_JsonProtocol() throws Exception {
+        try (StubSqsServer sqs = new StubSqsServer(1)) {
+            String queueUrl = "https://sqs.ap-northeast-1.amazonaws.com/000000000000/ses-ai-register";
+            String request = "{\"QueueUrl\": \"" + queueUrl + "\", \"Entries\": ["
+                    + "{\"Id\": \"0\", \"MessageBody\": \"{\\\"requestType\\\": \\\"1\\\"}\"},"
+                    + "{\"Id\": \"1\", \"MessageBody\": \"body-1\"}]}";
+
+            HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(sqs.getEndpoint() + "/"))
+                    .header("Content-Type", "application/x-amz-json-1.0")
+                    .header("X-Amz-Target", "AmazonSQS.SendMessageBatch")
+                    .POST(HttpRequest.BodyPublishers.ofString(request))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            JsonNode result = JsonUtil.readTree(response.body());
+            assertEquals(2, result.path("Successful").size());
+            assertEquals("0", result.path("Successful").get(0).path("Id").asText());
+            assertEquals(0, result.path("Failed").size());
+            assertEquals(2, sqs.getMessages().size());
+            assertEquals(queueUrl, sqs.getMessages().get(0).getQueueUrl());
+            assertEquals("{\"requestType\": \"1\"}", sqs.getMessages().get(0).getBody());
+        }
+    }
+}
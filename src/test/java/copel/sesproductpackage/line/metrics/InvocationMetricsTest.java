@@ -0,0 +1,88 @@
+package copel.sesproductpackage.line.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+class InvocationMetricsTest {
+
+    @AfterEach
+    void tearDown() {
+        InvocationMetrics.end();
+    }
+
+    @Test
+    void testToEmf() throws Exception {
+        InvocationMetrics metrics = InvocationMetrics.begin("SesAiAssistant", "LineMessageReceiver", "req-1");
+        metrics.count("Events", 2);
+        metrics.count("Events", 1);
+        metrics.time("Parse", System.nanoTime());
+        metrics.time("LineApiCall", System.nanoTime());
+        metrics.time("LineApiCall", System.nanoTime());
+        metrics.setOutcome("Success");
+
+        JsonNode emf = JsonUtil.readTree(metrics.toEmf(1700000000000L));
+
+        JsonNode aws = emf.path("_aws");
+        assertEquals(1700000000000L, aws.path("Timestamp").asLong());
+        JsonNode directive = aws.path("CloudWatchMetrics").get(0);
+        assertEquals("SesAiAssistant", directive.path("Namespace").asText());
+        assertEquals("[[\"Service\"],[\"Service\",\"Outcome\"]]", directive.path("Dimensions").toString());
+        List<String> definitions = new ArrayList<>();
+        directive.path("Metrics").forEach(definition -> definitions.add(
+                definition.path("Name").asText() + ":" + definition.path("Unit").asText()));
+        assertEquals(List.of("Parse:Milliseconds", "LineApiCall:Milliseconds", "Events:Count"), definitions);
+
+        assertEquals("LineMessageReceiver", emf.path("Service").asText());
+        assertEquals("Success", emf.path("Outcome").asText());
+        assertEquals("req-1", emf.path("requestId").asText());
+        assertEquals(3, emf.path("Events").asLong());
+        assertTrue(emf.path("Parse").isNumber());
+        assertEquals(2, emf.path("LineApiCall").size());
+    }
+
+    @Test
+    void testToEmf_WithoutOutcome() throws Exception {
+        InvocationMetrics metrics = InvocationMetrics.begin("SesAiAssistant", "LineMessageReceiver", null);
+
+        JsonNode emf = JsonUtil.readTree(metrics.toEmf(0));
+
+        assertEquals("[[\"Service\"]]", emf.path("_aws").path("CloudWatchMetrics").get(0).path("Dimensions").toString());
+        assertFalse(emf.has("Outcome"));
+        assertFalse(emf.has("requestId"));
+    }
+
+    @Test
+    void testCurrent_OutsideInvocationRecordsNothing() {
+        InvocationMetrics.current().count("Events", 1);
+
+        InvocationMetrics metrics = InvocationMetrics.begin("SesAiAssistant", "LineMessageReceiver", null);
+        assertSame(metrics, InvocationMetrics.current());
+        assertEquals(0, metrics.getCount("Events"));
+
+        InvocationMetrics.end();
+        InvocationMetrics.current().count("Events", 1);
+        assertEquals(0, metrics.getCount("Events"));
+    }
+
+    @Test
+    void testBind_RecordsFromOtherThread() throws Exception {
+        InvocationMetrics metrics = InvocationMetrics.begin("SesAiAssistant", "LineMessageReceiver", null);
+
+        CompletableFuture.supplyAsync(InvocationMetrics.bind(() -> {
+            InvocationMetrics.current().count("UserNameCacheMisses", 1);
+            return null;
+        })).get();
+
+        assertEquals(1, metrics.getCount("UserNameCacheMisses"));
+    }
+}
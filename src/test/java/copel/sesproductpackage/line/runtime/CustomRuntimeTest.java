@@ -0,0 +1,173 @@
+package copel.sesproductpackage.line.runtime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+/**
+ * スタブのRuntime APIに対してカスタムランタイムのループを1件ずつ実行するテスト.
+ */
+class CustomRuntimeTest {
+
+    private HttpServer server;
+    private LambdaRuntimeApiClient runtimeApiClient;
+    /**
+     * スタブが/invocation/nextで順に返却するイベント(リクエストID, 本文).
+     */
+    private final Deque<String[]> events = new ArrayDeque<>();
+    /**
+     * スタブが受け取ったPOSTの本文(パス毎).
+     */
+    private final Map<String, String> posted = new ConcurrentHashMap<>();
+    /**
+     * スタブが受け取ったエラー種別ヘッダ(パス毎).
+     */
+    private final Map<String, String> errorTypes = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/2018-06-01/runtime/", this::handle);
+        server.start();
+        runtimeApiClient = new LambdaRuntimeApiClient("127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        System.clearProperty("com.amazonaws.xray.traceHeader");
+    }
+
+    @Test
+    void testProcessNextPostsHandlerResponse() throws Exception {
+        events.add(new String[] {"req-1", "{\"httpMethod\": \"POST\", \"path\": \"/webhook\","
+                + " \"headers\": {\"x-line-signature\": \"sig\"}, \"body\": \"{\\\"events\\\": []}\","
+                + " \"isBase64Encoded\": false, \"requestContext\": {\"requestId\": \"api-1\", \"identity\": {\"sourceIp\": \"203.0.113.1\"}},"
+                + " \"unknownField\": 1}"});
+        Context[] received = new Context[1];
+        CustomRuntime runtime = new CustomRuntime(runtimeApiClient, (request, context) -> {
+            received[0] = context;
+            assertEquals("POST", request.getHttpMethod());
+            assertEquals("/webhook", request.getPath());
+            assertEquals("sig", request.getHeaders().get("x-line-signature"));
+            assertEquals("{\"events\": []}", request.getBody());
+            assertEquals("203.0.113.1", request.getRequestContext().getIdentity().getSourceIp());
+            return new APIGatewayProxyResponseEvent().withStatusCode(200).withBody("{\"message\": \"正常に終了しました。\"}");
+        });
+
+        runtime.processNext();
+
+        assertEquals("req-1", received[0].getAwsRequestId());
+        assertTrue(received[0].getRemainingTimeInMillis() > 0);
+        assertEquals("Root=1-5759e988-bd862e3fe1be46a994272793", System.getProperty("com.amazonaws.xray.traceHeader"));
+        JsonNode response = JsonUtil.readTree(posted.get("/invocation/req-1/response"));
+        assertEquals(200, response.path("statusCode").asInt());
+        assertEquals("{\"message\": \"正常に終了しました。\"}", response.path("body").asText());
+        assertFalse(response.has("headers"));
+        assertFalse(response.has("multiValueHeaders"));
+    }
+
+    @Test
+    void testProcessNextReportsHandlerError() throws Exception {
+        events.add(new String[] {"req-2", "{\"httpMethod\": \"POST\", \"body\": \"{}\"}"});
+        CustomRuntime runtime = new CustomRuntime(runtimeApiClient, (request, context) -> {
+            throw new IllegalStateException("処理に失敗しました");
+        });
+
+        runtime.processNext();
+
+        assertFalse(posted.containsKey("/invocation/req-2/response"));
+        JsonNode error = JsonUtil.readTree(posted.get("/invocation/req-2/error"));
+        assertEquals("処理に失敗しました", error.path("errorMessage").asText());
+        assertEquals("java.lang.IllegalStateException", error.path("errorType").asText());
+        assertEquals("java.lang.IllegalStateException", errorTypes.get("/invocation/req-2/error"));
+    }
+
+    @Test
+    void testProcessNextReportsMalformedEvent() throws Exception {
+        events.add(new String[] {"req-3", "not json"});
+        CustomRuntime runtime = new CustomRuntime(runtimeApiClient, (request, context) -> {
+            fail("ハンドラは呼び出されないこと");
+            return null;
+        });
+
+        runtime.processNext();
+
+        assertNotNull(posted.get("/invocation/req-3/error"));
+    }
+
+    @Test
+    void testProcessesEventsInOrder() throws Exception {
+        events.add(new String[] {"req-4", "{\"body\": \"1\"}"});
+        events.add(new String[] {"req-5", "{\"body\": \"2\"}"});
+        CustomRuntime runtime = new CustomRuntime(runtimeApiClient,
+                (request, context) -> new APIGatewayProxyResponseEvent().withStatusCode(200).withBody(request.getBody()));
+
+        runtime.processNext();
+        runtime.processNext();
+
+        assertEquals("1", JsonUtil.readTree(posted.get("/invocation/req-4/response")).path("body").asText());
+        assertEquals("2", JsonUtil.readTree(posted.get("/invocation/req-5/response")).path("body").asText());
+    }
+
+    @Test
+    void testPostInitError() throws Exception {
+        runtimeApiClient.postInitError(new IllegalArgumentException("LINE_CHANNEL_SECRET is not set"));
+
+        JsonNode error = JsonUtil.readTree(posted.get("/init/error"));
+        assertEquals("LINE_CHANNEL_SECRET is not set", error.path("errorMessage").asText());
+        assertEquals("java.lang.IllegalArgumentException", errorTypes.get("/init/error"));
+    }
+
+    /**
+     * Runtime APIのスタブ.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/2018-06-01/runtime".length());
+        byte[] response;
+        if ("GET".equals(exchange.getRequestMethod()) && "/invocation/next".equals(path)) {
+            String[] event = events.poll();
+            if (event == null) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Lambda-Runtime-Aws-Request-Id", event[0]);
+            exchange.getResponseHeaders().set("Lambda-Runtime-Deadline-Ms", String.valueOf(System.currentTimeMillis() + 30000));
+            exchange.getResponseHeaders().set("Lambda-Runtime-Invoked-Function-Arn", "arn:aws:lambda:ap-northeast-1:000000000000:function:line");
+            exchange.getResponseHeaders().set("Lambda-Runtime-Trace-Id", "Root=1-5759e988-bd862e3fe1be46a994272793");
+            response = event[1].getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+        } else {
+            posted.put(path, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            String errorType = exchange.getRequestHeaders().getFirst("Lambda-Runtime-Function-Error-Type");
+            if (errorType != null) {
+                errorTypes.put(path, errorType);
+            }
+            response = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(202, response.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
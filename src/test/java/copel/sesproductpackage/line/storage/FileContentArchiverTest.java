@@ -0,0 +1,151 @@
+package copel.sesproductpackage.line.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import copel.sesproductpackage.line.client.LineApiClient;
+
+class FileContentArchiverTest {
+
+    /**
+     * スタブが返却するファイルのバイト数(バッファより十分大きい).
+     */
+    private static final int CONTENT_SIZE = 3 * 1024 * 1024 + 123;
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private LineApiClient client;
+    private volatile int statusCode = 200;
+    private volatile boolean chunked;
+    private volatile String requestedPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        client = new LineApiClient(URI.create("http://127.0.0.1:" + server.getAddress().getPort()),
+                HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build(),
+                Duration.ofSeconds(5), 0, Duration.ofMillis(10), Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testArchive() throws Exception {
+        FileContentArchiver.ArchivedFile archivedFile = new FileContentArchiver(new FileSystemBlobStore(dir))
+                .archive(client, "468789577898262531", "スキルシート_山田太郎.XLSX", CONTENT_SIZE, "token");
+
+        assertEquals("/v2/bot/message/468789577898262531/content", requestedPath);
+        Path saved = dir.resolve("file-content/468789577898262531.xlsx");
+        assertEquals(saved, Path.of(URI.create(archivedFile.getLocation())));
+        assertEquals(CONTENT_SIZE, archivedFile.getSize());
+        assertEquals(CONTENT_SIZE, Files.size(saved));
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(saved))),
+                archivedFile.getSha256());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content())), archivedFile.getSha256());
+        assertEquals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", archivedFile.getContentType());
+    }
+
+    @Test
+    void testArchive_WithoutContentLengthUsesFileSize() throws Exception {
+        chunked = true;
+
+        FileContentArchiver.ArchivedFile archivedFile = new FileContentArchiver(new FileSystemBlobStore(dir))
+                .archive(client, "1", "a.pdf", CONTENT_SIZE, "token");
+
+        assertEquals(CONTENT_SIZE, archivedFile.getSize());
+        assertEquals(CONTENT_SIZE, Files.size(dir.resolve("file-content/1.pdf")));
+    }
+
+    @Test
+    void testArchive_WithoutAnyLengthFails() {
+        chunked = true;
+        FileContentArchiver archiver = new FileContentArchiver(new FileSystemBlobStore(dir));
+
+        assertThrows(IOException.class, () -> archiver.archive(client, "1", "a.pdf", 0, "token"));
+        assertFalse(Files.exists(dir.resolve("file-content/1.pdf")));
+    }
+
+    @Test
+    void testArchive_ExpiredContentFails() {
+        statusCode = 404;
+        FileContentArchiver archiver = new FileContentArchiver(new FileSystemBlobStore(dir));
+
+        assertThrows(IOException.class, () -> archiver.archive(client, "1", "a.pdf", CONTENT_SIZE, "token"));
+        assertFalse(Files.exists(dir.resolve("file-content")));
+    }
+
+    @Test
+    void testExtensionOf() {
+        assertEquals(".xlsx", FileContentArchiver.extensionOf("スキルシート.XLSX"));
+        assertEquals(".pdf", FileContentArchiver.extensionOf("a.b.pdf"));
+        assertEquals("", FileContentArchiver.extensionOf("README"));
+        assertEquals("", FileContentArchiver.extensionOf("a."));
+        assertEquals("", FileContentArchiver.extensionOf("a.x/../y"));
+        assertEquals("", FileContentArchiver.extensionOf(null));
+    }
+
+    /**
+     * 決まった内容をバッファを使い回しながら少しずつ返却する(スタブ側でも全体をメモリに持たない).
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        requestedPath = exchange.getRequestURI().getPath();
+        exchange.getRequestBody().readAllBytes();
+        if (statusCode != 200) {
+            byte[] body = "{\"message\":\"Not found\"}".getBytes();
+            exchange.sendResponseHeaders(statusCode, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        exchange.sendResponseHeaders(200, chunked ? 0 : CONTENT_SIZE);
+        try (OutputStream out = exchange.getResponseBody()) {
+            byte[] chunk = new byte[8192];
+            for (int written = 0; written < CONTENT_SIZE; ) {
+                int length = Math.min(chunk.length, CONTENT_SIZE - written);
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = contentByte(written + i);
+                }
+                out.write(chunk, 0, length);
+                written += length;
+            }
+        }
+    }
+
+    private static byte contentByte(final int position) {
+        return (byte) (position * 31 + (position >>> 11));
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[CONTENT_SIZE];
+        for (int i = 0; i < CONTENT_SIZE; i++) {
+            content[i] = contentByte(i);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,52 @@
+package copel.sesproductpackage.line.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileSystemBlobStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testPut() throws Exception {
+        byte[] content = "こんにちは".getBytes(StandardCharsets.UTF_8);
+        String location = new FileSystemBlobStore(dir).put("a/b.txt", new ByteArrayInputStream(content), content.length, "text/plain");
+
+        assertEquals(dir.resolve("a/b.txt"), Path.of(URI.create(location)));
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("a/b.txt")));
+    }
+
+    @Test
+    void testPut_Overwrites() throws Exception {
+        FileSystemBlobStore store = new FileSystemBlobStore(dir);
+        store.put("a.txt", new ByteArrayInputStream(new byte[] {1, 2}), 2, "application/octet-stream");
+        store.put("a.txt", new ByteArrayInputStream(new byte[] {3}), 1, "application/octet-stream");
+
+        assertArrayEquals(new byte[] {3}, Files.readAllBytes(dir.resolve("a.txt")));
+    }
+
+    @Test
+    void testPut_LengthMismatchLeavesNoFile() {
+        FileSystemBlobStore store = new FileSystemBlobStore(dir);
+        assertThrows(IOException.class,
+                () -> store.put("a.txt", new ByteArrayInputStream(new byte[] {1, 2}), 3, "application/octet-stream"));
+        assertFalse(Files.exists(dir.resolve("a.txt")));
+    }
+
+    @Test
+    void testPut_RejectsKeyOutsideRoot() {
+        FileSystemBlobStore store = new FileSystemBlobStore(dir.resolve("root"));
+        assertThrows(IOException.class,
+                () -> store.put("../escape.txt", new ByteArrayInputStream(new byte[0]), 0, "text/plain"));
+    }
+}
@@ -0,0 +1,217 @@
+package copel.sesproductpackage.line.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+class S3BlobStoreTest {
+
+    /**
+     * パート2つ分と少しのバイト数(3パートに分かれる).
+     */
+    private static final long LARGE_SIZE = 2L * S3BlobStore.PART_SIZE + 123;
+
+    @Test
+    void testPut_LargeContentIsUploadedInBoundedParts() throws Exception {
+        StubS3Client s3 = new StubS3Client();
+        GeneratedInputStream content = new GeneratedInputStream(LARGE_SIZE);
+        s3.source = content;
+
+        String location = new S3BlobStore(s3, "bucket").put("file-content/1.xlsx", content, LARGE_SIZE, "application/octet-stream");
+
+        assertEquals("s3://bucket/file-content/1.xlsx", location);
+        assertEquals(List.of((long) S3BlobStore.PART_SIZE, (long) S3BlobStore.PART_SIZE, 123L), s3.partLengths);
+        // パートを送信する時点で、送信済みの内容より先へはパート1つ分までしか読み込んでいない
+        assertTrue(s3.maxReadAhead <= S3BlobStore.PART_SIZE, "read ahead: " + s3.maxReadAhead);
+        assertEquals(List.of(1, 2, 3), s3.completedPartNumbers);
+        assertArrayEquals(GeneratedInputStream.sha256(LARGE_SIZE), s3.digest.digest());
+        assertFalse(s3.aborted);
+        assertEquals(0, s3.putObjectCount);
+    }
+
+    @Test
+    void testPut_SmallContentIsSingleRequest() throws Exception {
+        StubS3Client s3 = new StubS3Client();
+        byte[] content = new byte[] {1, 2, 3};
+
+        new S3BlobStore(s3, "bucket").put("a.bin", new ByteArrayInputStream(content), content.length, "application/octet-stream");
+
+        assertEquals(1, s3.putObjectCount);
+        assertTrue(s3.partLengths.isEmpty());
+    }
+
+    @Test
+    void testPut_ShortContentAbortsUpload() {
+        StubS3Client s3 = new StubS3Client();
+        S3BlobStore store = new S3BlobStore(s3, "bucket");
+
+        assertThrows(IOException.class, () -> store.put("a.bin", new GeneratedInputStream(S3BlobStore.PART_SIZE + 10),
+                LARGE_SIZE, "application/octet-stream"));
+        assertTrue(s3.aborted);
+        assertTrue(s3.completedPartNumbers.isEmpty());
+    }
+
+    @Test
+    void testPut_PartFailureAbortsUpload() {
+        StubS3Client s3 = new StubS3Client();
+        s3.failPartNumber = 2;
+        S3BlobStore store = new S3BlobStore(s3, "bucket");
+
+        IOException e = assertThrows(IOException.class, () -> store.put("a.bin", new GeneratedInputStream(LARGE_SIZE),
+                LARGE_SIZE, "application/octet-stream"));
+        assertInstanceOf(SdkClientException.class, e.getCause());
+        assertTrue(s3.aborted);
+        assertTrue(s3.completedPartNumbers.isEmpty());
+    }
+
+    /**
+     * マルチパートアップロードのパートの内容を読み込み、大きさとハッシュを記録するS3クライアント.
+     */
+    private static final class StubS3Client implements S3Client {
+        private final List<Long> partLengths = new ArrayList<>();
+        private final List<Integer> completedPartNumbers = new ArrayList<>();
+        private final MessageDigest digest;
+        private GeneratedInputStream source;
+        private long uploaded;
+        private long maxReadAhead;
+        private int failPartNumber = -1;
+        private int putObjectCount;
+        private boolean aborted;
+
+        StubS3Client() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(final CreateMultipartUploadRequest request) {
+            return CreateMultipartUploadResponse.builder().uploadId("upload-1").build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(final UploadPartRequest request, final RequestBody requestBody) {
+            if (request.partNumber() == this.failPartNumber) {
+                throw SdkClientException.create("connection reset");
+            }
+            if (this.source != null) {
+                this.maxReadAhead = Math.max(this.maxReadAhead, this.source.position - this.uploaded);
+            }
+            long length = 0;
+            try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+                byte[] chunk = new byte[8192];
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    this.digest.update(chunk, 0, n);
+                    length += n;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            assertEquals(request.contentLength(), length);
+            this.partLengths.add(length);
+            this.uploaded += length;
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(final CompleteMultipartUploadRequest request) {
+            for (CompletedPart part : request.multipartUpload().parts()) {
+                assertEquals("etag-" + part.partNumber(), part.eTag());
+                this.completedPartNumbers.add(part.partNumber());
+            }
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(final AbortMultipartUploadRequest request) {
+            assertEquals("upload-1", request.uploadId());
+            this.aborted = true;
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public PutObjectResponse putObject(final PutObjectRequest request, final RequestBody requestBody) {
+            this.putObjectCount++;
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return S3Client.SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 決まった内容をメモリに持たずに生成し、読み込んだ位置を記録するストリーム.
+     */
+    private static final class GeneratedInputStream extends InputStream {
+        private final long size;
+        private volatile long position;
+
+        GeneratedInputStream(final long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return this.position < this.size ? contentByte(this.position++) & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (this.position >= this.size) {
+                return -1;
+            }
+            int n = (int) Math.min(len, this.size - this.position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = contentByte(this.position + i);
+            }
+            this.position += n;
+            return n;
+        }
+
+        private static byte contentByte(final long position) {
+            return (byte) (position * 31 + (position >>> 11));
+        }
+
+        static byte[] sha256(final long size) throws Exception {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[8192];
+            try (GeneratedInputStream in = new GeneratedInputStream(size)) {
+                for (int n; (n = in.read(chunk, 0, chunk.length)) > 0; ) {
+                    digest.update(chunk, 0, n);
+                }
+            }
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package copel.sesproductpackage.line.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import copel.sesproductpackage.line.util.JsonUtil;
+
+class WebhookResponseTest {
+
+    @Test
+    void testWriteTo() throws Exception {
+        // 作成済みのJSONがステータスコード・ヘッダ・ボディと一致するか
+        for (WebhookResponse response : WebhookResponse.values()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            response.writeTo(output);
+            JsonNode json = JsonUtil.readTree(output.toString(StandardCharsets.UTF_8));
+
+            assertEquals(response.getStatusCode(), json.path("statusCode").asInt(), response.name());
+            assertEquals("application/json", json.path("headers").path("Content-Type").asText(), response.name());
+            assertEquals(response.getBody(), json.path("body").asText(), response.name());
+            // ボディ自体もJSONであること
+            assertTrue(JsonUtil.readTree(response.getBody()).path("message").isTextual(), response.name());
+        }
+    }
+
+    @Test
+    void testStatusCode() {
+        assertEquals(400, WebhookResponse.EmptyBody.getStatusCode());
+        assertEquals(401, WebhookResponse.InvalidSignature.getStatusCode());
+        assertEquals(400, WebhookResponse.InvalidRequest.getStatusCode());
+        assertEquals(200, WebhookResponse.NotMessage.getStatusCode());
+        assertEquals(500, WebhookResponse.SqsFailure.getStatusCode());
+        assertEquals(200, WebhookResponse.Success.getStatusCode());
+    }
+
+    @Test
+    void testHeadersAreImmutable() {
+        assertThrows(UnsupportedOperationException.class, () -> WebhookResponse.Success.getHeaders().put("X-Test", "1"));
+    }
+}
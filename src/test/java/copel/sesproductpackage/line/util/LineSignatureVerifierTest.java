@@ -0,0 +1,49 @@
+package copel.sesproductpackage.line.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class LineSignatureVerifierTest {
+
+    private static final String CHANNEL_SECRET = "0123456789abcdef0123456789abcdef";
+    private static final String BODY = "{\"destination\":\"U1\",\"events\":[]}";
+    /**
+     * BODYをCHANNEL_SECRETでHMAC-SHA256し、Base64エンコードした値.
+     */
+    private static final String EXPECTED_SIGNATURE = "d/qX9rG6mU0fuKxKl2H7z3/DxiIc6UW0ea4UogEDOMo=";
+
+    @Test
+    void testSign() {
+        LineSignatureVerifier verifier = new LineSignatureVerifier(CHANNEL_SECRET);
+        assertEquals(EXPECTED_SIGNATURE, verifier.sign(BODY.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testVerify() {
+        LineSignatureVerifier verifier = new LineSignatureVerifier(CHANNEL_SECRET);
+        assertTrue(verifier.isEnabled());
+        assertTrue(verifier.verify(BODY, EXPECTED_SIGNATURE));
+        // 同じインスタンスを繰り返し使用できる
+        assertTrue(verifier.verify(BODY.getBytes(StandardCharsets.UTF_8), EXPECTED_SIGNATURE));
+    }
+
+    @Test
+    void testVerify_Invalid() {
+        LineSignatureVerifier verifier = new LineSignatureVerifier(CHANNEL_SECRET);
+        assertFalse(verifier.verify(BODY + " ", EXPECTED_SIGNATURE));
+        assertFalse(verifier.verify(BODY, new LineSignatureVerifier("other").sign(BODY.getBytes(StandardCharsets.UTF_8))));
+        assertFalse(verifier.verify(BODY, "not base64!"));
+        assertFalse(verifier.verify(BODY, "c2hvcnQ="));
+        assertFalse(verifier.verify(BODY, null));
+    }
+
+    @Test
+    void testDisabled() {
+        LineSignatureVerifier verifier = new LineSignatureVerifier(null);
+        assertFalse(verifier.isEnabled());
+        assertFalse(verifier.verify(BODY, EXPECTED_SIGNATURE));
+    }
+}
@@ -0,0 +1,78 @@
+package copel.sesproductpackage.line.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import copel.sesproductpackage.line.unit.MessageEncoding;
+
+class SqsMessageCodecTest {
+
+    private static final String JSON = "{\"request_type\":\"11\",\"from_group\":\"personal_line\",\"raw_content\":\""
+            + "【案件】Java開発 単価60万 ".repeat(50) + "\"}";
+
+    @Test
+    void testRoundTrip() {
+        String encoded = SqsMessageCodec.encode(JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(encoded.length() < JSON.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(JSON, SqsMessageCodec.decode(encoded, MessageEncoding.DeflateBase64.getCode()));
+    }
+
+    @Test
+    void testRoundTrip_Empty() {
+        String encoded = SqsMessageCodec.encode(new byte[0]);
+        assertEquals("", SqsMessageCodec.decode(encoded, MessageEncoding.DeflateBase64.getCode()));
+    }
+
+    @Test
+    void testDecode_Message() {
+        Message message = Message.builder()
+                .body(SqsMessageCodec.encode(JSON.getBytes(StandardCharsets.UTF_8)))
+                .messageAttributes(Map.of(MessageEncoding.ATTRIBUTE_NAME, MessageAttributeValue.builder()
+                        .dataType("String").stringValue(MessageEncoding.DeflateBase64.getCode()).build()))
+                .build();
+        assertEquals(JSON, SqsMessageCodec.decode(message));
+    }
+
+    @Test
+    void testDecode_WithoutAttributeIsPlainJson() {
+        assertEquals(JSON, SqsMessageCodec.decode(Message.builder().body(JSON).build()));
+        assertEquals(JSON, SqsMessageCodec.decode(JSON, null));
+    }
+
+    @Test
+    void testDecode_UnknownEncoding() {
+        assertThrows(IllegalArgumentException.class, () -> SqsMessageCodec.decode(JSON, "zstd+base64"));
+    }
+
+    @Test
+    void testDecode_CorruptedBody() {
+        String encoded = SqsMessageCodec.encode(JSON.getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = Base64.getDecoder().decode(encoded);
+        String body = Base64.getEncoder().encodeToString(Arrays.copyOf(truncated, truncated.length / 2));
+
+        assertThrows(IllegalArgumentException.class, () -> SqsMessageCodec.decode(body, MessageEncoding.DeflateBase64.getCode()));
+        assertThrows(IllegalArgumentException.class, () -> SqsMessageCodec.decode("not base64!", MessageEncoding.DeflateBase64.getCode()));
+    }
+
+    @Test
+    void testDecode_InflatedSizeIsBounded() {
+        // 上限ちょうどは展開できる
+        String atLimit = SqsMessageCodec.encode(new byte[SqsMessageCodec.MAX_INFLATED_SIZE]);
+        assertEquals(SqsMessageCodec.MAX_INFLATED_SIZE, SqsMessageCodec.decode(atLimit, MessageEncoding.DeflateBase64.getCode()).length());
+
+        // SQSの上限に収まる小さなBodyが、上限を超えて展開される場合は打ち切る
+        String bomb = SqsMessageCodec.encode(new byte[SqsMessageCodec.MAX_INFLATED_SIZE + 1]);
+        assertTrue(bomb.length() < 64 * 1024, "encoded: " + bomb.length());
+        assertThrows(IllegalArgumentException.class, () -> SqsMessageCodec.decode(bomb, MessageEncoding.DeflateBase64.getCode()));
+    }
+}
@@ -0,0 +1,130 @@
+package copel.sesproductpackage.line.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+class StructuredLoggerTest {
+
+    private final Logger slf4jLogger = mock(Logger.class);
+    private final StructuredLogger logger = new StructuredLogger(slf4jLogger);
+
+    @AfterEach
+    void tearDown() {
+        StructuredLogger.setRequestId(null);
+    }
+
+    @Test
+    void testInfo_WritesOneJsonLine() throws Exception {
+        when(slf4jLogger.isInfoEnabled()).thenReturn(true);
+        StructuredLogger.setRequestId("req-1");
+
+        logger.info("SQSメッセージ送信成功", fields -> fields
+                .put("count", 2)
+                .put("messageIds", List.of("m1", "m2"))
+                .put("redelivery", false)
+                .put("absent", (String) null));
+
+        JsonNode line = captureInfo();
+        assertEquals("INFO", line.path("level").asText());
+        assertEquals("SQSメッセージ送信成功", line.path("message").asText());
+        assertEquals("req-1", line.path("requestId").asText());
+        assertEquals(2, line.path("count").asInt());
+        assertEquals("m2", line.path("messageIds").get(1).asText());
+        assertFalse(line.path("redelivery").asBoolean());
+        assertFalse(line.has("absent"));
+    }
+
+    @Test
+    void testDebug_DisabledLevelBuildsNothing() {
+        when(slf4jLogger.isDebugEnabled()).thenReturn(false);
+        AtomicBoolean called = new AtomicBoolean();
+
+        logger.debug("詳細", fields -> called.set(true));
+
+        assertFalse(called.get());
+        verify(slf4jLogger, never()).debug(anyString());
+    }
+
+    @Test
+    void testError_IncludesException() throws Exception {
+        when(slf4jLogger.isErrorEnabled()).thenReturn(true);
+
+        logger.error("SQSメッセージ送信エラー", new IllegalStateException("timeout"), null);
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(slf4jLogger).error(captor.capture());
+        JsonNode line = JsonUtil.readTree(captor.getValue());
+        assertEquals("ERROR", line.path("level").asText());
+        assertEquals("java.lang.IllegalStateException", line.path("errorType").asText());
+        assertEquals("timeout", line.path("errorMessage").asText());
+        assertFalse(line.has("requestId"));
+    }
+
+    @Test
+    void testWarn_IncludesExceptionWithoutStackTrace() throws Exception {
+        when(slf4jLogger.isWarnEnabled()).thenReturn(true);
+
+        logger.warn("送信者名を取得できませんでした。", new IOException("LINE API returned 500"), fields -> fields.put("userId", "U1"));
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(slf4jLogger).warn(captor.capture());
+        JsonNode line = JsonUtil.readTree(captor.getValue());
+        assertEquals("WARN", line.path("level").asText());
+        assertEquals("U1", line.path("userId").asText());
+        assertEquals("java.io.IOException", line.path("errorType").asText());
+        assertEquals("LINE API returned 500", line.path("errorMessage").asText());
+    }
+
+    @Test
+    void testPutText_Redacted() throws Exception {
+        when(slf4jLogger.isInfoEnabled()).thenReturn(true);
+
+        logger.info("本文", fields -> fields
+                .putText("redacted", "【案件】Java開発", true)
+                .putText("plain", "【案件】Java開発", false));
+
+        JsonNode line = captureInfo();
+        assertEquals("[redacted 10 chars]", line.path("redacted").asText());
+        assertEquals("【案件】Java開発", line.path("plain").asText());
+    }
+
+    @Test
+    void testPutJson_RedactsMessageText() throws Exception {
+        when(slf4jLogger.isInfoEnabled()).thenReturn(true);
+        byte[] body = ("{\"events\": [{\"type\": \"message\", \"source\": {\"type\": \"user\", \"userId\": \"U1\"},"
+                + " \"message\": {\"type\": \"text\", \"text\": \"電話番号は090-0000-0000です\"}}]}").getBytes(StandardCharsets.UTF_8);
+
+        logger.info("リクエストBody", fields -> fields.putJson("body", body, true));
+
+        JsonNode line = captureInfo();
+        JsonNode event = line.path("body").path("events").get(0);
+        assertEquals("U1", event.path("source").path("userId").asText());
+        assertEquals("[redacted 20 chars]", event.path("message").path("text").asText());
+        assertFalse(line.toString().contains("090-0000-0000"));
+    }
+
+    @Test
+    void testSample() {
+        assertFalse(StructuredLogger.sample(0.0));
+        assertTrue(StructuredLogger.sample(1.0));
+    }
+
+    private JsonNode captureInfo() throws Exception {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(slf4jLogger).info(captor.capture());
+        return JsonUtil.readTree(captor.getValue());
+    }
+}